@@ -3,8 +3,12 @@ package com.lingdang.blog.config;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
 import co.elastic.clients.elasticsearch.indices.ExistsRequest;
+import com.lingdang.blog.service.LlmGovernor;
+import com.lingdang.blog.service.LlmService;
+import com.lingdang.blog.service.RetrievalEngine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.io.ClassPathResource;
@@ -24,6 +28,19 @@ public class ElasticsearchInitializer {
     @Autowired
     private ElasticsearchClient esClient;
     
+    @Autowired
+    private VectorIndexConfig vectorIndexConfig;
+    
+    @Autowired
+    private LlmService llmService;
+    
+    /**
+     * 未配置维度且探测失败时的兜底值（历史默认）
+     */
+    private static final int FALLBACK_DIMS = 768;
+    
+    private volatile Integer embeddingDims;
+    
     /**
      * 读写别名（线上永远通过 alias 访问，便于蓝绿重建索引）
      */
@@ -36,10 +53,24 @@ public class ElasticsearchInitializer {
 
     private static final String INDEX_PREFIX = "lingdang_chunks_v1_";
     
+    @Value("${rag.retrieval.engine:" + RetrievalEngineConfig.ENGINE_ELASTICSEARCH + "}")
+    private String retrievalEngine;
+    
     /**
-     * 应用就绪后初始化索引
+     * 应用就绪后初始化索引（检索引擎不是 ES 时跳过）
      */
     @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!RetrievalEngineConfig.ENGINE_ELASTICSEARCH.equalsIgnoreCase(retrievalEngine)) {
+            log.info("检索引擎为 {}，跳过 Elasticsearch 索引初始化", retrievalEngine);
+            return;
+        }
+        initializeIndex();
+    }
+    
+    /**
+     * 初始化索引
+     */
     public void initializeIndex() {
         try {
             log.info("=== Elasticsearch 索引初始化开始 ===");
@@ -66,11 +97,16 @@ public class ElasticsearchInitializer {
                 String currentIndex = resolveCurrentIndex();
                 if (currentIndex != null) {
                     Integer dims = readEmbeddingDims(currentIndex);
-                    int expectedDims = 768; // 与 ChunkDocument 中定义一致
+                    int expectedDims = getEmbeddingDims();
                     if (dims != null && dims != expectedDims) {
                         log.warn("⚠️  检测到 embedding 维度不匹配: currentDims={}, expectedDims={}，将自动重建索引并切换 alias", dims, expectedDims);
                         String newIndex = createNewConcreteIndex();
                         switchAliasTo(newIndex);
+                    } else {
+                        String similarity = readEmbeddingSimilarity(currentIndex);
+                        if (similarity != null && !similarity.equalsIgnoreCase(vectorIndexConfig.getSimilarity())) {
+                            log.info("当前索引向量相似度为 {}，配置为 {}，下次全量重建索引后生效", similarity, vectorIndexConfig.getSimilarity());
+                        }
                     }
                 }
             } catch (Exception e) {
@@ -97,8 +133,8 @@ public class ElasticsearchInitializer {
     /**
      * 检查索引健康状态（提供给 Controller 调用）
      */
-    public IndexHealth checkIndexHealth() {
-        IndexHealth health = new IndexHealth();
+    public RetrievalEngine.IndexHealth checkIndexHealth() {
+        RetrievalEngine.IndexHealth health = new RetrievalEngine.IndexHealth();
         health.setIndexName(INDEX_ALIAS);
 
         try {
@@ -189,11 +225,64 @@ public class ElasticsearchInitializer {
         }
     }
 
+    /**
+     * embedding 维度：优先取配置；未配置时调用 embedding 模型探测一次并缓存
+     */
+    public int getEmbeddingDims() {
+        Integer dims = embeddingDims;
+        if (dims != null) {
+            return dims;
+        }
+        synchronized (this) {
+            if (embeddingDims == null) {
+                embeddingDims = resolveEmbeddingDims();
+            }
+            return embeddingDims;
+        }
+    }
+
+    private int resolveEmbeddingDims() {
+        if (vectorIndexConfig.getDims() > 0) {
+            log.info("embedding 维度（配置）: {}", vectorIndexConfig.getDims());
+            return vectorIndexConfig.getDims();
+        }
+        try {
+            float[] probe = llmService.generateEmbedding("dimension probe", LlmGovernor.Priority.ARTICLE_INDEX);
+            if (probe != null && probe.length > 0) {
+                log.info("embedding 维度（探测）: {}", probe.length);
+                return probe.length;
+            }
+        } catch (Exception e) {
+            log.warn("探测 embedding 维度失败: {}", e.getMessage());
+        }
+        // 探测失败：沿用当前索引的维度（避免误判为不匹配而清空索引），否则用兜底值
+        String current = resolveCurrentIndex();
+        Integer existing = current != null ? readEmbeddingDims(current) : null;
+        int dims = existing != null ? existing : FALLBACK_DIMS;
+        log.warn("embedding 维度使用兜底值: {}", dims);
+        return dims;
+    }
+
     /**
      * 创建一个新的实际索引（不绑定 alias），用于蓝绿重建。
      */
     public String createNewConcreteIndex() throws Exception {
+        String indexType = vectorIndexConfig.getIndexType();
+        try {
+            return createNewConcreteIndex(indexType);
+        } catch (Exception e) {
+            // 低版本 ES（< 8.12）不支持 int8_hnsw：回退为 float hnsw
+            if ("int8_hnsw".equalsIgnoreCase(indexType) && String.valueOf(e.getMessage()).contains("int8_hnsw")) {
+                log.warn("ES 不支持 int8_hnsw，回退为 hnsw: {}", e.getMessage());
+                return createNewConcreteIndex("hnsw");
+            }
+            throw e;
+        }
+    }
+
+    private String createNewConcreteIndex(String indexType) throws Exception {
         String indexName = INDEX_PREFIX + System.currentTimeMillis();
+        int dims = getEmbeddingDims();
 
         // settings
         final String settingsJson;
@@ -230,14 +319,24 @@ public class ElasticsearchInitializer {
                     .analyzer("smartcn")
                     .searchAnalyzer("smartcn")
                 ))
-                .properties("embedding", p -> p.denseVector(v -> v.dims(768)))
+                .properties("embedding", p -> p.denseVector(v -> v
+                    .dims(dims)
+                    .index(true)
+                    .similarity(vectorIndexConfig.getSimilarity())
+                    .indexOptions(o -> o
+                        .type(indexType)
+                        .m(vectorIndexConfig.getM())
+                        .efConstruction(vectorIndexConfig.getEfConstruction())
+                    )
+                ))
                 .properties("tokenCount", p -> p.integer(i -> i))
                 .properties("sequenceNumber", p -> p.integer(i -> i))
             )
         );
 
         esClient.indices().create(req);
-        log.info("✅ 已创建新索引: {}", indexName);
+        log.info("✅ 已创建新索引: {} (dims={}, similarity={}, index_options={}, m={}, ef_construction={})", indexName,
+            dims, vectorIndexConfig.getSimilarity(), indexType, vectorIndexConfig.getM(), vectorIndexConfig.getEfConstruction());
         return indexName;
     }
 
@@ -273,38 +372,18 @@ public class ElasticsearchInitializer {
         return null;
     }
 
-    /**
-     * 索引健康状态
-     */
-    public static class IndexHealth {
-        private String indexName;
-        private boolean healthy;
-        private boolean esConnected;
-        private boolean indexExists;
-        private long documentCount;  // chunks 总数
-        private long articleCount;   // 去重后的文章数量
-        private String message;
-        
-        // Getters and Setters
-        public String getIndexName() { return indexName; }
-        public void setIndexName(String indexName) { this.indexName = indexName; }
-        
-        public boolean isHealthy() { return healthy; }
-        public void setHealthy(boolean healthy) { this.healthy = healthy; }
-        
-        public boolean isEsConnected() { return esConnected; }
-        public void setEsConnected(boolean esConnected) { this.esConnected = esConnected; }
-        
-        public boolean isIndexExists() { return indexExists; }
-        public void setIndexExists(boolean indexExists) { this.indexExists = indexExists; }
-        
-        public long getDocumentCount() { return documentCount; }
-        public void setDocumentCount(long documentCount) { this.documentCount = documentCount; }
-        
-        public long getArticleCount() { return articleCount; }
-        public void setArticleCount(long articleCount) { this.articleCount = articleCount; }
-        
-        public String getMessage() { return message; }
-        public void setMessage(String message) { this.message = message; }
+    private String readEmbeddingSimilarity(String indexName) {
+        try {
+            var mappingResponse = esClient.indices().getMapping(m -> m.index(indexName));
+            var mapping = mappingResponse.get(indexName);
+            if (mapping != null && mapping.mappings() != null && mapping.mappings().properties() != null) {
+                var embeddingProp = mapping.mappings().properties().get("embedding");
+                if (embeddingProp != null && embeddingProp.isDenseVector()) {
+                    return embeddingProp.denseVector().similarity();
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        return null;
     }
 }
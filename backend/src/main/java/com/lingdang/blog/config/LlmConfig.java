@@ -42,6 +42,11 @@ public class LlmConfig {
      */
     private boolean useOllamaEmbedding = false;
     
+    /**
+     * Embedding 传输编码：base64（默认，上游不支持时自动回退）或 float
+     */
+    private String embeddingEncoding = "base64";
+    
     /**
      * 深度思考模式类型
      * 取值：enabled、disabled、auto
@@ -60,4 +65,117 @@ public class LlmConfig {
      * 读取超时（毫秒）
      */
     private long readTimeout = 60000;
+    
+    /**
+     * 出站调用调度（并发 / 速率 / 限流退避）
+     */
+    private Governor governor = new Governor();
+    
+    @Data
+    public static class Governor {
+        
+        /**
+         * Chat 接口最大并发
+         */
+        private int chatConcurrency = 4;
+        
+        /**
+         * Chat 接口每分钟 token 配额（0 表示不限制）
+         */
+        private int chatTokensPerMinute = 0;
+        
+        /**
+         * Embedding 接口最大并发
+         */
+        private int embeddingConcurrency = 4;
+        
+        /**
+         * Embedding 接口每分钟 token 配额（0 表示不限制）
+         */
+        private int embeddingTokensPerMinute = 0;
+        
+        /**
+         * Ollama Embedding 最大并发（本地模型，不做 token 限速）
+         */
+        private int ollamaEmbeddingConcurrency = 2;
+        
+        /**
+         * 为在线问答预留的并发槽位（后台任务不可占用）
+         */
+        private int interactiveReserved = 1;
+        
+        /**
+         * 429/503 最大重试次数
+         */
+        private int maxRetries = 3;
+        
+        /**
+         * 退避基数（毫秒）
+         */
+        private long backoffBaseMs = 500;
+        
+        /**
+         * 单次退避上限（毫秒）
+         */
+        private long backoffMaxMs = 30000;
+    }
+    
+    /**
+     * 出站 HTTP 传输（连接池 / HTTP2 / 预热）
+     */
+    private Transport transport = new Transport();
+    
+    @Data
+    public static class Transport {
+        
+        /**
+         * base-url 连接池最大空闲连接数
+         */
+        private int maxIdleConnections = 8;
+        
+        /**
+         * ollama-base-url 连接池最大空闲连接数
+         */
+        private int ollamaMaxIdleConnections = 4;
+        
+        /**
+         * 空闲连接保活时长（毫秒）
+         */
+        private long keepAliveMs = 300000;
+        
+        /**
+         * Dispatcher 最大并发请求（异步调用）
+         */
+        private int maxRequests = 64;
+        
+        /**
+         * Dispatcher 单 host 最大并发请求（异步调用）
+         */
+        private int maxRequestsPerHost = 16;
+        
+        /**
+         * 是否优先 HTTP/2（不支持时自动回落 HTTP/1.1）
+         */
+        private boolean http2 = true;
+        
+        /**
+         * 是否 gzip 压缩请求体（需上游支持 Content-Encoding: gzip）
+         */
+        private boolean requestGzip = false;
+        
+        /**
+         * 请求体超过该字节数才压缩
+         */
+        private long gzipMinBytes = 4096;
+        
+        /**
+         * 是否启动预热 + 空闲保活
+         */
+        private boolean prewarm = true;
+        
+        /**
+         * 空闲保活间隔（毫秒）
+         */
+        private long keepWarmIntervalMs = 60000;
+    }
 }
@@ -0,0 +1,94 @@
+package com.lingdang.blog.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 检索引擎配置
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.retrieval")
+public class RetrievalEngineConfig {
+    
+    public static final String ENGINE_ELASTICSEARCH = "elasticsearch";
+    public static final String ENGINE_LUCENE = "lucene";
+    
+    /**
+     * 检索引擎：elasticsearch（默认）或 lucene（进程内嵌入式，适合单机小规模部署）
+     */
+    private String engine = ENGINE_ELASTICSEARCH;
+    
+    /**
+     * Lucene 索引根目录（engine=lucene 时生效）
+     */
+    private String lucenePath = "./data/lucene";
+    
+    /**
+     * 进程内精确向量扫描（小/中规模语料比远程 HNSW 更快、召回更准）
+     */
+    private VectorStore vectorStore = new VectorStore();
+    
+    /**
+     * 分层检索：先按文章级向量选出 Top-N 文章，再在这些文章内做 chunk 级混合检索
+     */
+    private Hierarchical hierarchical = new Hierarchical();
+    
+    /**
+     * 近重复 chunk 检测（SimHash）：索引时重复 chunk 借用保留那份的向量，查询时折叠近重复结果
+     */
+    private Dedup dedup = new Dedup();
+    
+    @Data
+    public static class VectorStore {
+        
+        /**
+         * 是否启用：启用后向量检索走进程内精确扫描，未加载完成时回退到检索引擎
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 向量条数上限，超过后不再加载（回退到检索引擎的 HNSW）
+         */
+        private int maxVectors = 500000;
+    }
+    
+    @Data
+    public static class Hierarchical {
+        
+        /**
+         * 是否启用（文章级向量为空时自动回退到全量检索）
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 第一阶段保留的文章数
+         */
+        private int topArticles = 8;
+        
+        /**
+         * 按此比例抽样同时跑一次全量检索，计算召回率与耗时对比并记入查询日志（0 关闭）
+         */
+        private double compareSampleRate = 0.1;
+    }
+    
+    @Data
+    public static class Dedup {
+        
+        /**
+         * 是否启用
+         */
+        private boolean enabled = true;
+        
+        /**
+         * SimHash 汉明距离不超过该值视为近重复（64 位指纹，建议 0~3，最大 3）
+         */
+        private int maxDistance = 3;
+        
+        /**
+         * token 数低于该值的 chunk 不参与去重（过短的 chunk 指纹不稳定，且重复也不占多少空间）
+         */
+        private int minTokens = 32;
+    }
+}
@@ -0,0 +1,39 @@
+package com.lingdang.blog.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 向量索引配置（chunk 索引中的 embedding 字段）
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "elasticsearch.vector")
+public class VectorIndexConfig {
+    
+    /**
+     * 向量维度；0 表示启动时调用 embedding 模型探测一次
+     */
+    private int dims = 0;
+    
+    /**
+     * 相似度：dot_product（写入前已归一化为单位向量）、cosine、l2_norm
+     */
+    private String similarity = "dot_product";
+    
+    /**
+     * 索引类型：int8_hnsw（标量量化，内存约为 float 的 1/4）或 hnsw
+     */
+    private String indexType = "int8_hnsw";
+    
+    /**
+     * HNSW 每个节点的邻居数
+     */
+    private int m = 16;
+    
+    /**
+     * HNSW 构建时的候选队列大小
+     */
+    private int efConstruction = 100;
+}
@@ -1,15 +1,23 @@
 package com.lingdang.blog.controller;
 
 import com.lingdang.blog.dto.ApiResponse;
-import com.lingdang.blog.dto.article.ArticleDTO;
+import com.lingdang.blog.dto.article.ArticleListItemDTO;
+import com.lingdang.blog.service.ArticleResponseCache;
 import com.lingdang.blog.service.ArticleService;
 import com.lingdang.blog.service.ArticleSearchService;
 import com.lingdang.blog.dto.article.ArticleSearchResponse;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
 
 /**
  * 文章公开 API Controller
@@ -24,32 +32,99 @@ public class ArticleController {
 
     @Autowired
     private ArticleSearchService articleSearchService;
+
+    @Autowired
+    private ArticleResponseCache articleResponseCache;
     
     /**
      * 获取已发布文章列表
+     *
+     * 传 cursor 参数（首页传空串）时使用游标分页，返回 {items, nextCursor}；否则返回列表
      */
     @GetMapping
-    public ResponseEntity<ApiResponse<List<ArticleDTO>>> getPublishedArticles(
+    public ResponseEntity<ApiResponse<?>> getPublishedArticles(
             @RequestParam(required = false) Integer page,
             @RequestParam(required = false) Integer pageSize,
             @RequestParam(required = false) String sortBy,
-            @RequestParam(required = false) String sortOrder) {
-        List<ArticleDTO> articles = articleService.getPublishedArticles(page, pageSize, sortBy, sortOrder);
+            @RequestParam(required = false) String sortOrder,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            try {
+                return ResponseEntity.ok(ApiResponse.success(
+                    articleService.getPublishedArticlesByCursor(cursor, pageSize, sortBy, sortOrder)));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+            }
+        }
+        List<ArticleListItemDTO> articles = articleService.getPublishedArticles(page, pageSize, sortBy, sortOrder);
         return ResponseEntity.ok(ApiResponse.success(articles));
     }
     
     /**
      * 根据 Slug 获取文章详情
+     *
+     * 响应来自预序列化缓存，带弱 ETag（不含 viewCount）/ Last-Modified；If-None-Match（或 If-Modified-Since）命中时返回 304
      */
     @GetMapping("/{slug}")
-    public ResponseEntity<ApiResponse<ArticleDTO>> getArticleBySlug(@PathVariable String slug) {
-        return articleService.getArticleBySlug(slug)
-            .map(article -> {
-                // 增加浏览次数
-                articleService.incrementViewCount(article.getId());
-                return ResponseEntity.ok(ApiResponse.success(article));
-            })
-            .orElse(ResponseEntity.ok(ApiResponse.error("文章不存在")));
+    public ResponseEntity<?> getArticleBySlug(@PathVariable String slug, HttpServletRequest request) {
+        Optional<ArticleResponseCache.Entry> cached =
+            articleResponseCache.get(slug, () -> articleService.getArticleBySlug(slug));
+        if (cached.isEmpty()) {
+            return ResponseEntity.ok(ApiResponse.error("文章不存在"));
+        }
+        ArticleResponseCache.Entry entry = cached.get();
+        // 增加浏览次数（304 也算一次浏览）
+        articleService.incrementViewCount(entry.getArticleId());
+
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+        // 不同 content-coding 的表示使用不同的 ETag
+        String etag = gzip ? entry.getEtag().replaceFirst("\"$", "-gzip\"") : entry.getEtag();
+
+        boolean notModified = isNotModified(request, entry, etag);
+        ResponseEntity.BodyBuilder builder = notModified
+            ? ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+            : ResponseEntity.ok();
+        builder.eTag(etag)
+            .lastModified(entry.getLastModified())
+            .cacheControl(CacheControl.noCache())
+            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (notModified) {
+            return builder.build();
+        }
+        builder.contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(entry.getGzipBody());
+        }
+        return builder.body(entry.plainBody());
+    }
+
+    private static boolean isNotModified(HttpServletRequest request, ArticleResponseCache.Entry entry, String etag) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // If-None-Match 使用弱比较：忽略 W/ 前缀
+            String opaque = stripWeak(etag);
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.equals("*") || stripWeak(t).equals(opaque)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP 日期精度为秒
+        return ifModifiedSince >= 0 && entry.getLastModified() > 0
+            && entry.getLastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
     }
     
     /**
@@ -1,6 +1,6 @@
 package com.lingdang.blog.controller;
 
-import com.lingdang.blog.config.ElasticsearchInitializer;
+import com.lingdang.blog.service.RetrievalEngine;
 import com.lingdang.blog.dto.ApiResponse;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +24,7 @@ public class HealthController {
     private DataSource dataSource;
 
     @Autowired
-    private ElasticsearchInitializer esInitializer;
+    private RetrievalEngine retrievalEngine;
 
     @GetMapping
     public ResponseEntity<ApiResponse<HealthStatus>> health() {
@@ -45,9 +45,9 @@ public class HealthController {
         health.setDatabase(database);
 
         try {
-            health.setIndexHealth(esInitializer.checkIndexHealth());
+            health.setIndexHealth(retrievalEngine.health());
         } catch (Exception e) {
-            ElasticsearchInitializer.IndexHealth fallback = new ElasticsearchInitializer.IndexHealth();
+            RetrievalEngine.IndexHealth fallback = new RetrievalEngine.IndexHealth();
             fallback.setHealthy(false);
             fallback.setEsConnected(false);
             fallback.setIndexExists(false);
@@ -65,7 +65,7 @@ public class HealthController {
         private boolean alive;
         private String timestamp;
         private DatabaseHealth database;
-        private ElasticsearchInitializer.IndexHealth indexHealth;
+        private RetrievalEngine.IndexHealth indexHealth;
     }
 
     @Data
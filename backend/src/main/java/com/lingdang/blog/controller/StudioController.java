@@ -1,14 +1,22 @@
 package com.lingdang.blog.controller;
 
-import com.lingdang.blog.config.ElasticsearchInitializer;
 import com.lingdang.blog.dto.ApiResponse;
+import com.lingdang.blog.dto.CursorPage;
 import com.lingdang.blog.dto.assistant.RagConfigDTO;
 import com.lingdang.blog.dto.article.ArticleDTO;
+import com.lingdang.blog.dto.article.ArticleListItemDTO;
 import com.lingdang.blog.dto.article.StudioArticleUpsertRequest;
 import com.lingdang.blog.service.ArticleService;
 import com.lingdang.blog.service.ArticleSummaryJobService;
 import com.lingdang.blog.service.IndexPipelineService;
+import com.lingdang.blog.service.RagMetricsService;
+import com.lingdang.blog.service.RagObservabilityService;
+import com.lingdang.blog.service.LlmGovernor;
+import com.lingdang.blog.service.LlmService;
+import com.lingdang.blog.service.LlmTransport;
+import com.lingdang.blog.service.OffHeapVectorStore;
 import com.lingdang.blog.service.ArticleChunkService;
+import com.lingdang.blog.service.ChunkDedupService;
 import com.lingdang.blog.dto.article.ArticleChunkDTO;
 import com.lingdang.blog.model.ArticleSummaryJob;
 import com.lingdang.blog.model.RagQueryHit;
@@ -16,9 +24,12 @@ import com.lingdang.blog.model.RagQueryLog;
 import com.lingdang.blog.model.RagReindexJob;
 import com.lingdang.blog.service.RagConfigService;
 import com.lingdang.blog.service.RagReindexJobService;
+import com.lingdang.blog.service.RetrievalEngine;
 import com.lingdang.blog.repository.RagQueryHitRepository;
 import com.lingdang.blog.repository.RagQueryLogRepository;
+import com.lingdang.blog.dto.studio.ChunkDedupStatsDTO;
 import com.lingdang.blog.dto.studio.PromptTemplateDTO;
+import com.lingdang.blog.dto.studio.RagMetricsDTO;
 import com.lingdang.blog.service.PromptTemplateService;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +38,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Studio 管理 Controller
@@ -44,7 +56,7 @@ public class StudioController {
     private IndexPipelineService indexPipelineService;
     
     @Autowired
-    private ElasticsearchInitializer esInitializer;
+    private RetrievalEngine retrievalEngine;
 
     @Autowired
     private RagConfigService ragConfigService;
@@ -58,6 +70,12 @@ public class StudioController {
     @Autowired
     private RagQueryLogRepository ragQueryLogRepository;
 
+    @Autowired
+    private RagObservabilityService ragObservabilityService;
+
+    @Autowired
+    private RagMetricsService ragMetricsService;
+
     @Autowired
     private RagQueryHitRepository ragQueryHitRepository;
 
@@ -66,17 +84,43 @@ public class StudioController {
 
     @Autowired
     private ArticleSummaryJobService articleSummaryJobService;
+
+    @Autowired
+    private LlmGovernor llmGovernor;
+
+    @Autowired
+    private LlmTransport llmTransport;
+
+    @Autowired
+    private LlmService llmService;
+
+    @Autowired
+    private OffHeapVectorStore offHeapVectorStore;
+
+    @Autowired
+    private ChunkDedupService chunkDedupService;
     
     /**
      * 获取所有文章（含草稿）
+     *
+     * 传 cursor 参数（首页传空串）时使用游标分页，返回 {items, nextCursor}；否则返回列表
      */
     @GetMapping("/articles")
-    public ResponseEntity<ApiResponse<List<ArticleDTO>>> getAllArticles(
+    public ResponseEntity<ApiResponse<?>> getAllArticles(
             @RequestParam(required = false) Integer page,
             @RequestParam(required = false) Integer pageSize,
             @RequestParam(required = false) String sortBy,
-            @RequestParam(required = false) String sortOrder) {
-        List<ArticleDTO> articles = articleService.getAllArticles(page, pageSize, sortBy, sortOrder);
+            @RequestParam(required = false) String sortOrder,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            try {
+                return ResponseEntity.ok(ApiResponse.success(
+                    articleService.getAllArticlesByCursor(cursor, pageSize, sortBy, sortOrder)));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+            }
+        }
+        List<ArticleListItemDTO> articles = articleService.getAllArticles(page, pageSize, sortBy, sortOrder);
         return ResponseEntity.ok(ApiResponse.success(articles));
     }
     
@@ -209,15 +253,15 @@ public class StudioController {
     @PostMapping("/reindex-all")
     public ResponseEntity<ApiResponse<Void>> reindexAll() {
         try {
-            // 先检查 ES 连接
-            ElasticsearchInitializer.IndexHealth health = esInitializer.checkIndexHealth();
+            // 先检查检索引擎连接
+            RetrievalEngine.IndexHealth health = retrievalEngine.health();
             if (!health.isEsConnected()) {
-                return ResponseEntity.ok(ApiResponse.error("Elasticsearch 连接失败，请检查服务状态"));
+                return ResponseEntity.ok(ApiResponse.error("检索引擎连接失败，请检查服务状态"));
             }
 
-            // 如果 alias 不存在，先初始化（会创建索引并绑定 alias）
+            // 如果在线索引不存在，先初始化（ES 会创建索引并绑定 alias）
             if (!health.isIndexExists()) {
-                esInitializer.initializeIndex();
+                retrievalEngine.ensureIndex();
             }
 
             // 走蓝绿重建（FullReindexService），避免重建期间线上索引抖动
@@ -234,15 +278,55 @@ public class StudioController {
      * 检查索引健康状态
      */
     @GetMapping("/index-health")
-    public ResponseEntity<ApiResponse<ElasticsearchInitializer.IndexHealth>> checkIndexHealth() {
+    public ResponseEntity<ApiResponse<RetrievalEngine.IndexHealth>> checkIndexHealth() {
         try {
-            ElasticsearchInitializer.IndexHealth health = esInitializer.checkIndexHealth();
+            RetrievalEngine.IndexHealth health = retrievalEngine.health();
             return ResponseEntity.ok(ApiResponse.success(health));
         } catch (Exception e) {
             return ResponseEntity.ok(ApiResponse.error("检查失败: " + e.getMessage()));
         }
     }
 
+    /**
+     * 文章索引队列状态（队列深度、任务年龄）
+     */
+    @GetMapping("/index-queue")
+    public ResponseEntity<ApiResponse<IndexPipelineService.QueueStats>> indexQueueStats() {
+        return ResponseEntity.ok(ApiResponse.success(indexPipelineService.getQueueStats()));
+    }
+
+    /**
+     * LLM 出站调度状态（各 endpoint 在途/排队/限流，各优先级排队耗时）
+     */
+    @GetMapping("/llm-governor")
+    public ResponseEntity<ApiResponse<LlmGovernor.GovernorStats>> llmGovernorStats() {
+        return ResponseEntity.ok(ApiResponse.success(llmGovernor.snapshot()));
+    }
+
+    /**
+     * LLM 出站连接状态（连接复用率、TLS 握手次数、HTTP/2 连接数）
+     */
+    @GetMapping("/llm-transport")
+    public ResponseEntity<ApiResponse<Map<String, LlmTransport.TransportStats>>> llmTransportStats() {
+        return ResponseEntity.ok(ApiResponse.success(llmTransport.snapshot()));
+    }
+
+    /**
+     * Embedding 传输指标（base64 / float 两种编码的负载大小与解码耗时）
+     */
+    @GetMapping("/llm-embedding-stats")
+    public ResponseEntity<ApiResponse<LlmService.EmbeddingTransferStats>> llmEmbeddingStats() {
+        return ResponseEntity.ok(ApiResponse.success(llmService.getEmbeddingStats()));
+    }
+
+    /**
+     * 进程内向量库状态（是否就绪、向量条数、堆外内存占用）
+     */
+    @GetMapping("/vector-store")
+    public ResponseEntity<ApiResponse<OffHeapVectorStore.VectorStoreStats>> vectorStoreStats() {
+        return ResponseEntity.ok(ApiResponse.success(offHeapVectorStore.snapshot()));
+    }
+
     /**
      * 最近一次重建索引任务
      */
@@ -260,15 +344,27 @@ public class StudioController {
     }
 
     /**
-     * 最近 7 天 RAG 查询日志
+     * 最近 3 天 RAG 查询日志（游标分页，nextCursor 为空表示没有更多）
      */
     @GetMapping("/rag-logs")
-    public ResponseEntity<ApiResponse<List<RagQueryLog>>> listRagLogs() {
-        return ResponseEntity.ok(ApiResponse.success(
-            ragQueryLogRepository.findByCreatedAtAfterOrderByCreatedAtDesc(
-                java.time.LocalDateTime.now().minusDays(7)
-            )
-        ));
+    public ResponseEntity<ApiResponse<CursorPage<RagQueryLog>>> listRagLogs(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer pageSize) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success(ragObservabilityService.listRecentLogs(cursor, pageSize)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * RAG 查询指标（来自分钟 / 小时汇总，不扫描原始日志）
+     */
+    @GetMapping("/rag-metrics")
+    public ResponseEntity<ApiResponse<RagMetricsDTO>> ragMetrics(
+            @RequestParam(defaultValue = "HOUR") String granularity,
+            @RequestParam(defaultValue = "24") Integer hours) {
+        return ResponseEntity.ok(ApiResponse.success(ragMetricsService.query(granularity, hours)));
     }
 
     /**
@@ -288,11 +384,23 @@ public class StudioController {
      * 查看当前 chunks 切片（来自 MySQL article_chunks 表）
      */
     @GetMapping("/chunks")
-    public ResponseEntity<ApiResponse<List<ArticleChunkDTO>>> listChunks(
+    public ResponseEntity<ApiResponse<CursorPage<ArticleChunkDTO>>> listChunks(
             @RequestParam(required = false) Long articleId,
-            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) String cursor,
             @RequestParam(required = false) Integer pageSize) {
-        return ResponseEntity.ok(ApiResponse.success(articleChunkService.listChunks(articleId, page, pageSize)));
+        try {
+            return ResponseEntity.ok(ApiResponse.success(articleChunkService.listChunks(articleId, cursor, pageSize)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.ok(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * chunk 近重复统计：重复占比、未写入检索索引而省下的 token / 字符数、被重复最多的 chunk
+     */
+    @GetMapping("/chunks/dedup-stats")
+    public ResponseEntity<ApiResponse<ChunkDedupStatsDTO>> getChunkDedupStats() {
+        return ResponseEntity.ok(ApiResponse.success(chunkDedupService.getStats()));
     }
 
     /**
@@ -337,13 +445,17 @@ public class StudioController {
     @PutMapping("/rag-config")
     public ResponseEntity<ApiResponse<RagConfigDTO>> updateRagConfig(@RequestBody RagConfigDTO request) {
         try {
-            log.info("收到 rag-config 更新请求: topK={}, minScore={}, chunkSize={}, vectorWeight={}, bm25Weight={}, bm25Max={}, returnCitations={}",
+            log.info("收到 rag-config 更新请求: topK={}, minScore={}, chunkSize={}, vectorWeight={}, bm25Weight={}, bm25Max={}, fusionStrategy={}, mmrLambda={}, maxChunksPerArticle={}, compressionBudget={}, returnCitations={}",
                 request != null ? request.getTopK() : null,
                 request != null ? request.getMinScore() : null,
                 request != null ? request.getChunkSize() : null,
                 request != null ? request.getVectorWeight() : null,
                 request != null ? request.getBm25Weight() : null,
                 request != null ? request.getBm25Max() : null,
+                request != null ? request.getFusionStrategy() : null,
+                request != null ? request.getMmrLambda() : null,
+                request != null ? request.getMaxChunksPerArticle() : null,
+                request != null ? request.getCompressionBudget() : null,
                 request != null ? request.getReturnCitations() : null);
 
             // 先读取当前配置，判断 chunkSize 是否变化
@@ -362,6 +474,10 @@ public class StudioController {
                 tmp.setVectorWeight(safeRequest.getVectorWeight());
                 tmp.setBm25Weight(safeRequest.getBm25Weight());
                 tmp.setBm25Max(safeRequest.getBm25Max());
+                tmp.setFusionStrategy(safeRequest.getFusionStrategy());
+                tmp.setMmrLambda(safeRequest.getMmrLambda());
+                tmp.setMaxChunksPerArticle(safeRequest.getMaxChunksPerArticle());
+                tmp.setCompressionBudget(safeRequest.getCompressionBudget());
                 // 注意：chunkSize 不在这里落库，等待异步重建成功后由任务落库
                 safeRequest = tmp;
             }
@@ -376,6 +492,10 @@ public class StudioController {
                 requested.setVectorWeight(updated.getVectorWeight());
                 requested.setBm25Weight(updated.getBm25Weight());
                 requested.setBm25Max(updated.getBm25Max());
+                requested.setFusionStrategy(updated.getFusionStrategy());
+                requested.setMmrLambda(updated.getMmrLambda());
+                requested.setMaxChunksPerArticle(updated.getMaxChunksPerArticle());
+                requested.setCompressionBudget(updated.getCompressionBudget());
                 requested.setChunkSize(request.getChunkSize());
 
                 RagReindexJob job = ragReindexJobService.submitChunkSizeReindex(requested);
@@ -386,9 +506,12 @@ public class StudioController {
                 return ResponseEntity.ok(ApiResponse.success("已提交重建索引任务，chunkSize 将在任务成功后生效", updated));
             }
 
-            log.info("rag-config 更新完成: topK={}, minScore={}, chunkSize={}, vectorWeight={}, bm25Weight={}, bm25Max={}, returnCitations={}",
+            log.info("rag-config 更新完成: topK={}, minScore={}, chunkSize={}, vectorWeight={}, bm25Weight={}, bm25Max={}, fusionStrategy={}, mmrLambda={}, maxChunksPerArticle={}, compressionBudget={}, returnCitations={}",
                 updated.getTopK(), updated.getMinScore(), updated.getChunkSize(),
-                updated.getVectorWeight(), updated.getBm25Weight(), updated.getBm25Max(), updated.getReturnCitations());
+                updated.getVectorWeight(), updated.getBm25Weight(), updated.getBm25Max(),
+                updated.getFusionStrategy(), updated.getMmrLambda(), updated.getMaxChunksPerArticle(),
+                updated.getCompressionBudget(),
+                updated.getReturnCitations());
             return ResponseEntity.ok(ApiResponse.success("保存成功", updated));
         } catch (IllegalArgumentException e) {
             log.warn("rag-config 更新参数错误: {}", e.getMessage());
@@ -0,0 +1,18 @@
+package com.lingdang.blog.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页结果；nextCursor 为 null 表示没有下一页
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> items;
+    private String nextCursor;
+}
@@ -19,6 +19,8 @@ public class ArticleChunkDTO {
     private String anchor;
     private String chunkText;
     private Integer tokenCount;
+    /** 近重复时保留的那个 chunk（本 chunk 借用其向量） */
+    private String duplicateOf;
     private Integer sequenceNumber;
     private LocalDateTime createdAt;
 }
@@ -0,0 +1,42 @@
+package com.lingdang.blog.dto.article;
+
+import com.lingdang.blog.model.ArticleStatus;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文章列表项 DTO（不含正文）
+ */
+@Data
+public class ArticleListItemDTO {
+
+    private Long id;
+
+    private String title;
+
+    private String slug;
+
+    private String summary;
+
+    // 摘要为空时返回正文开头的 markdown 片段，前端据此生成列表摘要
+    private String excerpt;
+
+    private String author;
+
+    private String tags;
+
+    private String coverUrl;
+
+    private ArticleStatus status;
+
+    private Integer indexVersion;
+
+    private Long viewCount;
+
+    private LocalDateTime publishedAt;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+}
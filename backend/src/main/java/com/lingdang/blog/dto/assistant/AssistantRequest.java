@@ -24,6 +24,17 @@ public class AssistantRequest {
      */
     private List<ChatMessage> history;
     
+    // ALL: 全站检索（默认）
+    // ARTICLE: 只在 articleId 指定的文章内检索（"就这篇文章提问"）
+    private String scope = "ALL";
+    
+    private Long articleId;
+    
+    /**
+     * 可选：只检索带有这些标签的文章（全部匹配）
+     */
+    private List<String> tags;
+    
     @Data
     public static class ChatMessage {
         private String role;     // "user" 或 "assistant"
@@ -46,4 +46,24 @@ public class RagConfigDTO {
      * BM25 归一化上限（用于 log(1+bm25) 归一化到 0~1）
      */
     private Double bm25Max;
+
+    /**
+     * 融合策略：weighted（加权线性，默认）/ rrf（倒数排名融合）/ zscore（z-score 标准化）
+     */
+    private String fusionStrategy;
+
+    /**
+     * MMR 去冗余的 λ（0~1）：越大越看重相关度，1 表示不去冗余
+     */
+    private Double mmrLambda;
+
+    /**
+     * 每篇文章最多进入 prompt 的 chunk 数（0 表示不限）
+     */
+    private Integer maxChunksPerArticle;
+
+    /**
+     * 抽取式压缩：每个 chunk 放进 prompt 的 token 预算（0 表示不压缩）
+     */
+    private Integer compressionBudget;
 }
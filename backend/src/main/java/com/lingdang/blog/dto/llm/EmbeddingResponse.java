@@ -1,6 +1,7 @@
 package com.lingdang.blog.dto.llm;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Data;
 
 import java.util.List;
@@ -20,7 +21,8 @@ public class EmbeddingResponse {
     public static class EmbeddingData {
         private String object;
         private Integer index;
-        private List<Float> embedding;
+        @JsonDeserialize(using = EmbeddingVectorDeserializer.class)
+        private float[] embedding;
     }
     
     @Data
@@ -0,0 +1,102 @@
+package com.lingdang.blog.dto.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * embedding 直接解码为 float[]（不经过 List&lt;Float&gt; 装箱）
+ *
+ * - JSON 数组（encoding_format=float）：先写入线程内复用的暂存数组，结束后按实际维度拷贝一次
+ * - base64 字符串（encoding_format=base64）：little-endian float32 字节直接解码
+ *
+ * 若调用方通过 {@link #COUNTER_ATTRIBUTE} 传入 {@link EncodingCounter}，会记录各编码实际解码的向量数。
+ */
+public class EmbeddingVectorDeserializer extends StdDeserializer<float[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 2048;
+
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[INITIAL_CAPACITY]);
+
+    /**
+     * per-call attribute 键：值为 {@link EncodingCounter}
+     */
+    public static final Object COUNTER_ATTRIBUTE = EncodingCounter.class;
+
+    public EmbeddingVectorDeserializer() {
+        super(float[].class);
+    }
+
+    @Override
+    public float[] deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_STRING) {
+            return decodeBase64(p, ctxt);
+        }
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            return (float[]) ctxt.handleUnexpectedToken(float[].class, p);
+        }
+
+        float[] buf = SCRATCH.get();
+        int n = 0;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t != JsonToken.VALUE_NUMBER_FLOAT && t != JsonToken.VALUE_NUMBER_INT) {
+                return (float[]) ctxt.handleUnexpectedToken(float[].class, p);
+            }
+            if (n == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+                SCRATCH.set(buf);
+            }
+            buf[n++] = p.getFloatValue();
+        }
+        EncodingCounter counter = counter(ctxt);
+        if (counter != null) {
+            counter.floatVectors++;
+        }
+        return Arrays.copyOf(buf, n);
+    }
+
+    private float[] decodeBase64(JsonParser p, DeserializationContext ctxt) throws IOException {
+        byte[] bytes = p.getBinaryValue();
+        if (bytes.length % Float.BYTES != 0) {
+            return (float[]) ctxt.handleWeirdStringValue(float[].class, p.getText(),
+                "base64 embedding 字节数不是 4 的倍数: %d", bytes.length);
+        }
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        EncodingCounter counter = counter(ctxt);
+        if (counter != null) {
+            counter.base64Vectors++;
+        }
+        return vector;
+    }
+
+    private static EncodingCounter counter(DeserializationContext ctxt) {
+        Object attr = ctxt.getAttribute(COUNTER_ATTRIBUTE);
+        return attr instanceof EncodingCounter c ? c : null;
+    }
+
+    /**
+     * 单次响应内各编码的向量数（单线程使用）
+     */
+    public static class EncodingCounter {
+        private int base64Vectors;
+        private int floatVectors;
+
+        public int getBase64Vectors() {
+            return base64Vectors;
+        }
+
+        public int getFloatVectors() {
+            return floatVectors;
+        }
+    }
+}
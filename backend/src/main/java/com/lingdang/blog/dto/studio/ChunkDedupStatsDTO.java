@@ -0,0 +1,43 @@
+package com.lingdang.blog.dto.studio;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * chunk 近重复检测统计（来自 article_chunks 表）
+ */
+@Data
+public class ChunkDedupStatsDTO {
+
+    private boolean enabled;
+    private int maxDistance;
+    private int minTokens;
+
+    private long totalChunks;
+    private long duplicateChunks;
+    /**
+     * 重复 chunk 占比（duplicateChunks / totalChunks）
+     */
+    private Double dedupRatio;
+
+    /**
+     * 重复 chunk 借用向量而省下的 embedding token 数与正文字符数
+     */
+    private long totalTokens;
+    private long savedTokens;
+    private long totalChars;
+    private long savedChars;
+
+    /**
+     * 被重复最多的 chunk
+     */
+    private List<TopDuplicated> topDuplicated = new ArrayList<>();
+
+    @Data
+    public static class TopDuplicated {
+        private String chunkId;
+        private long copies;
+    }
+}
@@ -0,0 +1,66 @@
+package com.lingdang.blog.dto.studio;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RAG 查询指标（由分钟 / 小时汇总计算，不扫描原始日志）
+ */
+@Data
+public class RagMetricsDTO {
+
+    // MINUTE / HOUR
+    private String granularity;
+
+    private LocalDateTime from;
+
+    /**
+     * 整个时间窗口的汇总
+     */
+    private Stats summary;
+
+    /**
+     * 每个时间桶的指标（按时间升序，只包含有请求的桶）
+     */
+    private List<Point> points = new ArrayList<>();
+
+    private List<ArticleHits> topArticles = new ArrayList<>();
+
+    @Data
+    public static class Stats {
+        private long requests;
+        private Double successRate;
+        private Double hasArticlesRate;
+        private Double avgLatencyMs;
+        private Integer latencyP50;
+        private Integer latencyP95;
+        private Integer latencyP99;
+        private Integer retrievalP50;
+        private Integer retrievalP95;
+        private Integer retrievalP99;
+        private Double avgVectorCandidates;
+        private Double avgBm25Candidates;
+        private Double avgFilteredCandidates;
+        private Double avgCitations;
+    }
+
+    @Data
+    public static class Point {
+        private LocalDateTime bucketStart;
+        private Stats stats;
+    }
+
+    @Data
+    public static class ArticleHits {
+        private Long articleId;
+        private long hits;
+
+        public ArticleHits(Long articleId, long hits) {
+            this.articleId = articleId;
+            this.hits = hits;
+        }
+    }
+}
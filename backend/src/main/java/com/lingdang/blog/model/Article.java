@@ -15,7 +15,9 @@ import java.time.LocalDateTime;
 @Table(name = "articles", indexes = {
     @Index(name = "idx_slug", columnList = "slug", unique = true),
     @Index(name = "idx_status", columnList = "status"),
-    @Index(name = "idx_published_at", columnList = "published_at")
+    // 列表键集分页：(排序列, id)
+    @Index(name = "idx_status_published_id", columnList = "status,published_at,id"),
+    @Index(name = "idx_updated_id", columnList = "updated_at,id")
 })
 public class Article {
     
@@ -91,9 +93,9 @@ public class Article {
     private Integer indexVersion = 0;
     
     /**
-     * 浏览次数
+     * 浏览次数（只由 ArticleViewCounter 增量写回，实体保存不覆盖）
      */
-    @Column(name = "view_count", nullable = false)
+    @Column(name = "view_count", nullable = false, updatable = false)
     private Long viewCount = 0L;
     
     /**
@@ -13,8 +13,11 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "article_chunks", indexes = {
     @Index(name = "idx_chunk_id", columnList = "chunk_id", unique = true),
-    @Index(name = "idx_article_id", columnList = "article_id"),
-    @Index(name = "idx_index_version", columnList = "article_id,index_version")
+    @Index(name = "idx_index_version", columnList = "article_id,index_version"),
+    // 列表键集分页：(created_at, id)，可选按 article_id 过滤
+    @Index(name = "idx_chunk_created_id", columnList = "created_at,id"),
+    @Index(name = "idx_chunk_article_created_id", columnList = "article_id,created_at,id"),
+    @Index(name = "idx_chunk_duplicate_of", columnList = "duplicate_of")
 })
 public class ArticleChunk {
     
@@ -95,6 +98,18 @@ public class ArticleChunk {
     @Column(name = "token_count")
     private Integer tokenCount;
     
+    /**
+     * 正文的 64 位 SimHash 指纹（近重复检测）
+     */
+    @Column(name = "simhash")
+    private Long simhash;
+    
+    /**
+     * 近重复时指向保留的那个 chunk 的 chunk_id：重复 chunk 借用其向量（不再调用 embedding），仍以自身元数据写入检索索引
+     */
+    @Column(name = "duplicate_of", length = 100)
+    private String duplicateOf;
+    
     /**
      * Chunk 在文章中的序号（从 1 开始）
      */
@@ -0,0 +1,51 @@
+package com.lingdang.blog.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文章级向量（分层检索第一阶段使用）
+ *
+ * - centroid：该文章全部 chunk 向量的质心
+ * - titleEmbedding：标题 + 摘要的向量
+ * 向量按 float32 小端序 base64 存储；随文章索引 / 全量重建一起维护
+ */
+@Data
+@Entity
+@Table(name = "article_embeddings", indexes = {
+    @Index(name = "idx_article_embeddings_article_id", columnList = "article_id", unique = true)
+})
+public class ArticleEmbedding {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "article_id", nullable = false)
+    private Long articleId;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    @Column(length = 200)
+    private String tags;
+
+    @Column(nullable = false)
+    private Integer dims;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String centroid;
+
+    @Column(name = "title_embedding", columnDefinition = "TEXT")
+    private String titleEmbedding;
+
+    @Column(name = "chunk_count", nullable = false)
+    private Integer chunkCount;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
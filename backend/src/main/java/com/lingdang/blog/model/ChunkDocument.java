@@ -92,9 +92,10 @@ public class ChunkDocument {
      * - OpenAI text-embedding-3-small: 1536 维
      * - Ollama nomic-embed-text: 768 维
      * - Ollama mxbai-embed-large: 1024 维
-     * 根据实际使用的 embedding 模型配置维度
+     * 实际维度由 elasticsearch.vector.dims 或启动时探测决定（见 ElasticsearchInitializer），
+     * 写入前统一归一化为单位向量（索引使用 dot_product 相似度）
      */
-    @Field(type = FieldType.Dense_Vector, dims = 768)
+    @Field(type = FieldType.Dense_Vector)
     private float[] embedding;
     
     /**
@@ -108,4 +109,26 @@ public class ChunkDocument {
      */
     @Field(type = FieldType.Integer)
     private Integer sequenceNumber;
+    
+    /**
+     * 由 chunk 行与其向量构建检索文档
+     */
+    public static ChunkDocument of(ArticleChunk chunk, float[] embedding) {
+        ChunkDocument doc = new ChunkDocument();
+        doc.setChunkId(chunk.getChunkId());
+        doc.setArticleId(chunk.getArticleId());
+        doc.setSlug(chunk.getSlug());
+        doc.setTitle(chunk.getTitle());
+        doc.setTags(chunk.getTags());
+        doc.setStatus(chunk.getStatus().name());
+        doc.setIndexVersion(chunk.getIndexVersion());
+        doc.setHeadingLevel(chunk.getHeadingLevel());
+        doc.setHeadingText(chunk.getHeadingText());
+        doc.setAnchor(chunk.getAnchor());
+        doc.setChunkText(chunk.getChunkText());
+        doc.setEmbedding(embedding);
+        doc.setTokenCount(chunk.getTokenCount());
+        doc.setSequenceNumber(chunk.getSequenceNumber());
+        return doc;
+    }
 }
@@ -22,5 +22,10 @@ public enum IndexJobStatus {
     /**
      * 失败
      */
-    FAILED
+    FAILED,
+    
+    /**
+     * 已取消（文章下线/删除时仍在排队的任务）
+     */
+    CANCELED
 }
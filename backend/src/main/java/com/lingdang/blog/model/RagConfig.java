@@ -64,6 +64,30 @@ public class RagConfig {
     @Column(name = "bm25_max")
     private Double bm25Max;
 
+    /**
+     * 融合策略：weighted / rrf / zscore
+     */
+    @Column(name = "fusion_strategy", length = 20)
+    private String fusionStrategy;
+
+    /**
+     * MMR 去冗余的 λ（0~1）
+     */
+    @Column(name = "mmr_lambda")
+    private Double mmrLambda;
+
+    /**
+     * 每篇文章最多进入 prompt 的 chunk 数（0 表示不限）
+     */
+    @Column(name = "max_chunks_per_article")
+    private Integer maxChunksPerArticle;
+
+    /**
+     * 抽取式压缩：每个 chunk 的 token 预算（0 表示不压缩）
+     */
+    @Column(name = "compression_budget")
+    private Integer compressionBudget;
+
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "rag_index_jobs", indexes = {
     @Index(name = "idx_article_status", columnList = "article_id,status"),
-    @Index(name = "idx_status", columnList = "status")
+    @Index(name = "idx_status", columnList = "status"),
+    @Index(name = "idx_status_not_before", columnList = "status,not_before")
 })
 public class RagIndexJob {
     
@@ -41,6 +42,24 @@ public class RagIndexJob {
     @Column(name = "target_index_version", nullable = false)
     private Integer targetIndexVersion;
     
+    /**
+     * 是否强制索引（不检查内容变化）；合并多次触发时取并集
+     */
+    @Column(nullable = false)
+    private Boolean force = false;
+    
+    /**
+     * 最早可执行时间（防抖：短时间内多次触发会不断后延，最终只跑一次）
+     */
+    @Column(name = "not_before")
+    private LocalDateTime notBefore;
+    
+    /**
+     * 被合并进本任务的触发次数
+     */
+    @Column(name = "coalesced_count", nullable = false)
+    private Integer coalescedCount = 0;
+    
     /**
      * 生成的 chunk 数量
      */
@@ -0,0 +1,77 @@
+package com.lingdang.blog.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * RAG 查询指标汇总（按分钟 / 小时）
+ *
+ * 由 RagMetricsService 在写查询日志时增量累加；所有字段均可相加合并，
+ * 延迟分位数用 LatencySketch 序列化存储，命中文章只保留前 20 篇。
+ */
+@Data
+@Entity
+@Table(name = "rag_metric_rollups", indexes = {
+    @Index(name = "idx_rag_rollup_bucket", columnList = "granularity,bucket_start", unique = true)
+})
+public class RagMetricRollup {
+
+    public static final String MINUTE = "MINUTE";
+    public static final String HOUR = "HOUR";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * MINUTE / HOUR
+     */
+    @Column(nullable = false, length = 10)
+    private String granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(nullable = false)
+    private Long requests = 0L;
+
+    @Column(nullable = false)
+    private Long successes = 0L;
+
+    @Column(name = "with_articles", nullable = false)
+    private Long withArticles = 0L;
+
+    @Column(name = "latency_sum_ms", nullable = false)
+    private Long latencySumMs = 0L;
+
+    @Column(name = "latency_sketch", columnDefinition = "TEXT")
+    private String latencySketch;
+
+    @Column(name = "retrieval_sketch", columnDefinition = "TEXT")
+    private String retrievalSketch;
+
+    @Column(name = "vector_candidates_sum", nullable = false)
+    private Long vectorCandidatesSum = 0L;
+
+    @Column(name = "bm25_candidates_sum", nullable = false)
+    private Long bm25CandidatesSum = 0L;
+
+    @Column(name = "filtered_candidates_sum", nullable = false)
+    private Long filteredCandidatesSum = 0L;
+
+    @Column(name = "citations_sum", nullable = false)
+    private Long citationsSum = 0L;
+
+    /**
+     * 命中文章计数："articleId:count,..."（按次数降序，桶内全部文章，不截断，保证多次合并后仍可加）
+     */
+    @Column(name = "article_hits", columnDefinition = "LONGTEXT")
+    private String articleHits;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -13,7 +13,8 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "rag_query_logs", indexes = {
     @Index(name = "idx_rag_query_request_id", columnList = "request_id", unique = true),
-    @Index(name = "idx_rag_query_created_at", columnList = "created_at"),
+    // 按时间清理 / 统计，以及日志列表键集分页 (created_at, id)
+    @Index(name = "idx_rag_query_created_id", columnList = "created_at,id"),
     @Index(name = "idx_rag_query_success", columnList = "success")
 })
 public class RagQueryLog {
@@ -62,6 +63,18 @@ public class RagQueryLog {
     @Column(name = "bm25_max")
     private Double bm25Max;
 
+    @Column(name = "fusion_strategy", length = 20)
+    private String fusionStrategy;
+
+    @Column(name = "mmr_lambda")
+    private Double mmrLambda;
+
+    @Column(name = "max_chunks_per_article")
+    private Integer maxChunksPerArticle;
+
+    @Column(name = "compression_budget")
+    private Integer compressionBudget;
+
     // metrics
     @Column(name = "vector_candidates")
     private Integer vectorCandidates;
@@ -78,6 +91,63 @@ public class RagQueryLog {
     @Column(name = "retrieval_ms")
     private Integer retrievalMs;
 
+    @Column(name = "fusion_us")
+    private Integer fusionMicros;
+
+    /**
+     * 检索方式：flat（全量）/ hierarchical（分层）/ article（单篇文章内）
+     */
+    @Column(name = "retrieval_mode", length = 20)
+    private String retrievalMode;
+
+    /**
+     * 分层检索第一阶段选出的文章数
+     */
+    @Column(name = "stage1_articles")
+    private Integer stage1Articles;
+
+    /**
+     * 抽样对比：分层结果对全量结果 Top-K 的召回率（未抽样为空）
+     */
+    @Column(name = "flat_recall")
+    private Double flatRecall;
+
+    @Column(name = "flat_retrieval_ms")
+    private Integer flatRetrievalMs;
+
+    /**
+     * MMR 去冗余：被替换掉的冗余 chunk 数及其 token 数（相对按分数直接取 Top-K）
+     */
+    @Column(name = "mmr_dropped_chunks")
+    private Integer mmrDroppedChunks;
+
+    @Column(name = "mmr_removed_tokens")
+    private Integer mmrRemovedTokens;
+
+    /**
+     * 折叠掉的近重复 chunk 数（SimHash，MMR 之前）
+     */
+    @Column(name = "dedup_collapsed_chunks")
+    private Integer dedupCollapsedChunks;
+
+    /**
+     * 抽取式压缩前后参考内容的 token 数（BPE token 口径）与压缩耗时
+     */
+    @Column(name = "context_tokens")
+    private Integer contextTokens;
+
+    @Column(name = "compressed_tokens")
+    private Integer compressedTokens;
+
+    @Column(name = "compress_ms")
+    private Integer compressMs;
+
+    /**
+     * 首 token 延迟（仅流式）：从请求开始到模型返回第一个片段
+     */
+    @Column(name = "ttft_ms")
+    private Integer ttftMs;
+
     @Column(name = "latency_ms")
     private Integer latencyMs;
 
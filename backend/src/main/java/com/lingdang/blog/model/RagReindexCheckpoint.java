@@ -0,0 +1,46 @@
+package com.lingdang.blog.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * 全量重建索引的文章级检查点：每篇文章写入新索引成功后落一行，
+ * 用于进程重启后把中断的任务续跑到同一个 newIndex，跳过已完成的文章。
+ */
+@Data
+@Entity
+@Table(name = "rag_reindex_checkpoints", indexes = {
+    @Index(name = "idx_rag_reindex_ckpt_job_article", columnList = "job_id,article_id", unique = true),
+    @Index(name = "idx_rag_reindex_ckpt_created_at", columnList = "created_at")
+})
+public class RagReindexCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "article_id", nullable = false)
+    private Long articleId;
+
+    /**
+     * 该文章写入新索引的 chunk 数
+     */
+    @Column(name = "chunk_count", nullable = false)
+    private Integer chunkCount;
+
+    /**
+     * 该文章写入新索引的 chunks（JSON，含近重复标记）：切换在线索引后才落到 article_chunks，续跑时据此恢复
+     */
+    @Column(name = "chunks_json", columnDefinition = "LONGTEXT")
+    private String chunksJson;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
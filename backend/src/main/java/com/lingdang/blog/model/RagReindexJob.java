@@ -60,6 +60,24 @@ public class RagReindexJob {
     @Column(name = "done_articles")
     private Integer doneArticles;
 
+    /**
+     * 已写入新索引的 chunk 总数（含续跑前已完成的部分）
+     */
+    @Column(name = "indexed_chunks")
+    private Integer indexedChunks;
+
+    /**
+     * 进程重启后被续跑的次数
+     */
+    @Column(name = "resume_count")
+    private Integer resumeCount = 0;
+
+    /**
+     * 续跑时凭检查点跳过的文章数（最近一次续跑）
+     */
+    @Column(name = "skipped_articles")
+    private Integer skippedArticles;
+
     @Column(name = "started_at")
     private LocalDateTime startedAt;
 
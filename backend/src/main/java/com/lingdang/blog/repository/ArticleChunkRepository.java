@@ -1,11 +1,13 @@
 package com.lingdang.blog.repository;
 
 import com.lingdang.blog.model.ArticleChunk;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,15 +28,64 @@ public interface ArticleChunkRepository extends JpaRepository<ArticleChunk, Long
     List<ArticleChunk> findByArticleIdOrderBySequenceNumberAsc(Long articleId);
 
     /**
-     * 分页查询 chunks（可选按 articleId 过滤）
+     * 最近写入的 chunks（键集分页第一页）
      */
-    Page<ArticleChunk> findByArticleId(Long articleId, Pageable pageable);
+    @Query("SELECT c FROM ArticleChunk c ORDER BY c.createdAt DESC, c.id DESC")
+    List<ArticleChunk> findLatest(Pageable limit);
+
+    /**
+     * 排在 (createdAt, id) 之后的 chunks
+     */
+    @Query("SELECT c FROM ArticleChunk c WHERE c.createdAt < ?1 OR (c.createdAt = ?1 AND c.id < ?2) "
+        + "ORDER BY c.createdAt DESC, c.id DESC")
+    List<ArticleChunk> findLatestBefore(LocalDateTime createdAt, Long id, Pageable limit);
+
+    @Query("SELECT c FROM ArticleChunk c WHERE c.articleId = ?1 ORDER BY c.createdAt DESC, c.id DESC")
+    List<ArticleChunk> findLatestByArticleId(Long articleId, Pageable limit);
+
+    @Query("SELECT c FROM ArticleChunk c WHERE c.articleId = ?1 AND (c.createdAt < ?2 OR (c.createdAt = ?2 AND c.id < ?3)) "
+        + "ORDER BY c.createdAt DESC, c.id DESC")
+    List<ArticleChunk> findLatestByArticleIdBefore(Long articleId, LocalDateTime createdAt, Long id, Pageable limit);
     
     /**
      * 根据文章 ID 和索引版本查找
      */
     List<ArticleChunk> findByArticleIdAndIndexVersion(Long articleId, Integer indexVersion);
     
+    /**
+     * 可作为去重基准的 chunk 指纹：未被标记为重复、token 数不低于 minTokens，排除指定文章
+     */
+    @Query("SELECT c.chunkId AS chunkId, c.articleId AS articleId, c.simhash AS simhash, c.duplicateOf AS duplicateOf "
+        + "FROM ArticleChunk c WHERE c.simhash IS NOT NULL AND c.duplicateOf IS NULL AND c.tokenCount >= ?2 "
+        + "AND c.articleId <> ?1")
+    List<ChunkSignatureView> findCanonicalSignatures(Long excludeArticleId, int minTokens);
+
+    /**
+     * 标记为给定 chunk 的近重复的 chunk
+     */
+    @Query("SELECT c.chunkId AS chunkId, c.articleId AS articleId, c.simhash AS simhash, c.duplicateOf AS duplicateOf "
+        + "FROM ArticleChunk c WHERE c.duplicateOf IN ?1")
+    List<ChunkSignatureView> findDuplicatesOf(Collection<String> chunkIds);
+
+    @Query("SELECT c.chunkId FROM ArticleChunk c WHERE c.articleId = ?1")
+    List<String> findChunkIdsByArticleId(Long articleId);
+
+    @Query("SELECT COUNT(c) AS totalChunks, "
+        + "COALESCE(SUM(c.tokenCount), 0) AS totalTokens, "
+        + "COALESCE(SUM(LENGTH(c.chunkText)), 0) AS totalChars, "
+        + "COALESCE(SUM(CASE WHEN c.duplicateOf IS NOT NULL THEN 1 ELSE 0 END), 0) AS duplicateChunks, "
+        + "COALESCE(SUM(CASE WHEN c.duplicateOf IS NOT NULL THEN c.tokenCount ELSE 0 END), 0) AS duplicateTokens, "
+        + "COALESCE(SUM(CASE WHEN c.duplicateOf IS NOT NULL THEN LENGTH(c.chunkText) ELSE 0 END), 0) AS duplicateChars "
+        + "FROM ArticleChunk c")
+    ChunkDedupTotalsView sumDedupTotals();
+
+    /**
+     * 被重复最多的 chunk（按重复次数倒序）
+     */
+    @Query("SELECT c.duplicateOf AS chunkId, COUNT(c) AS copies FROM ArticleChunk c WHERE c.duplicateOf IS NOT NULL "
+        + "GROUP BY c.duplicateOf ORDER BY COUNT(c) DESC")
+    List<ChunkDuplicateCountView> countDuplicatesByCanonical(Pageable limit);
+    
     /**
      * 删除指定文章的所有 chunk
      */
@@ -0,0 +1,17 @@
+package com.lingdang.blog.repository;
+
+import com.lingdang.blog.model.ArticleEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface ArticleEmbeddingRepository extends JpaRepository<ArticleEmbedding, Long> {
+
+    Optional<ArticleEmbedding> findByArticleId(Long articleId);
+
+    @Transactional
+    long deleteByArticleId(Long articleId);
+}
@@ -0,0 +1,42 @@
+package com.lingdang.blog.repository;
+
+import com.lingdang.blog.model.ArticleStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文章列表投影：只查列表需要的列，不读 content_markdown / content_html
+ */
+public interface ArticleListView {
+
+    Long getId();
+
+    String getTitle();
+
+    String getSlug();
+
+    String getSummary();
+
+    /**
+     * 摘要为空时的正文开头（用于列表兜底展示），摘要非空时为 null
+     */
+    String getExcerpt();
+
+    String getAuthor();
+
+    String getTags();
+
+    String getCoverUrl();
+
+    ArticleStatus getStatus();
+
+    Integer getIndexVersion();
+
+    Long getViewCount();
+
+    LocalDateTime getPublishedAt();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getUpdatedAt();
+}
@@ -0,0 +1,21 @@
+package com.lingdang.blog.repository;
+
+import com.lingdang.blog.model.ArticleStatus;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 文章列表查询（投影 + 偏移 / 键集分页）
+ */
+public interface ArticleRepositoryCustom {
+
+    /**
+     * 文章列表（投影，不读正文列）；摘要为空时顺带取正文前 200 字作为 excerpt
+     *
+     * pageable 只使用第一个排序字段，并固定以 id 作为第二排序键。
+     * afterId 不为 null 时按键集分页：只返回排在 (afterValue, afterId) 之后的行，忽略 pageable 的偏移量。
+     */
+    List<ArticleListView> findListPage(Collection<ArticleStatus> statuses, Pageable pageable, Object afterValue, Long afterId);
+}
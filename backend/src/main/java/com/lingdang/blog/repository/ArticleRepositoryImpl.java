@@ -0,0 +1,103 @@
+package com.lingdang.blog.repository;
+
+import com.lingdang.blog.model.ArticleStatus;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ArticleRepositoryCustom 实现
+ *
+ * 排序列只接受白名单字段（由 ArticleService 校验），直接拼进 JPQL。
+ * 对应索引：articles(status, published_at, id)、articles(updated_at, id)。
+ */
+public class ArticleRepositoryImpl implements ArticleRepositoryCustom {
+
+    private static final String LIST_SELECT = "SELECT a.id AS id, a.title AS title, a.slug AS slug, a.summary AS summary, "
+        + "CASE WHEN a.summary IS NULL OR a.summary = '' THEN SUBSTRING(a.contentMarkdown, 1, 200) ELSE NULL END AS excerpt, "
+        + "a.author AS author, a.tags AS tags, a.coverUrl AS coverUrl, a.status AS status, "
+        + "a.indexVersion AS indexVersion, a.viewCount AS viewCount, a.publishedAt AS publishedAt, "
+        + "a.createdAt AS createdAt, a.updatedAt AS updatedAt "
+        + "FROM Article a WHERE a.status IN :statuses";
+
+    private static final Set<String> SORT_FIELDS = Set.of("updatedAt", "publishedAt", "createdAt", "title", "viewCount", "id");
+
+    private final ProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<ArticleListView> findListPage(Collection<ArticleStatus> statuses, Pageable pageable,
+                                              Object afterValue, Long afterId) {
+        Sort.Order order = pageable.getSort().iterator().next();
+        if (!SORT_FIELDS.contains(order.getProperty())) {
+            throw new IllegalArgumentException("不支持的排序字段: " + order.getProperty());
+        }
+        String sortExpr = sortExpression(order.getProperty(), statuses);
+        String dir = order.isAscending() ? "ASC" : "DESC";
+        String cmp = order.isAscending() ? ">" : "<";
+
+        StringBuilder jpql = new StringBuilder(LIST_SELECT);
+        boolean keyset = afterId != null;
+        boolean byId = "id".equals(order.getProperty());
+        if (keyset) {
+            if (byId) {
+                jpql.append(" AND a.id ").append(cmp).append(" :afterId");
+            } else {
+                jpql.append(" AND (").append(sortExpr).append(' ').append(cmp).append(" :afterValue")
+                    .append(" OR (").append(sortExpr).append(" = :afterValue AND a.id ").append(cmp).append(" :afterId))");
+            }
+        }
+        jpql.append(" ORDER BY ").append(sortExpr).append(' ').append(dir);
+        if (!byId) {
+            jpql.append(", a.id ").append(dir);
+        }
+
+        TypedQuery<Tuple> query = entityManager.createQuery(jpql.toString(), Tuple.class)
+            .setParameter("statuses", statuses)
+            .setMaxResults(pageable.getPageSize());
+        if (keyset) {
+            query.setParameter("afterId", afterId);
+            if (!byId) {
+                query.setParameter("afterValue", afterValue);
+            }
+        } else {
+            query.setFirstResult((int) pageable.getOffset());
+        }
+
+        List<Tuple> rows = query.getResultList();
+        List<ArticleListView> result = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            Map<String, Object> values = new HashMap<>();
+            for (TupleElement<?> element : row.getElements()) {
+                values.put(element.getAlias(), row.get(element));
+            }
+            result.add(projectionFactory.createProjection(ArticleListView.class, values));
+        }
+        return result;
+    }
+
+    /**
+     * 排序表达式；草稿没有 publishedAt，混合状态列表按 publishedAt 排序时用 createdAt 兜底，保证键集比较不遇到 NULL
+     */
+    static String sortExpression(String property, Collection<ArticleStatus> statuses) {
+        if ("publishedAt".equals(property) && !(statuses.size() == 1 && statuses.contains(ArticleStatus.PUBLISHED))) {
+            return "COALESCE(a.publishedAt, a.createdAt)";
+        }
+        return "a." + property;
+    }
+}
@@ -0,0 +1,19 @@
+package com.lingdang.blog.repository;
+
+/**
+ * chunk 去重汇总：全部 chunk 与其中重复 chunk 的条数、token 数、字符数
+ */
+public interface ChunkDedupTotalsView {
+
+    Long getTotalChunks();
+
+    Long getTotalTokens();
+
+    Long getTotalChars();
+
+    Long getDuplicateChunks();
+
+    Long getDuplicateTokens();
+
+    Long getDuplicateChars();
+}
@@ -0,0 +1,11 @@
+package com.lingdang.blog.repository;
+
+/**
+ * 被重复的 chunk 及其重复次数
+ */
+public interface ChunkDuplicateCountView {
+
+    String getChunkId();
+
+    Long getCopies();
+}
@@ -0,0 +1,15 @@
+package com.lingdang.blog.repository;
+
+/**
+ * chunk 指纹投影：近重复检测只需要这几列，不读 chunk_text
+ */
+public interface ChunkSignatureView {
+
+    String getChunkId();
+
+    Long getArticleId();
+
+    Long getSimhash();
+
+    String getDuplicateOf();
+}
@@ -2,9 +2,14 @@ package com.lingdang.blog.repository;
 
 import com.lingdang.blog.model.IndexJobStatus;
 import com.lingdang.blog.model.RagIndexJob;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,8 +34,40 @@ public interface RagIndexJobRepository extends JpaRepository<RagIndexJob, Long>
      */
     List<RagIndexJob> findByStatusOrderByCreatedAtAsc(IndexJobStatus status);
     
+    /**
+     * 查找指定文章、指定状态的所有任务
+     */
+    List<RagIndexJob> findByArticleIdAndStatus(Long articleId, IndexJobStatus status);
+    
+    /**
+     * 指定文章是否存在指定状态的任务
+     */
+    boolean existsByArticleIdAndStatus(Long articleId, IndexJobStatus status);
+    
     /**
      * 查找最近的任务
      */
     List<RagIndexJob> findTop100ByOrderByCreatedAtDesc();
+    
+    /**
+     * Worker 领取任务：锁定到期的待执行任务（SKIP LOCKED，多个 worker 互不阻塞）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<RagIndexJob> findTop5ByStatusAndNotBeforeLessThanEqualOrderByNotBeforeAsc(IndexJobStatus status, LocalDateTime now);
+    
+    /**
+     * 队列深度
+     */
+    long countByStatus(IndexJobStatus status);
+    
+    /**
+     * 最早的指定状态任务（用于计算任务年龄）
+     */
+    Optional<RagIndexJob> findFirstByStatusOrderByCreatedAtAsc(IndexJobStatus status);
+    
+    /**
+     * 统计一段时间内指定状态的任务数
+     */
+    long countByStatusAndCompletedAtAfter(IndexJobStatus status, LocalDateTime after);
 }
@@ -0,0 +1,22 @@
+package com.lingdang.blog.repository;
+
+import com.lingdang.blog.model.RagMetricRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface RagMetricRollupRepository extends JpaRepository<RagMetricRollup, Long> {
+
+    Optional<RagMetricRollup> findByGranularityAndBucketStart(String granularity, LocalDateTime bucketStart);
+
+    List<RagMetricRollup> findByGranularityAndBucketStartGreaterThanEqualOrderByBucketStartAsc(
+        String granularity, LocalDateTime from);
+
+    @Transactional
+    long deleteByGranularityAndBucketStartBefore(String granularity, LocalDateTime before);
+}
@@ -1,7 +1,9 @@
 package com.lingdang.blog.repository;
 
 import com.lingdang.blog.model.RagQueryLog;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -12,7 +14,18 @@ import java.util.Optional;
 public interface RagQueryLogRepository extends JpaRepository<RagQueryLog, Long> {
     Optional<RagQueryLog> findByRequestId(String requestId);
 
-    List<RagQueryLog> findByCreatedAtAfterOrderByCreatedAtDesc(LocalDateTime after);
+    /**
+     * since 之后的日志，按 (createdAt, id) 倒序（键集分页第一页）
+     */
+    @Query("SELECT l FROM RagQueryLog l WHERE l.createdAt >= ?1 ORDER BY l.createdAt DESC, l.id DESC")
+    List<RagQueryLog> findRecent(LocalDateTime since, Pageable limit);
+
+    /**
+     * since 之后、排在 (createdAt, id) 之后的日志
+     */
+    @Query("SELECT l FROM RagQueryLog l WHERE l.createdAt >= ?1 AND (l.createdAt < ?2 OR (l.createdAt = ?2 AND l.id < ?3)) "
+        + "ORDER BY l.createdAt DESC, l.id DESC")
+    List<RagQueryLog> findRecentBefore(LocalDateTime since, LocalDateTime createdAt, Long id, Pageable limit);
 
     long deleteByCreatedAtBefore(LocalDateTime before);
 }
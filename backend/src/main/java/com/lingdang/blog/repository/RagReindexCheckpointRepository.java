@@ -0,0 +1,22 @@
+package com.lingdang.blog.repository;
+
+import com.lingdang.blog.model.RagReindexCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RagReindexCheckpointRepository extends JpaRepository<RagReindexCheckpoint, Long> {
+
+    List<RagReindexCheckpoint> findByJobId(Long jobId);
+
+    boolean existsByJobIdAndArticleId(Long jobId, Long articleId);
+
+    @Transactional
+    long deleteByJobId(Long jobId);
+
+    long deleteByCreatedAtBefore(LocalDateTime before);
+}
@@ -15,5 +15,7 @@ public interface RagReindexJobRepository extends JpaRepository<RagReindexJob, Lo
 
     List<RagReindexJob> findByCreatedAtAfterOrderByCreatedAtDesc(LocalDateTime after);
 
+    List<RagReindexJob> findByStatusOrderByCreatedAtDesc(RagReindexJob.Status status);
+
     long deleteByCreatedAtBefore(LocalDateTime before);
 }
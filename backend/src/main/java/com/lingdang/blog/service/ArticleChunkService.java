@@ -1,16 +1,16 @@
 package com.lingdang.blog.service;
 
+import com.lingdang.blog.dto.CursorPage;
 import com.lingdang.blog.dto.article.ArticleChunkDTO;
 import com.lingdang.blog.model.ArticleChunk;
 import com.lingdang.blog.repository.ArticleChunkRepository;
+import com.lingdang.blog.util.PageCursor;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -18,25 +18,44 @@ import java.util.stream.Collectors;
 public class ArticleChunkService {
 
     private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final String CURSOR_SORT = "createdAt:desc";
 
     @Autowired
     private ArticleChunkRepository articleChunkRepository;
 
-    public List<ArticleChunkDTO> listChunks(Long articleId, Integer page, Integer pageSize) {
-        int resolvedPage = (page == null || page < 1) ? 1 : page;
-        int resolvedPageSize = (pageSize == null || pageSize < 1) ? DEFAULT_PAGE_SIZE : pageSize;
+    /**
+     * 最近写入的 chunks（可选按 articleId 过滤），按 (createdAt, id) 键集分页
+     */
+    public CursorPage<ArticleChunkDTO> listChunks(Long articleId, String cursor, Integer pageSize) {
+        int size = (pageSize == null || pageSize < 1) ? DEFAULT_PAGE_SIZE : Math.min(pageSize, MAX_PAGE_SIZE);
+        PageRequest limit = PageRequest.of(0, size + 1);
 
-        Pageable pageable = PageRequest.of(
-            resolvedPage - 1,
-            resolvedPageSize,
-            Sort.by(Sort.Direction.DESC, "createdAt")
-        );
+        List<ArticleChunk> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = (articleId != null)
+                ? articleChunkRepository.findLatestByArticleId(articleId, limit)
+                : articleChunkRepository.findLatest(limit);
+        } else {
+            PageCursor after = PageCursor.decode(cursor, CURSOR_SORT);
+            LocalDateTime createdAt;
+            try {
+                createdAt = LocalDateTime.parse(after.getValue());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的分页游标");
+            }
+            rows = (articleId != null)
+                ? articleChunkRepository.findLatestByArticleIdBefore(articleId, createdAt, after.getId(), limit)
+                : articleChunkRepository.findLatestBefore(createdAt, after.getId(), limit);
+        }
 
-        Page<ArticleChunk> pageResult = (articleId != null)
-            ? articleChunkRepository.findByArticleId(articleId, pageable)
-            : articleChunkRepository.findAll(pageable);
-
-        return pageResult.getContent().stream().map(this::toDTO).collect(Collectors.toList());
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            ArticleChunk last = rows.get(size - 1);
+            nextCursor = PageCursor.encode(CURSOR_SORT, last.getCreatedAt().toString(), last.getId());
+        }
+        return new CursorPage<>(rows.stream().map(this::toDTO).collect(Collectors.toList()), nextCursor);
     }
 
     public List<ArticleChunkDTO> listChunksByArticleId(Long articleId) {
@@ -0,0 +1,94 @@
+package com.lingdang.blog.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.lingdang.blog.config.VectorIndexConfig;
+import com.lingdang.blog.model.ArticleStatus;
+import com.lingdang.blog.model.ChunkDocument;
+import com.lingdang.blog.util.TopKHeap;
+import com.lingdang.blog.util.VectorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单篇文章的 chunk 向量缓存（"就这篇文章提问"）
+ *
+ * - 同一篇文章通常会被连续追问，首次从检索引擎取出该文全部 chunk（含 embedding），之后直接命中内存
+ * - 作用域内的候选只有几十个 chunk，直接精确点积，不走 ANN 也不需要 BM25
+ * - 文章重新索引时由 IndexPipelineService 写入新结果，删除 / 全量重建切换时失效
+ */
+@Slf4j
+@Service
+public class ArticleEmbeddingCache {
+
+    private final Cache<Long, List<ChunkDocument>> cache = CacheBuilder.newBuilder()
+        .maximumSize(256)
+        .expireAfterAccess(30, TimeUnit.MINUTES)
+        .build();
+
+    @Autowired
+    private RetrievalEngine retrievalEngine;
+
+    @Autowired
+    private VectorIndexConfig vectorIndexConfig;
+
+    /**
+     * 取文章全部 chunk（含 embedding），未命中时从检索引擎加载
+     */
+    public List<ChunkDocument> get(Long articleId) throws Exception {
+        return cache.get(articleId, () -> {
+            long start = System.currentTimeMillis();
+            List<ChunkDocument> chunks = retrievalEngine.findArticleChunks(articleId);
+            log.info("加载文章 chunk 向量: articleId={}, chunks={}, 耗时={}ms",
+                articleId, chunks.size(), System.currentTimeMillis() - start);
+            return List.copyOf(chunks);
+        });
+    }
+
+    public void put(Long articleId, List<ChunkDocument> documents) {
+        cache.put(articleId, List.copyOf(documents));
+    }
+
+    public void invalidate(Long articleId) {
+        cache.invalidate(articleId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 文章内精确 kNN：只对已发布且有向量的 chunk 打分，分数换算与检索引擎一致
+     */
+    public List<RetrievalEngine.ScoredChunk> search(Long articleId, float[] query, int k) throws Exception {
+        List<ChunkDocument> chunks = get(articleId);
+        if (chunks.isEmpty() || k <= 0) {
+            return List.of();
+        }
+
+        TopKHeap heap = new TopKHeap(Math.min(k, chunks.size()));
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkDocument doc = chunks.get(i);
+            if (!ArticleStatus.PUBLISHED.name().equals(doc.getStatus())) continue;
+            float[] embedding = doc.getEmbedding();
+            if (embedding == null || embedding.length != query.length) continue;
+            heap.offer(i, VectorUtils.dot(embedding, query));
+        }
+
+        int[] ids = new int[heap.size()];
+        float[] dots = new float[heap.size()];
+        int n = heap.drainDescending(ids, dots);
+
+        String similarity = vectorIndexConfig.getSimilarity();
+        List<RetrievalEngine.ScoredChunk> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            results.add(new RetrievalEngine.ScoredChunk(chunks.get(ids[i]), VectorUtils.toScore(dots[i], similarity)));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,136 @@
+package com.lingdang.blog.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.lingdang.blog.dto.ApiResponse;
+import com.lingdang.blog.dto.article.ArticleDTO;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.ZoneId;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 文章详情响应缓存（按 slug）
+ *
+ * - 缓存的是序列化好并 gzip 压缩的 ApiResponse JSON，命中时不查库、不做 DTO 拷贝和 Jackson 序列化
+ * - 按压缩后字节数限制总量；写入 5 分钟后过期，详情里的浏览数按快照展示，最多滞后一个过期周期
+ * - ETag 由 id、indexVersion、contentHash、updatedAt 组成，内容 / 摘要 / 状态变化都会改变 updatedAt；
+ *   响应体里的 viewCount 不参与，两次浏览之间字节会不同，因此是弱 ETag（W/），只表示语义等价
+ * - 文章修改时由 ArticleService / 索引任务 / 摘要任务失效；事务内失效会在提交后再失效一次，
+ *   避免提交前的并发读把旧数据重新写回缓存
+ */
+@Slf4j
+@Service
+public class ArticleResponseCache {
+
+    private static final long MAX_WEIGHT_BYTES = 32L * 1024 * 1024;
+
+    private final Cache<String, Entry> cache = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_WEIGHT_BYTES)
+        .weigher((String slug, Entry entry) -> entry.gzipBody.length + slug.length())
+        .expireAfterWrite(5, TimeUnit.MINUTES)
+        .build();
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Getter
+    public static final class Entry {
+        private final Long articleId;
+        private final String etag;
+        private final long lastModified;
+        private final byte[] gzipBody;
+
+        Entry(Long articleId, String etag, long lastModified, byte[] gzipBody) {
+            this.articleId = articleId;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.gzipBody = gzipBody;
+        }
+
+        /**
+         * 未压缩的 JSON（客户端不接受 gzip 时使用）
+         */
+        public byte[] plainBody() {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipBody))) {
+                return in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * 取文章详情响应；未命中时用 loader 查库并写入缓存，文章不存在返回 empty（不缓存）
+     */
+    public Optional<Entry> get(String slug, Supplier<Optional<ArticleDTO>> loader) {
+        Entry cached = cache.getIfPresent(slug);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<ArticleDTO> article = loader.get();
+        if (article.isEmpty()) {
+            return Optional.empty();
+        }
+        Entry entry = build(article.get());
+        cache.put(slug, entry);
+        return Optional.of(entry);
+    }
+
+    public void invalidate(String slug) {
+        if (slug == null) {
+            return;
+        }
+        cache.invalidate(slug);
+        afterCommit(() -> cache.invalidate(slug));
+    }
+
+    private Entry build(ArticleDTO article) {
+        long lastModified = article.getUpdatedAt() != null
+            ? article.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+            : 0L;
+        String hash = article.getContentHash() != null
+            ? article.getContentHash().substring(0, Math.min(16, article.getContentHash().length()))
+            : "0";
+        String etag = "W/\"" + article.getId() + "-" + article.getIndexVersion() + "-" + hash + "-" + lastModified + "\"";
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(ApiResponse.success(article));
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 3 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+                gzip.write(json);
+            }
+            byte[] compressed = buffer.toByteArray();
+            log.debug("文章详情写入缓存: slug={}, json={}B, gzip={}B", article.getSlug(), json.length, compressed.length);
+            return new Entry(article.getId(), etag, lastModified, compressed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
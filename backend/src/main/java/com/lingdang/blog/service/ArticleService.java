@@ -1,13 +1,16 @@
 package com.lingdang.blog.service;
 
+import com.lingdang.blog.dto.CursorPage;
 import com.lingdang.blog.dto.article.ArticleDTO;
+import com.lingdang.blog.dto.article.ArticleListItemDTO;
 import com.lingdang.blog.model.Article;
 import com.lingdang.blog.model.ArticleStatus;
+import com.lingdang.blog.repository.ArticleListView;
 import com.lingdang.blog.repository.ArticleRepository;
+import com.lingdang.blog.util.PageCursor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -29,6 +32,10 @@ import java.util.stream.Collectors;
 public class ArticleService {
 
     private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final List<ArticleStatus> ALL_STATUSES =
+        List.of(ArticleStatus.DRAFT, ArticleStatus.PUBLISHED, ArticleStatus.OFFLINE);
+    private static final List<ArticleStatus> PUBLISHED_ONLY = List.of(ArticleStatus.PUBLISHED);
     private static final Set<String> ALLOWED_SORT_FIELDS = Set.of(
         "updatedAt",
         "publishedAt",
@@ -40,50 +47,108 @@ public class ArticleService {
 
     @Autowired
     private ArticleRepository articleRepository;
+
+    @Autowired
+    private ArticleViewCounter articleViewCounter;
+
+    @Autowired
+    private ArticleResponseCache articleResponseCache;
     
     /**
-     * 获取所有文章（包含草稿）
+     * 获取所有文章（包含草稿）- 列表投影，支持分页/排序
      */
-    public List<ArticleDTO> getAllArticles() {
-        List<Article> articles = articleRepository.findByStatusInOrderByUpdatedAtDesc(
-            List.of(ArticleStatus.DRAFT, ArticleStatus.PUBLISHED, ArticleStatus.OFFLINE)
-        );
-        return articles.stream().map(this::convertToDTO).collect(Collectors.toList());
+    public List<ArticleListItemDTO> getAllArticles(Integer page, Integer pageSize, String sortBy, String sortOrder) {
+        Pageable pageable = buildPageable(page, pageSize, sortBy, sortOrder, "updatedAt");
+        return articleRepository.findListPage(ALL_STATUSES, pageable, null, null)
+            .stream().map(this::convertToListItem).collect(Collectors.toList());
     }
 
     /**
-     * 获取所有文章（包含草稿）- 支持分页/排序
+     * 获取已发布文章 - 列表投影，支持分页/排序
      */
-    public List<ArticleDTO> getAllArticles(Integer page, Integer pageSize, String sortBy, String sortOrder) {
-        if (page == null && pageSize == null && sortBy == null && sortOrder == null) {
-            return getAllArticles();
-        }
-        Pageable pageable = buildPageable(page, pageSize, sortBy, sortOrder, "updatedAt");
-        Page<Article> pageResult = articleRepository.findByStatusIn(
-            List.of(ArticleStatus.DRAFT, ArticleStatus.PUBLISHED, ArticleStatus.OFFLINE),
-            pageable
-        );
-        return pageResult.getContent().stream().map(this::convertToDTO).collect(Collectors.toList());
+    public List<ArticleListItemDTO> getPublishedArticles(Integer page, Integer pageSize, String sortBy, String sortOrder) {
+        Pageable pageable = buildPageable(page, pageSize, sortBy, sortOrder, "publishedAt");
+        return articleRepository.findListPage(PUBLISHED_ONLY, pageable, null, null)
+            .stream().map(this::convertToListItem).collect(Collectors.toList());
     }
-    
+
     /**
-     * 获取已发布文章
+     * 获取所有文章（包含草稿）- 游标分页
      */
-    public List<ArticleDTO> getPublishedArticles() {
-        List<Article> articles = articleRepository.findByStatusOrderByPublishedAtDesc(ArticleStatus.PUBLISHED);
-        return articles.stream().map(this::convertToDTO).collect(Collectors.toList());
+    public CursorPage<ArticleListItemDTO> getAllArticlesByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder) {
+        return listByCursor(ALL_STATUSES, cursor, pageSize, sortBy, sortOrder, "updatedAt");
+    }
+
+    /**
+     * 获取已发布文章 - 游标分页
+     */
+    public CursorPage<ArticleListItemDTO> getPublishedArticlesByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder) {
+        return listByCursor(PUBLISHED_ONLY, cursor, pageSize, sortBy, sortOrder, "publishedAt");
     }
 
     /**
-     * 获取已发布文章 - 支持分页/排序
+     * 键集分页：按 (排序列, id) 定位，多取一条判断是否还有下一页；翻到多深都只走索引范围扫描
      */
-    public List<ArticleDTO> getPublishedArticles(Integer page, Integer pageSize, String sortBy, String sortOrder) {
-        if (page == null && pageSize == null && sortBy == null && sortOrder == null) {
-            return getPublishedArticles();
+    private CursorPage<ArticleListItemDTO> listByCursor(List<ArticleStatus> statuses, String cursor, Integer pageSize,
+                                                        String sortBy, String sortOrder, String defaultSortBy) {
+        // page 固定为 1：键集分页不使用偏移量
+        Pageable pageable = buildPageable(1, pageSize, sortBy, sortOrder, defaultSortBy);
+        Sort.Order order = pageable.getSort().iterator().next();
+        String sortKey = order.getProperty() + ":" + (order.isAscending() ? "asc" : "desc");
+
+        Object afterValue = null;
+        Long afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            PageCursor after = PageCursor.decode(cursor, sortKey);
+            afterValue = parseSortValue(order.getProperty(), after.getValue());
+            afterId = after.getId();
+        }
+
+        int size = pageable.getPageSize();
+        List<ArticleListView> rows = articleRepository.findListPage(
+            statuses, PageRequest.of(0, size + 1, pageable.getSort()), afterValue, afterId);
+
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            ArticleListView last = rows.get(size - 1);
+            Object lastValue = sortValue(order.getProperty(), last);
+            nextCursor = PageCursor.encode(sortKey, lastValue != null ? lastValue.toString() : null, last.getId());
+        }
+        List<ArticleListItemDTO> items = rows.stream().map(this::convertToListItem).collect(Collectors.toList());
+        return new CursorPage<>(items, nextCursor);
+    }
+
+    /**
+     * 行在排序列上的值（与 ArticleRepositoryImpl 的排序表达式一致：publishedAt 为空时取 createdAt）
+     */
+    private static Object sortValue(String property, ArticleListView view) {
+        switch (property) {
+            case "updatedAt": return view.getUpdatedAt();
+            case "publishedAt": return view.getPublishedAt() != null ? view.getPublishedAt() : view.getCreatedAt();
+            case "createdAt": return view.getCreatedAt();
+            case "title": return view.getTitle();
+            case "viewCount": return view.getViewCount();
+            default: return null;
+        }
+    }
+
+    private static Object parseSortValue(String property, String value) {
+        if ("id".equals(property)) {
+            return null;
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        try {
+            switch (property) {
+                case "title": return value;
+                case "viewCount": return Long.parseLong(value);
+                default: return LocalDateTime.parse(value);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标");
         }
-        Pageable pageable = buildPageable(page, pageSize, sortBy, sortOrder, "publishedAt");
-        Page<Article> pageResult = articleRepository.findByStatus(ArticleStatus.PUBLISHED, pageable);
-        return pageResult.getContent().stream().map(this::convertToDTO).collect(Collectors.toList());
     }
     
     /**
@@ -142,6 +207,9 @@ public class ArticleService {
             }
         });
         
+        // slug 可能变化，旧 slug 的缓存也要失效
+        articleResponseCache.invalidate(article.getSlug());
+        
         // 更新字段
         article.setTitle(dto.getTitle());
         article.setSlug(dto.getSlug());
@@ -152,6 +220,7 @@ public class ArticleService {
         article.setCoverUrl(dto.getCoverUrl());
         
         Article updated = articleRepository.save(article);
+        articleResponseCache.invalidate(updated.getSlug());
         log.info("更新文章: id={}, title={}", updated.getId(), updated.getTitle());
         
         return convertToDTO(updated);
@@ -168,6 +237,7 @@ public class ArticleService {
         article.setPublishedAt(LocalDateTime.now());
         
         Article published = articleRepository.save(article);
+        articleResponseCache.invalidate(published.getSlug());
         log.info("发布文章: id={}, title={}", published.getId(), published.getTitle());
         
         return convertToDTO(published);
@@ -183,6 +253,7 @@ public class ArticleService {
         article.setStatus(ArticleStatus.OFFLINE);
         
         Article offline = articleRepository.save(article);
+        articleResponseCache.invalidate(offline.getSlug());
         log.info("下线文章: id={}, title={}", offline.getId(), offline.getTitle());
         
         return convertToDTO(offline);
@@ -192,22 +263,19 @@ public class ArticleService {
      * 删除文章
      */
     public void deleteArticle(Long id) {
-        if (!articleRepository.existsById(id)) {
-            throw new RuntimeException("文章不存在: " + id);
-        }
+        Article article = articleRepository.findById(id)
+            .orElseThrow(() -> new RuntimeException("文章不存在: " + id));
         
         articleRepository.deleteById(id);
+        articleResponseCache.invalidate(article.getSlug());
         log.info("删除文章: id={}", id);
     }
     
     /**
-     * 增加浏览次数
+     * 增加浏览次数（内存累加，定时批量写回，见 ArticleViewCounter）
      */
     public void incrementViewCount(Long id) {
-        articleRepository.findById(id).ifPresent(article -> {
-            article.setViewCount(article.getViewCount() + 1);
-            articleRepository.save(article);
-        });
+        articleViewCounter.increment(id);
     }
     
     /**
@@ -220,20 +288,40 @@ public class ArticleService {
         return articles.stream().map(this::convertToDTO).collect(Collectors.toList());
     }
 
+    /**
+     * 未传 pageSize 时返回前 MAX_PAGE_SIZE 条（兼容一次取全量的旧调用）；pageSize 超过上限时截断
+     */
     private Pageable buildPageable(Integer page, Integer pageSize, String sortBy, String sortOrder, String defaultSortBy) {
         int resolvedPage = (page == null || page < 1) ? 1 : page;
-        int resolvedPageSize = (pageSize == null || pageSize < 1) ? DEFAULT_PAGE_SIZE : pageSize;
+        int resolvedPageSize;
+        if (pageSize == null) {
+            resolvedPageSize = page == null ? MAX_PAGE_SIZE : DEFAULT_PAGE_SIZE;
+        } else {
+            resolvedPageSize = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+        }
         String resolvedSortBy = (sortBy != null && ALLOWED_SORT_FIELDS.contains(sortBy)) ? sortBy : defaultSortBy;
         Sort.Direction direction = "asc".equalsIgnoreCase(sortOrder) ? Sort.Direction.ASC : Sort.Direction.DESC;
         return PageRequest.of(resolvedPage - 1, resolvedPageSize, Sort.by(direction, resolvedSortBy));
     }
     
+    private ArticleListItemDTO convertToListItem(ArticleListView view) {
+        ArticleListItemDTO dto = new ArticleListItemDTO();
+        BeanUtils.copyProperties(view, dto);
+        if (view.getViewCount() != null) {
+            dto.setViewCount(view.getViewCount() + articleViewCounter.pendingCount(view.getId()));
+        }
+        return dto;
+    }
+    
     /**
      * 转换为 DTO
      */
     private ArticleDTO convertToDTO(Article article) {
         ArticleDTO dto = new ArticleDTO();
         BeanUtils.copyProperties(article, dto);
+        if (article.getId() != null && dto.getViewCount() != null) {
+            dto.setViewCount(dto.getViewCount() + articleViewCounter.pendingCount(article.getId()));
+        }
         return dto;
     }
 }
@@ -29,6 +29,9 @@ public class ArticleSummaryJobService {
     @Autowired
     private ArticleRepository articleRepository;
 
+    @Autowired
+    private ArticleResponseCache articleResponseCache;
+
     @Autowired
     private LlmService llmService;
 
@@ -113,6 +116,7 @@ public class ArticleSummaryJobService {
 
             article.setSummary(summary);
             articleRepository.save(article);
+            articleResponseCache.invalidate(article.getSlug());
 
             job.setStatus(ArticleSummaryJob.Status.SUCCESS);
             job.setCompletedAt(LocalDateTime.now());
@@ -154,7 +158,7 @@ public class ArticleSummaryJobService {
         );
 
         // maxTokens 只给很小的空间，避免跑偏
-        return llmService.chatCompletion(messages, 160);
+        return llmService.chatCompletion(messages, 160, LlmGovernor.Priority.SUMMARY);
     }
 
     private String rewriteSummaryToFit(Article article, String previous) throws Exception {
@@ -175,7 +179,7 @@ public class ArticleSummaryJobService {
             new ChatCompletionRequest.ChatMessage("user", userPrompt)
         );
 
-        return llmService.chatCompletion(messages, 160);
+        return llmService.chatCompletion(messages, 160, LlmGovernor.Priority.SUMMARY);
     }
 
     private boolean isLengthOk(String t) {
@@ -0,0 +1,166 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.model.Article;
+import com.lingdang.blog.model.ArticleEmbedding;
+import com.lingdang.blog.model.ArticleStatus;
+import com.lingdang.blog.model.ChunkDocument;
+import com.lingdang.blog.repository.ArticleEmbeddingRepository;
+import com.lingdang.blog.util.TopKHeap;
+import com.lingdang.blog.util.VectorUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文章级向量索引（分层检索第一阶段）
+ *
+ * - 每篇文章两条向量：chunk 质心、标题 + 摘要；文章分数取两者与查询点积的较大值
+ * - 文章数远少于 chunk 数，直接在内存中精确扫描，不需要 ANN
+ * - 持久化在 article_embeddings 表，启动时加载；随文章索引 / 全量重建更新
+ */
+@Slf4j
+@Service
+public class ArticleVectorIndex {
+
+    @Autowired
+    private ArticleEmbeddingRepository articleEmbeddingRepository;
+
+    @Autowired
+    private LlmService llmService;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final Long articleId;
+        final String status;
+        final Set<String> tags;
+        final float[] centroid;
+        final float[] title;
+
+        Entry(Long articleId, String status, String tags, float[] centroid, float[] title) {
+            this.articleId = articleId;
+            this.status = status;
+            this.tags = RetrievalEngine.SearchFilter.tagSet(tags);
+            this.centroid = centroid;
+            this.title = title;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            for (ArticleEmbedding row : articleEmbeddingRepository.findAll()) {
+                entries.put(row.getArticleId(), toEntry(row));
+            }
+            log.info("文章级向量加载完成: articles={}", entries.size());
+        } catch (Exception e) {
+            log.warn("文章级向量加载失败，分层检索暂不可用: {}", e.getMessage());
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isReady() {
+        return !entries.isEmpty();
+    }
+
+    /**
+     * 文章重新索引后更新：质心由本次写入的 chunk 向量计算，标题 + 摘要单独生成一次 embedding
+     */
+    public void update(Article article, List<ChunkDocument> documents, LlmGovernor.Priority priority) {
+        List<float[]> vectors = new ArrayList<>(documents.size());
+        for (ChunkDocument doc : documents) {
+            if (doc.getEmbedding() != null) vectors.add(doc.getEmbedding());
+        }
+        float[] centroid = VectorUtils.centroid(vectors);
+        if (centroid == null) {
+            delete(article.getId());
+            return;
+        }
+
+        float[] title = null;
+        try {
+            String text = article.getTitle();
+            if (article.getSummary() != null && !article.getSummary().isBlank()) {
+                text = text + "\n" + article.getSummary();
+            }
+            title = llmService.generateEmbedding(text, priority);
+            if (title.length != centroid.length) title = null;
+        } catch (Exception e) {
+            // 标题向量只是辅助信号，失败时仅用质心
+            log.warn("生成标题向量失败，仅使用 chunk 质心: article_id={}, error={}", article.getId(), e.getMessage());
+        }
+
+        ArticleEmbedding row = articleEmbeddingRepository.findByArticleId(article.getId()).orElseGet(ArticleEmbedding::new);
+        row.setArticleId(article.getId());
+        row.setStatus(article.getStatus().name());
+        row.setTags(article.getTags());
+        row.setDims(centroid.length);
+        row.setCentroid(VectorUtils.toBase64(centroid));
+        row.setTitleEmbedding(title != null ? VectorUtils.toBase64(title) : null);
+        row.setChunkCount(vectors.size());
+        articleEmbeddingRepository.save(row);
+
+        entries.put(article.getId(), new Entry(article.getId(), row.getStatus(), row.getTags(), centroid, title));
+    }
+
+    public void delete(Long articleId) {
+        entries.remove(articleId);
+        articleEmbeddingRepository.deleteByArticleId(articleId);
+    }
+
+    /**
+     * 第一阶段：按文章级向量选出前 n 篇文章（过滤条件同 chunk 检索，文章范围条件除外）
+     */
+    public List<Long> topArticles(float[] query, int n, RetrievalEngine.SearchFilter filter) {
+        List<Entry> snapshot = new ArrayList<>(entries.values());
+        if (snapshot.isEmpty() || n <= 0) {
+            return List.of();
+        }
+
+        TopKHeap heap = new TopKHeap(Math.min(n, snapshot.size()));
+        for (int i = 0; i < snapshot.size(); i++) {
+            Entry e = snapshot.get(i);
+            if (!matches(e, filter) || e.centroid.length != query.length) continue;
+            float score = VectorUtils.dot(e.centroid, query);
+            if (e.title != null) {
+                score = Math.max(score, VectorUtils.dot(e.title, query));
+            }
+            heap.offer(i, score);
+        }
+
+        int[] ids = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        int size = heap.drainDescending(ids, scores);
+        List<Long> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(snapshot.get(ids[i]).articleId);
+        }
+        return result;
+    }
+
+    private static boolean matches(Entry e, RetrievalEngine.SearchFilter filter) {
+        if (filter == null) {
+            return true;
+        }
+        if (filter.isPublishedOnly() && !ArticleStatus.PUBLISHED.name().equals(e.status)) {
+            return false;
+        }
+        return filter.matchesTags(e.tags);
+    }
+
+    private static Entry toEntry(ArticleEmbedding row) {
+        float[] title = row.getTitleEmbedding() != null ? VectorUtils.fromBase64(row.getTitleEmbedding()) : null;
+        return new Entry(row.getArticleId(), row.getStatus(), row.getTags(), VectorUtils.fromBase64(row.getCentroid()), title);
+    }
+}
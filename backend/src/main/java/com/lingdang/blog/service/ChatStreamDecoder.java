@@ -0,0 +1,243 @@
+package com.lingdang.blog.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import okio.BufferedSource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Chat Completion 流式响应（SSE）解码器
+ *
+ * 直接在 UTF-8 字节上用 JsonParser 扫描 choices[0].delta.content，不构建 JsonNode 树；
+ * 顺带取出 finish_reason 与 usage（若上游返回）。
+ * 每个流一个实例：行缓冲区在整个流内复用，非线程安全。
+ */
+@Slf4j
+class ChatStreamDecoder {
+
+    // JsonFactory 线程安全，字段名符号表与 BufferRecycler 在所有流之间共享
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+
+    // 单行上限：防止异常上游把整个响应当成一行塞进内存
+    private static final int MAX_LINE_BYTES = 8 * 1024 * 1024;
+
+    private final BufferedSource source;
+    private byte[] line = new byte[4096];
+    private int lineLength;
+
+    private final LlmService.StreamResult result = new LlmService.StreamResult();
+
+    // 当前事件中的 content（每个事件开始前清空）
+    private String content;
+
+    ChatStreamDecoder(BufferedSource source) {
+        this.source = source;
+    }
+
+    /**
+     * 读完整个流，逐个回调非空 content；遇到 [DONE] 或流结束时返回
+     */
+    LlmService.StreamResult decode(LlmService.StreamCallback callback) throws IOException {
+        while (readLine()) {
+            int start = dataStart();
+            if (start < 0) {
+                continue;
+            }
+            int end = trimEnd(start);
+            if (matches(start, end, DONE)) {
+                result.setDone(true);
+                break;
+            }
+
+            content = null;
+            try {
+                parseEvent(start, end - start);
+            } catch (JsonProcessingException e) {
+                log.warn("解析流式响应失败: data={}", new String(line, start, end - start, StandardCharsets.UTF_8), e);
+                continue;
+            }
+
+            if (content != null && !content.isEmpty()) {
+                result.setChunkCount(result.getChunkCount() + 1);
+                if (result.getChunkCount() <= 5 || result.getChunkCount() % 50 == 0) {
+                    log.debug("接收 LLM chunk #{}: '{}'", result.getChunkCount(), content);
+                }
+                callback.onChunk(content);
+            } else if (content != null) {
+                // 过滤空内容，不发送给前端
+                result.setEmptyCount(result.getEmptyCount() + 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读一行到复用缓冲区（不含行尾 \r\n）；流结束返回 false
+     */
+    private boolean readLine() throws IOException {
+        long newline = source.indexOf((byte) '\n');
+        long length;
+        if (newline == -1) {
+            length = source.getBuffer().size();
+            if (length == 0) {
+                return false;
+            }
+        } else {
+            length = newline;
+        }
+        if (length > MAX_LINE_BYTES) {
+            throw new IOException("LLM 流式响应单行过长: " + length + " bytes");
+        }
+
+        int len = (int) length;
+        if (line.length < len) {
+            line = new byte[Math.max(len, line.length * 2)];
+        }
+        int off = 0;
+        while (off < len) {
+            int read = source.read(line, off, len - off);
+            if (read == -1) {
+                throw new EOFException();
+            }
+            off += read;
+        }
+        if (newline != -1) {
+            source.skip(1);
+        }
+        if (len > 0 && line[len - 1] == '\r') {
+            len--;
+        }
+        lineLength = len;
+        return true;
+    }
+
+    /**
+     * "data:" 行返回负载起始下标（跳过前导空格），否则返回 -1
+     */
+    private int dataStart() {
+        if (lineLength < DATA_PREFIX.length || !matchesPrefix(DATA_PREFIX)) {
+            return -1;
+        }
+        int i = DATA_PREFIX.length;
+        while (i < lineLength && line[i] == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private int trimEnd(int start) {
+        int end = lineLength;
+        while (end > start && (line[end - 1] == ' ' || line[end - 1] == '\t')) {
+            end--;
+        }
+        return end;
+    }
+
+    private boolean matchesPrefix(byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (line[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseEvent(int offset, int length) throws IOException {
+        try (JsonParser p = JSON_FACTORY.createParser(line, offset, length)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("choices".equals(name) && value == JsonToken.START_ARRAY) {
+                    readChoices(p);
+                } else if ("usage".equals(name) && value == JsonToken.START_OBJECT) {
+                    readUsage(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * 只解析 choices[0]，其余元素整体跳过
+     */
+    private void readChoices(JsonParser p) throws IOException {
+        boolean first = true;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY && t != null) {
+            if (first && t == JsonToken.START_OBJECT) {
+                readChoice(p);
+            } else {
+                p.skipChildren();
+            }
+            first = false;
+        }
+    }
+
+    private void readChoice(JsonParser p) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("delta".equals(name) && value == JsonToken.START_OBJECT) {
+                readDelta(p);
+            } else if ("finish_reason".equals(name) && value == JsonToken.VALUE_STRING) {
+                result.setFinishReason(p.getText());
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    private void readDelta(JsonParser p) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("content".equals(name) && value == JsonToken.VALUE_STRING) {
+                content = p.getText();
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    private void readUsage(JsonParser p) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value != JsonToken.VALUE_NUMBER_INT) {
+                p.skipChildren();
+                continue;
+            }
+            switch (name) {
+                case "prompt_tokens" -> result.setPromptTokens(p.getIntValue());
+                case "completion_tokens" -> result.setCompletionTokens(p.getIntValue());
+                case "total_tokens" -> result.setTotalTokens(p.getIntValue());
+                default -> { }
+            }
+        }
+    }
+}
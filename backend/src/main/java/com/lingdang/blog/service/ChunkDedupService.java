@@ -0,0 +1,335 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.config.RetrievalEngineConfig;
+import com.lingdang.blog.dto.studio.ChunkDedupStatsDTO;
+import com.lingdang.blog.model.ArticleChunk;
+import com.lingdang.blog.repository.ArticleChunkRepository;
+import com.lingdang.blog.repository.ChunkDedupTotalsView;
+import com.lingdang.blog.repository.ChunkDuplicateCountView;
+import com.lingdang.blog.repository.ChunkSignatureView;
+import com.lingdang.blog.util.SimHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * chunk 近重复检测（SimHash）
+ *
+ * - 指纹由 ChunkService 切分时计算，随 chunk 落库
+ * - 索引时与其它文章中未被标记为重复的 chunk、以及本文更靠前的 chunk 比较，汉明距离 <= maxDistance 的记为
+ *   duplicate_of：不再调用 embedding，借用保留那份的向量，但仍以自己的文章、标签、状态写入检索索引
+ *   （标签 / 文章范围 / 已发布过滤对每篇文章各自生效）
+ * - 被引用的 chunk 改变或消失时，引用它的文章重新入队索引，让 duplicate_of 与向量跟上变化
+ * - 查询时再按指纹折叠一次检索结果，兜住阈值边缘与全量重建期间的情况
+ *
+ * 查找用分段索引：64 位指纹切成 4 段 16 位，距离 <= 3 的两个指纹至少有一段完全相同（鸽巢原理），
+ * 只需逐个比较至少一段相同的候选。
+ */
+@Slf4j
+@Service
+public class ChunkDedupService {
+
+    private static final int BANDS = 4;
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final int TOP_DUPLICATED = 10;
+
+    @Autowired
+    private ArticleChunkRepository articleChunkRepository;
+
+    @Autowired
+    private ChunkService chunkService;
+
+    @Autowired
+    private RetrievalEngineConfig retrievalEngineConfig;
+
+    // 查重与替换 chunks 串行执行：避免并发索引的文章引用另一篇正在被替换的 chunk
+    private final Object lock = new Object();
+
+    /**
+     * 指纹分段索引（非线程安全，单次索引 / 单次全量重建内使用）
+     */
+    public static final class SignatureIndex {
+        private final int maxDistance;
+        private final Map<Long, List<Entry>> bands = new HashMap<>();
+        private int size;
+
+        private SignatureIndex(int maxDistance) {
+            this.maxDistance = maxDistance;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        void add(String chunkId, long simhash) {
+            Entry entry = new Entry(chunkId, simhash, size++);
+            for (int b = 0; b < BANDS; b++) {
+                bands.computeIfAbsent(bandKey(simhash, b), k -> new ArrayList<>(2)).add(entry);
+            }
+        }
+
+        /**
+         * 距离最近的已登记 chunk（距离相同取先登记的），没有时返回 null
+         */
+        String find(long simhash) {
+            Entry best = null;
+            int bestDistance = maxDistance + 1;
+            for (int b = 0; b < BANDS; b++) {
+                List<Entry> candidates = bands.get(bandKey(simhash, b));
+                if (candidates == null) {
+                    continue;
+                }
+                for (Entry e : candidates) {
+                    int d = SimHash.distance(simhash, e.simhash);
+                    if (d < bestDistance || (d == bestDistance && best != null && e.order < best.order)) {
+                        best = e;
+                        bestDistance = d;
+                    }
+                }
+            }
+            return best != null ? best.chunkId : null;
+        }
+
+        private static long bandKey(long simhash, int band) {
+            return (long) band << BAND_BITS | ((simhash >>> (band * BAND_BITS)) & 0xFFFFL);
+        }
+
+        private record Entry(String chunkId, long simhash, int order) {
+        }
+    }
+
+    /**
+     * 按 chunkId 取向量（在线索引，或全量重建中的新索引）
+     */
+    @FunctionalInterface
+    public interface EmbeddingLookup {
+        Map<String, float[]> find(Collection<String> chunkIds) throws IOException;
+    }
+
+    public boolean isEnabled() {
+        return retrievalEngineConfig.getDedup().isEnabled();
+    }
+
+    /**
+     * 生效的距离阈值：分段索引最多保证找全距离 <= BANDS - 1 的候选
+     */
+    private int maxDistance() {
+        return Math.max(0, Math.min(BANDS - 1, retrievalEngineConfig.getDedup().getMaxDistance()));
+    }
+
+    private int minTokens() {
+        return Math.max(0, retrievalEngineConfig.getDedup().getMinTokens());
+    }
+
+    public SignatureIndex newIndex() {
+        return new SignatureIndex(maxDistance());
+    }
+
+    /**
+     * 把已标记过的 chunks 中保留的那些登记进索引（全量重建续跑时恢复已完成文章的指纹）
+     */
+    public void seed(SignatureIndex index, List<ArticleChunk> chunks) {
+        if (!isEnabled()) {
+            return;
+        }
+        for (ArticleChunk chunk : chunks) {
+            if (chunk.getDuplicateOf() == null && eligible(chunk)) {
+                index.add(chunk.getChunkId(), chunk.getSimhash());
+            }
+        }
+    }
+
+    /**
+     * 按 sequence 顺序标记近重复（设置 duplicate_of），保留的 chunk 登记进索引供后续比较
+     *
+     * @return 被标记为重复的 chunk 数
+     */
+    public int markDuplicates(List<ArticleChunk> chunks, SignatureIndex index) {
+        int duplicates = 0;
+        for (ArticleChunk chunk : chunks) {
+            chunk.setDuplicateOf(null);
+            if (!eligible(chunk)) {
+                continue;
+            }
+            String canonical = index.find(chunk.getSimhash());
+            if (canonical != null) {
+                chunk.setDuplicateOf(canonical);
+                duplicates++;
+            } else {
+                index.add(chunk.getChunkId(), chunk.getSimhash());
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * 增量索引：与库中其它文章比较并标记近重复，然后原子替换该文章的 chunks
+     *
+     * @return 需要重新索引的其它文章：它们的重复 chunk 引用了本文中已消失或内容已变化的 chunk
+     */
+    public Set<Long> replaceChunks(Long articleId, List<ArticleChunk> chunks) {
+        synchronized (lock) {
+            Set<String> ownIds = new LinkedHashSet<>(articleChunkRepository.findChunkIdsByArticleId(articleId));
+            int duplicates = 0;
+            if (isEnabled()) {
+                SignatureIndex index = newIndex();
+                for (ChunkSignatureView row : articleChunkRepository.findCanonicalSignatures(articleId, minTokens())) {
+                    index.add(row.getChunkId(), row.getSimhash());
+                }
+                duplicates = markDuplicates(chunks, index);
+            } else {
+                chunks.forEach(c -> c.setDuplicateOf(null));
+            }
+
+            chunkService.replaceChunks(articleId, chunks);
+
+            Map<String, ArticleChunk> current = new HashMap<>();
+            for (ArticleChunk chunk : chunks) {
+                ownIds.add(chunk.getChunkId());
+                current.put(chunk.getChunkId(), chunk);
+            }
+            Set<Long> stale = new LinkedHashSet<>();
+            for (ChunkSignatureView dep : ownIds.isEmpty() ? List.<ChunkSignatureView>of()
+                    : articleChunkRepository.findDuplicatesOf(ownIds)) {
+                if (articleId.equals(dep.getArticleId())) {
+                    continue;
+                }
+                ArticleChunk canonical = current.get(dep.getDuplicateOf());
+                boolean valid = canonical != null && canonical.getDuplicateOf() == null && eligible(canonical)
+                    && dep.getSimhash() != null
+                    && SimHash.distance(canonical.getSimhash(), dep.getSimhash()) <= maxDistance();
+                if (!valid) {
+                    stale.add(dep.getArticleId());
+                }
+            }
+            if (duplicates > 0 || !stale.isEmpty()) {
+                log.info("chunk 近重复检测: article_id={}, chunks={}, duplicates={}, staleDependentArticles={}",
+                    articleId, chunks.size(), duplicates, stale);
+            }
+            return stale;
+        }
+    }
+
+    /**
+     * 删除文章的 chunks
+     *
+     * @return 重复 chunk 引用了本文 chunk 的其它文章（需要重新索引）
+     */
+    public Set<Long> deleteChunks(Long articleId) {
+        synchronized (lock) {
+            List<String> ownIds = articleChunkRepository.findChunkIdsByArticleId(articleId);
+            Set<Long> dependents = new LinkedHashSet<>();
+            if (!ownIds.isEmpty()) {
+                for (ChunkSignatureView dep : articleChunkRepository.findDuplicatesOf(ownIds)) {
+                    if (!articleId.equals(dep.getArticleId())) {
+                        dependents.add(dep.getArticleId());
+                    }
+                }
+            }
+            chunkService.deleteChunksByArticleId(articleId);
+            return dependents;
+        }
+    }
+
+    /**
+     * 全量重建切换在线索引后：落库已在重建索引内标记过的 chunks（articleId -> chunks）
+     */
+    public void saveRebuiltChunks(Map<Long, List<ArticleChunk>> rebuilt) {
+        synchronized (lock) {
+            for (Map.Entry<Long, List<ArticleChunk>> e : rebuilt.entrySet()) {
+                chunkService.replaceChunks(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * 查询时折叠近重复结果：ranked 按相关度从高到低，每组近重复只保留第一个
+     */
+    public <T> List<T> collapse(List<T> ranked, Function<T, String> text, ToIntFunction<T> tokens) {
+        if (!isEnabled() || ranked == null || ranked.size() <= 1) {
+            return ranked;
+        }
+        SignatureIndex index = newIndex();
+        List<T> kept = new ArrayList<>(ranked.size());
+        for (T item : ranked) {
+            String body = text.apply(item);
+            if (body == null || tokens.applyAsInt(item) < minTokens()) {
+                kept.add(item);
+                continue;
+            }
+            long simhash = SimHash.of(body);
+            if (index.find(simhash) == null) {
+                index.add(String.valueOf(kept.size()), simhash);
+                kept.add(item);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * 近重复 chunk 借用保留那份的向量（省掉 embedding 调用）：保留的那份在其它文章时从 lookup 取，
+     * 在同一篇文章里时由调用方在生成向量后记录到返回的 map 中
+     *
+     * @return 可变的 chunkId -> 向量；已不在索引里的不返回，调用方照常生成
+     */
+    public Map<String, float[]> findCanonicalEmbeddings(List<ArticleChunk> chunks, EmbeddingLookup lookup) throws IOException {
+        Set<String> own = new HashSet<>();
+        for (ArticleChunk chunk : chunks) {
+            own.add(chunk.getChunkId());
+        }
+        Set<String> wanted = new LinkedHashSet<>();
+        for (ArticleChunk chunk : chunks) {
+            if (chunk.getDuplicateOf() != null && !own.contains(chunk.getDuplicateOf())) {
+                wanted.add(chunk.getDuplicateOf());
+            }
+        }
+        return wanted.isEmpty() ? new HashMap<>() : new HashMap<>(lookup.find(wanted));
+    }
+
+    public ChunkDedupStatsDTO getStats() {
+        ChunkDedupStatsDTO dto = new ChunkDedupStatsDTO();
+        dto.setEnabled(isEnabled());
+        dto.setMaxDistance(maxDistance());
+        dto.setMinTokens(minTokens());
+
+        ChunkDedupTotalsView totals = articleChunkRepository.sumDedupTotals();
+        if (totals != null) {
+            dto.setTotalChunks(orZero(totals.getTotalChunks()));
+            dto.setDuplicateChunks(orZero(totals.getDuplicateChunks()));
+            dto.setTotalTokens(orZero(totals.getTotalTokens()));
+            dto.setSavedTokens(orZero(totals.getDuplicateTokens()));
+            dto.setTotalChars(orZero(totals.getTotalChars()));
+            dto.setSavedChars(orZero(totals.getDuplicateChars()));
+        }
+        dto.setDedupRatio(dto.getTotalChunks() > 0 ? (double) dto.getDuplicateChunks() / dto.getTotalChunks() : null);
+
+        for (ChunkDuplicateCountView row : articleChunkRepository.countDuplicatesByCanonical(PageRequest.of(0, TOP_DUPLICATED))) {
+            ChunkDedupStatsDTO.TopDuplicated top = new ChunkDedupStatsDTO.TopDuplicated();
+            top.setChunkId(row.getChunkId());
+            top.setCopies(orZero(row.getCopies()));
+            dto.getTopDuplicated().add(top);
+        }
+        return dto;
+    }
+
+    private boolean eligible(ArticleChunk chunk) {
+        return chunk.getSimhash() != null && chunk.getTokenCount() != null && chunk.getTokenCount() >= minTokens();
+    }
+
+    private static long orZero(Long v) {
+        return v != null ? v : 0L;
+    }
+}
@@ -3,16 +3,19 @@ package com.lingdang.blog.service;
 import com.lingdang.blog.model.Article;
 import com.lingdang.blog.model.ArticleChunk;
 import com.lingdang.blog.repository.ArticleChunkRepository;
-import lombok.Data;
+import com.lingdang.blog.util.SimHash;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * Chunk 切分服务
@@ -27,11 +30,14 @@ public class ChunkService {
     
     @Autowired
     private MarkdownService markdownService;
+
+    @Autowired
+    private TokenCounter tokenCounter;
     
-    // Markdown 标题正则
-    private static final Pattern HEADING_PATTERN = Pattern.compile("^(#{1,6})\\s+(.+)$", Pattern.MULTILINE);
+    // 整体保留、不按空行拆分的代码块类型
+    private static final Set<String> CODE_BLOCK_TYPES = Set.of("FencedCodeBlock", "IndentedCodeBlock");
     
-    // 默认 Chunk 大小配置（估算 token 口径：字符数 / 4）
+    // 默认 Chunk 大小配置（BPE token 口径，见 TokenCounter）
     private static final int DEFAULT_MIN_TOKENS = 600;
     private static final int DEFAULT_MAX_TOKENS = 900;
     private static final int DEFAULT_OVERLAP_TOKENS = 100;
@@ -47,13 +53,15 @@ public class ChunkService {
      * 切分文章为 chunks（可配置）
      */
     public List<ArticleChunk> splitArticle(Article article, ChunkingOptions options) {
-        String markdown = article.getContentMarkdown();
-        List<ChunkDraft> drafts = splitByHeadings(markdown, options);
+        String markdown = article.getContentMarkdown() != null ? article.getContentMarkdown() : "";
+        List<ChunkDraft> drafts = splitByHeadings(markdown, markdownService.analyze(markdown), options);
         
         List<ArticleChunk> chunks = new ArrayList<>();
         int sequenceNumber = 1;
         
         for (ChunkDraft draft : drafts) {
+            // chunk 正文在这里才拼成字符串
+            String chunkText = draft.getChunkText().toString();
             ArticleChunk chunk = new ArticleChunk();
             chunk.setChunkId(generateChunkId(article.getId(), sequenceNumber));
             chunk.setArticleId(article.getId());
@@ -65,8 +73,9 @@ public class ChunkService {
             chunk.setHeadingLevel(draft.getHeadingLevel());
             chunk.setHeadingText(draft.getHeadingText());
             chunk.setAnchor(draft.getAnchor());
-            chunk.setChunkText(draft.getChunkText());
-            chunk.setTokenCount(estimateTokenCount(draft.getChunkText()));
+            chunk.setChunkText(chunkText);
+            chunk.setTokenCount(estimateTokenCount(chunkText));
+            chunk.setSimhash(SimHash.of(chunkText));
             chunk.setSequenceNumber(sequenceNumber++);
             
             chunks.add(chunk);
@@ -77,202 +86,231 @@ public class ChunkService {
     }
     
     /**
-     * 按标题切分
+     * 按标题切分（标题、块边界来自 MarkdownService 的 AST 解析，代码块里的 # 行不会被当作标题）
      */
-    private List<ChunkDraft> splitByHeadings(String markdown, ChunkingOptions options) {
+    private List<ChunkDraft> splitByHeadings(String markdown, MarkdownAnalysis analysis, ChunkingOptions options) {
         List<ChunkDraft> chunks = new ArrayList<>();
-        
-        Matcher matcher = HEADING_PATTERN.matcher(markdown);
-        List<HeadingInfo> headings = new ArrayList<>();
-        
-        while (matcher.find()) {
-            int level = matcher.group(1).length();
-            String text = matcher.group(2);
-            int start = matcher.start();
-            headings.add(new HeadingInfo(level, text, start));
+        int maxTokens = options != null ? options.getMaxTokens() : DEFAULT_MAX_TOKENS;
+
+        List<MarkdownAnalysis.HeadingSpan> headings = new ArrayList<>();
+        for (MarkdownAnalysis.HeadingSpan heading : analysis.getHeadings()) {
+            if (heading.isTopLevel()) {
+                headings.add(heading);
+            }
         }
         
         // 如果没有标题，整篇文章按 maxTokens 切分（避免超长导致 embedding 失败）
         if (headings.isEmpty()) {
-            int maxTokens = options != null ? options.getMaxTokens() : DEFAULT_MAX_TOKENS;
-            if (estimateTokenCount(markdown) > maxTokens) {
-                chunks.addAll(splitLargeChunk(markdown, 0, "", options));
+            SpanText whole = SpanText.of(markdown, 0, markdown.length());
+            if (estimateTokenCount(whole) > maxTokens) {
+                chunks.addAll(splitLargeChunk(markdown, paragraphs(markdown, analysis, 0, markdown.length()),
+                    0, "", "", options));
             } else {
-                ChunkDraft chunk = new ChunkDraft();
-                chunk.setHeadingLevel(0);
-                chunk.setHeadingText("");
-                chunk.setAnchor("");
-                chunk.setChunkText(markdown);
-                chunks.add(chunk);
+                chunks.add(new ChunkDraft(0, "", "", whole));
             }
             return chunks;
         }
         
-        // 按标题切分
+        // 按标题切分（标题文本与锚点在解析时已按标题算好，这里直接复用）
         for (int i = 0; i < headings.size(); i++) {
-            HeadingInfo heading = headings.get(i);
+            MarkdownAnalysis.HeadingSpan heading = headings.get(i);
             int start = heading.getStart();
             int end = (i < headings.size() - 1) ? headings.get(i + 1).getStart() : markdown.length();
             
-            String chunkText = markdown.substring(start, end).trim();
-            
-            int maxTokens = options != null ? options.getMaxTokens() : DEFAULT_MAX_TOKENS;
+            SpanText chunkText = SpanText.of(markdown, start, end).trim();
 
             // 如果 chunk 太大，进一步切分
             if (estimateTokenCount(chunkText) > maxTokens) {
-                chunks.addAll(splitLargeChunk(chunkText, heading.getLevel(), heading.getText(), options));
+                chunks.addAll(splitLargeChunk(markdown, paragraphs(markdown, analysis, start, end),
+                    heading.getLevel(), heading.getText(), heading.getAnchor(), options));
             } else {
-                ChunkDraft chunk = new ChunkDraft();
-                chunk.setHeadingLevel(heading.getLevel());
-                chunk.setHeadingText(heading.getText());
-                chunk.setAnchor(markdownService.generateAnchor(heading.getText()));
-                chunk.setChunkText(chunkText);
-                chunks.add(chunk);
+                chunks.add(new ChunkDraft(heading.getLevel(), heading.getText(), heading.getAnchor(), chunkText));
             }
         }
         
         return chunks;
     }
+
+    /**
+     * [from, to) 范围内的段落区间（返回 [start0, end0, start1, end1, ...]，不复制正文）：按顶层块切开，
+     * 代码块整体保留（块内空行不再把代码拆散），其它块（如松散列表）内部仍按空行细分，
+     * 细分规则与 String.split("\n\n") 相同（保留开头和中间的空段，去掉末尾的空段）
+     */
+    private int[] paragraphs(String markdown, MarkdownAnalysis analysis, int from, int to) {
+        int[] spans = new int[16];
+        int size = 0;
+        for (MarkdownAnalysis.BlockSpan block : analysis.getBlocks()) {
+            if (block.getStart() < from || block.getEnd() > to) {
+                continue;
+            }
+            int blockStart = block.getStart();
+            int blockEnd = block.getEnd();
+            if (spans.length < size + 4) {
+                spans = Arrays.copyOf(spans, spans.length * 2);
+            }
+            if (CODE_BLOCK_TYPES.contains(block.getType())) {
+                spans[size++] = blockStart;
+                spans[size++] = blockEnd;
+                continue;
+            }
+            int first = size;
+            int segmentStart = blockStart;
+            boolean matched = false;
+            for (int i = blockStart; i + 1 < blockEnd; i++) {
+                if (markdown.charAt(i) == '\n' && markdown.charAt(i + 1) == '\n') {
+                    if (spans.length < size + 2) {
+                        spans = Arrays.copyOf(spans, spans.length * 2);
+                    }
+                    spans[size++] = segmentStart;
+                    spans[size++] = i;
+                    segmentStart = i + 2;
+                    matched = true;
+                    i++;
+                }
+            }
+            if (spans.length < size + 2) {
+                spans = Arrays.copyOf(spans, spans.length * 2);
+            }
+            spans[size++] = segmentStart;
+            spans[size++] = blockEnd;
+            if (matched) {
+                while (size > first && spans[size - 2] == spans[size - 1]) {
+                    size -= 2;
+                }
+            }
+        }
+        return Arrays.copyOf(spans, size);
+    }
     
     /**
-     * 切分过大的 chunk
+     * 切分过大的 chunk：paragraphs 为段落区间；chunk 正文以原文区间拼接（SpanText）表示，
+     * overlap 也只是上一个 chunk 末尾的区间，整个过程不复制正文
      */
-    private List<ChunkDraft> splitLargeChunk(String text, int level, String headingText, ChunkingOptions options) {
-        List<ChunkDraft> chunks = new ArrayList<>();
-        String[] paragraphs = text.split("\n\n");
-
+    private List<ChunkDraft> splitLargeChunk(String markdown, int[] paragraphs, int level, String headingText,
+                                             String anchor, ChunkingOptions options) {
         int minTokens = options != null ? options.getMinTokens() : DEFAULT_MIN_TOKENS;
         int maxTokens = options != null ? options.getMaxTokens() : DEFAULT_MAX_TOKENS;
         int overlapTokens = options != null ? options.getOverlapTokens() : DEFAULT_OVERLAP_TOKENS;
 
-        StringBuilder currentChunk = new StringBuilder();
-        int tokenCount = 0;
+        ChunkWindow window = new ChunkWindow(markdown, level, headingText, anchor, overlapTokens);
 
-        String lastOverlapText = "";
-
-        for (String para : paragraphs) {
-            if (para == null) continue;
-
-            int paraTokens = estimateTokenCount(para);
+        for (int p = 0; p < paragraphs.length; p += 2) {
+            int paraStart = paragraphs[p];
+            int paraEnd = paragraphs[p + 1];
+            int paraTokens = estimateTokenCount(CharBuffer.wrap(markdown, paraStart, paraEnd));
 
             // 兜底：如果单个段落就已经超过 maxTokens，则强制把段落本身切成多段
             if (paraTokens > maxTokens) {
                 // 在开始切超长段落前，先落盘当前 chunk（如果已经累积了一些内容）
-                if (tokenCount >= minTokens && currentChunk.length() > 0) {
-                    String chunkBody = currentChunk.toString().trim();
-                    ChunkDraft chunk = new ChunkDraft();
-                    chunk.setHeadingLevel(level);
-                    chunk.setHeadingText(headingText);
-                    chunk.setAnchor(markdownService.generateAnchor(headingText));
-                    chunk.setChunkText(chunkBody);
-                    chunks.add(chunk);
-
-                    lastOverlapText = takeTailByEstimatedTokens(chunkBody, overlapTokens);
-                    currentChunk = new StringBuilder();
-                    tokenCount = 0;
-                    if (!lastOverlapText.isBlank()) {
-                        currentChunk.append(lastOverlapText).append("\n\n");
-                        tokenCount += estimateTokenCount(lastOverlapText);
-                    }
+                if (window.tokenCount >= minTokens && window.current.length() > 0) {
+                    window.flush();
                 }
 
-                // 把超长段落按字符近似 token 切片（estimateTokenCount = length/4）
-                int maxChars = Math.max(1, maxTokens * 4);
-                int overlapChars = Math.max(0, overlapTokens * 4);
-                int start = 0;
-                while (start < para.length()) {
-                    int end = Math.min(para.length(), start + maxChars);
-                    String part = para.substring(start, end).trim();
-                    if (!part.isEmpty()) {
+                // 把超长段落按 token 切片：每片不超过 maxTokens，相邻片重叠 overlapTokens
+                int start = paraStart;
+                while (start < paraEnd) {
+                    int end = start + tokenCounter.prefixEnd(CharBuffer.wrap(markdown, start, paraEnd), maxTokens);
+                    if (end <= start) {
+                        end = Math.min(paraEnd, start + Character.charCount(markdown.codePointAt(start)));
+                    }
+                    int partStart = start;
+                    int partEnd = end;
+                    while (partStart < partEnd && markdown.charAt(partStart) <= ' ') partStart++;
+                    while (partEnd > partStart && markdown.charAt(partEnd - 1) <= ' ') partEnd--;
+                    if (partStart < partEnd) {
                         // 如果当前 chunk 加上 part 超了，且当前 chunk 已经够大，则先落盘
-                        int partTokens = estimateTokenCount(part);
-                        if (tokenCount + partTokens > maxTokens && tokenCount >= minTokens && currentChunk.length() > 0) {
-                            String chunkBody = currentChunk.toString().trim();
-                            ChunkDraft chunk = new ChunkDraft();
-                            chunk.setHeadingLevel(level);
-                            chunk.setHeadingText(headingText);
-                            chunk.setAnchor(markdownService.generateAnchor(headingText));
-                            chunk.setChunkText(chunkBody);
-                            chunks.add(chunk);
-
-                            lastOverlapText = takeTailByEstimatedTokens(chunkBody, overlapTokens);
-                            currentChunk = new StringBuilder();
-                            tokenCount = 0;
-                            if (!lastOverlapText.isBlank()) {
-                                currentChunk.append(lastOverlapText).append("\n\n");
-                                tokenCount += estimateTokenCount(lastOverlapText);
-                            }
+                        int partTokens = estimateTokenCount(CharBuffer.wrap(markdown, partStart, partEnd));
+                        if (window.tokenCount + partTokens > maxTokens && window.tokenCount >= minTokens
+                            && window.current.length() > 0) {
+                            window.flush();
                         }
 
-                        currentChunk.append(part).append("\n\n");
-                        tokenCount += partTokens;
+                        window.current.append(partStart, partEnd).appendSeparator();
+                        window.tokenCount += partTokens;
                     }
 
                     // move window with overlap
-                    if (end >= para.length()) break;
-                    start = Math.max(0, end - overlapChars);
+                    if (end >= paraEnd) break;
+                    int next = overlapTokens > 0
+                        ? start + tokenCounter.tailStart(CharBuffer.wrap(markdown, start, end), overlapTokens)
+                        : end;
+                    start = next > start ? next : end;
                 }
 
                 continue;
             }
 
-            if (tokenCount + paraTokens > maxTokens && tokenCount >= minTokens) {
-                // 保存当前 chunk
-                String chunkBody = currentChunk.toString().trim();
-                ChunkDraft chunk = new ChunkDraft();
-                chunk.setHeadingLevel(level);
-                chunk.setHeadingText(headingText);
-                chunk.setAnchor(markdownService.generateAnchor(headingText));
-                chunk.setChunkText(chunkBody);
-                chunks.add(chunk);
-
-                // 计算 overlap（取末尾若干字符近似达到 overlapTokens）
-                lastOverlapText = takeTailByEstimatedTokens(chunkBody, overlapTokens);
-
-                // 开始新 chunk（带 overlap）
-                currentChunk = new StringBuilder();
-                tokenCount = 0;
-
-                if (!lastOverlapText.isBlank()) {
-                    currentChunk.append(lastOverlapText).append("\n\n");
-                    tokenCount += estimateTokenCount(lastOverlapText);
-                }
+            if (window.tokenCount + paraTokens > maxTokens && window.tokenCount >= minTokens) {
+                window.flush();
             }
 
-            currentChunk.append(para).append("\n\n");
-            tokenCount += paraTokens;
+            window.current.append(paraStart, paraEnd).appendSeparator();
+            window.tokenCount += paraTokens;
         }
 
         // 保存最后一个 chunk
-        if (currentChunk.length() > 0) {
-            ChunkDraft chunk = new ChunkDraft();
-            chunk.setHeadingLevel(level);
-            chunk.setHeadingText(headingText);
-            chunk.setAnchor(markdownService.generateAnchor(headingText));
-            chunk.setChunkText(currentChunk.toString().trim());
-            chunks.add(chunk);
+        if (window.current.length() > 0) {
+            window.chunks.add(window.draft(window.current.build().trim()));
         }
 
-        return chunks;
+        return window.chunks;
     }
 
-    private String takeTailByEstimatedTokens(String text, int targetTokens) {
-        if (text == null || text.isEmpty() || targetTokens <= 0) {
-            return "";
+    /**
+     * splitLargeChunk 的累积状态：当前 chunk、已累积 token 数、已产出的 chunk
+     */
+    private final class ChunkWindow {
+        private final String markdown;
+        private final int level;
+        private final String headingText;
+        private final String anchor;
+        private final int overlapTokens;
+        private final List<ChunkDraft> chunks = new ArrayList<>();
+        private SpanText.Builder current;
+        private int tokenCount;
+
+        ChunkWindow(String markdown, int level, String headingText, String anchor, int overlapTokens) {
+            this.markdown = markdown;
+            this.level = level;
+            this.headingText = headingText;
+            this.anchor = anchor;
+            this.overlapTokens = overlapTokens;
+            this.current = new SpanText.Builder(markdown);
+        }
+
+        ChunkDraft draft(SpanText text) {
+            return new ChunkDraft(level, headingText, anchor, text);
         }
-        // estimateTokenCount = length/4，因此大致取 targetTokens*4 个字符
-        int targetChars = targetTokens * 4;
-        if (targetChars <= 0) return "";
-        if (text.length() <= targetChars) return text;
-        return text.substring(text.length() - targetChars);
+
+        /**
+         * 保存当前 chunk，并以它末尾不超过 overlapTokens 个 token 的内容开始新 chunk
+         */
+        void flush() {
+            SpanText chunkBody = current.build().trim();
+            chunks.add(draft(chunkBody));
+
+            SpanText lastOverlapText = takeTailByEstimatedTokens(chunkBody, overlapTokens);
+            current = new SpanText.Builder(markdown);
+            tokenCount = 0;
+            if (!lastOverlapText.isBlank()) {
+                current.append(lastOverlapText).appendSeparator();
+                tokenCount += estimateTokenCount(lastOverlapText);
+            }
+        }
+    }
+
+    private SpanText takeTailByEstimatedTokens(SpanText text, int targetTokens) {
+        if (text.length() == 0 || targetTokens <= 0) {
+            return SpanText.EMPTY;
+        }
+        return text.subSequence(tokenCounter.tailStart(text, targetTokens), text.length());
     }
     
     /**
-     * 估算 token 数量（简单估算：字符数 / 4）
+     * token 数量（BPE 计数）
      */
-    private int estimateTokenCount(String text) {
-        if (text == null) return 0;
-        return text.length() / 4;
+    private int estimateTokenCount(CharSequence text) {
+        return tokenCounter.count(text);
     }
     
     /**
@@ -318,21 +356,203 @@ public class ChunkService {
     /**
      * Chunk 草稿（内部使用）
      */
-    @Data
+    @Getter
+    @AllArgsConstructor
     private static class ChunkDraft {
-        private Integer headingLevel;
-        private String headingText;
-        private String anchor;
-        private String chunkText;
+        private final Integer headingLevel;
+        private final String headingText;
+        private final String anchor;
+        private final SpanText chunkText;
     }
-    
+
     /**
-     * 标题信息（内部使用）
+     * 由原文区间依次拼接成的只读文本：段落之间补的 "\n\n" 也作为一个区间，不复制字符，toString 时才拼成字符串
      */
-    @Data
-    private static class HeadingInfo {
-        private final int level;
-        private final String text;
-        private final int start;
+    static final class SpanText implements CharSequence {
+
+        static final SpanText EMPTY = new SpanText(null, new boolean[0], new int[0], new int[0], new int[]{0}, 0);
+
+        private static final String SEPARATOR = "\n\n";
+
+        private final String source;
+        /** 区间 i 取自 SEPARATOR（true）还是 source（false） */
+        private final boolean[] separator;
+        private final int[] starts;
+        private final int[] ends;
+        /** 区间 i 在本文本中的起始位置，offsets[count] 为总长度 */
+        private final int[] offsets;
+        private final int count;
+        /** 上次命中的区间：分词器基本顺序读取，命中时免二分 */
+        private int cursor;
+
+        private SpanText(String source, boolean[] separator, int[] starts, int[] ends, int[] offsets, int count) {
+            this.source = source;
+            this.separator = separator;
+            this.starts = starts;
+            this.ends = ends;
+            this.offsets = offsets;
+            this.count = count;
+        }
+
+        static SpanText of(String source, int start, int end) {
+            return new Builder(source).append(start, end).build();
+        }
+
+        @Override
+        public int length() {
+            return offsets[count];
+        }
+
+        @Override
+        public char charAt(int index) {
+            int i = cursor;
+            if (index < offsets[i] || index >= offsets[i + 1]) {
+                i = locate(index);
+                cursor = i;
+            }
+            int at = starts[i] + index - offsets[i];
+            return separator[i] ? SEPARATOR.charAt(at) : source.charAt(at);
+        }
+
+        /**
+         * index 所在区间（offsets 中最后一个 <= index 的位置，跳过空区间）
+         */
+        private int locate(int index) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (offsets[mid] <= index) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        @Override
+        public SpanText subSequence(int from, int to) {
+            if (from < 0 || to > length() || from > to) {
+                throw new IndexOutOfBoundsException("from=" + from + ", to=" + to + ", length=" + length());
+            }
+            if (from == 0 && to == length()) {
+                return this;
+            }
+            Builder b = new Builder(source);
+            if (from == to) {
+                return b.build();
+            }
+            for (int i = locate(from); i < count && offsets[i] < to; i++) {
+                int s = starts[i] + Math.max(0, from - offsets[i]);
+                int e = ends[i] - Math.max(0, offsets[i + 1] - to);
+                b.add(separator[i], s, e);
+            }
+            return b.build();
+        }
+
+        /**
+         * 与 String.trim 相同：去掉首尾 <= ' ' 的字符
+         */
+        SpanText trim() {
+            int len = length();
+            int from = 0;
+            while (from < len && charAt(from) <= ' ') from++;
+            int to = len;
+            while (to > from && charAt(to - 1) <= ' ') to--;
+            return subSequence(from, to);
+        }
+
+        /**
+         * 与 String.isBlank 相同：为空或只含 Character.isWhitespace 字符
+         */
+        boolean isBlank() {
+            int len = length();
+            for (int i = 0; i < len; ) {
+                int cp = Character.codePointAt(this, i);
+                if (!Character.isWhitespace(cp)) {
+                    return false;
+                }
+                i += Character.charCount(cp);
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(length());
+            for (int i = 0; i < count; i++) {
+                sb.append(separator[i] ? SEPARATOR : source, starts[i], ends[i]);
+            }
+            return sb.toString();
+        }
+
+        static final class Builder {
+            private final String source;
+            private boolean[] separator = new boolean[8];
+            private int[] starts = new int[8];
+            private int[] ends = new int[8];
+            private int count;
+            private int length;
+
+            Builder(String source) {
+                this.source = source;
+            }
+
+            int length() {
+                return length;
+            }
+
+            Builder append(int start, int end) {
+                add(false, start, end);
+                return this;
+            }
+
+            Builder appendSeparator() {
+                add(true, 0, SEPARATOR.length());
+                return this;
+            }
+
+            Builder append(SpanText text) {
+                for (int i = 0; i < text.count; i++) {
+                    add(text.separator[i], text.starts[i], text.ends[i]);
+                }
+                return this;
+            }
+
+            private void add(boolean sep, int start, int end) {
+                if (start >= end) {
+                    return;
+                }
+                // 与上一个区间首尾相接时直接合并
+                if (count > 0 && separator[count - 1] == sep && ends[count - 1] == start) {
+                    ends[count - 1] = end;
+                    length += end - start;
+                    return;
+                }
+                if (count == starts.length) {
+                    separator = Arrays.copyOf(separator, count * 2);
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                separator[count] = sep;
+                starts[count] = start;
+                ends[count] = end;
+                count++;
+                length += end - start;
+            }
+
+            SpanText build() {
+                if (count == 0) {
+                    return EMPTY;
+                }
+                int[] offsets = new int[count + 1];
+                for (int i = 0; i < count; i++) {
+                    offsets[i + 1] = offsets[i] + ends[i] - starts[i];
+                }
+                return new SpanText(source, Arrays.copyOf(separator, count), Arrays.copyOf(starts, count),
+                    Arrays.copyOf(ends, count), offsets, count);
+            }
+        }
     }
 }
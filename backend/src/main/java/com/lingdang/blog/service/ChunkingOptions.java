@@ -3,7 +3,7 @@ package com.lingdang.blog.service;
 import lombok.Data;
 
 /**
- * Chunk 切分参数（使用 ChunkService 内部的“估算 token”口径：字符数/4）。
+ * Chunk 切分参数（BPE token 口径，与 TokenCounter 一致）。
  */
 @Data
 public class ChunkingOptions {
@@ -11,7 +11,7 @@ public class ChunkingOptions {
     private int minTokens;
     /** 目标最大 chunk size */
     private int maxTokens;
-    /** 相邻 chunk 的重叠（估算 token） */
+    /** 相邻 chunk 的重叠（token） */
     private int overlapTokens;
 
     public static ChunkingOptions of(int minTokens, int maxTokens, int overlapTokens) {
@@ -0,0 +1,369 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.util.VectorUtils;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按问题做抽取式压缩：只把 chunk 中与问题相关的句子（及其前后文）放进 prompt
+ *
+ * - 切分：按中英文句末标点 / 换行切句；代码块、表格作为整体，标题行始终保留
+ * - 打分：BM25 式词项重合（中文按字 bigram、英文按单词）+ 与问题向量的相似度，两者各占一半
+ * - 选择：按分数从高到低挑句子并带上相邻句，直到用完每个 chunk 的 token 预算；输出保持原顺序，
+ *   不连续处用省略号连接
+ * - 未超预算的 chunk 原样保留；句子向量一次批量生成，失败时只用词项打分
+ */
+@Slf4j
+@Service
+public class ContextCompressor {
+
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+    private static final double LEXICAL_WEIGHT = 0.5;
+
+    /**
+     * 单次请求最多生成向量的句子数（超出部分只用词项打分）
+     */
+    private static final int MAX_EMBEDDED_UNITS = 128;
+
+    private static final String GAP = "……";
+
+    @Autowired
+    private LlmService llmService;
+
+    @Autowired
+    private TokenCounter tokenCounter;
+
+    @Data
+    public static class CompressionResult {
+        private List<String> texts = new ArrayList<>();
+        private int tokensBefore;
+        private int tokensAfter;
+        private int compressedChunks;
+        private long elapsedMs;
+
+        public double ratio() {
+            return tokensBefore > 0 ? (double) tokensAfter / tokensBefore : 1.0;
+        }
+    }
+
+    /**
+     * 切分单元：句子 / 代码块 / 表格 / 标题
+     */
+    private static final class Unit {
+        final String text;
+        final boolean heading;
+        final boolean block;
+        final int tokens;
+        boolean paragraphStart;
+        Map<String, Integer> terms;
+        double score;
+
+        Unit(String text, boolean heading, boolean block, int tokens) {
+            this.text = text;
+            this.heading = heading;
+            this.block = block;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * @param budgetTokens 每个 chunk 的 token 预算（BPE token，见 TokenCounter），<= 0 表示不压缩
+     */
+    public CompressionResult compress(String question, float[] queryEmbedding, List<String> chunks, int budgetTokens) {
+        long start = System.currentTimeMillis();
+        CompressionResult result = new CompressionResult();
+
+        List<List<Unit>> parsed = new ArrayList<>(chunks.size());
+        List<Unit> toScore = new ArrayList<>();
+        for (String chunk : chunks) {
+            String text = chunk != null ? chunk : "";
+            int tokens = tokenCounter.count(text);
+            result.tokensBefore += tokens;
+            if (budgetTokens <= 0 || tokens <= budgetTokens) {
+                parsed.add(null);
+                continue;
+            }
+            List<Unit> units = split(text);
+            parsed.add(units);
+            for (Unit u : units) {
+                if (!u.heading) toScore.add(u);
+            }
+        }
+
+        if (!toScore.isEmpty()) {
+            scoreLexical(question, toScore);
+            scoreSemantic(queryEmbedding, toScore);
+        }
+
+        for (int i = 0; i < chunks.size(); i++) {
+            List<Unit> units = parsed.get(i);
+            String text;
+            if (units == null) {
+                text = chunks.get(i) != null ? chunks.get(i) : "";
+            } else {
+                text = select(units, budgetTokens);
+                result.compressedChunks++;
+            }
+            result.texts.add(text);
+            result.tokensAfter += tokenCounter.count(text);
+        }
+        result.elapsedMs = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * 切分为单元：``` 代码块与连续的表格行整体保留，标题单独成单元，其余按句切分
+     */
+    private List<Unit> split(String text) {
+        List<Unit> units = new ArrayList<>();
+        String[] lines = text.split("\n", -1);
+        StringBuilder block = null;
+        StringBuilder table = null;
+        StringBuilder paragraph = new StringBuilder();
+
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (block != null) {
+                block.append('\n').append(line);
+                if (trimmed.startsWith("```")) {
+                    units.add(unit(block.toString(), false, true));
+                    block = null;
+                }
+                continue;
+            }
+            if (trimmed.startsWith("```")) {
+                flushSentences(paragraph, units);
+                block = new StringBuilder(line);
+                continue;
+            }
+            if (trimmed.startsWith("|")) {
+                flushSentences(paragraph, units);
+                if (table == null) table = new StringBuilder(line);
+                else table.append('\n').append(line);
+                continue;
+            }
+            if (table != null) {
+                units.add(unit(table.toString(), false, true));
+                table = null;
+            }
+            if (trimmed.startsWith("#")) {
+                flushSentences(paragraph, units);
+                units.add(unit(trimmed, true, false));
+                continue;
+            }
+            if (trimmed.isEmpty() || trimmed.matches("^([-*+]|\\d+[.)])\\s.*")) {
+                // 空行与列表项都作为段落边界
+                flushSentences(paragraph, units);
+            }
+            if (!trimmed.isEmpty()) {
+                if (paragraph.length() > 0) paragraph.append('\n');
+                paragraph.append(trimmed);
+            }
+        }
+        // 未闭合的代码块（chunk 边界截断）同样整体保留
+        if (block != null) units.add(unit(block.toString(), false, true));
+        if (table != null) units.add(unit(table.toString(), false, true));
+        flushSentences(paragraph, units);
+        return units;
+    }
+
+    private void flushSentences(StringBuilder paragraph, List<Unit> units) {
+        if (paragraph.length() == 0) return;
+        String text = paragraph.toString();
+        paragraph.setLength(0);
+
+        int first = units.size();
+        int from = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean end = c == '。' || c == '！' || c == '？' || c == '；' || c == '!' || c == '?' || c == ';'
+                || (c == '.' && (i + 1 == text.length() || Character.isWhitespace(text.charAt(i + 1))));
+            if (!end) continue;
+            // 句末的右引号 / 括号归入本句
+            while (i + 1 < text.length() && "”’\"')）】」』".indexOf(text.charAt(i + 1)) >= 0) i++;
+            String sentence = text.substring(from, i + 1).trim();
+            if (!sentence.isEmpty()) units.add(unit(sentence, false, false));
+            from = i + 1;
+        }
+        String rest = text.substring(from).trim();
+        if (!rest.isEmpty()) units.add(unit(rest, false, false));
+        if (units.size() > first) units.get(first).paragraphStart = true;
+    }
+
+    /**
+     * BM25 式打分：以本次待压缩的全部单元为语料计算 idf，归一化到 0~1
+     */
+    private static void scoreLexical(String question, List<Unit> units) {
+        Set<String> queryTerms = terms(question).keySet();
+        Map<String, Integer> df = new HashMap<>();
+        long totalLength = 0;
+        for (Unit u : units) {
+            u.terms = terms(u.text);
+            totalLength += u.text.length();
+            for (String t : u.terms.keySet()) {
+                if (queryTerms.contains(t)) df.merge(t, 1, Integer::sum);
+            }
+        }
+        double avgLength = Math.max(1.0, (double) totalLength / units.size());
+        int n = units.size();
+
+        double max = 0.0;
+        for (Unit u : units) {
+            double score = 0.0;
+            double norm = BM25_K1 * (1 - BM25_B + BM25_B * u.text.length() / avgLength);
+            for (String t : queryTerms) {
+                Integer tf = u.terms.get(t);
+                if (tf == null) continue;
+                int d = df.getOrDefault(t, 0);
+                double idf = Math.log(1 + (n - d + 0.5) / (d + 0.5));
+                score += idf * tf * (BM25_K1 + 1) / (tf + norm);
+            }
+            u.score = score;
+            max = Math.max(max, score);
+        }
+        for (Unit u : units) {
+            u.score = max > 0 ? LEXICAL_WEIGHT * u.score / max : 0.0;
+        }
+    }
+
+    /**
+     * 与问题向量的余弦相似度（向量均已归一化），映射到 0~1 后按权重累加
+     */
+    private void scoreSemantic(float[] queryEmbedding, List<Unit> units) {
+        if (queryEmbedding == null) {
+            return;
+        }
+        List<Unit> targets = units.size() > MAX_EMBEDDED_UNITS ? units.subList(0, MAX_EMBEDDED_UNITS) : units;
+        List<String> texts = new ArrayList<>(targets.size());
+        for (Unit u : targets) {
+            texts.add(u.text);
+        }
+        try {
+            List<float[]> vectors = llmService.generateEmbeddings(texts);
+            for (int i = 0; i < targets.size() && i < vectors.size(); i++) {
+                float[] v = vectors.get(i);
+                if (v == null || v.length != queryEmbedding.length) continue;
+                double sim = (1.0 + VectorUtils.dot(v, queryEmbedding)) / 2.0;
+                targets.get(i).score += (1 - LEXICAL_WEIGHT) * sim;
+            }
+        } catch (Exception e) {
+            log.warn("句子向量生成失败，压缩只使用词项打分: units={}, error={}", targets.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 在预算内选句：高分句优先，并尽量带上前后各一句作为上下文；标题始终保留
+     */
+    private static String select(List<Unit> units, int budgetTokens) {
+        int n = units.size();
+        boolean[] keep = new boolean[n];
+        int used = 0;
+        for (int i = 0; i < n; i++) {
+            if (units.get(i).heading) {
+                keep[i] = true;
+                used += units.get(i).tokens;
+            }
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(units.get(b).score, units.get(a).score));
+
+        boolean anyPicked = false;
+        for (int idx : order) {
+            Unit u = units.get(idx);
+            if (u.heading || keep[idx]) continue;
+            // 余下的都与问题无关，不再用它们填满预算
+            if (u.score <= 0 && anyPicked) break;
+            if (used + u.tokens > budgetTokens && anyPicked) continue;
+            keep[idx] = true;
+            used += u.tokens;
+            anyPicked = true;
+            // 前后文：只补普通句子，代码块 / 表格不作为上下文带入
+            for (int neighbor : new int[]{idx - 1, idx + 1}) {
+                if (neighbor < 0 || neighbor >= n || keep[neighbor]) continue;
+                Unit nb = units.get(neighbor);
+                if (nb.block || used + nb.tokens > budgetTokens) continue;
+                keep[neighbor] = true;
+                used += nb.tokens;
+            }
+            if (used >= budgetTokens) break;
+        }
+
+        StringBuilder out = new StringBuilder();
+        boolean gap = false;
+        for (int i = 0; i < n; i++) {
+            Unit u = units.get(i);
+            if (!keep[i]) {
+                gap = true;
+                continue;
+            }
+            if (out.length() > 0) {
+                boolean separate = u.heading || u.block || u.paragraphStart
+                    || units.get(i - 1).block || units.get(i - 1).heading;
+                if (gap) out.append(separate ? "\n" + GAP + "\n" : GAP);
+                else out.append(separate ? "\n" : "");
+            }
+            out.append(u.text);
+            gap = false;
+        }
+        return out.toString();
+    }
+
+    /**
+     * 词项：中文按相邻两字 bigram（单字句退化为单字），英文 / 数字按单词小写
+     */
+    private static Map<String, Integer> terms(String text) {
+        Map<String, Integer> terms = new HashMap<>();
+        if (text == null) return terms;
+        StringBuilder word = new StringBuilder();
+        char prevCjk = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                flushWord(word, terms);
+                if (prevCjk != 0) {
+                    terms.merge(new String(new char[]{prevCjk, c}), 1, Integer::sum);
+                } else if (i + 1 >= text.length() || !isCjk(text.charAt(i + 1))) {
+                    terms.merge(String.valueOf(c), 1, Integer::sum);
+                }
+                prevCjk = c;
+            } else {
+                prevCjk = 0;
+                if (Character.isLetterOrDigit(c)) {
+                    word.append(Character.toLowerCase(c));
+                } else {
+                    flushWord(word, terms);
+                }
+            }
+        }
+        flushWord(word, terms);
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, Map<String, Integer> terms) {
+        if (word.length() > 1) {
+            terms.merge(word.toString().toLowerCase(Locale.ROOT), 1, Integer::sum);
+        }
+        word.setLength(0);
+    }
+
+    private static boolean isCjk(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    private Unit unit(String text, boolean heading, boolean block) {
+        return new Unit(text, heading, block, tokenCounter.count(text));
+    }
+}
@@ -0,0 +1,425 @@
+package com.lingdang.blog.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.ScrollResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.InnerHitsResult;
+import com.lingdang.blog.config.ElasticsearchInitializer;
+import com.lingdang.blog.config.RetrievalEngineConfig;
+import com.lingdang.blog.model.ArticleStatus;
+import com.lingdang.blog.model.ChunkDocument;
+import com.lingdang.blog.repository.elasticsearch.ChunkDocumentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Elasticsearch 检索引擎（默认实现）
+ *
+ * 在线索引通过 alias 访问，蓝绿重建 = 新建实际索引 + 切换 alias。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "rag.retrieval.engine", havingValue = RetrievalEngineConfig.ENGINE_ELASTICSEARCH, matchIfMissing = true)
+public class ElasticsearchRetrievalEngine implements RetrievalEngine {
+
+    private static final String INDEX_ALIAS = ElasticsearchInitializer.INDEX_ALIAS;
+
+    private static final int SCROLL_PAGE_SIZE = 500;
+
+    @Autowired
+    private ElasticsearchClient esClient;
+
+    @Autowired
+    private ElasticsearchInitializer esInitializer;
+
+    @Autowired
+    private VectorSearchClient vectorSearchClient;
+
+    @Autowired
+    private ChunkDocumentRepository chunkDocumentRepository;
+
+    @Override
+    public String name() {
+        return INDEX_ALIAS;
+    }
+
+    @Override
+    public void ensureIndex() {
+        esInitializer.initializeIndex();
+    }
+
+    @Override
+    public IndexHealth health() {
+        return esInitializer.checkIndexHealth();
+    }
+
+    @Override
+    public long countDocuments() {
+        try {
+            if (!esClient.indices().exists(e -> e.index(INDEX_ALIAS)).value()) {
+                return -1;
+            }
+            return esClient.count(c -> c.index(INDEX_ALIAS)).count();
+        } catch (Exception e) {
+            log.error("检查 ES 索引失败: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public List<ScoredChunk> vectorSearch(float[] vector, int k, SearchFilter filter) throws IOException {
+        return toScoredChunks(vectorSearchClient.knnSearch(INDEX_ALIAS, vector, k, 100, toFilterQuery(filter)));
+    }
+
+    @Override
+    public List<ScoredChunk> bm25Search(String query, int k, SearchFilter filter) throws IOException {
+        Query filterQuery = toFilterQuery(filter);
+        SearchResponse<ChunkDocument> response = esClient.search(s -> s
+            .index(INDEX_ALIAS)
+            .query(q -> q.bool(b -> {
+                b.must(m -> m
+                    .multiMatch(mm -> mm
+                        .query(query)
+                        .fields("title^2", "chunkText", "tags^1.5")
+                    )
+                );
+                if (filterQuery != null) {
+                    b.filter(filterQuery);
+                }
+                return b;
+            }))
+            .source(src -> src.filter(f -> f.excludes("embedding")))
+            .size(k),
+            ChunkDocument.class
+        );
+        return toScoredChunks(response);
+    }
+
+    @Override
+    public List<ChunkDocument> findArticleChunks(Long articleId) throws IOException {
+        SearchResponse<ChunkDocument> response = esClient.search(s -> s
+            .index(INDEX_ALIAS)
+            .query(q -> q.term(t -> t.field("articleId").value(articleId)))
+            .size(1000),
+            ChunkDocument.class
+        );
+        List<ChunkDocument> docs = new ArrayList<>();
+        for (Hit<ChunkDocument> hit : response.hits().hits()) {
+            if (hit.source() != null) {
+                docs.add(hit.source());
+            }
+        }
+        return docs;
+    }
+
+    @Override
+    public Map<String, float[]> findEmbeddings(Collection<String> chunkIds) throws IOException {
+        return findEmbeddings(INDEX_ALIAS, chunkIds);
+    }
+
+    @Override
+    public Map<String, float[]> findEmbeddings(String index, Collection<String> chunkIds) throws IOException {
+        if (chunkIds.isEmpty()) {
+            return Map.of();
+        }
+        List<FieldValue> ids = new ArrayList<>(chunkIds.size());
+        for (String chunkId : chunkIds) {
+            ids.add(FieldValue.of(chunkId));
+        }
+        SearchResponse<ChunkDocument> response = esClient.search(s -> s
+            .index(index)
+            .query(q -> q.terms(t -> t.field("chunkId").terms(v -> v.value(ids))))
+            .source(src -> src.filter(f -> f.includes("chunkId", "embedding")))
+            .size(ids.size()),
+            ChunkDocument.class
+        );
+        Map<String, float[]> vectors = new HashMap<>();
+        for (Hit<ChunkDocument> hit : response.hits().hits()) {
+            ChunkDocument doc = hit.source();
+            if (doc != null && doc.getEmbedding() != null) {
+                vectors.put(doc.getChunkId(), doc.getEmbedding());
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * 过滤条件 -> bool.filter（只做过滤不参与打分）；无条件时返回 null
+     */
+    private Query toFilterQuery(SearchFilter filter) {
+        if (filter == null) {
+            return null;
+        }
+        BoolQuery.Builder b = new BoolQuery.Builder();
+        boolean any = false;
+        if (filter.isPublishedOnly()) {
+            b.filter(f -> f.term(t -> t.field("status").value(ArticleStatus.PUBLISHED.name())));
+            any = true;
+        }
+        if (filter.getArticleIds() != null) {
+            List<FieldValue> ids = new ArrayList<>();
+            for (Long id : filter.getArticleIds()) {
+                ids.add(FieldValue.of(id));
+            }
+            b.filter(f -> f.terms(t -> t.field("articleId").terms(v -> v.value(ids))));
+            any = true;
+        }
+        if (filter.hasTags()) {
+            for (String tag : filter.getTags()) {
+                b.filter(f -> f.matchPhrase(mp -> mp.field("tags").query(tag)));
+            }
+            any = true;
+        }
+        return any ? Query.of(q -> q.bool(b.build())) : null;
+    }
+
+    @Override
+    public ArticleSearchPage searchArticles(String query, int from, int size) throws IOException {
+        final int qLen = query.length();
+
+        SearchResponse<ChunkDocument> esResp = esClient.search(s -> s
+                .index(INDEX_ALIAS)
+                .trackTotalHits(t -> t.enabled(true))
+                .from(from)
+                .size(size)
+                // 只搜已发布
+                .query(qb -> qb.bool(b -> {
+                    b.filter(f -> f.term(t -> t.field("status").value(ArticleStatus.PUBLISHED.name())));
+
+                    // ✅ 搜索最佳实践：短查询要更“严格”，避免单字命中导致乱召回
+                    if (qLen <= 2) {
+                        // 1~2 字：优先短语匹配（phrase），更符合用户直觉
+                        b.must(m -> m.bool(bb -> bb
+                            .should(s1 -> s1.matchPhrase(mp -> mp.field("title").query(query).boost(5f)))
+                            .should(s2 -> s2.matchPhrase(mp -> mp.field("tags").query(query).boost(3f)))
+                            .should(s3 -> s3.matchPhrase(mp -> mp.field("chunkText").query(query)))
+                            .minimumShouldMatch("1")
+                        ));
+                    } else if (qLen <= 4) {
+                        // 3~4 字：用 AND，要求每个词都命中
+                        b.must(m -> m.multiMatch(mm -> mm
+                            .query(query)
+                            .fields("title^4", "tags^2", "chunkText")
+                            .operator(Operator.And)
+                        ));
+                    } else {
+                        // 5 字以上：用 minimum_should_match 控制召回宽松度
+                        b.must(m -> m.multiMatch(mm -> mm
+                            .query(query)
+                            .fields("title^4", "tags^2", "chunkText")
+                            .minimumShouldMatch("70%")
+                        ));
+                    }
+
+                    return b;
+                }))
+                // 以 articleId 折叠，返回文章维度结果
+                .collapse(c -> c
+                    .field("articleId")
+                    .innerHits(ih -> ih
+                        .name("top_chunk")
+                        .size(1)
+                        .highlight(h -> h
+                            .preTags("<em>")
+                            .postTags("</em>")
+                            .fields("chunkText", f -> f.fragmentSize(120).numberOfFragments(1))
+                            .fields("title", f -> f.fragmentSize(80).numberOfFragments(1))
+                        )
+                        .source(src -> src.filter(f -> f.includes("articleId", "slug", "title", "tags")))
+                    )
+                ),
+            ChunkDocument.class
+        );
+
+        ArticleSearchPage page = new ArticleSearchPage();
+        page.setTotal(esResp.hits().total() != null ? esResp.hits().total().value() : 0);
+
+        List<ArticleHit> hits = new ArrayList<>();
+        for (Hit<ChunkDocument> hit : esResp.hits().hits()) {
+            ChunkDocument src = hit.source();
+            if (src == null || src.getArticleId() == null) continue;
+            hits.add(new ArticleHit(src.getArticleId(), extractSnippet(hit)));
+        }
+        page.setHits(hits);
+        return page;
+    }
+
+    @Override
+    public void forEachDocument(Consumer<ChunkDocument> consumer) throws IOException {
+        SearchResponse<ChunkDocument> first = esClient.search(s -> s
+                .index(INDEX_ALIAS)
+                .scroll(t -> t.time("2m"))
+                .size(SCROLL_PAGE_SIZE)
+                .sort(so -> so.doc(d -> d)),
+            ChunkDocument.class
+        );
+
+        String scrollId = first.scrollId();
+        List<Hit<ChunkDocument>> hits = first.hits().hits();
+        try {
+            while (hits != null && !hits.isEmpty()) {
+                for (Hit<ChunkDocument> hit : hits) {
+                    ChunkDocument doc = hit.source();
+                    if (doc == null) continue;
+                    if (doc.getChunkId() == null) {
+                        doc.setChunkId(hit.id());
+                    }
+                    consumer.accept(doc);
+                }
+                final String currentScrollId = scrollId;
+                ScrollResponse<ChunkDocument> next = esClient.scroll(s -> s
+                        .scrollId(currentScrollId)
+                        .scroll(t -> t.time("2m")),
+                    ChunkDocument.class
+                );
+                scrollId = next.scrollId();
+                hits = next.hits().hits();
+            }
+        } finally {
+            if (scrollId != null) {
+                final String toClear = scrollId;
+                try {
+                    esClient.clearScroll(c -> c.scrollId(toClear));
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * inner_hits -> highlight
+     */
+    private String extractSnippet(Hit<ChunkDocument> hit) {
+        try {
+            Map<String, InnerHitsResult> inner = hit.innerHits();
+            if (inner != null) {
+                InnerHitsResult top = inner.get("top_chunk");
+                if (top != null && top.hits() != null && top.hits().hits() != null && !top.hits().hits().isEmpty()) {
+                    var innerHit = top.hits().hits().get(0);
+                    if (innerHit.highlight() != null) {
+                        List<String> frags = innerHit.highlight().get("chunkText");
+                        if (frags == null || frags.isEmpty()) {
+                            frags = innerHit.highlight().get("title");
+                        }
+                        if (frags != null && !frags.isEmpty()) {
+                            return frags.get(0);
+                        }
+                    }
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+
+    @Override
+    public void replaceArticle(Long articleId, List<ChunkDocument> documents) {
+        // 删除 ES 中的旧文档
+        try {
+            chunkDocumentRepository.deleteByArticleId(articleId);
+        } catch (Exception e) {
+            log.warn("删除 ES 旧文档失败（可能不存在）: article_id={}", articleId);
+        }
+
+        // 写入 ES
+        chunkDocumentRepository.saveAll(documents);
+    }
+
+    @Override
+    public void deleteArticle(Long articleId) {
+        chunkDocumentRepository.deleteByArticleId(articleId);
+    }
+
+    @Override
+    public String currentIndex() {
+        return esInitializer.resolveCurrentIndex();
+    }
+
+    @Override
+    public String createIndex() throws Exception {
+        return esInitializer.createNewConcreteIndex();
+    }
+
+    @Override
+    public boolean indexExists(String index) {
+        try {
+            return esClient.indices().exists(e -> e.index(index)).value();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void bulkIndex(String index, List<ChunkDocument> documents) throws Exception {
+        if (documents == null || documents.isEmpty()) return;
+
+        List<BulkOperation> ops = new ArrayList<>();
+        for (ChunkDocument doc : documents) {
+            ops.add(BulkOperation.of(b -> b.index(i -> i
+                .index(index)
+                .id(doc.getChunkId())
+                .document(doc)
+            )));
+        }
+
+        // wait_for：返回时已可搜索，重建中后续文章的 findEmbeddings 要能读到刚写入的保留 chunk
+        BulkRequest request = BulkRequest.of(b -> b.operations(ops).refresh(Refresh.WaitFor));
+        var resp = esClient.bulk(request);
+        if (resp.errors()) {
+            throw new RuntimeException("bulk 写入 ES 失败: " + resp.items().stream().filter(i -> i.error() != null).findFirst().map(i -> i.error().reason()).orElse("unknown"));
+        }
+    }
+
+    @Override
+    public void deleteArticle(String index, Long articleId) throws Exception {
+        esClient.deleteByQuery(d -> d
+            .index(index)
+            .refresh(true)
+            .query(q -> q.term(t -> t.field("articleId").value(articleId)))
+        );
+    }
+
+    @Override
+    public void switchTo(String index) throws Exception {
+        esInitializer.switchAliasTo(index);
+    }
+
+    @Override
+    public void discardIndex(String index) {
+        if (index == null || index.equals(esInitializer.resolveCurrentIndex())) {
+            return;
+        }
+        try {
+            esClient.indices().delete(d -> d.index(index));
+        } catch (Exception ignored) {
+        }
+    }
+
+    private List<ScoredChunk> toScoredChunks(SearchResponse<ChunkDocument> response) {
+        List<ScoredChunk> results = new ArrayList<>();
+        for (Hit<ChunkDocument> hit : response.hits().hits()) {
+            if (hit.source() != null) {
+                results.add(new ScoredChunk(hit.source(), hit.score() != null ? hit.score() : 0.0));
+            }
+        }
+        return results;
+    }
+}
@@ -1,25 +1,30 @@
 package com.lingdang.blog.service;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch.core.BulkRequest;
-import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
-import com.lingdang.blog.config.ElasticsearchInitializer;
 import com.lingdang.blog.model.*;
 import com.lingdang.blog.repository.ArticleRepository;
-import com.lingdang.blog.repository.elasticsearch.ChunkDocumentRepository;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * 全量重建索引（蓝绿：新建索引 -> 写入 -> 切换 alias）
+ * 全量重建索引（蓝绿：新建索引 -> 写入 -> 切换在线索引）
  *
  * 目标：当 chunkSize 等“会影响索引结构/内容”的配置变更时，保证：
- * - 重建失败不影响线上查询（alias 仍指向旧索引）
- * - 重建成功后才切换 alias
+ * - 重建失败不影响线上查询（在线索引仍是旧索引）
+ * - 重建成功后才切换在线索引（ES: alias；Lucene: CURRENT 指针）
+ * - 每篇文章写完落检查点，进程重启后可续跑到同一个新索引
+ * - 重建出的 chunks 先留在内存与检查点里，切换后才写入 article_chunks：
+ *   失败时 chunks 表仍与在线索引一致，重建期间的增量索引也只会以在线内容为基准做近重复判断
  */
 @Slf4j
 @Service
@@ -35,14 +40,19 @@ public class FullReindexService {
     private LlmService llmService;
 
     @Autowired
-    private ElasticsearchClient esClient;
+    private RetrievalEngine retrievalEngine;
 
     @Autowired
-    private ElasticsearchInitializer esInitializer;
+    private OffHeapVectorStore offHeapVectorStore;
 
-    // 仅用于一些 deleteByArticleId 之类的旧逻辑；全量重建写入不走 repository
     @Autowired
-    private ChunkDocumentRepository chunkDocumentRepository;
+    private ArticleEmbeddingCache articleEmbeddingCache;
+
+    @Autowired
+    private ArticleVectorIndex articleVectorIndex;
+
+    @Autowired
+    private ChunkDedupService chunkDedupService;
 
     public interface ProgressListener {
         void onProgress(int totalArticles, int doneArticles);
@@ -52,103 +62,226 @@ public class FullReindexService {
         void onNewIndexCreated(String newIndex);
     }
 
+    /**
+     * 单篇文章写入新索引成功后回调（用于持久化检查点，chunks 含近重复标记）
+     */
+    public interface CheckpointListener {
+        void onArticleIndexed(Long articleId, List<ArticleChunk> chunks);
+    }
+
+    /**
+     * 进程关闭导致重建被打断：新索引保留，等待下次启动续跑
+     */
+    public static class RebuildInterruptedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public RebuildInterruptedException(String message) {
+            super(message);
+        }
+    }
+
+    @Data
+    public static class RebuildResult {
+        private String newIndex;
+        private int totalArticles;
+        private int skippedArticles;
+        private int indexedChunks;
+        /** 本次重建中被标记为近重复、借用保留那份向量的 chunk 数（不含续跑跳过的文章） */
+        private int duplicateChunks;
+    }
+
+    private volatile boolean shuttingDown = false;
+
+    @EventListener(ContextClosedEvent.class)
+    public void onContextClosed() {
+        shuttingDown = true;
+    }
+
     public void rebuildAllPublishedToNewIndex(ChunkingOptions options) {
         rebuildAllPublishedToNewIndex(options, null, null);
     }
 
     public void rebuildAllPublishedToNewIndex(ChunkingOptions options, ProgressListener progressListener, NewIndexListener newIndexListener) {
-        String oldIndex = esInitializer.resolveCurrentIndex();
+        rebuildAllPublishedToNewIndex(options, null, Map.of(), progressListener, newIndexListener, null);
+    }
+
+    /**
+     * 全量重建（支持断点续跑）
+     *
+     * @param resumeIndex        上次中断时的 newIndex；为空或已不存在时新建索引（并忽略 completedArticles）
+     * @param completedArticles  已完成文章的检查点（articleId -> 写入新索引的 chunks），续跑时直接跳过
+     */
+    public RebuildResult rebuildAllPublishedToNewIndex(ChunkingOptions options,
+                                                       String resumeIndex,
+                                                       Map<Long, List<ArticleChunk>> completedArticles,
+                                                       ProgressListener progressListener,
+                                                       NewIndexListener newIndexListener,
+                                                       CheckpointListener checkpointListener) {
+        String oldIndex = retrievalEngine.currentIndex();
         String newIndex = null;
+        RebuildResult result = new RebuildResult();
 
         try {
-            // 1) 创建新索引
-            newIndex = esInitializer.createNewConcreteIndex();
-            if (newIndexListener != null) {
-                newIndexListener.onNewIndexCreated(newIndex);
+            // 0) 续跑：在线索引已经是 resumeIndex，说明上次在切换后、落库前中断，直接视为完成
+            if (resumeIndex != null && resumeIndex.equals(oldIndex)) {
+                log.info("续跑任务的新索引已是当前在线索引，无需重建，补写 chunks 表: index={}", resumeIndex);
+                chunkDedupService.saveRebuiltChunks(completedArticles);
+                result.setNewIndex(resumeIndex);
+                result.setSkippedArticles(completedArticles.size());
+                result.setIndexedChunks(completedArticles.values().stream().mapToInt(List::size).sum());
+                return result;
             }
 
+            // 1) 创建新索引（或复用中断前的索引）
+            boolean resuming = resumeIndex != null && retrievalEngine.indexExists(resumeIndex);
+            Map<Long, List<ArticleChunk>> completed = resuming ? completedArticles : Map.of();
+            if (resuming) {
+                newIndex = resumeIndex;
+                log.info("续跑全量重建: newIndex={}, completedArticles={}", newIndex, completed.size());
+            } else {
+                newIndex = retrievalEngine.createIndex();
+                if (newIndexListener != null) {
+                    newIndexListener.onNewIndexCreated(newIndex);
+                }
+            }
+            result.setNewIndex(newIndex);
+
             // 2) 写入新索引
             List<Article> articles = articleRepository.findByStatusOrderByPublishedAtDesc(ArticleStatus.PUBLISHED);
+            result.setTotalArticles(articles.size());
             log.info("开始全量重建索引: articles={}, oldIndex={}, newIndex={}", articles.size(), oldIndex, newIndex);
 
+            // 续跑：清理检查点中已不再发布的文章（中断期间被下线/删除）
+            if (resuming) {
+                Set<Long> publishedIds = new HashSet<>();
+                for (Article article : articles) {
+                    publishedIds.add(article.getId());
+                }
+                for (Long articleId : completed.keySet()) {
+                    if (!publishedIds.contains(articleId)) {
+                        retrievalEngine.deleteArticle(newIndex, articleId);
+                    }
+                }
+            }
+
+            // 近重复检测只在新索引内比较：续跑时先恢复已完成文章的指纹
+            ChunkDedupService.SignatureIndex signatures = chunkDedupService.newIndex();
+            for (List<ArticleChunk> done : completed.values()) {
+                chunkDedupService.seed(signatures, done);
+            }
+
+            // 写入新索引的 chunks，切换成功后统一落库
+            Map<Long, List<ArticleChunk>> rebuilt = new LinkedHashMap<>();
+
             int totalChunks = 0;
+            int duplicateChunks = 0;
+            int skipped = 0;
             int doneArticles = 0;
             for (Article article : articles) {
-                List<ArticleChunk> chunks = chunkService.splitArticle(article, options);
-                totalChunks += chunks.size();
+                if (shuttingDown) {
+                    throw new RebuildInterruptedException("应用关闭，全量重建中断于 " + doneArticles + "/" + articles.size());
+                }
 
-                // 批量生成 embedding + bulk 写 ES
-                bulkIndexChunks(newIndex, chunks);
+                List<ArticleChunk> doneChunks = completed.get(article.getId());
+                if (doneChunks != null) {
+                    skipped++;
+                    totalChunks += doneChunks.size();
+                    rebuilt.put(article.getId(), doneChunks);
+                } else {
+                    // 续跑时上一篇可能只写了一半：先清掉该文章在新索引中的残留文档
+                    if (resuming) {
+                        retrievalEngine.deleteArticle(newIndex, article.getId());
+                    }
+
+                    List<ArticleChunk> chunks = chunkService.splitArticle(article, options);
+                    totalChunks += chunks.size();
+                    if (chunkDedupService.isEnabled()) {
+                        duplicateChunks += chunkDedupService.markDuplicates(chunks, signatures);
+                    }
+
+                    // 批量生成 embedding（近重复 chunk 借用向量）+ bulk 写入新索引，同时更新文章级向量
+                    bulkIndexChunks(newIndex, article, chunks);
+                    rebuilt.put(article.getId(), chunks);
+
+                    if (checkpointListener != null) {
+                        checkpointListener.onArticleIndexed(article.getId(), chunks);
+                    }
+                }
 
                 doneArticles++;
                 if (progressListener != null) {
                     progressListener.onProgress(articles.size(), doneArticles);
                 }
             }
+            result.setSkippedArticles(skipped);
+            result.setIndexedChunks(totalChunks);
+            result.setDuplicateChunks(duplicateChunks);
+
+            log.info("全量重建写入完成: newIndex={}, chunks={}, duplicateChunks={}, skippedArticles={}",
+                newIndex, totalChunks, duplicateChunks, skipped);
 
-            log.info("全量重建写入完成: newIndex={}, chunks={}", newIndex, totalChunks);
+            // 3) 切换在线索引
+            retrievalEngine.switchTo(newIndex);
 
-            // 3) 切换 alias
-            esInitializer.switchAliasTo(newIndex);
+            // chunks 表跟随在线索引：重复标记、chunk_id 对应的正文都以新索引为准
+            chunkDedupService.saveRebuiltChunks(rebuilt);
+
+            // 进程内向量库跟随在线索引重新加载（加载期间向量检索回退到检索引擎）
+            offHeapVectorStore.reload();
+            articleEmbeddingCache.invalidateAll();
 
             // 4) 可选：删除旧索引（保守起见这里不删，避免误删；你确认后我可以加一个保留 N 个索引的清理策略）
-            log.info("全量重建完成并切换 alias 成功: alias={}, newIndex={}, oldIndex={}",
-                ElasticsearchInitializer.INDEX_ALIAS, newIndex, oldIndex);
+            log.info("全量重建完成并切换在线索引成功: engine={}, newIndex={}, oldIndex={}",
+                retrievalEngine.name(), newIndex, oldIndex);
+
+            return result;
 
         } catch (Exception e) {
+            // 进程关闭导致的中断：保留新索引与检查点，等待下次启动续跑
+            if (shuttingDown) {
+                log.warn("全量重建因应用关闭中断，保留新索引等待续跑: newIndex={}", newIndex);
+                throw e instanceof RebuildInterruptedException
+                    ? (RebuildInterruptedException) e
+                    : new RebuildInterruptedException("应用关闭，全量重建中断: " + e.getMessage());
+            }
+
             log.error("全量重建索引失败，将回滚并保持旧索引不变: oldIndex={}, newIndex={}", oldIndex, newIndex, e);
 
             // 失败时删除新索引（如果已创建）
-            if (newIndex != null) {
-                try {
-                    final String indexToDelete = newIndex;
-                    esClient.indices().delete(d -> d.index(indexToDelete));
-                } catch (Exception ignored) {
-                }
-            }
+            discardIndex(newIndex);
 
-            // alias 未切换则线上不受影响；若切换后才失败（极少），理论上需要切回 oldIndex。
-            // 当前 switchAliasTo 发生在最后，因此这里通常不需要额外回滚。
+            // 在线索引未切换则线上不受影响；若切换后才失败（极少），理论上需要切回 oldIndex。
+            // 当前 switchTo 发生在最后，因此这里通常不需要额外回滚。
 
             throw new RuntimeException("全量重建索引失败: " + e.getMessage(), e);
         }
     }
 
-    private void bulkIndexChunks(String targetIndex, List<ArticleChunk> chunks) throws Exception {
+    /**
+     * 删除一个未上线的新索引（失败回滚 / 废弃的中断任务）
+     */
+    public void discardIndex(String index) {
+        retrievalEngine.discardIndex(index);
+    }
+
+    private void bulkIndexChunks(String targetIndex, Article article, List<ArticleChunk> chunks) throws Exception {
         if (chunks == null || chunks.isEmpty()) return;
 
-        List<BulkOperation> ops = new ArrayList<>();
+        List<ChunkDocument> docs = new ArrayList<>(chunks.size());
 
+        // 近重复 chunk 借用保留那份的向量（保留的那份已写入新索引），仍以本文的元数据写入
+        Map<String, float[]> vectors = chunkDedupService.findCanonicalEmbeddings(chunks,
+            ids -> retrievalEngine.findEmbeddings(targetIndex, ids));
         for (ArticleChunk chunk : chunks) {
-            float[] embedding = llmService.generateEmbedding(chunk.getChunkText());
-
-            ChunkDocument doc = new ChunkDocument();
-            doc.setChunkId(chunk.getChunkId());
-            doc.setArticleId(chunk.getArticleId());
-            doc.setSlug(chunk.getSlug());
-            doc.setTitle(chunk.getTitle());
-            doc.setTags(chunk.getTags());
-            doc.setStatus(chunk.getStatus().name());
-            doc.setIndexVersion(chunk.getIndexVersion());
-            doc.setHeadingLevel(chunk.getHeadingLevel());
-            doc.setHeadingText(chunk.getHeadingText());
-            doc.setAnchor(chunk.getAnchor());
-            doc.setChunkText(chunk.getChunkText());
-            doc.setEmbedding(embedding);
-            doc.setTokenCount(chunk.getTokenCount());
-            doc.setSequenceNumber(chunk.getSequenceNumber());
-
-            ops.add(BulkOperation.of(b -> b.index(i -> i
-                .index(targetIndex)
-                .id(doc.getChunkId())
-                .document(doc)
-            )));
+            float[] embedding = chunk.getDuplicateOf() != null ? vectors.get(chunk.getDuplicateOf()) : null;
+            if (embedding == null) {
+                embedding = llmService.generateEmbedding(chunk.getChunkText(), LlmGovernor.Priority.FULL_REBUILD);
+                vectors.put(chunk.getChunkId(), embedding);
+            }
+            docs.add(ChunkDocument.of(chunk, embedding));
         }
 
-        BulkRequest request = BulkRequest.of(b -> b.operations(ops));
-        var resp = esClient.bulk(request);
-        if (resp.errors()) {
-            throw new RuntimeException("bulk 写入 ES 失败: " + resp.items().stream().filter(i -> i.error() != null).findFirst().map(i -> i.error().reason()).orElse("unknown"));
-        }
+        retrievalEngine.bulkIndex(targetIndex, docs);
+        articleVectorIndex.update(article, docs, LlmGovernor.Priority.FULL_REBUILD);
     }
 }
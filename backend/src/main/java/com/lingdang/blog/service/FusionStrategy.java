@@ -0,0 +1,191 @@
+package com.lingdang.blog.service;
+
+import java.util.Locale;
+
+/**
+ * 混合检索融合策略（向量 + BM25）
+ *
+ * 输入为候选的原始类型平行数组：未被某一路召回时分数为 NaN、名次为 0（名次从 1 开始）。
+ * 输出分数统一落在 0~1，便于沿用 minScore 阈值。
+ */
+public enum FusionStrategy {
+
+    /**
+     * 加权线性（默认）：vw * vec + bw * log(1+bm25) / log(1+bm25Max)
+     */
+    WEIGHTED("weighted") {
+        @Override
+        public void fuse(Candidates c, Params p, double[] out) {
+            double denom = Math.log1p(Math.max(1e-9, p.bm25Max));
+            for (int i = 0; i < c.size; i++) {
+                double vec = c.vectorScores[i];
+                if (Double.isNaN(vec) || vec < 0) vec = 0.0;
+                if (vec > 1) vec = 1.0;
+
+                double bm25 = c.bm25Scores[i];
+                if (Double.isNaN(bm25) || bm25 < 0) bm25 = 0.0;
+                double bm25Norm = denom > 0 ? (Math.log1p(bm25) / denom) : 0.0;
+                if (bm25Norm < 0) bm25Norm = 0.0;
+                if (bm25Norm > 1) bm25Norm = 1.0;
+
+                out[i] = p.vectorWeight * vec + p.bm25Weight * bm25Norm;
+            }
+        }
+    },
+
+    /**
+     * 倒数排名融合：vw / (k + rank_vec) + bw / (k + rank_bm25)，只看名次不看分数尺度；
+     * 除以 1 / (k + 1) 归一化，两路都排第一时为 1
+     */
+    RRF("rrf") {
+        @Override
+        public void fuse(Candidates c, Params p, double[] out) {
+            double k = p.rrfK;
+            for (int i = 0; i < c.size; i++) {
+                double score = 0.0;
+                if (c.vectorRanks[i] > 0) score += p.vectorWeight / (k + c.vectorRanks[i]);
+                if (c.bm25Ranks[i] > 0) score += p.bm25Weight / (k + c.bm25Ranks[i]);
+                out[i] = score * (k + 1);
+            }
+        }
+    },
+
+    /**
+     * z-score 标准化：每一路按本次召回的均值 / 标准差标准化，再经 sigmoid 映射到 0~1 后加权；
+     * 未被某一路召回时该路贡献为 0
+     */
+    ZSCORE("zscore") {
+        @Override
+        public void fuse(Candidates c, Params p, double[] out) {
+            double[] vecStats = meanAndStd(c.vectorScores, c.size);
+            double[] bm25Stats = meanAndStd(c.bm25Scores, c.size);
+            for (int i = 0; i < c.size; i++) {
+                double score = 0.0;
+                double vec = c.vectorScores[i];
+                if (!Double.isNaN(vec)) score += p.vectorWeight * sigmoid((vec - vecStats[0]) / vecStats[1]);
+                double bm25 = c.bm25Scores[i];
+                if (!Double.isNaN(bm25)) score += p.bm25Weight * sigmoid((bm25 - bm25Stats[0]) / bm25Stats[1]);
+                out[i] = score;
+            }
+        }
+    };
+
+    public static final int DEFAULT_RRF_K = 60;
+
+    private final String value;
+
+    FusionStrategy(String value) {
+        this.value = value;
+    }
+
+    /**
+     * 配置中使用的名称（weighted / rrf / zscore）
+     */
+    public String value() {
+        return value;
+    }
+
+    public abstract void fuse(Candidates candidates, Params params, double[] out);
+
+    /**
+     * 按名称解析，未知或为空时返回 WEIGHTED
+     */
+    public static FusionStrategy of(String value) {
+        if (value != null) {
+            String v = value.trim().toLowerCase(Locale.ROOT);
+            for (FusionStrategy s : values()) {
+                if (s.value.equals(v)) {
+                    return s;
+                }
+            }
+        }
+        return WEIGHTED;
+    }
+
+    public static boolean isValid(String value) {
+        if (value == null) return false;
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        for (FusionStrategy s : values()) {
+            if (s.value.equals(v)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 融合候选（平行数组，前 size 个有效）
+     */
+    public static final class Candidates {
+        public final double[] vectorScores;
+        public final double[] bm25Scores;
+        public final int[] vectorRanks;
+        public final int[] bm25Ranks;
+        public int size;
+
+        public Candidates(int capacity) {
+            this.vectorScores = new double[capacity];
+            this.bm25Scores = new double[capacity];
+            this.vectorRanks = new int[capacity];
+            this.bm25Ranks = new int[capacity];
+        }
+
+        /**
+         * 追加一个候选，两路分数初始为 NaN（未召回），返回下标
+         */
+        public int add() {
+            int i = size++;
+            vectorScores[i] = Double.NaN;
+            bm25Scores[i] = Double.NaN;
+            vectorRanks[i] = 0;
+            bm25Ranks[i] = 0;
+            return i;
+        }
+    }
+
+    /**
+     * 融合参数：权重为 0~1，和为 1
+     */
+    public static final class Params {
+        public final double vectorWeight;
+        public final double bm25Weight;
+        public final double bm25Max;
+        public final int rrfK;
+
+        public Params(double vectorWeight, double bm25Weight, double bm25Max, int rrfK) {
+            this.vectorWeight = vectorWeight;
+            this.bm25Weight = bm25Weight;
+            this.bm25Max = bm25Max;
+            this.rrfK = rrfK;
+        }
+    }
+
+    /**
+     * 忽略 NaN；标准差为 0（单个候选或分数全相同）时取 1，避免除零
+     */
+    private static double[] meanAndStd(double[] values, int size) {
+        double sum = 0.0;
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (!Double.isNaN(values[i])) {
+                sum += values[i];
+                n++;
+            }
+        }
+        if (n == 0) {
+            return new double[]{0.0, 1.0};
+        }
+        double mean = sum / n;
+        double sq = 0.0;
+        for (int i = 0; i < size; i++) {
+            if (!Double.isNaN(values[i])) {
+                double d = values[i] - mean;
+                sq += d * d;
+            }
+        }
+        double std = Math.sqrt(sq / n);
+        return new double[]{mean, std > 1e-12 ? std : 1.0};
+    }
+
+    private static double sigmoid(double x) {
+        return 1.0 / (1.0 + Math.exp(-x));
+    }
+}
@@ -1,27 +1,39 @@
 package com.lingdang.blog.service;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import com.lingdang.blog.config.ElasticsearchInitializer;
 import com.lingdang.blog.model.*;
 import com.lingdang.blog.repository.ArticleChunkRepository;
 import com.lingdang.blog.repository.ArticleRepository;
 import com.lingdang.blog.repository.RagIndexJobRepository;
-import com.lingdang.blog.repository.elasticsearch.ChunkDocumentRepository;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 索引流水线服务
+ *
+ * rag_index_jobs 即持久化队列：触发只入队，indexTaskExecutor 上的 worker 以行锁领取并执行。
  */
 @Slf4j
 @Service
@@ -37,14 +49,32 @@ public class IndexPipelineService {
     private RagIndexJobRepository ragIndexJobRepository;
     
     @Autowired
-    private ChunkDocumentRepository chunkDocumentRepository;
+    private RetrievalEngine retrievalEngine;
+    
+    @Autowired
+    private OffHeapVectorStore offHeapVectorStore;
+    
+    @Autowired
+    private ArticleEmbeddingCache articleEmbeddingCache;
+    
+    @Autowired
+    private ArticleVectorIndex articleVectorIndex;
     
     @Autowired
     private MarkdownService markdownService;
+
+    @Autowired
+    private ArticleResponseCache articleResponseCache;
     
     @Autowired
     private ChunkService chunkService;
 
+    @Autowired
+    private TokenCounter tokenCounter;
+
+    @Autowired
+    private ChunkDedupService chunkDedupService;
+
     @Autowired
     private RagConfigService ragConfigService;
     
@@ -52,12 +82,21 @@ public class IndexPipelineService {
     private LlmService llmService;
     
     @Autowired
-    private ElasticsearchClient esClient;
+    @Qualifier("indexTaskExecutor")
+    private Executor indexTaskExecutor;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    // 防抖窗口：窗口内的多次触发合并为一个任务
+    private static final Duration DEBOUNCE = Duration.ofSeconds(2);
     
-    private static final String INDEX_NAME = ElasticsearchInitializer.INDEX_ALIAS;
+    // 失败重试：最多 3 次，退避 60s/120s/240s
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_BASE_SECONDS = 30;
     
-    // 并发控制：跟踪正在执行索引的文章 ID
-    private final ConcurrentHashMap<Long, Boolean> indexingArticles = new ConcurrentHashMap<>();
+    // 同一时间只投递一个 drain worker（indexTaskExecutor 本身也是串行执行）
+    private final AtomicBoolean drainerActive = new AtomicBoolean(false);
 
     // 全量重建锁：同一时间只允许一个全量重建任务
     private final ConcurrentHashMap<Long, Boolean> fullReindexJobs = new ConcurrentHashMap<>();
@@ -106,38 +145,36 @@ public class IndexPipelineService {
     }
     
     /**
-     * 触发索引
+     * 触发索引：只负责入队（毫秒级返回），chunk + embedding + 写 ES 由 indexTaskExecutor 上的 worker 执行。
+     *
+     * 同一文章已有排队中的任务时不再新建，而是合并到该任务并后延执行时间（防抖），
+     * worker 执行时读取的是文章最新内容，因此多次触发最终只索引一次最新版本。
+     *
      * @param articleId 文章 ID
      * @param force 是否强制索引（true=不检查内容变化，false=检查内容变化）
      */
     @Transactional
     public Long triggerIndex(Long articleId, boolean force) {
-        // 检查是否已有该文章的索引任务正在执行
-        if (indexingArticles.putIfAbsent(articleId, true) != null) {
-            log.warn("文章 {} 的索引任务正在执行，跳过本次请求", articleId);
-            return null;
-        }
+        Article article = articleRepository.findById(articleId)
+            .orElseThrow(() -> new RuntimeException("文章不存在: " + articleId));
         
-        try {
-            Article article = articleRepository.findById(articleId)
-                .orElseThrow(() -> new RuntimeException("文章不存在: " + articleId));
+        LocalDateTime notBefore = LocalDateTime.now().plus(DEBOUNCE);
         
-        // 检查 ES 索引是否存在
-        try {
-            boolean indexExists = esClient.indices().exists(e -> e.index(INDEX_NAME)).value();
-            if (!indexExists) {
-                log.warn("ES 索引不存在，索引任务可能失败: {}", INDEX_NAME);
-                log.warn("请在 Studio 执行「全量重建索引」来创建索引");
-            }
-        } catch (Exception e) {
-            log.error("检查 ES 索引失败: {}", e.getMessage());
+        // 已有排队中的任务：合并
+        Optional<RagIndexJob> pending = ragIndexJobRepository.findFirstByArticleIdAndStatus(articleId, IndexJobStatus.PENDING);
+        if (pending.isPresent()) {
+            RagIndexJob job = pending.get();
+            job.setForce(Boolean.TRUE.equals(job.getForce()) || force);
+            job.setNotBefore(notBefore);
+            job.setCoalescedCount(job.getCoalescedCount() + 1);
+            ragIndexJobRepository.save(job);
+            log.info("合并索引任务: job_id={}, article_id={}, coalesced={}", job.getId(), articleId, job.getCoalescedCount());
+            dispatchAfterCommit();
+            return job.getId();
         }
         
-        // 计算 content_hash
-        String contentHash = DigestUtils.sha256Hex(article.getContentMarkdown());
-        
-        // 非强制模式：检查内容是否变化
-        if (!force && contentHash.equals(article.getContentHash())) {
+        // 非强制模式：内容未变化则跳过
+        if (!force && DigestUtils.sha256Hex(article.getContentMarkdown()).equals(article.getContentHash())) {
             log.info("文章内容未变化，跳过索引: article_id={}", articleId);
             return null;
         }
@@ -147,165 +184,270 @@ public class IndexPipelineService {
             log.info("强制重新索引: article_id={}", articleId);
         }
         
-        // 检查是否有正在运行的任务
-        ragIndexJobRepository.findFirstByArticleIdAndStatus(articleId, IndexJobStatus.RUNNING)
-            .ifPresent(job -> {
-                throw new RuntimeException("文章正在索引中，请稍后再试");
-            });
-        
-        // 更新 content_hash 和 index_version
-        article.setContentHash(contentHash);
-        article.setIndexVersion(article.getIndexVersion() + 1);
-        
-        // 生成 content_html
-        String contentHtml = markdownService.markdownToHtml(article.getContentMarkdown());
-        article.setContentHtml(contentHtml);
-        
-        articleRepository.save(article);
-        
-        // 创建索引任务
+        // 创建索引任务（targetIndexVersion 在 worker 实际执行时确定）
         RagIndexJob job = new RagIndexJob();
         job.setArticleId(articleId);
         job.setStatus(IndexJobStatus.PENDING);
-        job.setTargetIndexVersion(article.getIndexVersion());
+        job.setTargetIndexVersion(article.getIndexVersion() + 1);
+        job.setForce(force);
+        job.setNotBefore(notBefore);
         job.setRetryCount(0);
         
         RagIndexJob savedJob = ragIndexJobRepository.save(job);
-        log.info("创建索引任务: job_id={}, article_id={}, version={}", 
-            savedJob.getId(), articleId, article.getIndexVersion());
-        
-        // 异步执行索引
-        executeIndexAsync(savedJob.getId());
+        log.info("创建索引任务: job_id={}, article_id={}", savedJob.getId(), articleId);
         
+        dispatchAfterCommit();
         return savedJob.getId();
-        } finally {
-            // 无论成功失败，都释放锁
-            indexingArticles.remove(articleId);
-        }
     }
     
     /**
-     * 异步执行索引
+     * 定时拉取到期任务（兜底：防抖到期、失败重试、启动前残留的任务）
+     */
+    @Scheduled(fixedDelay = 2000, initialDelay = 5000)
+    public void pollQueue() {
+        dispatchDrain();
+    }
+    
+    /**
+     * 启动时把上次进程中断时仍在 RUNNING 的任务放回队列
      */
-    @Async
-    public void executeIndexAsync(Long jobId) {
+    @EventListener(ApplicationReadyEvent.class)
+    public void requeueInterruptedJobs() {
         try {
-            executeIndex(jobId);
+            for (RagIndexJob job : ragIndexJobRepository.findByStatusOrderByCreatedAtAsc(IndexJobStatus.RUNNING)) {
+                job.setStatus(IndexJobStatus.PENDING);
+                job.setNotBefore(LocalDateTime.now());
+                job.setStartedAt(null);
+                ragIndexJobRepository.save(job);
+                log.warn("索引任务在上次运行中被中断，重新入队: job_id={}, article_id={}", job.getId(), job.getArticleId());
+            }
         } catch (Exception e) {
-            log.error("索引任务执行失败: job_id={}", jobId, e);
+            log.error("重新入队中断的索引任务失败", e);
+        }
+    }
+    
+    private void dispatchAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatchDrain();
+                }
+            });
+        } else {
+            dispatchDrain();
+        }
+    }
+    
+    /**
+     * 向 indexTaskExecutor 投递一个 drain worker（已有 worker 在跑则不重复投递）
+     */
+    private void dispatchDrain() {
+        if (!drainerActive.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            indexTaskExecutor.execute(this::drainQueue);
+        } catch (RejectedExecutionException e) {
+            drainerActive.set(false);
+            log.warn("索引线程池已满，等待下次轮询: {}", e.getMessage());
+        }
+    }
+    
+    private void drainQueue() {
+        try {
+            RagIndexJob job;
+            while ((job = claimNextJob()) != null) {
+                try {
+                    executeIndex(job);
+                } catch (Exception e) {
+                    log.error("索引任务执行失败: job_id={}", job.getId(), e);
+                }
+            }
+        } finally {
+            drainerActive.set(false);
         }
     }
     
+    /**
+     * 领取一个到期任务：行锁 + 置为 RUNNING 在同一个短事务里完成。
+     * 同一文章已有 RUNNING 任务时跳过，保证单篇文章串行索引。
+     */
+    private RagIndexJob claimNextJob() {
+        return transactionTemplate.execute(status -> {
+            List<RagIndexJob> candidates = ragIndexJobRepository
+                .findTop5ByStatusAndNotBeforeLessThanEqualOrderByNotBeforeAsc(IndexJobStatus.PENDING, LocalDateTime.now());
+            for (RagIndexJob candidate : candidates) {
+                if (ragIndexJobRepository.existsByArticleIdAndStatus(candidate.getArticleId(), IndexJobStatus.RUNNING)) {
+                    continue;
+                }
+                candidate.setStatus(IndexJobStatus.RUNNING);
+                candidate.setStartedAt(LocalDateTime.now());
+                return ragIndexJobRepository.save(candidate);
+            }
+            return null;
+        });
+    }
+    
     /**
      * 执行索引（核心流水线）
+     *
+     * 不包在单个事务里：embedding 调用耗时长，避免长事务占用连接；
+     * 各步骤（chunks 替换、任务状态）各自提交。
      */
-    @Transactional
-    public void executeIndex(Long jobId) {
-        RagIndexJob job = null;
+    private void executeIndex(RagIndexJob job) {
+        Long jobId = job.getId();
         try {
-            job = ragIndexJobRepository.findById(jobId)
-                .orElseThrow(() -> new RuntimeException("索引任务不存在: " + jobId));
-
-            // 标记为运行中
-            job.setStatus(IndexJobStatus.RUNNING);
-            job.setStartedAt(LocalDateTime.now());
-            ragIndexJobRepository.save(job);
-            
-            // 1. 获取文章
+            // 1. 获取文章（读取最新内容：合并后的多次触发只索引最终版本）
             Article article = articleRepository.findById(job.getArticleId())
                 .orElseThrow(() -> new RuntimeException("文章不存在"));
             
+            if (article.getStatus() != ArticleStatus.PUBLISHED) {
+                job.setStatus(IndexJobStatus.CANCELED);
+                job.setErrorMessage("文章未发布，跳过索引: status=" + article.getStatus());
+                job.setCompletedAt(LocalDateTime.now());
+                ragIndexJobRepository.save(job);
+                log.info("文章未发布，取消索引任务: job_id={}, article_id={}", jobId, article.getId());
+                return;
+            }
+            
+            // 检查在线索引是否存在
+            if (retrievalEngine.countDocuments() < 0) {
+                log.warn("索引不存在，索引任务可能失败: {}", retrievalEngine.name());
+                log.warn("请在 Studio 执行「全量重建索引」来创建索引");
+            }
+            
+            // 计算 content_hash；非强制任务在内容未变化时跳过（例如合并期间改回了原内容）
+            String contentHash = DigestUtils.sha256Hex(article.getContentMarkdown());
+            if (!Boolean.TRUE.equals(job.getForce()) && contentHash.equals(article.getContentHash())) {
+                job.setStatus(IndexJobStatus.SUCCESS);
+                job.setErrorMessage("skipped: content unchanged");
+                job.setCompletedAt(LocalDateTime.now());
+                ragIndexJobRepository.save(job);
+                log.info("文章内容未变化，跳过索引: article_id={}", article.getId());
+                return;
+            }
+            
+            // 新的 index_version 先只用于本次切分；content_hash 等到检索索引写入成功后才落库，
+            // 否则失败重试（非强制）会被上面的「内容未变化」判断直接跳过
+            int indexVersion = article.getIndexVersion() + 1;
+            String contentHtml = markdownService.markdownToHtml(article.getContentMarkdown());
+            article.setIndexVersion(indexVersion);
+            job.setTargetIndexVersion(indexVersion);
+            
             log.info("开始索引: article_id={}, version={}", article.getId(), article.getIndexVersion());
             
             // 2. 切分 chunk（使用当前 rag-config 的 chunkSize 等参数）
             List<ArticleChunk> chunks = chunkService.splitArticle(article, ragConfigService.getChunkingOptions());
             job.setChunksGenerated(chunks.size());
-            ragIndexJobRepository.save(job);
+            job = ragIndexJobRepository.save(job);
             
-            // 3. 原子替换 chunks（删除旧的 + 保存新的，避免唯一键冲突）
-            chunkService.replaceChunks(article.getId(), chunks);
+            // 3. 标记近重复 chunk 并原子替换 chunks（删除旧的 + 保存新的，避免唯一键冲突）
+            Set<Long> staleDependents = chunkDedupService.replaceChunks(article.getId(), chunks);
             
-            // 5. 生成 embeddings
+            // 5. 生成 embeddings（近重复 chunk 借用保留那份的向量，但以本文的元数据写入索引）
+            Map<String, float[]> vectors = chunkDedupService.findCanonicalEmbeddings(chunks, retrievalEngine::findEmbeddings);
             List<ChunkDocument> documents = new ArrayList<>();
+            int borrowed = 0;
             for (ArticleChunk chunk : chunks) {
+                float[] canonical = chunk.getDuplicateOf() != null ? vectors.get(chunk.getDuplicateOf()) : null;
+                if (canonical != null) {
+                    borrowed++;
+                    documents.add(ChunkDocument.of(chunk, canonical));
+                    continue;
+                }
                 try {
                     // 兜底：避免超长 chunk 直接导致 Ollama embedding 400
                     String chunkText = chunk.getChunkText();
                     ChunkingOptions opts = ragConfigService.getChunkingOptions();
                     int maxTokens = opts != null ? opts.getMaxTokens() : 900;
                     if (chunkText != null) {
-                        int estimatedTokens = chunkText.length() / 4;
-                        if (estimatedTokens > maxTokens) {
-                            int maxChars = Math.max(1, maxTokens * 4);
-                            log.warn("chunkText 超过 maxTokens，将截断以避免 embedding 失败: chunk_id={}, estimatedTokens={}, maxTokens={}",
-                                chunk.getChunkId(), estimatedTokens, maxTokens);
-                            chunkText = chunkText.substring(0, Math.min(chunkText.length(), maxChars));
+                        int tokens = tokenCounter.count(chunkText);
+                        if (tokens > maxTokens) {
+                            log.warn("chunkText 超过 maxTokens，将截断以避免 embedding 失败: chunk_id={}, tokens={}, maxTokens={}",
+                                chunk.getChunkId(), tokens, maxTokens);
+                            chunkText = tokenCounter.truncate(chunkText, maxTokens);
                         }
                     }
 
-                    float[] embedding = llmService.generateEmbedding(chunkText);
-                    
-                    ChunkDocument doc = new ChunkDocument();
-                    doc.setChunkId(chunk.getChunkId());
-                    doc.setArticleId(chunk.getArticleId());
-                    doc.setSlug(chunk.getSlug());
-                    doc.setTitle(chunk.getTitle());
-                    doc.setTags(chunk.getTags());
-                    doc.setStatus(chunk.getStatus().name());
-                    doc.setIndexVersion(chunk.getIndexVersion());
-                    doc.setHeadingLevel(chunk.getHeadingLevel());
-                    doc.setHeadingText(chunk.getHeadingText());
-                    doc.setAnchor(chunk.getAnchor());
-                    doc.setChunkText(chunk.getChunkText());
-                    doc.setEmbedding(embedding);
-                    doc.setTokenCount(chunk.getTokenCount());
-                    doc.setSequenceNumber(chunk.getSequenceNumber());
-                    
-                    documents.add(doc);
+                    float[] embedding = llmService.generateEmbedding(chunkText, LlmGovernor.Priority.ARTICLE_INDEX);
+                    vectors.put(chunk.getChunkId(), embedding);
+                    documents.add(ChunkDocument.of(chunk, embedding));
                 } catch (Exception e) {
                     log.error("生成 embedding 失败: chunk_id={}", chunk.getChunkId(), e);
                     throw e;
                 }
             }
             
-            // 6. 删除 ES 中的旧文档
-            try {
-                chunkDocumentRepository.deleteByArticleId(article.getId());
-            } catch (Exception e) {
-                log.warn("删除 ES 旧文档失败（可能不存在）: article_id={}", article.getId());
-            }
-            
-            // 7. 写入 ES
-            chunkDocumentRepository.saveAll(documents);
+            // 6~7. 替换在线索引中该文章的文档（先删后写）
+            retrievalEngine.replaceArticle(article.getId(), documents);
+            offHeapVectorStore.replaceArticle(article.getId(), documents);
+            articleEmbeddingCache.put(article.getId(), documents);
+            articleVectorIndex.update(article, documents, LlmGovernor.Priority.ARTICLE_INDEX);
             job.setChunksIndexed(documents.size());
             
-            // 8. 标记为成功
+            // 8. 检索索引已写入：落库 content_hash、index_version、content_html（重新读取，避免覆盖索引期间的编辑）
+            Article latest = articleRepository.findById(article.getId()).orElse(article);
+            latest.setContentHash(contentHash);
+            latest.setIndexVersion(indexVersion);
+            latest.setContentHtml(contentHtml);
+            articleRepository.save(latest);
+            articleResponseCache.invalidate(latest.getSlug());
+            
+            // 9. 标记为成功
             job.setStatus(IndexJobStatus.SUCCESS);
+            job.setErrorMessage(null);
+            job.setErrorStack(null);
             job.setCompletedAt(LocalDateTime.now());
             ragIndexJobRepository.save(job);
             
-            log.info("索引完成: article_id={}, chunks={}, version={}", 
-                article.getId(), chunks.size(), article.getIndexVersion());
+            log.info("索引完成: article_id={}, chunks={}, borrowedEmbeddings={}, version={}, queued_ms={}", 
+                article.getId(), chunks.size(), borrowed, article.getIndexVersion(),
+                Duration.between(job.getCreatedAt(), job.getStartedAt()).toMillis());
+            
+            // 10. 其它文章的重复 chunk 引用了本文已变化的 chunk：重新索引它们
+            reindexDependents(article.getId(), staleDependents);
             
         } catch (Exception e) {
-            if (job != null) {
-                // 标记为失败
+            // 失败：未超过重试上限则按指数退避重新入队
+            job.setErrorMessage(e.getMessage());
+            job.setErrorStack(getStackTrace(e));
+            if (job.getRetryCount() < MAX_RETRIES) {
+                job.setRetryCount(job.getRetryCount() + 1);
+                job.setStatus(IndexJobStatus.PENDING);
+                job.setNotBefore(LocalDateTime.now().plusSeconds(RETRY_BASE_SECONDS << job.getRetryCount()));
+                job.setStartedAt(null);
+            } else {
                 job.setStatus(IndexJobStatus.FAILED);
-                job.setErrorMessage(e.getMessage());
-                job.setErrorStack(getStackTrace(e));
                 job.setCompletedAt(LocalDateTime.now());
-                ragIndexJobRepository.save(job);
-
-                log.error("索引失败: job_id={}, article_id={}", jobId, job.getArticleId(), e);
-            } else {
-                log.error("索引失败: job_id={}", jobId, e);
             }
-            throw new RuntimeException("索引失败: " + e.getMessage(), e);
+            ragIndexJobRepository.save(job);
+
+            log.error("索引失败: job_id={}, article_id={}, retry={}, status={}",
+                jobId, job.getArticleId(), job.getRetryCount(), job.getStatus(), e);
         } finally {
             markFullReindexJobDone(jobId);
         }
     }
     
+    /**
+     * 索引队列状态（Studio 展示）
+     */
+    public QueueStats getQueueStats() {
+        LocalDateTime now = LocalDateTime.now();
+        QueueStats stats = new QueueStats();
+        stats.setPending(ragIndexJobRepository.countByStatus(IndexJobStatus.PENDING));
+        stats.setRunning(ragIndexJobRepository.countByStatus(IndexJobStatus.RUNNING));
+        stats.setFailedLastHour(ragIndexJobRepository.countByStatusAndCompletedAtAfter(IndexJobStatus.FAILED, now.minusHours(1)));
+        ragIndexJobRepository.findFirstByStatusOrderByCreatedAtAsc(IndexJobStatus.PENDING)
+            .ifPresent(j -> stats.setOldestPendingAgeSeconds(Duration.between(j.getCreatedAt(), now).getSeconds()));
+        ragIndexJobRepository.findFirstByStatusOrderByCreatedAtAsc(IndexJobStatus.RUNNING)
+            .ifPresent(j -> stats.setOldestRunningAgeSeconds(
+                Duration.between(j.getStartedAt() != null ? j.getStartedAt() : j.getCreatedAt(), now).getSeconds()));
+        stats.setWorkerActive(drainerActive.get());
+        return stats;
+    }
+    
     /**
      * 重新索引（强制）
      */
@@ -331,21 +473,50 @@ public class IndexPipelineService {
      */
     @Transactional
     public void deleteIndex(Long articleId) {
+        // 0. 取消仍在排队的索引任务，避免下线后又被写回 ES
+        for (RagIndexJob job : ragIndexJobRepository.findByArticleIdAndStatus(articleId, IndexJobStatus.PENDING)) {
+            job.setStatus(IndexJobStatus.CANCELED);
+            job.setErrorMessage("文章已下线或删除");
+            job.setCompletedAt(LocalDateTime.now());
+            ragIndexJobRepository.save(job);
+        }
+        
         try {
-            // 1. 从 ES 删除
-            chunkDocumentRepository.deleteByArticleId(articleId);
-            log.info("从 ES 删除文章索引: article_id={}", articleId);
+            // 1. 从检索索引删除
+            retrievalEngine.deleteArticle(articleId);
+            offHeapVectorStore.deleteArticle(articleId);
+            articleEmbeddingCache.invalidate(articleId);
+            articleVectorIndex.delete(articleId);
+            log.info("从检索索引删除文章: engine={}, article_id={}", retrievalEngine.name(), articleId);
             
             // 2. 从 MySQL 删除 chunks
-            chunkService.deleteChunksByArticleId(articleId);
+            Set<Long> dependents = chunkDedupService.deleteChunks(articleId);
             log.info("从 MySQL 删除文章 chunks: article_id={}", articleId);
             
+            // 3. 其它文章的重复 chunk 以本文为准：重新索引，让它们自己进入检索索引
+            reindexDependents(articleId, dependents);
+            
         } catch (Exception e) {
             log.error("删除索引失败: article_id={}", articleId, e);
             // 不抛出异常，避免影响文章的下线/删除操作
         }
     }
     
+    /**
+     * 重新索引引用了 articleId 中 chunk 的文章（强制，失败只记日志）
+     */
+    private void reindexDependents(Long articleId, Set<Long> dependents) {
+        for (Long dependent : dependents) {
+            try {
+                triggerIndex(dependent, true);
+                log.info("重复 chunk 的保留副本已变化，重新索引: article_id={}, source_article_id={}", dependent, articleId);
+            } catch (Exception e) {
+                log.warn("重新索引引用文章失败: article_id={}, source_article_id={}, error={}",
+                    dependent, articleId, e.getMessage());
+            }
+        }
+    }
+    
     /**
      * 获取异常堆栈
      */
@@ -358,4 +529,17 @@ public class IndexPipelineService {
         }
         return sb.toString();
     }
+    
+    /**
+     * 索引队列状态
+     */
+    @Data
+    public static class QueueStats {
+        private long pending;
+        private long running;
+        private long failedLastHour;
+        private Long oldestPendingAgeSeconds;
+        private Long oldestRunningAgeSeconds;
+        private boolean workerActive;
+    }
 }
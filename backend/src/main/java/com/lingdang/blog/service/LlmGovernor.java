@@ -0,0 +1,347 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.config.LlmConfig;
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 出站 LLM 调用调度器
+ *
+ * 所有经 LlmService 的调用（在线问答、单篇索引、摘要、全量重建）共享同一个 provider 配额，
+ * 这里按 endpoint 维护独立的并发槽位 + token 速率桶，并按优先级放行：
+ * INTERACTIVE > ARTICLE_INDEX > SUMMARY > FULL_REBUILD。
+ *
+ * - 有更高优先级在排队时，低优先级不会抢到槽位
+ * - 后台优先级最多只能用到 (并发上限 - 预留槽位)，保证在线问答总有槽位可用
+ * - 收到 429/503 时整个 endpoint 进入冷却（优先 Retry-After，否则指数退避 + 抖动）
+ */
+@Slf4j
+@Service
+public class LlmGovernor {
+
+    /**
+     * 调用优先级（声明顺序即优先级，越靠前越优先）
+     */
+    public enum Priority {
+        INTERACTIVE,
+        ARTICLE_INDEX,
+        SUMMARY,
+        FULL_REBUILD
+    }
+
+    /**
+     * 出站 endpoint（各自独立的配额）
+     */
+    public enum Endpoint {
+        OPENAI_CHAT,
+        OPENAI_EMBEDDING,
+        OLLAMA_EMBEDDING
+    }
+
+    /**
+     * 已获得的槽位，调用结束后必须 release
+     */
+    public interface Permit {
+        void release();
+    }
+
+    // 等待条件的最长单次休眠：避免极端情况下错过唤醒
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Autowired
+    private LlmConfig llmConfig;
+
+    private final Map<Endpoint, Bucket> buckets = new EnumMap<>(Endpoint.class);
+    private final Map<Priority, ClassStats> classStats = new EnumMap<>(Priority.class);
+
+    @PostConstruct
+    public void init() {
+        LlmConfig.Governor g = llmConfig.getGovernor();
+        buckets.put(Endpoint.OPENAI_CHAT, new Bucket(g.getChatConcurrency(), g.getChatTokensPerMinute(), g.getInteractiveReserved()));
+        buckets.put(Endpoint.OPENAI_EMBEDDING, new Bucket(g.getEmbeddingConcurrency(), g.getEmbeddingTokensPerMinute(), g.getInteractiveReserved()));
+        buckets.put(Endpoint.OLLAMA_EMBEDDING, new Bucket(g.getOllamaEmbeddingConcurrency(), 0, g.getInteractiveReserved()));
+        for (Priority p : Priority.values()) {
+            classStats.put(p, new ClassStats());
+        }
+        log.info("LLM 调度器已初始化: chat(concurrency={}, tpm={}), embedding(concurrency={}, tpm={}), ollama(concurrency={}), reserved={}",
+            g.getChatConcurrency(), g.getChatTokensPerMinute(), g.getEmbeddingConcurrency(), g.getEmbeddingTokensPerMinute(),
+            g.getOllamaEmbeddingConcurrency(), g.getInteractiveReserved());
+    }
+
+    /**
+     * 获取一个槽位（阻塞直到放行）
+     *
+     * @param estimatedTokens 预估消耗 token（计入速率桶；0 表示不计）
+     */
+    public Permit acquire(Endpoint endpoint, Priority priority, int estimatedTokens) throws InterruptedIOException {
+        Bucket bucket = buckets.get(endpoint);
+        long start = System.nanoTime();
+
+        bucket.lock.lock();
+        try {
+            bucket.waiting[priority.ordinal()]++;
+            try {
+                long delay;
+                while ((delay = bucket.admissionDelayNanos(priority, estimatedTokens)) > 0) {
+                    bucket.changed.awaitNanos(Math.min(delay, MAX_PARK_NANOS));
+                }
+            } finally {
+                bucket.waiting[priority.ordinal()]--;
+            }
+            bucket.inFlight++;
+            bucket.consumeTokens(estimatedTokens);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待 LLM 调度槽位时被中断");
+        } finally {
+            bucket.lock.unlock();
+        }
+
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        classStats.get(priority).record(waitedMs);
+        if (waitedMs > 1000) {
+            log.info("LLM 调用排队较久: endpoint={}, priority={}, waited={}ms", endpoint, priority, waitedMs);
+        }
+
+        return () -> {
+            bucket.lock.lock();
+            try {
+                bucket.inFlight--;
+                bucket.changed.signalAll();
+            } finally {
+                bucket.lock.unlock();
+            }
+        };
+    }
+
+    /**
+     * 收到限流响应：让整个 endpoint 进入冷却，返回本次冷却时长（毫秒）
+     *
+     * @param retryAfter 响应头 Retry-After（秒数或 HTTP 日期），可为空
+     * @param attempt    当前重试次数（从 0 开始）
+     */
+    public long onThrottled(Endpoint endpoint, String retryAfter, int attempt) {
+        LlmConfig.Governor g = llmConfig.getGovernor();
+        Long hinted = parseRetryAfterMillis(retryAfter);
+
+        long delayMs;
+        if (hinted != null) {
+            // 服务端给了明确时间：在其基础上加少量抖动，避免所有等待者同时涌入
+            delayMs = hinted + ThreadLocalRandom.current().nextLong(Math.max(1, hinted / 5 + 1));
+        } else {
+            // 指数退避 + 抖动（取 [delay/2, delay]）
+            long exp = Math.min(g.getBackoffMaxMs(), g.getBackoffBaseMs() << Math.min(attempt, 16));
+            delayMs = exp / 2 + ThreadLocalRandom.current().nextLong(exp / 2 + 1);
+        }
+        delayMs = Math.min(delayMs, g.getBackoffMaxMs());
+
+        Bucket bucket = buckets.get(endpoint);
+        bucket.lock.lock();
+        try {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            if (until - bucket.cooldownUntil > 0) {
+                bucket.cooldownUntil = until;
+            }
+            bucket.throttled.increment();
+            bucket.changed.signalAll();
+        } finally {
+            bucket.lock.unlock();
+        }
+        return delayMs;
+    }
+
+    public int getMaxRetries() {
+        return Math.max(0, llmConfig.getGovernor().getMaxRetries());
+    }
+
+    /**
+     * 调度指标快照（Studio 展示）
+     */
+    public GovernorStats snapshot() {
+        GovernorStats stats = new GovernorStats();
+        Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+        for (Map.Entry<Endpoint, Bucket> e : buckets.entrySet()) {
+            Bucket b = e.getValue();
+            EndpointStats es = new EndpointStats();
+            b.lock.lock();
+            try {
+                es.setMaxConcurrency(b.maxConcurrency);
+                es.setInFlight(b.inFlight);
+                int waiting = 0;
+                for (int w : b.waiting) waiting += w;
+                es.setWaiting(waiting);
+                es.setTokensPerMinute(b.tokensPerMinute);
+                long remain = b.cooldownUntil - System.nanoTime();
+                es.setCooldownRemainingMs(remain > 0 ? TimeUnit.NANOSECONDS.toMillis(remain) : 0);
+            } finally {
+                b.lock.unlock();
+            }
+            es.setThrottledResponses(b.throttled.sum());
+            endpoints.put(e.getKey().name(), es);
+        }
+        stats.setEndpoints(endpoints);
+
+        Map<String, WaitStats> classes = new LinkedHashMap<>();
+        for (Map.Entry<Priority, ClassStats> e : classStats.entrySet()) {
+            classes.put(e.getKey().name(), e.getValue().toWaitStats());
+        }
+        stats.setPriorities(classes);
+        return stats;
+    }
+
+    static Long parseRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return null;
+        }
+        String v = retryAfter.trim();
+        try {
+            return Math.max(0, (long) (Double.parseDouble(v) * 1000));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+
+    /**
+     * 单个 endpoint 的配额（所有字段受 lock 保护）
+     */
+    private static class Bucket {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        private final int maxConcurrency;
+        private final int backgroundConcurrency;
+        private final int tokensPerMinute;
+        private final int[] waiting = new int[Priority.values().length];
+        private final LongAdder throttled = new LongAdder();
+
+        private int inFlight;
+        private long cooldownUntil = System.nanoTime();
+
+        // token 桶：容量 = 每分钟配额，按纳秒连续补充
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        private Bucket(int maxConcurrency, int tokensPerMinute, int interactiveReserved) {
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.backgroundConcurrency = Math.max(1, this.maxConcurrency - Math.max(0, interactiveReserved));
+            this.tokensPerMinute = Math.max(0, tokensPerMinute);
+            this.tokens = this.tokensPerMinute;
+        }
+
+        /**
+         * 返回还需等待的纳秒数；0 表示可以立即放行
+         */
+        private long admissionDelayNanos(Priority priority, int estimatedTokens) {
+            long now = System.nanoTime();
+
+            long cooldown = cooldownUntil - now;
+            if (cooldown > 0) {
+                return cooldown;
+            }
+
+            for (int i = 0; i < priority.ordinal(); i++) {
+                if (waiting[i] > 0) {
+                    return MAX_PARK_NANOS;
+                }
+            }
+
+            int limit = priority == Priority.INTERACTIVE ? maxConcurrency : backgroundConcurrency;
+            if (inFlight >= limit) {
+                return MAX_PARK_NANOS;
+            }
+
+            if (tokensPerMinute > 0 && estimatedTokens > 0) {
+                refill(now);
+                // 单次请求超过桶容量时，按“桶满即放行”处理，避免永远等不到
+                double need = Math.min(estimatedTokens, tokensPerMinute);
+                if (tokens < need) {
+                    double perNano = tokensPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+                    return Math.max(1, (long) ((need - tokens) / perNano));
+                }
+            }
+            return 0;
+        }
+
+        private void consumeTokens(int estimatedTokens) {
+            if (tokensPerMinute > 0 && estimatedTokens > 0) {
+                tokens -= Math.min(estimatedTokens, tokensPerMinute);
+            }
+        }
+
+        private void refill(long now) {
+            double perNano = tokensPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            tokens = Math.min(tokensPerMinute, tokens + (now - lastRefill) * perNano);
+            lastRefill = now;
+        }
+    }
+
+    private static class ClassStats {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder totalWaitMs = new LongAdder();
+        private final AtomicLong maxWaitMs = new AtomicLong();
+        private final AtomicLong lastWaitMs = new AtomicLong();
+
+        private void record(long waitedMs) {
+            requests.increment();
+            totalWaitMs.add(waitedMs);
+            maxWaitMs.accumulateAndGet(waitedMs, Math::max);
+            lastWaitMs.set(waitedMs);
+        }
+
+        private WaitStats toWaitStats() {
+            WaitStats ws = new WaitStats();
+            long n = requests.sum();
+            ws.setRequests(n);
+            ws.setAvgWaitMs(n > 0 ? totalWaitMs.sum() / (double) n : 0.0);
+            ws.setMaxWaitMs(maxWaitMs.get());
+            ws.setLastWaitMs(lastWaitMs.get());
+            return ws;
+        }
+    }
+
+    @Data
+    public static class GovernorStats {
+        private Map<String, EndpointStats> endpoints;
+        private Map<String, WaitStats> priorities;
+    }
+
+    @Data
+    public static class EndpointStats {
+        private int maxConcurrency;
+        private int inFlight;
+        private int waiting;
+        private int tokensPerMinute;
+        private long cooldownRemainingMs;
+        private long throttledResponses;
+    }
+
+    @Data
+    public static class WaitStats {
+        private long requests;
+        private double avgWaitMs;
+        private long maxWaitMs;
+        private long lastWaitMs;
+    }
+}
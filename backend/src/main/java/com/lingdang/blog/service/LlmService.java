@@ -1,16 +1,24 @@
 package com.lingdang.blog.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.lingdang.blog.config.LlmConfig;
 import com.lingdang.blog.dto.llm.*;
+import com.lingdang.blog.util.VectorUtils;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -20,32 +28,44 @@ import java.util.stream.Collectors;
 @Service
 public class LlmService {
     
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final String ENCODING_BASE64 = "base64";
+    private static final String ENCODING_FLOAT = "float";
+    
+    // 未指定 maxTokens 时按此估算回答长度（仅用于速率桶）
+    private static final int DEFAULT_COMPLETION_TOKENS = 1024;
     
     @Autowired
     private LlmConfig llmConfig;
     
+    @Autowired
+    private LlmGovernor llmGovernor;
+    
+    @Autowired
+    private LlmTransport llmTransport;
+
+    @Autowired
+    private TokenCounter tokenCounter;
+    
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private OkHttpClient httpClient;
+    private final ObjectReader embeddingReader = objectMapper.readerFor(EmbeddingResponse.class);
+    
+    // 上游确认不支持 base64 的 endpoint（进程内记忆，重启后重新探测）
+    private final Set<LlmGovernor.Endpoint> base64Unsupported = ConcurrentHashMap.newKeySet();
+    private final EncodingCounters base64Stats = new EncodingCounters();
+    private final EncodingCounters floatStats = new EncodingCounters();
     
     /**
-     * 初始化 HTTP 客户端
+     * 生成单个文本的 embedding
      */
-    private OkHttpClient getHttpClient() {
-        if (httpClient == null) {
-            httpClient = new OkHttpClient.Builder()
-                .connectTimeout(llmConfig.getConnectTimeout(), TimeUnit.MILLISECONDS)
-                .readTimeout(llmConfig.getReadTimeout(), TimeUnit.MILLISECONDS)
-                .build();
-        }
-        return httpClient;
+    public float[] generateEmbedding(String text) throws IOException {
+        return generateEmbedding(text, LlmGovernor.Priority.INTERACTIVE);
     }
     
     /**
-     * 生成单个文本的 embedding
+     * 生成单个文本的 embedding（指定调度优先级）
      */
-    public float[] generateEmbedding(String text) throws IOException {
-        List<float[]> embeddings = generateEmbeddings(List.of(text));
+    public float[] generateEmbedding(String text, LlmGovernor.Priority priority) throws IOException {
+        List<float[]> embeddings = generateEmbeddings(List.of(text), priority);
         return embeddings.isEmpty() ? null : embeddings.get(0);
     }
     
@@ -53,92 +73,108 @@ public class LlmService {
      * 批量生成 embeddings
      */
     public List<float[]> generateEmbeddings(List<String> texts) throws IOException {
-        // 判断是否使用 Ollama
-        if (llmConfig.isUseOllamaEmbedding()) {
-            return generateEmbeddingsWithOllama(texts);
+        return generateEmbeddings(texts, LlmGovernor.Priority.INTERACTIVE);
+    }
+    
+    /**
+     * 批量生成 embeddings（指定调度优先级）
+     */
+    public List<float[]> generateEmbeddings(List<String> texts, LlmGovernor.Priority priority) throws IOException {
+        // 判断是否使用 Ollama（Ollama 使用 OpenAI 兼容 API，可以直接调用 /v1/embeddings）
+        LlmGovernor.Endpoint endpoint = llmConfig.isUseOllamaEmbedding()
+            ? LlmGovernor.Endpoint.OLLAMA_EMBEDDING
+            : LlmGovernor.Endpoint.OPENAI_EMBEDDING;
+        if (endpoint == LlmGovernor.Endpoint.OLLAMA_EMBEDDING) {
+            log.info("使用 Ollama 生成 embeddings: {} 个文本", texts.size());
         }
         
-        // 使用常规 OpenAI 协议
+        if (!useBase64(endpoint)) {
+            return requestEmbeddings(endpoint, texts, priority, ENCODING_FLOAT);
+        }
+        try {
+            return requestEmbeddings(endpoint, texts, priority, ENCODING_BASE64);
+        } catch (EncodingRejectedException e) {
+            // 只有 float 重试成功才认定是编码不被支持（避免把其它 4xx 误判为不支持 base64）
+            List<float[]> result = requestEmbeddings(endpoint, texts, priority, ENCODING_FLOAT);
+            base64Unsupported.add(endpoint);
+            log.warn("Embedding 接口不支持 base64 编码，已回退为 float: endpoint={}, error={}", endpoint, e.getMessage());
+            return result;
+        }
+    }
+    
+    private boolean useBase64(LlmGovernor.Endpoint endpoint) {
+        return ENCODING_BASE64.equalsIgnoreCase(llmConfig.getEmbeddingEncoding()) && !base64Unsupported.contains(endpoint);
+    }
+    
+    private List<float[]> requestEmbeddings(LlmGovernor.Endpoint endpoint, List<String> texts,
+                                            LlmGovernor.Priority priority, String encoding) throws IOException {
         EmbeddingRequest request = new EmbeddingRequest(
             llmConfig.getEmbeddingModel(),
             texts,
-            "float"
+            encoding
         );
         
         String requestBody = objectMapper.writeValueAsString(request);
         
-        Request httpRequest = new Request.Builder()
-            .url(llmConfig.getBaseUrl() + "/embeddings")
-            .header("Authorization", "Bearer " + llmConfig.getApiKey())
-            .header("Content-Type", "application/json")
-            .post(RequestBody.create(requestBody, JSON))
-            .build();
+        Request httpRequest = llmTransport.post(endpoint, requestBody);
+        boolean ollama = endpoint == LlmGovernor.Endpoint.OLLAMA_EMBEDDING;
         
-        try (Response response = getHttpClient().newCall(httpRequest).execute()) {
+        // Ollama 为本地模型，不计 token 速率
+        return execute(endpoint, priority, ollama ? 0 : estimateTokens(texts), httpRequest, response -> {
             if (!response.isSuccessful()) {
                 String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                throw new IOException("Embedding API failed: " + response.code() + " - " + errorBody);
+                int code = response.code();
+                if (ENCODING_BASE64.equals(encoding) && (code == 400 || code == 415 || code == 422)) {
+                    throw new EncodingRejectedException(code + " - " + errorBody);
+                }
+                if (ollama) {
+                    log.error("Ollama Embedding API 失败: {} - {}", code, errorBody);
+                    throw new IOException("Ollama Embedding API failed: " + code + " - " + errorBody);
+                }
+                throw new IOException("Embedding API failed: " + code + " - " + errorBody);
             }
             
-            String responseBody = response.body().string();
-            EmbeddingResponse embeddingResponse = objectMapper.readValue(responseBody, EmbeddingResponse.class);
+            byte[] payload = response.body().bytes();
+            EmbeddingVectorDeserializer.EncodingCounter counter = new EmbeddingVectorDeserializer.EncodingCounter();
+            long start = System.nanoTime();
+            EmbeddingResponse embeddingResponse = embeddingReader
+                .withAttribute(EmbeddingVectorDeserializer.COUNTER_ATTRIBUTE, counter)
+                .readValue(payload);
+            long decodeNanos = System.nanoTime() - start;
             
-            return embeddingResponse.getData().stream()
-                .map(data -> {
-                    List<Float> embedding = data.getEmbedding();
-                    float[] result = new float[embedding.size()];
-                    for (int i = 0; i < embedding.size(); i++) {
-                        result[i] = embedding.get(i);
-                    }
-                    return result;
-                })
-                .collect(Collectors.toList());
-        }
+            boolean base64Decoded = counter.getBase64Vectors() > 0;
+            (base64Decoded ? base64Stats : floatStats).record(payload.length, counter.getBase64Vectors() + counter.getFloatVectors(), decodeNanos);
+            
+            // 请求了 base64 却返回了数组：上游忽略了该参数，后续直接按 float 请求
+            if (ENCODING_BASE64.equals(encoding) && !base64Decoded && counter.getFloatVectors() > 0
+                && base64Unsupported.add(endpoint)) {
+                log.info("Embedding 接口忽略了 base64 编码参数，后续使用 float: endpoint={}", endpoint);
+            }
+            return toFloatArrays(embeddingResponse);
+        });
     }
     
     /**
-     * 使用 Ollama 生成 embeddings（兼容 OpenAI 格式）
+     * 统一归一化为单位向量：chunk 索引使用 dot_product 相似度，要求写入向量为单位长度
      */
-    private List<float[]> generateEmbeddingsWithOllama(List<String> texts) throws IOException {
-        log.info("使用 Ollama 生成 embeddings: {} 个文本", texts.size());
-        
-        // Ollama 使用 OpenAI 兼容 API，可以直接调用 /v1/embeddings
-        EmbeddingRequest request = new EmbeddingRequest(
-            llmConfig.getEmbeddingModel(),
-            texts,
-            "float"
-        );
-        
-        String requestBody = objectMapper.writeValueAsString(request);
-        
-        Request httpRequest = new Request.Builder()
-            .url(llmConfig.getOllamaBaseUrl() + "/v1/embeddings")
-            .header("Content-Type", "application/json")
-            // Ollama 不需要 Authorization
-            .post(RequestBody.create(requestBody, JSON))
-            .build();
-        
-        try (Response response = getHttpClient().newCall(httpRequest).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                log.error("Ollama Embedding API 失败: {} - {}", response.code(), errorBody);
-                throw new IOException("Ollama Embedding API failed: " + response.code() + " - " + errorBody);
-            }
-            
-            String responseBody = response.body().string();
-            EmbeddingResponse embeddingResponse = objectMapper.readValue(responseBody, EmbeddingResponse.class);
-            
-            return embeddingResponse.getData().stream()
-                .map(data -> {
-                    List<Float> embedding = data.getEmbedding();
-                    float[] result = new float[embedding.size()];
-                    for (int i = 0; i < embedding.size(); i++) {
-                        result[i] = embedding.get(i);
-                    }
-                    return result;
-                })
-                .collect(Collectors.toList());
-        }
+    private List<float[]> toFloatArrays(EmbeddingResponse embeddingResponse) {
+        return embeddingResponse.getData().stream()
+            .map(data -> VectorUtils.normalize(data.getEmbedding()))
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Embedding 传输指标（按实际解码的编码分别统计）
+     */
+    public EmbeddingTransferStats getEmbeddingStats() {
+        EmbeddingTransferStats stats = new EmbeddingTransferStats();
+        stats.setConfiguredEncoding(llmConfig.getEmbeddingEncoding());
+        stats.setBase64UnsupportedEndpoints(base64Unsupported.stream().map(Enum::name).sorted().collect(Collectors.toList()));
+        Map<String, EmbeddingModeStats> modes = new LinkedHashMap<>();
+        modes.put(ENCODING_BASE64, base64Stats.snapshot());
+        modes.put(ENCODING_FLOAT, floatStats.snapshot());
+        stats.setModes(modes);
+        return stats;
     }
     
     /**
@@ -152,43 +188,35 @@ public class LlmService {
      * Chat Completion（带 maxTokens）
      */
     public String chatCompletion(List<ChatCompletionRequest.ChatMessage> messages, Integer maxTokens) throws IOException {
-        ChatCompletionRequest request = new ChatCompletionRequest(
-            llmConfig.getChatModel(),
-            messages,
-            0.7,
-            maxTokens
-        );
-        
-        String requestBody = objectMapper.writeValueAsString(request);
-        
-        Request httpRequest = new Request.Builder()
-            .url(llmConfig.getBaseUrl() + "/chat/completions")
-            .header("Authorization", "Bearer " + llmConfig.getApiKey())
-            .header("Content-Type", "application/json")
-            .post(RequestBody.create(requestBody, JSON))
-            .build();
+        return chatCompletion(messages, maxTokens, LlmGovernor.Priority.INTERACTIVE);
+    }
+    
+    /**
+     * Chat Completion（带 maxTokens，指定调度优先级）
+     */
+    public String chatCompletion(List<ChatCompletionRequest.ChatMessage> messages, Integer maxTokens,
+                                 LlmGovernor.Priority priority) throws IOException {
+        ChatCompletionResponse chatResponse = chatCompletionWithUsage(messages, maxTokens, priority);
         
-        try (Response response = getHttpClient().newCall(httpRequest).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "Unknown error";
-                throw new IOException("ChatCompletion API failed: " + response.code() + " - " + errorBody);
-            }
-            
-            String responseBody = response.body().string();
-            ChatCompletionResponse chatResponse = objectMapper.readValue(responseBody, ChatCompletionResponse.class);
-            
-            if (chatResponse.getChoices() == null || chatResponse.getChoices().isEmpty()) {
-                throw new IOException("No choices in ChatCompletion response");
-            }
-            
-            return chatResponse.getChoices().get(0).getMessage().getContent();
+        if (chatResponse.getChoices() == null || chatResponse.getChoices().isEmpty()) {
+            throw new IOException("No choices in ChatCompletion response");
         }
+        
+        return chatResponse.getChoices().get(0).getMessage().getContent();
     }
     
     /**
      * Chat Completion（返回完整响应，包含 usage）
      */
     public ChatCompletionResponse chatCompletionWithUsage(List<ChatCompletionRequest.ChatMessage> messages, Integer maxTokens) throws IOException {
+        return chatCompletionWithUsage(messages, maxTokens, LlmGovernor.Priority.INTERACTIVE);
+    }
+    
+    /**
+     * Chat Completion（返回完整响应，包含 usage；指定调度优先级）
+     */
+    public ChatCompletionResponse chatCompletionWithUsage(List<ChatCompletionRequest.ChatMessage> messages, Integer maxTokens,
+                                                          LlmGovernor.Priority priority) throws IOException {
         ChatCompletionRequest request = new ChatCompletionRequest(
             llmConfig.getChatModel(),
             messages,
@@ -198,14 +226,9 @@ public class LlmService {
         
         String requestBody = objectMapper.writeValueAsString(request);
         
-        Request httpRequest = new Request.Builder()
-            .url(llmConfig.getBaseUrl() + "/chat/completions")
-            .header("Authorization", "Bearer " + llmConfig.getApiKey())
-            .header("Content-Type", "application/json")
-            .post(RequestBody.create(requestBody, JSON))
-            .build();
+        Request httpRequest = llmTransport.post(LlmGovernor.Endpoint.OPENAI_CHAT, requestBody);
         
-        try (Response response = getHttpClient().newCall(httpRequest).execute()) {
+        return execute(LlmGovernor.Endpoint.OPENAI_CHAT, priority, estimateChatTokens(messages, maxTokens), httpRequest, response -> {
             if (!response.isSuccessful()) {
                 String errorBody = response.body() != null ? response.body().string() : "Unknown error";
                 throw new IOException("ChatCompletion API failed: " + response.code() + " - " + errorBody);
@@ -213,13 +236,13 @@ public class LlmService {
             
             String responseBody = response.body().string();
             return objectMapper.readValue(responseBody, ChatCompletionResponse.class);
-        }
+        });
     }
     
     /**
      * Chat Completion 流式输出
      */
-    public void chatCompletionStream(List<ChatCompletionRequest.ChatMessage> messages, Integer maxTokens, StreamCallback callback) throws IOException {
+    public StreamResult chatCompletionStream(List<ChatCompletionRequest.ChatMessage> messages, Integer maxTokens, StreamCallback callback) throws IOException {
         log.info("开始 LLM 流式请求: model={}, messages_count={}, max_tokens={}", 
             llmConfig.getChatModel(), messages.size(), maxTokens);
         
@@ -241,68 +264,120 @@ public class LlmService {
         String requestBody = objectMapper.writeValueAsString(request).replace("}", ",\"stream\":true}");
         log.debug("LLM 请求体: {}", requestBody.length() > 500 ? requestBody.substring(0, 500) + "..." : requestBody);
         
-        Request httpRequest = new Request.Builder()
-            .url(llmConfig.getBaseUrl() + "/chat/completions")
-            .header("Authorization", "Bearer " + llmConfig.getApiKey())
-            .header("Content-Type", "application/json")
-            .post(RequestBody.create(requestBody, JSON))
-            .build();
+        Request httpRequest = llmTransport.post(LlmGovernor.Endpoint.OPENAI_CHAT, requestBody);
         
-        try (Response response = getHttpClient().newCall(httpRequest).execute()) {
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "Unknown";
-                log.error("LLM 流式请求失败: code={}, error={}", response.code(), errorBody);
-                throw new IOException("LLM 流式请求失败: " + response.code() + " - " + errorBody);
-            }
-            
-            log.info("LLM 流式响应开始接收");
-            
-            // 逐行读取流式响应
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(response.body().byteStream())
-            );
-            
-            int chunkCount = 0;
-            int emptyCount = 0;
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("data: ")) {
-                    String data = line.substring(6).trim();
-                    if ("[DONE]".equals(data)) {
-                        log.info("LLM 流式响应完成: 共接收 {} 个有效 chunks, {} 个空 chunks", chunkCount, emptyCount);
-                        break;
-                    }
-                    try {
-                        var chunk = objectMapper.readTree(data);
-                        var choices = chunk.get("choices");
-                        if (choices != null && choices.size() > 0) {
-                            var delta = choices.get(0).get("delta");
-                            if (delta != null && delta.has("content")) {
-                                String content = delta.get("content").asText();
-                                
-                                // 过滤空内容，不发送给前端
-                                if (content != null && !content.isEmpty()) {
-                                    chunkCount++;
-                                    if (chunkCount <= 5 || chunkCount % 50 == 0) {
-                                        log.debug("接收 LLM chunk #{}: '{}'", chunkCount, content);
-                                    }
-                                    callback.onChunk(content);
-                                } else {
-                                    emptyCount++;
-                                }
-                            }
-                        }
-                    } catch (Exception e) {
-                        log.warn("解析流式响应失败: data={}", data, e);
-                    }
-                }
-            }
+        try {
+            // 流式读取期间一直占用槽位：并发上限约束的是“同时在途”的请求
+            return execute(LlmGovernor.Endpoint.OPENAI_CHAT, LlmGovernor.Priority.INTERACTIVE,
+                estimateChatTokens(messages, maxTokens), httpRequest, response -> readStream(response, callback));
         } catch (IOException e) {
             log.error("LLM 流式请求异常", e);
             throw e;
         }
     }
     
+    private StreamResult readStream(Response response, StreamCallback callback) throws IOException {
+        if (!response.isSuccessful()) {
+            String errorBody = response.body() != null ? response.body().string() : "Unknown";
+            log.error("LLM 流式请求失败: code={}, error={}", response.code(), errorBody);
+            throw new IOException("LLM 流式请求失败: " + response.code() + " - " + errorBody);
+        }
+        
+        log.info("LLM 流式响应开始接收");
+        
+        // 逐行解码 SSE（按 UTF-8 字节解析，不依赖平台默认字符集）
+        StreamResult result = new ChatStreamDecoder(response.body().source()).decode(callback);
+        log.info("LLM 流式响应完成: 共接收 {} 个有效 chunks, {} 个空 chunks, finish_reason={}, usage={}/{}",
+            result.getChunkCount(), result.getEmptyCount(), result.getFinishReason(),
+            result.getPromptTokens(), result.getCompletionTokens());
+        return result;
+    }
+    
+    /**
+     * 经调度器执行一次 HTTP 调用：排队拿槽位 → 调用 → 429/503 时冷却整个 endpoint 后重试
+     */
+    private <T> T execute(LlmGovernor.Endpoint endpoint, LlmGovernor.Priority priority, int estimatedTokens,
+                          Request request, ResponseHandler<T> handler) throws IOException {
+        int maxRetries = llmGovernor.getMaxRetries();
+        for (int attempt = 0; ; attempt++) {
+            LlmGovernor.Permit permit = llmGovernor.acquire(endpoint, priority, estimatedTokens);
+            try (Response response = llmTransport.newCall(endpoint, request).execute()) {
+                int code = response.code();
+                if ((code == 429 || code == 503) && attempt < maxRetries) {
+                    long delayMs = llmGovernor.onThrottled(endpoint, response.header("Retry-After"), attempt);
+                    log.warn("LLM 调用被限流: endpoint={}, priority={}, code={}, attempt={}, cooldown={}ms",
+                        endpoint, priority, code, attempt + 1, delayMs);
+                    continue;
+                }
+                return handler.handle(response);
+            } finally {
+                permit.release();
+            }
+        }
+    }
+    
+    /**
+     * 估算 token（与 ChunkService 口径一致，见 TokenCounter）
+     */
+    private int estimateTokens(List<String> texts) {
+        long tokens = 0;
+        for (String t : texts) {
+            tokens += tokenCounter.count(t);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, tokens);
+    }
+    
+    private int estimateChatTokens(List<ChatCompletionRequest.ChatMessage> messages, Integer maxTokens) {
+        long tokens = 0;
+        for (ChatCompletionRequest.ChatMessage m : messages) {
+            tokens += tokenCounter.count(m.getContent());
+        }
+        long completion = maxTokens != null ? maxTokens : DEFAULT_COMPLETION_TOKENS;
+        return (int) Math.min(Integer.MAX_VALUE, tokens + completion);
+    }
+    
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+    
+    /**
+     * 上游拒绝 base64 编码参数
+     */
+    private static class EncodingRejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private EncodingRejectedException(String message) {
+            super(message);
+        }
+    }
+    
+    private static class EncodingCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder vectors = new LongAdder();
+        private final LongAdder payloadBytes = new LongAdder();
+        private final LongAdder decodeNanos = new LongAdder();
+        
+        private void record(long bytes, int vectorCount, long nanos) {
+            requests.increment();
+            vectors.add(vectorCount);
+            payloadBytes.add(bytes);
+            decodeNanos.add(nanos);
+        }
+        
+        private EmbeddingModeStats snapshot() {
+            EmbeddingModeStats s = new EmbeddingModeStats();
+            long n = vectors.sum();
+            s.setRequests(requests.sum());
+            s.setVectors(n);
+            s.setPayloadBytes(payloadBytes.sum());
+            s.setDecodeMs(TimeUnit.NANOSECONDS.toMillis(decodeNanos.sum()));
+            s.setAvgBytesPerVector(n > 0 ? payloadBytes.sum() / (double) n : 0.0);
+            s.setAvgDecodeMicrosPerVector(n > 0 ? decodeNanos.sum() / 1000.0 / n : 0.0);
+            return s;
+        }
+    }
+    
     /**
      * 流式回调接口
      */
@@ -310,4 +385,35 @@ public class LlmService {
     public interface StreamCallback {
         void onChunk(String chunk);
     }
+    
+    @Data
+    public static class EmbeddingTransferStats {
+        private String configuredEncoding;
+        private List<String> base64UnsupportedEndpoints;
+        private Map<String, EmbeddingModeStats> modes;
+    }
+    
+    @Data
+    public static class EmbeddingModeStats {
+        private long requests;
+        private long vectors;
+        private long payloadBytes;
+        private long decodeMs;
+        private double avgBytesPerVector;
+        private double avgDecodeMicrosPerVector;
+    }
+    
+    /**
+     * 流式调用结果（usage / finish_reason 仅在上游返回时才有值）
+     */
+    @Data
+    public static class StreamResult {
+        private int chunkCount;
+        private int emptyCount;
+        private boolean done;
+        private String finishReason;
+        private Integer promptTokens;
+        private Integer completionTokens;
+        private Integer totalTokens;
+    }
 }
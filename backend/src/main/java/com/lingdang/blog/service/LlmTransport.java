@@ -0,0 +1,339 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.config.LlmConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.*;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LLM 出站传输层
+ *
+ * 每个上游（base-url / ollama-base-url）一个独立的 OkHttpClient：
+ * - 独立 ConnectionPool / Dispatcher，互不抢占连接
+ * - 优先 HTTP/2（ALPN 协商，不支持时自动回落 HTTP/1.1）
+ * - URL 与 Authorization 头在启动时一次性构建
+ * - 启动预热 + 空闲保活，避免首个请求承担 TLS 握手
+ */
+@Slf4j
+@Service
+public class LlmTransport {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    @Autowired
+    private LlmConfig llmConfig;
+
+    private Upstream openai;
+    private Upstream ollama;
+
+    private String authorization;
+    private HttpUrl chatCompletionsUrl;
+    private HttpUrl embeddingsUrl;
+    private HttpUrl ollamaEmbeddingsUrl;
+
+    @PostConstruct
+    public void init() {
+        LlmConfig.Transport t = llmConfig.getTransport();
+        openai = new Upstream("openai", llmConfig.getBaseUrl() + "/models", buildClient(t, t.getMaxIdleConnections()));
+        ollama = new Upstream("ollama", llmConfig.getOllamaBaseUrl() + "/api/version", buildClient(t, t.getOllamaMaxIdleConnections()));
+
+        authorization = "Bearer " + llmConfig.getApiKey();
+        chatCompletionsUrl = HttpUrl.get(llmConfig.getBaseUrl() + "/chat/completions");
+        embeddingsUrl = HttpUrl.get(llmConfig.getBaseUrl() + "/embeddings");
+        ollamaEmbeddingsUrl = HttpUrl.get(llmConfig.getOllamaBaseUrl() + "/v1/embeddings");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Upstream u : List.of(openai, ollama)) {
+            u.client.dispatcher().executorService().shutdown();
+            u.client.connectionPool().evictAll();
+        }
+    }
+
+    /**
+     * 构造 POST JSON 请求（URL / 鉴权头已预先构建）
+     */
+    public Request post(LlmGovernor.Endpoint endpoint, String json) {
+        Request.Builder builder = new Request.Builder()
+            .header("Content-Type", "application/json")
+            .post(RequestBody.create(json, JSON));
+        switch (endpoint) {
+            case OPENAI_CHAT -> builder.url(chatCompletionsUrl).header("Authorization", authorization);
+            case OPENAI_EMBEDDING -> builder.url(embeddingsUrl).header("Authorization", authorization);
+            // Ollama 不需要 Authorization
+            case OLLAMA_EMBEDDING -> builder.url(ollamaEmbeddingsUrl);
+        }
+        return builder.build();
+    }
+
+    public Call newCall(LlmGovernor.Endpoint endpoint, Request request) {
+        return upstream(endpoint).client.newCall(request);
+    }
+
+    /**
+     * 启动预热：提前完成 DNS / TCP / TLS，首个在线问答不再承担握手
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        if (!llmConfig.getTransport().isPrewarm()) {
+            return;
+        }
+        ping(openai);
+        if (llmConfig.isUseOllamaEmbedding()) {
+            ping(ollama);
+        }
+    }
+
+    /**
+     * 空闲保活：长时间没有调用时发一次轻量请求，让池中连接不被两端回收
+     */
+    @Scheduled(fixedDelayString = "${llm.transport.keep-warm-interval-ms:60000}", initialDelay = 60000)
+    public void keepWarm() {
+        if (!llmConfig.getTransport().isPrewarm()) {
+            return;
+        }
+        long idleThreshold = TimeUnit.MILLISECONDS.toNanos(llmConfig.getTransport().getKeepWarmIntervalMs());
+        if (openai.idleNanos() >= idleThreshold) {
+            ping(openai);
+        }
+        if (llmConfig.isUseOllamaEmbedding() && ollama.idleNanos() >= idleThreshold) {
+            ping(ollama);
+        }
+    }
+
+    /**
+     * 传输层指标快照（Studio 展示）
+     */
+    public Map<String, TransportStats> snapshot() {
+        Map<String, TransportStats> result = new LinkedHashMap<>();
+        result.put(openai.name, openai.toStats());
+        result.put(ollama.name, ollama.toStats());
+        return result;
+    }
+
+    private Upstream upstream(LlmGovernor.Endpoint endpoint) {
+        return endpoint == LlmGovernor.Endpoint.OLLAMA_EMBEDDING ? ollama : openai;
+    }
+
+    private void ping(Upstream upstream) {
+        Request.Builder builder = new Request.Builder().url(upstream.pingUrl).get();
+        if (upstream == openai) {
+            builder.header("Authorization", authorization);
+        }
+        upstream.client.newCall(builder.build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                log.debug("LLM 连接预热失败: upstream={}, error={}", upstream.name, e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                // 只关心连接本身，状态码无所谓（/models 未授权也能完成握手）
+                response.close();
+                log.debug("LLM 连接预热完成: upstream={}, protocol={}", upstream.name, response.protocol());
+            }
+        });
+    }
+
+    private OkHttpClient buildClient(LlmConfig.Transport t, int maxIdleConnections) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(t.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(t.getMaxRequestsPerHost());
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+            .connectTimeout(llmConfig.getConnectTimeout(), TimeUnit.MILLISECONDS)
+            .readTimeout(llmConfig.getReadTimeout(), TimeUnit.MILLISECONDS)
+            .connectionPool(new ConnectionPool(maxIdleConnections, t.getKeepAliveMs(), TimeUnit.MILLISECONDS))
+            .dispatcher(dispatcher)
+            .retryOnConnectionFailure(true);
+        if (t.isHttp2()) {
+            builder.protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            builder.protocols(List.of(Protocol.HTTP_1_1));
+        }
+        if (t.isRequestGzip()) {
+            builder.addInterceptor(new GzipRequestInterceptor(t.getGzipMinBytes()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 单个上游：client + 指标
+     */
+    private static class Upstream {
+        private final String name;
+        private final String pingUrl;
+        private final OkHttpClient client;
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder connectionsAcquired = new LongAdder();
+        private final LongAdder newConnections = new LongAdder();
+        private final LongAdder tlsHandshakes = new LongAdder();
+        private final LongAdder http2Connections = new LongAdder();
+        private final LongAdder connectFailures = new LongAdder();
+        private final LongAdder totalConnectMs = new LongAdder();
+        private final AtomicLong lastCallAt = new AtomicLong(System.nanoTime());
+
+        private Upstream(String name, String pingUrl, OkHttpClient base) {
+            this.name = name;
+            this.pingUrl = pingUrl;
+            this.client = base.newBuilder()
+                .eventListenerFactory(call -> new MetricsListener(this))
+                .build();
+        }
+
+        private long idleNanos() {
+            return System.nanoTime() - lastCallAt.get();
+        }
+
+        private TransportStats toStats() {
+            TransportStats s = new TransportStats();
+            long acquired = connectionsAcquired.sum();
+            long created = newConnections.sum();
+            s.setCalls(calls.sum());
+            s.setConnectionsAcquired(acquired);
+            s.setNewConnections(created);
+            s.setTlsHandshakes(tlsHandshakes.sum());
+            s.setHttp2Connections(http2Connections.sum());
+            s.setConnectFailures(connectFailures.sum());
+            s.setAvgConnectMs(created > 0 ? totalConnectMs.sum() / (double) created : 0.0);
+            s.setReuseRate(acquired > 0 ? Math.max(0.0, 1.0 - created / (double) acquired) : 0.0);
+            s.setPooledConnections(client.connectionPool().connectionCount());
+            s.setIdleConnections(client.connectionPool().idleConnectionCount());
+            return s;
+        }
+    }
+
+    /**
+     * 每个 Call 一个实例（用于计算建连耗时）
+     */
+    private static class MetricsListener extends okhttp3.EventListener {
+        private final Upstream upstream;
+        private long connectStart;
+
+        private MetricsListener(Upstream upstream) {
+            this.upstream = upstream;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            upstream.calls.increment();
+            upstream.lastCallAt.set(System.nanoTime());
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            upstream.tlsHandshakes.increment();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            upstream.newConnections.increment();
+            upstream.totalConnectMs.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+            if (protocol == Protocol.HTTP_2) {
+                upstream.http2Connections.increment();
+            }
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+            upstream.connectFailures.increment();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            upstream.connectionsAcquired.increment();
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            upstream.lastCallAt.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * 请求体 gzip（仅对超过阈值的 body；需上游支持 Content-Encoding: gzip）
+     */
+    private static class GzipRequestInterceptor implements Interceptor {
+        private final long minBytes;
+
+        private GzipRequestInterceptor(long minBytes) {
+            this.minBytes = minBytes;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request original = chain.request();
+            RequestBody body = original.body();
+            if (body == null || original.header("Content-Encoding") != null || body.contentLength() < minBytes) {
+                return chain.proceed(original);
+            }
+            Request compressed = original.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(original.method(), gzip(body))
+                .build();
+            return chain.proceed(compressed);
+        }
+
+        private RequestBody gzip(RequestBody body) {
+            return new RequestBody() {
+                @Override
+                public MediaType contentType() {
+                    return body.contentType();
+                }
+
+                @Override
+                public long contentLength() {
+                    return -1;
+                }
+
+                @Override
+                public void writeTo(BufferedSink sink) throws IOException {
+                    try (BufferedSink gzipSink = Okio.buffer(new GzipSink(sink))) {
+                        body.writeTo(gzipSink);
+                    }
+                }
+            };
+        }
+    }
+
+    @Data
+    public static class TransportStats {
+        private long calls;
+        private long connectionsAcquired;
+        private long newConnections;
+        private long tlsHandshakes;
+        private long http2Connections;
+        private long connectFailures;
+        private double avgConnectMs;
+        private double reuseRate;
+        private int pooledConnections;
+        private int idleConnections;
+    }
+}
@@ -0,0 +1,1007 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.config.RetrievalEngineConfig;
+import com.lingdang.blog.config.VectorIndexConfig;
+import com.lingdang.blog.model.ArticleStatus;
+import com.lingdang.blog.model.ChunkDocument;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.cn.smart.SmartChineseAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.KnnVectorsReader;
+import org.apache.lucene.codecs.KnnVectorsWriter;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswScalarQuantizedVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 嵌入式 Lucene 检索引擎（BM25 + HNSW）
+ *
+ * 适合单机小规模部署，省掉一个 ES 进程：
+ * - 每次全量重建写入一个新的“代”（lucenePath/chunks_&lt;ts&gt;），CURRENT 文件记录在线的那一代，切换 = 原子替换 CURRENT
+ * - 文本字段用 smartcn 分词，BM25 打分；embedding 用 HNSW（int8_hnsw 时为标量量化）
+ * - 写入后 commit + 刷新 NRT searcher，返回时即可查到
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "rag.retrieval.engine", havingValue = RetrievalEngineConfig.ENGINE_LUCENE)
+public class LuceneRetrievalEngine implements RetrievalEngine {
+
+    private static final String NAME = "lucene_chunks";
+
+    private static final String INDEX_PREFIX = "chunks_";
+
+    private static final String CURRENT_FILE = "CURRENT";
+
+    /**
+     * 文章搜索折叠前最多取的 chunk 数
+     */
+    private static final int MAX_COLLAPSE_HITS = 10000;
+
+    private static final int SNIPPET_LENGTH = 120;
+
+    /**
+     * Lucene 默认向量维度上限为 1024，放宽以支持 1536/3072 维的 embedding 模型
+     */
+    private static final int MAX_VECTOR_DIMENSIONS = 4096;
+
+    @Autowired
+    private RetrievalEngineConfig retrievalEngineConfig;
+
+    @Autowired
+    private VectorIndexConfig vectorIndexConfig;
+
+    private final Analyzer analyzer = new SmartChineseAnalyzer();
+
+    private final QueryBuilder queryBuilder = new QueryBuilder(analyzer);
+
+    private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+
+    private Path root;
+
+    private volatile String current;
+
+    /**
+     * 一代索引：目录 + writer + NRT searcher
+     *
+     * 引用计数：generations 注册表持有 1 个引用，每次查询 / 写入期间各持有 1 个；
+     * 切换或删除时只从注册表移除并释放注册表的引用，最后一个使用者释放后才真正关闭。
+     */
+    private static class Generation {
+        final String name;
+        final FSDirectory directory;
+        final IndexWriter writer;
+        final SearcherManager searcherManager;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        Generation(String name, FSDirectory directory, IndexWriter writer) throws IOException {
+            this.name = name;
+            this.directory = directory;
+            this.writer = writer;
+            this.searcherManager = new SearcherManager(writer, null);
+        }
+
+        /**
+         * 已关闭（或正在关闭）时返回 false
+         */
+        boolean tryIncRef() {
+            for (;;) {
+                int r = refs.get();
+                if (r <= 0) {
+                    return false;
+                }
+                if (refs.compareAndSet(r, r + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void decRef() {
+            if (refs.decrementAndGet() == 0) {
+                try {
+                    searcherManager.close();
+                    writer.close();
+                    directory.close();
+                } catch (Exception e) {
+                    log.warn("关闭 Lucene 索引失败: {}", name, e);
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(retrievalEngineConfig.getLucenePath()).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+
+        Path currentFile = root.resolve(CURRENT_FILE);
+        if (Files.exists(currentFile)) {
+            String name = Files.readString(currentFile, StandardCharsets.UTF_8).trim();
+            if (isValidIndexName(name) && indexExists(name)) {
+                current = name;
+            } else {
+                log.warn("CURRENT 指向的 Lucene 索引不存在: {}", name);
+            }
+        }
+        log.info("Lucene 检索引擎: root={}, current={}", root, current);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        for (Generation gen : generations.values()) {
+            gen.decRef();
+        }
+        generations.clear();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public synchronized void ensureIndex() {
+        if (current != null) {
+            return;
+        }
+        try {
+            switchTo(createIndex());
+        } catch (Exception e) {
+            log.error("❌ 创建 Lucene 索引失败: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public IndexHealth health() {
+        IndexHealth health = new IndexHealth();
+        health.setIndexName(NAME);
+        // 进程内引擎，无连接问题
+        health.setEsConnected(true);
+
+        health.setIndexExists(current != null);
+        if (current == null) {
+            health.setHealthy(false);
+            health.setMessage("索引不存在，请执行全量重建索引");
+            return health;
+        }
+
+        try {
+            Generation gen = acquireCurrent();
+            if (gen == null) {
+                throw new IllegalStateException("索引不存在");
+            }
+            IndexSearcher searcher = gen.searcherManager.acquire();
+            try {
+                health.setDocumentCount(searcher.getIndexReader().numDocs());
+                health.setArticleCount(countArticles(searcher));
+            } finally {
+                gen.searcherManager.release(searcher);
+                gen.decRef();
+            }
+            health.setHealthy(true);
+            health.setMessage("索引健康");
+        } catch (Exception e) {
+            health.setHealthy(false);
+            health.setMessage("检查失败: " + e.getMessage());
+        }
+        return health;
+    }
+
+    private long countArticles(IndexSearcher searcher) throws IOException {
+        Set<Long> articleIds = new HashSet<>();
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            NumericDocValues values = leaf.reader().getNumericDocValues("articleId");
+            if (values == null) continue;
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    articleIds.add(values.longValue());
+                }
+            }
+        }
+        return articleIds.size();
+    }
+
+    // ==================== 查询 ====================
+
+    @Override
+    public long countDocuments() {
+        try {
+            Generation gen = acquireCurrent();
+            if (gen == null) {
+                return -1;
+            }
+            IndexSearcher searcher = gen.searcherManager.acquire();
+            try {
+                return searcher.getIndexReader().numDocs();
+            } finally {
+                gen.searcherManager.release(searcher);
+                gen.decRef();
+            }
+        } catch (Exception e) {
+            log.error("检查 Lucene 索引失败: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    @Override
+    public List<ScoredChunk> vectorSearch(float[] vector, int k, SearchFilter filter) throws IOException {
+        // filter 作为 HNSW 遍历时的预过滤：只在满足条件的文档中找 k 个最近邻
+        return search(new KnnFloatVectorQuery("embedding", vector, k, toFilterQuery(filter)), k);
+    }
+
+    @Override
+    public List<ScoredChunk> bm25Search(String query, int k, SearchFilter filter) throws IOException {
+        Query q = multiMatch(query, Map.of("title", 2f, "chunkText", 1f, "tags", 1.5f), BooleanClause.Occur.SHOULD, null);
+        if (q == null) {
+            return List.of();
+        }
+        Query filterQuery = toFilterQuery(filter);
+        if (filterQuery != null) {
+            q = new BooleanQuery.Builder()
+                .add(q, BooleanClause.Occur.MUST)
+                .add(filterQuery, BooleanClause.Occur.FILTER)
+                .build();
+        }
+        return search(q, k);
+    }
+
+    @Override
+    public List<ChunkDocument> findArticleChunks(Long articleId) throws IOException {
+        Generation gen = acquireCurrent();
+        if (gen == null) {
+            return List.of();
+        }
+        IndexSearcher searcher = gen.searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(LongPoint.newExactQuery("articleId", articleId), MAX_COLLAPSE_HITS);
+            return loadWithVectors(searcher, topDocs);
+        } finally {
+            gen.searcherManager.release(searcher);
+            gen.decRef();
+        }
+    }
+
+    @Override
+    public Map<String, float[]> findEmbeddings(Collection<String> chunkIds) throws IOException {
+        if (chunkIds.isEmpty()) {
+            return Map.of();
+        }
+        return findEmbeddings(acquireCurrent(), chunkIds);
+    }
+
+    @Override
+    public Map<String, float[]> findEmbeddings(String index, Collection<String> chunkIds) throws IOException {
+        if (index == null || chunkIds.isEmpty()) {
+            return Map.of();
+        }
+        return findEmbeddings(acquire(index), chunkIds);
+    }
+
+    /**
+     * gen 由调用方 acquire，这里负责释放
+     */
+    private Map<String, float[]> findEmbeddings(Generation gen, Collection<String> chunkIds) throws IOException {
+        if (gen == null) {
+            return Map.of();
+        }
+        List<BytesRef> terms = new ArrayList<>(chunkIds.size());
+        for (String chunkId : chunkIds) {
+            terms.add(new BytesRef(chunkId));
+        }
+        IndexSearcher searcher = gen.searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(new TermInSetQuery("chunkId", terms), terms.size());
+            Map<String, float[]> vectors = new HashMap<>();
+            for (ChunkDocument doc : loadWithVectors(searcher, topDocs)) {
+                if (doc.getEmbedding() != null) {
+                    vectors.put(doc.getChunkId(), doc.getEmbedding());
+                }
+            }
+            return vectors;
+        } finally {
+            gen.searcherManager.release(searcher);
+            gen.decRef();
+        }
+    }
+
+    /**
+     * 读取命中文档的字段与向量
+     */
+    private static List<ChunkDocument> loadWithVectors(IndexSearcher searcher, TopDocs topDocs) throws IOException {
+        int[] docIds = new int[topDocs.scoreDocs.length];
+        for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = topDocs.scoreDocs[i].doc;
+        }
+        // 按 docId 升序，才能在每个段内顺序 advance 向量迭代器
+        Arrays.sort(docIds);
+
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        List<ChunkDocument> docs = new ArrayList<>(docIds.length);
+        int leafIndex = -1;
+        FloatVectorValues vectors = null;
+        for (int docId : docIds) {
+            int li = ReaderUtil.subIndex(docId, leaves);
+            LeafReaderContext leaf = leaves.get(li);
+            if (li != leafIndex) {
+                leafIndex = li;
+                vectors = leaf.reader().getFloatVectorValues("embedding");
+            }
+            ChunkDocument chunk = toChunkDocument(searcher.storedFields().document(docId));
+            int leafDoc = docId - leaf.docBase;
+            if (vectors != null && vectors.docID() < leafDoc && vectors.advance(leafDoc) == leafDoc) {
+                chunk.setEmbedding(vectors.vectorValue().clone());
+            }
+            docs.add(chunk);
+        }
+        return docs;
+    }
+
+    /**
+     * 过滤条件 -> FILTER 子句（不参与打分）；无条件时返回 null
+     */
+    private Query toFilterQuery(SearchFilter filter) {
+        if (filter == null) {
+            return null;
+        }
+        BooleanQuery.Builder b = new BooleanQuery.Builder();
+        boolean any = false;
+        if (filter.isPublishedOnly()) {
+            b.add(new TermQuery(new Term("status", ArticleStatus.PUBLISHED.name())), BooleanClause.Occur.FILTER);
+            any = true;
+        }
+        if (filter.getArticleIds() != null) {
+            long[] ids = filter.getArticleIds().stream().mapToLong(Long::longValue).toArray();
+            b.add(LongPoint.newSetQuery("articleId", ids), BooleanClause.Occur.FILTER);
+            any = true;
+        }
+        if (filter.hasTags()) {
+            for (String tag : filter.getTags()) {
+                Query q = queryBuilder.createPhraseQuery("tags", tag);
+                if (q != null) {
+                    b.add(q, BooleanClause.Occur.FILTER);
+                    any = true;
+                }
+            }
+        }
+        return any ? b.build() : null;
+    }
+
+    private List<ScoredChunk> search(Query query, int k) throws IOException {
+        Generation gen = acquireCurrent();
+        if (gen == null) {
+            return List.of();
+        }
+        IndexSearcher searcher = gen.searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(query, k);
+            List<ScoredChunk> results = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                results.add(new ScoredChunk(toChunkDocument(searcher.storedFields().document(scoreDoc.doc)), scoreDoc.score));
+            }
+            return results;
+        } finally {
+            gen.searcherManager.release(searcher);
+            gen.decRef();
+        }
+    }
+
+    @Override
+    public ArticleSearchPage searchArticles(String query, int from, int size) throws IOException {
+        ArticleSearchPage page = new ArticleSearchPage();
+        if (current == null) {
+            return page;
+        }
+
+        final int qLen = query.length();
+        Map<String, Float> fields = new LinkedHashMap<>();
+        fields.put("title", 4f);
+        fields.put("tags", 2f);
+        fields.put("chunkText", 1f);
+
+        // 与 ES 实现保持一致：短查询更严格，避免单字命中导致乱召回
+        Query textQuery;
+        if (qLen <= 2) {
+            // 1~2 字：短语匹配
+            BooleanQuery.Builder phrases = new BooleanQuery.Builder();
+            addPhrase(phrases, "title", query, 5f);
+            addPhrase(phrases, "tags", query, 3f);
+            addPhrase(phrases, "chunkText", query, 1f);
+            BooleanQuery built = phrases.build();
+            textQuery = built.clauses().isEmpty() ? null : built;
+        } else if (qLen <= 4) {
+            // 3~4 字：每个词都要命中
+            textQuery = multiMatch(query, fields, BooleanClause.Occur.MUST, null);
+        } else {
+            // 5 字以上：70% 的词命中即可
+            textQuery = multiMatch(query, fields, BooleanClause.Occur.SHOULD, 0.7f);
+        }
+        if (textQuery == null) {
+            return page;
+        }
+
+        Query q = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("status", ArticleStatus.PUBLISHED.name())), BooleanClause.Occur.FILTER)
+            .add(textQuery, BooleanClause.Occur.MUST)
+            .build();
+
+        Generation gen = acquireCurrent();
+        if (gen == null) {
+            return page;
+        }
+        IndexSearcher searcher = gen.searcherManager.acquire();
+        try {
+            TopDocs topDocs = searcher.search(q, MAX_COLLAPSE_HITS);
+
+            // 以 articleId 折叠：保留每篇文章得分最高的 chunk
+            Map<Long, Document> topChunkByArticle = new LinkedHashMap<>();
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                Document doc = searcher.storedFields().document(scoreDoc.doc);
+                Long articleId = longValue(doc, "articleId");
+                if (articleId == null) continue;
+                topChunkByArticle.putIfAbsent(articleId, doc);
+            }
+            page.setTotal(topChunkByArticle.size());
+
+            List<String> terms = analyze(query);
+            List<ArticleHit> hits = new ArrayList<>();
+            int i = 0;
+            for (Map.Entry<Long, Document> entry : topChunkByArticle.entrySet()) {
+                if (i++ < from) continue;
+                if (hits.size() >= size) break;
+                Document doc = entry.getValue();
+                String snippet = highlight(doc.get("chunkText"), terms);
+                if (snippet == null) {
+                    snippet = highlight(doc.get("title"), terms);
+                }
+                hits.add(new ArticleHit(entry.getKey(), snippet));
+            }
+            page.setHits(hits);
+            return page;
+        } finally {
+            gen.searcherManager.release(searcher);
+            gen.decRef();
+        }
+    }
+
+    @Override
+    public void forEachDocument(Consumer<ChunkDocument> consumer) throws IOException {
+        Generation gen = acquireCurrent();
+        if (gen == null) {
+            return;
+        }
+        IndexSearcher searcher = gen.searcherManager.acquire();
+        try {
+            for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                StoredFields storedFields = leaf.reader().storedFields();
+                FloatVectorValues vectors = leaf.reader().getFloatVectorValues("embedding");
+                if (vectors == null) continue;
+                for (int doc = vectors.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = vectors.nextDoc()) {
+                    if (liveDocs != null && !liveDocs.get(doc)) continue;
+                    ChunkDocument chunk = toChunkDocument(storedFields.document(doc));
+                    chunk.setEmbedding(vectors.vectorValue().clone());
+                    consumer.accept(chunk);
+                }
+            }
+        } finally {
+            gen.searcherManager.release(searcher);
+            gen.decRef();
+        }
+    }
+
+    /**
+     * 等价于 ES multi_match（best_fields）：各字段取最高分
+     */
+    private Query multiMatch(String text, Map<String, Float> fields, BooleanClause.Occur operator, Float minimumShouldMatch) {
+        List<Query> disjuncts = new ArrayList<>();
+        for (Map.Entry<String, Float> field : fields.entrySet()) {
+            Query q = minimumShouldMatch != null
+                ? queryBuilder.createMinShouldMatchQuery(field.getKey(), text, minimumShouldMatch)
+                : queryBuilder.createBooleanQuery(field.getKey(), text, operator);
+            if (q != null) {
+                disjuncts.add(field.getValue() == 1f ? q : new BoostQuery(q, field.getValue()));
+            }
+        }
+        return disjuncts.isEmpty() ? null : new DisjunctionMaxQuery(disjuncts, 0f);
+    }
+
+    private void addPhrase(BooleanQuery.Builder builder, String field, String text, float boost) {
+        Query q = queryBuilder.createPhraseQuery(field, text);
+        if (q != null) {
+            builder.add(boost == 1f ? q : new BoostQuery(q, boost), BooleanClause.Occur.SHOULD);
+        }
+    }
+
+    private List<String> analyze(String text) throws IOException {
+        List<String> terms = new ArrayList<>();
+        try (TokenStream ts = analyzer.tokenStream("chunkText", text)) {
+            CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                if (term.length() > 0) {
+                    terms.add(term.toString());
+                }
+            }
+            ts.end();
+        }
+        // 长词优先，避免短词把长词拆开高亮
+        terms.sort(Comparator.comparingInt(String::length).reversed());
+        return terms;
+    }
+
+    /**
+     * 简单高亮：以第一个命中词为中心截取片段，命中词用 &lt;em&gt; 包裹（其余内容做 HTML 转义）
+     */
+    private String highlight(String text, List<String> terms) {
+        if (text == null || text.isEmpty() || terms.isEmpty()) {
+            return null;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int first = -1;
+        for (String term : terms) {
+            int pos = lower.indexOf(term);
+            if (pos >= 0 && (first < 0 || pos < first)) {
+                first = pos;
+            }
+        }
+        if (first < 0) {
+            return null;
+        }
+
+        int start = Math.max(0, Math.min(first - SNIPPET_LENGTH / 4, text.length() - SNIPPET_LENGTH));
+        int end = Math.min(text.length(), start + SNIPPET_LENGTH);
+
+        StringBuilder sb = new StringBuilder();
+        int pos = start;
+        while (pos < end) {
+            String matched = null;
+            for (String term : terms) {
+                if (lower.startsWith(term, pos)) {
+                    matched = term;
+                    break;
+                }
+            }
+            if (matched != null) {
+                int matchEnd = Math.min(end, pos + matched.length());
+                // 相邻命中词合并到同一个 <em> 里
+                if (sb.length() >= 5 && sb.lastIndexOf("</em>") == sb.length() - 5) {
+                    sb.setLength(sb.length() - 5);
+                } else {
+                    sb.append("<em>");
+                }
+                escapeHtml(sb, text, pos, matchEnd);
+                sb.append("</em>");
+                pos = matchEnd;
+            } else {
+                escapeHtml(sb, text, pos, pos + 1);
+                pos++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void escapeHtml(StringBuilder sb, String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '&' -> sb.append("&amp;");
+                case '"' -> sb.append("&quot;");
+                default -> sb.append(c);
+            }
+        }
+    }
+
+    // ==================== 增量写入 ====================
+
+    @Override
+    public void replaceArticle(Long articleId, List<ChunkDocument> documents) throws IOException {
+        Generation gen = acquireCurrent();
+        if (gen == null) {
+            throw new IllegalStateException("Lucene 索引不存在，请执行全量重建索引");
+        }
+        try {
+            gen.writer.deleteDocuments(LongPoint.newExactQuery("articleId", articleId));
+            for (ChunkDocument doc : documents) {
+                gen.writer.updateDocument(new Term("chunkId", doc.getChunkId()), toLuceneDocument(doc));
+            }
+            commit(gen);
+        } finally {
+            gen.decRef();
+        }
+    }
+
+    @Override
+    public void deleteArticle(Long articleId) throws IOException {
+        deleteArticle(acquireCurrent(), articleId);
+    }
+
+    /**
+     * gen 由调用方 acquire，这里负责释放
+     */
+    private void deleteArticle(Generation gen, Long articleId) throws IOException {
+        if (gen == null) {
+            return;
+        }
+        try {
+            gen.writer.deleteDocuments(LongPoint.newExactQuery("articleId", articleId));
+            commit(gen);
+        } finally {
+            gen.decRef();
+        }
+    }
+
+    // ==================== 蓝绿重建 ====================
+
+    @Override
+    public String currentIndex() {
+        return current;
+    }
+
+    @Override
+    public synchronized String createIndex() throws IOException {
+        String index = INDEX_PREFIX + System.currentTimeMillis();
+        while (Files.exists(root.resolve(index))) {
+            index = INDEX_PREFIX + System.currentTimeMillis();
+        }
+        Generation gen = acquire(index);
+        try {
+            // 写入一次空提交，使目录成为合法索引（续跑时 indexExists 才能识别）
+            commit(gen);
+        } finally {
+            gen.decRef();
+        }
+        log.info("✅ 新 Lucene 索引创建成功: {} (vector={}, similarity={})",
+            index, vectorIndexConfig.getIndexType(), vectorIndexConfig.getSimilarity());
+        return index;
+    }
+
+    @Override
+    public boolean indexExists(String index) {
+        if (!isValidIndexName(index)) {
+            return false;
+        }
+        if (generations.containsKey(index)) {
+            return true;
+        }
+        Path dir = root.resolve(index);
+        if (!Files.isDirectory(dir)) {
+            return false;
+        }
+        try (FSDirectory directory = FSDirectory.open(dir)) {
+            return DirectoryReader.indexExists(directory);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void bulkIndex(String index, List<ChunkDocument> documents) throws Exception {
+        if (documents == null || documents.isEmpty()) return;
+
+        Generation gen = acquire(index);
+        try {
+            for (ChunkDocument doc : documents) {
+                gen.writer.updateDocument(new Term("chunkId", doc.getChunkId()), toLuceneDocument(doc));
+            }
+            commit(gen);
+        } finally {
+            gen.decRef();
+        }
+    }
+
+    @Override
+    public void deleteArticle(String index, Long articleId) throws Exception {
+        deleteArticle(acquire(index), articleId);
+    }
+
+    @Override
+    public synchronized void switchTo(String index) throws IOException {
+        if (!indexExists(index)) {
+            throw new IllegalArgumentException("Lucene 索引不存在: " + index);
+        }
+        String oldIndex = current;
+
+        Path tmp = root.resolve(CURRENT_FILE + ".tmp");
+        Files.writeString(tmp, index, StandardCharsets.UTF_8);
+        Files.move(tmp, root.resolve(CURRENT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        current = index;
+
+        // 旧的一代只关闭不删除（与 ES 保留旧索引一致），需要时手动清理目录；
+        // 仍在旧索引上执行的查询持有引用，结束后才真正关闭
+        if (oldIndex != null && !oldIndex.equals(index)) {
+            Generation old = generations.remove(oldIndex);
+            if (old != null) {
+                old.decRef();
+            }
+        }
+        log.info("✅ Lucene 在线索引已切换: {} -> {} (old={})", NAME, index, oldIndex);
+    }
+
+    @Override
+    public synchronized void discardIndex(String index) {
+        if (index == null || index.equals(current) || !isValidIndexName(index)) {
+            return;
+        }
+        try {
+            Generation gen = generations.remove(index);
+            if (gen != null) {
+                gen.decRef();
+            }
+            Path dir = root.resolve(index);
+            if (Files.isDirectory(dir)) {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                        Files.deleteIfExists(p);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("删除 Lucene 索引失败: {}", index, e);
+        }
+    }
+
+    // ==================== 内部 ====================
+
+    /**
+     * 只接受 chunks_ 前缀的纯名称，防止通过索引名访问 lucenePath 之外的目录
+     */
+    private boolean isValidIndexName(String index) {
+        return index != null && index.startsWith(INDEX_PREFIX) && index.matches("[A-Za-z0-9_]+");
+    }
+
+    /**
+     * 取在线索引并持有一个引用（用完 decRef）；没有在线索引时返回 null
+     *
+     * 读到的 current 可能恰好被切换掉：已退役的一代不会被重新打开，重新读取 current 即可。
+     */
+    private Generation acquireCurrent() throws IOException {
+        for (;;) {
+            String index = current;
+            if (index == null) {
+                return null;
+            }
+            Generation gen = generations.get(index);
+            if (gen == null) {
+                synchronized (this) {
+                    if (!index.equals(current)) {
+                        continue;
+                    }
+                    gen = open(index);
+                }
+            }
+            if (gen.tryIncRef()) {
+                return gen;
+            }
+        }
+    }
+
+    /**
+     * 取指定索引（可以不是在线索引，如重建中的新索引）并持有一个引用（用完 decRef）
+     */
+    private Generation acquire(String index) throws IOException {
+        for (;;) {
+            Generation gen = open(index);
+            if (gen.tryIncRef()) {
+                return gen;
+            }
+        }
+    }
+
+    private Generation open(String index) throws IOException {
+        if (!isValidIndexName(index)) {
+            throw new IllegalArgumentException("非法的 Lucene 索引名: " + index);
+        }
+        Generation gen = generations.get(index);
+        if (gen != null) {
+            return gen;
+        }
+        synchronized (this) {
+            gen = generations.get(index);
+            if (gen == null) {
+                FSDirectory directory = FSDirectory.open(root.resolve(index));
+                IndexWriterConfig config = new IndexWriterConfig(analyzer);
+                config.setCodec(newCodec());
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+                gen = new Generation(index, directory, new IndexWriter(directory, config));
+                generations.put(index, gen);
+            }
+            return gen;
+        }
+    }
+
+    private void commit(Generation gen) throws IOException {
+        gen.writer.commit();
+        gen.searcherManager.maybeRefreshBlocking();
+    }
+
+    private Lucene99Codec newCodec() {
+        KnnVectorsFormat format = "int8_hnsw".equalsIgnoreCase(vectorIndexConfig.getIndexType())
+            ? new Lucene99HnswScalarQuantizedVectorsFormat(vectorIndexConfig.getM(), vectorIndexConfig.getEfConstruction())
+            : new Lucene99HnswVectorsFormat(vectorIndexConfig.getM(), vectorIndexConfig.getEfConstruction());
+        KnnVectorsFormat wide = new WideKnnVectorsFormat(format);
+        return new Lucene99Codec() {
+            @Override
+            public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                return wide;
+            }
+        };
+    }
+
+    /**
+     * 只放宽维度上限的包装；沿用被包装格式的名字，读取时由 SPI 找回原格式
+     */
+    private static class WideKnnVectorsFormat extends KnnVectorsFormat {
+        private final KnnVectorsFormat delegate;
+
+        WideKnnVectorsFormat(KnnVectorsFormat delegate) {
+            super(delegate.getName());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public KnnVectorsWriter fieldsWriter(SegmentWriteState state) throws IOException {
+            return delegate.fieldsWriter(state);
+        }
+
+        @Override
+        public KnnVectorsReader fieldsReader(SegmentReadState state) throws IOException {
+            return delegate.fieldsReader(state);
+        }
+
+        @Override
+        public int getMaxDimensions(String fieldName) {
+            return MAX_VECTOR_DIMENSIONS;
+        }
+    }
+
+    private VectorSimilarityFunction similarity() {
+        return switch (vectorIndexConfig.getSimilarity().toLowerCase(Locale.ROOT)) {
+            case "cosine" -> VectorSimilarityFunction.COSINE;
+            case "l2_norm" -> VectorSimilarityFunction.EUCLIDEAN;
+            case "max_inner_product" -> VectorSimilarityFunction.MAXIMUM_INNER_PRODUCT;
+            default -> VectorSimilarityFunction.DOT_PRODUCT;
+        };
+    }
+
+    private Document toLuceneDocument(ChunkDocument chunk) {
+        Document doc = new Document();
+        doc.add(new StringField("chunkId", chunk.getChunkId(), Field.Store.YES));
+        if (chunk.getArticleId() != null) {
+            doc.add(new LongPoint("articleId", chunk.getArticleId()));
+            doc.add(new StoredField("articleId", chunk.getArticleId()));
+            doc.add(new NumericDocValuesField("articleId", chunk.getArticleId()));
+        }
+        if (chunk.getStatus() != null) {
+            doc.add(new StringField("status", chunk.getStatus(), Field.Store.YES));
+        }
+        addText(doc, "title", chunk.getTitle());
+        addText(doc, "tags", chunk.getTags());
+        addText(doc, "headingText", chunk.getHeadingText());
+        addText(doc, "chunkText", chunk.getChunkText());
+        addStored(doc, "slug", chunk.getSlug());
+        addStored(doc, "anchor", chunk.getAnchor());
+        addStored(doc, "indexVersion", chunk.getIndexVersion());
+        addStored(doc, "headingLevel", chunk.getHeadingLevel());
+        addStored(doc, "tokenCount", chunk.getTokenCount());
+        addStored(doc, "sequenceNumber", chunk.getSequenceNumber());
+        if (chunk.getEmbedding() != null) {
+            doc.add(new KnnFloatVectorField("embedding", chunk.getEmbedding(), similarity()));
+        }
+        return doc;
+    }
+
+    private static void addText(Document doc, String name, String value) {
+        if (value != null) {
+            doc.add(new TextField(name, value, Field.Store.YES));
+        }
+    }
+
+    private static void addStored(Document doc, String name, String value) {
+        if (value != null) {
+            doc.add(new StoredField(name, value));
+        }
+    }
+
+    private static void addStored(Document doc, String name, Integer value) {
+        if (value != null) {
+            doc.add(new StoredField(name, value));
+        }
+    }
+
+    private static ChunkDocument toChunkDocument(Document doc) {
+        ChunkDocument chunk = new ChunkDocument();
+        chunk.setChunkId(doc.get("chunkId"));
+        chunk.setArticleId(longValue(doc, "articleId"));
+        chunk.setSlug(doc.get("slug"));
+        chunk.setTitle(doc.get("title"));
+        chunk.setTags(doc.get("tags"));
+        chunk.setStatus(doc.get("status"));
+        chunk.setIndexVersion(intValue(doc, "indexVersion"));
+        chunk.setHeadingLevel(intValue(doc, "headingLevel"));
+        chunk.setHeadingText(doc.get("headingText"));
+        chunk.setAnchor(doc.get("anchor"));
+        chunk.setChunkText(doc.get("chunkText"));
+        chunk.setTokenCount(intValue(doc, "tokenCount"));
+        chunk.setSequenceNumber(intValue(doc, "sequenceNumber"));
+        return chunk;
+    }
+
+    private static Long longValue(Document doc, String name) {
+        var field = doc.getField(name);
+        return field != null && field.numericValue() != null ? field.numericValue().longValue() : null;
+    }
+
+    private static Integer intValue(Document doc, String name) {
+        var field = doc.getField(name);
+        return field != null && field.numericValue() != null ? field.numericValue().intValue() : null;
+    }
+}
@@ -0,0 +1,49 @@
+package com.lingdang.blog.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 一篇文章 Markdown 的单次解析结果（由 MarkdownService.analyze 产出，按 contentHash 缓存）。
+ *
+ * 渲染 HTML、目录、锚点、切分 chunk 共用同一棵 flexmark AST 的结果，保证 HTML 里标题的 id
+ * 与 chunk 的 anchor 一致。偏移量都是相对原始 Markdown 的字符下标，区间左闭右开。
+ */
+@Getter
+@AllArgsConstructor
+public class MarkdownAnalysis {
+
+    /** sanitize 后的 HTML（标题带 id） */
+    private final String html;
+    /** 纯文本（去掉 Markdown 标记） */
+    private final String plainText;
+    /** 全部标题（含引用块、列表内的标题），按出现顺序；即目录 */
+    private final List<HeadingSpan> headings;
+    /** 顶层块（段落、标题、代码块、表格、列表……）的边界，按出现顺序 */
+    private final List<BlockSpan> blocks;
+
+    @Getter
+    @AllArgsConstructor
+    public static class HeadingSpan {
+        private final int level;
+        /** 标题纯文本 */
+        private final String text;
+        /** 文内唯一的锚点（重复标题追加 -1、-2），与 HTML 中的 id 相同 */
+        private final String anchor;
+        private final int start;
+        private final int end;
+        /** 是否文档顶层标题（chunk 只在顶层标题处切分） */
+        private final boolean topLevel;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class BlockSpan {
+        /** 节点类型，如 Paragraph、FencedCodeBlock、TableBlock */
+        private final String type;
+        private final int start;
+        private final int end;
+    }
+}
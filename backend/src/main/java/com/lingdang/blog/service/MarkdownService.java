@@ -1,94 +1,337 @@
 package com.lingdang.blog.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.vladsch.flexmark.ast.Heading;
+import com.vladsch.flexmark.ast.Reference;
+import com.vladsch.flexmark.ast.util.AnchorRefTargetBlockPreVisitor;
 import com.vladsch.flexmark.ext.gfm.strikethrough.StrikethroughExtension;
 import com.vladsch.flexmark.ext.tables.TablesExtension;
 import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.html.renderer.HeaderIdGeneratorFactory;
+import com.vladsch.flexmark.html.renderer.HtmlIdGenerator;
+import com.vladsch.flexmark.html.renderer.LinkResolverContext;
 import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.util.ast.Document;
+import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.ast.TextCollectingVisitor;
 import com.vladsch.flexmark.util.data.MutableDataSet;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.jsoup.Jsoup;
+import org.jsoup.safety.Cleaner;
 import org.jsoup.safety.Safelist;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Markdown 处理服务
+ *
+ * 每篇文章只解析一次：analyze 产出 HTML、目录、纯文本、标题锚点和顶层块边界，
+ * 发布、索引、全量重建共用，结果按 contentHash 缓存。
+ *
+ * HTML 按顶层块增量渲染：每个块按源码 + 标题 id 做哈希，未变化的块直接复用已 sanitize 的 HTML 片段，
+ * 改一行长文只重新渲染被改动的块。
  */
 @Slf4j
 @Service
 public class MarkdownService {
-    
+
+    private static final long CACHE_MAX_CHARS = 16L * 1024 * 1024;
+    private static final long FRAGMENT_CACHE_MAX_CHARS = 16L * 1024 * 1024;
+
+    private static final Safelist SAFELIST = Safelist.relaxed()
+        .addTags("h1", "h2", "h3", "h4", "h5", "h6", "p", "br", "hr",
+                 "strong", "em", "u", "s", "code", "pre", "blockquote",
+                 "ul", "ol", "li", "table", "thead", "tbody", "tr", "th", "td",
+                 "a", "img")
+        .addAttributes("a", "href", "title", "id")
+        .addAttributes("img", "src", "alt", "title")
+        .addAttributes("h1", "id")
+        .addAttributes("h2", "id")
+        .addAttributes("h3", "id")
+        .addAttributes("h4", "id")
+        .addAttributes("h5", "id")
+        .addAttributes("h6", "id")
+        .addAttributes("code", "class")
+        .addAttributes("pre", "class")
+        .addProtocols("a", "href", "http", "https", "mailto")
+        .addProtocols("img", "src", "http", "https");
+
+    // Cleaner 只持有只读的 Safelist，可在线程间共享
+    private static final Cleaner CLEANER = new Cleaner(SAFELIST);
+
+    private static final MarkdownAnalysis EMPTY =
+        new MarkdownAnalysis("", "", Collections.emptyList(), Collections.emptyList());
+
     private final Parser parser;
     private final HtmlRenderer renderer;
-    
+
+    private final Cache<String, MarkdownAnalysis> analysisCache = CacheBuilder.newBuilder()
+        .maximumWeight(CACHE_MAX_CHARS)
+        .weigher((String hash, MarkdownAnalysis a) -> a.getHtml().length() + a.getPlainText().length())
+        .expireAfterAccess(30, TimeUnit.MINUTES)
+        .build();
+
+    // 块哈希 -> sanitize 后的 HTML 片段 + 纯文本
+    private final Cache<String, Fragment> fragmentCache = CacheBuilder.newBuilder()
+        .maximumWeight(FRAGMENT_CACHE_MAX_CHARS)
+        .weigher((String key, Fragment f) -> key.length() + f.html.length() + f.text.length())
+        .expireAfterAccess(30, TimeUnit.MINUTES)
+        .build();
+
     public MarkdownService() {
         MutableDataSet options = new MutableDataSet();
         options.set(Parser.EXTENSIONS, Arrays.asList(
             TablesExtension.create(),
             StrikethroughExtension.create()
         ));
-        
+        options.set(HtmlRenderer.RENDER_HEADER_ID, true);
+
         this.parser = Parser.builder(options).build();
-        this.renderer = HtmlRenderer.builder(options).build();
+        // 标题 id 在 analyze 中预先算好写入节点，渲染时原样输出
+        this.renderer = HtmlRenderer.builder(options)
+            .htmlIdGeneratorFactory(new PresetHeaderIdGeneratorFactory())
+            .build();
     }
-    
+
     /**
-     * Markdown 转 HTML（带 sanitize）
+     * Markdown 转 HTML（带 sanitize，标题带 id）
      */
     public String markdownToHtml(String markdown) {
+        return analyze(markdown).getHtml();
+    }
+
+    /**
+     * 解析文章 Markdown（按内容 sha256 缓存）
+     */
+    public MarkdownAnalysis analyze(String markdown) {
         if (markdown == null || markdown.trim().isEmpty()) {
-            return "";
+            return EMPTY;
         }
-        
-        // 解析 Markdown
+        String contentHash = DigestUtils.sha256Hex(markdown);
+        MarkdownAnalysis cached = analysisCache.getIfPresent(contentHash);
+        if (cached != null) {
+            return cached;
+        }
+        MarkdownAnalysis analysis = doAnalyze(markdown);
+        analysisCache.put(contentHash, analysis);
+        return analysis;
+    }
+
+    private MarkdownAnalysis doAnalyze(String markdown) {
+        long start = System.currentTimeMillis();
         Document document = parser.parse(markdown);
-        
-        // 渲染为 HTML
-        String html = renderer.render(document);
-        
-        // Sanitize HTML（防止 XSS）
-        return sanitizeHtml(html);
+
+        // 顶层块边界（代码块、表格等整体作为一个块，内部的 # 行不会被当作标题）
+        List<MarkdownAnalysis.BlockSpan> blocks = new ArrayList<>();
+        for (Node block : document.getChildren()) {
+            blocks.add(new MarkdownAnalysis.BlockSpan(
+                block.getClass().getSimpleName(), block.getStartOffset(), block.getEndOffset()));
+        }
+
+        // 标题：纯文本、唯一锚点；锚点写回节点供渲染使用
+        List<MarkdownAnalysis.HeadingSpan> headings = new ArrayList<>();
+        Map<String, Integer> anchorCounts = new HashMap<>();
+        for (Node node : document.getDescendants()) {
+            if (!(node instanceof Heading heading)) {
+                continue;
+            }
+            String text = collectText(heading).trim();
+            String anchor = uniqueAnchor(generateAnchor(text), anchorCounts);
+            heading.setAnchorRefId(anchor);
+            headings.add(new MarkdownAnalysis.HeadingSpan(
+                heading.getLevel(), text, anchor,
+                heading.getStartOffset(), heading.getEndOffset(),
+                heading.getParent() instanceof Document));
+        }
+
+        StringBuilder html = new StringBuilder();
+        StringBuilder plainText = new StringBuilder();
+        renderBlocks(document, html, plainText);
+
+        log.debug("Markdown 解析完成: chars={}, blocks={}, headings={}, cost={}ms",
+            markdown.length(), blocks.size(), headings.size(), System.currentTimeMillis() - start);
+        return new MarkdownAnalysis(html.toString(), plainText.toString(),
+            Collections.unmodifiableList(headings), Collections.unmodifiableList(blocks));
+    }
+
+    /**
+     * 节点纯文本。flexmark 的 TextCollectingVisitor 遇到列表里跨 \r 换行的行内代码会抛 IllegalStateException，
+     * 这时退回节点源码，不让一处格式问题拖垮整篇文章的解析
+     */
+    private static String collectText(Node node) {
+        try {
+            return new TextCollectingVisitor().collectAndGetText(node);
+        } catch (IllegalStateException e) {
+            log.warn("提取纯文本失败，使用源码代替: node={}, offset={}, error={}",
+                node.getClass().getSimpleName(), node.getStartOffset(), e.getMessage());
+            return node.getChars().toString();
+        }
     }
-    
+
+    /**
+     * 按顶层块渲染 + sanitize（纯文本同样按块提取），未变化的块复用缓存片段。
+     *
+     * 块的输出取决于自身源码、其中标题的 id（重复标题的序号受前文影响）以及链接引用定义，
+     * 三者都计入哈希；引用定义一般很少，任何一处改动会让所有块重新渲染。
+     * 渲染时块会被移出原 document，因此必须在标题、纯文本等提取完成之后调用。
+     */
+    private void renderBlocks(Document document, StringBuilder html, StringBuilder plainText) {
+        Hasher refHasher = Hashing.murmur3_128().newHasher();
+        for (Node node : document.getChildren()) {
+            if (node instanceof Reference) {
+                refHasher.putString(node.getChars(), StandardCharsets.UTF_8).putChar('\n');
+            }
+        }
+        String refSalt = refHasher.hash().toString();
+
+        List<Node> blocks = new ArrayList<>();
+        document.getChildren().forEach(blocks::add);
+
+        int rendered = 0;
+        int reused = 0;
+        for (Node block : blocks) {
+            Hasher hasher = Hashing.murmur3_128().newHasher()
+                .putString(refSalt, StandardCharsets.UTF_8)
+                .putString(block.getChars(), StandardCharsets.UTF_8);
+            for (Node node : block.getDescendants()) {
+                if (node instanceof Heading heading) {
+                    hasher.putChar('\u0000').putString(heading.getAnchorRefId(), StandardCharsets.UTF_8);
+                }
+            }
+            if (block instanceof Heading heading) {
+                hasher.putChar('\u0000').putString(heading.getAnchorRefId(), StandardCharsets.UTF_8);
+            }
+            String key = hasher.hash().toString();
+
+            Fragment fragment = fragmentCache.getIfPresent(key);
+            if (fragment == null) {
+                String text = collectText(block);
+                // 单独渲染非 Document 节点时 flexmark 不输出链接，这里把块挪进一个共享引用定义等数据的临时 Document
+                Document single = new Document(document, document.getChars());
+                single.appendChild(block);
+                fragment = new Fragment(sanitizeHtml(renderer.render(single)), text);
+                fragmentCache.put(key, fragment);
+                rendered++;
+            } else {
+                reused++;
+            }
+            append(html, fragment.html);
+            append(plainText, fragment.text);
+        }
+        log.debug("Markdown 分块渲染: rendered={}, reused={}", rendered, reused);
+    }
+
+    private static void append(StringBuilder sb, String part) {
+        if (part.isEmpty()) {
+            return;
+        }
+        if (sb.length() > 0) {
+            sb.append('\n');
+        }
+        sb.append(part);
+    }
+
     /**
      * HTML 消毒（移除危险标签和属性）
      */
     public String sanitizeHtml(String html) {
-        Safelist safelist = Safelist.relaxed()
-            .addTags("h1", "h2", "h3", "h4", "h5", "h6", "p", "br", "hr",
-                     "strong", "em", "u", "s", "code", "pre", "blockquote",
-                     "ul", "ol", "li", "table", "thead", "tbody", "tr", "th", "td",
-                     "a", "img")
-            .addAttributes("a", "href", "title", "id")
-            .addAttributes("img", "src", "alt", "title")
-            .addAttributes("h1", "id")
-            .addAttributes("h2", "id")
-            .addAttributes("h3", "id")
-            .addAttributes("h4", "id")
-            .addAttributes("h5", "id")
-            .addAttributes("h6", "id")
-            .addAttributes("code", "class")
-            .addAttributes("pre", "class")
-            .addProtocols("a", "href", "http", "https", "mailto")
-            .addProtocols("img", "src", "http", "https");
-        
-        return Jsoup.clean(html, safelist);
+        if (html == null || html.isEmpty()) {
+            return "";
+        }
+        return CLEANER.clean(Jsoup.parseBodyFragment(html)).body().html();
     }
-    
+
     /**
-     * 生成标题锚点（slug）
+     * 生成标题锚点（slug）：保留字母、数字、中文，空白和连字符合并为单个连字符，去掉首尾连字符
      */
     public String generateAnchor(String heading) {
-        if (heading == null || heading.trim().isEmpty()) {
+        if (heading == null || heading.isBlank()) {
             return "";
         }
-        
-        return heading.toLowerCase()
-            .replaceAll("[^a-z0-9\\u4e00-\\u9fa5\\s-]", "") // 保留字母、数字、中文、空格、连字符
-            .replaceAll("\\s+", "-") // 空格转连字符
-            .replaceAll("-+", "-") // 多个连字符合并
-            .replaceAll("^-|-$", ""); // 移除首尾连字符
+        StringBuilder sb = new StringBuilder(heading.length());
+        boolean pendingDash = false;
+        for (int i = 0; i < heading.length(); i++) {
+            char c = Character.toLowerCase(heading.charAt(i));
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || (c >= '\u4e00' && c <= '\u9fa5')) {
+                if (pendingDash && sb.length() > 0) {
+                    sb.append('-');
+                }
+                pendingDash = false;
+                sb.append(c);
+            } else if (c == '-' || c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B') {
+                pendingDash = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String uniqueAnchor(String base, Map<String, Integer> counts) {
+        if (base.isEmpty()) {
+            return base;
+        }
+        Integer seen = counts.get(base);
+        counts.put(base, seen == null ? 1 : seen + 1);
+        return seen == null ? base : base + "-" + seen;
+    }
+
+    private static final class Fragment {
+        private final String html;
+        private final String text;
+
+        Fragment(String html, String text) {
+            this.html = html;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 直接使用 analyze 写入节点的 anchorRefId，不再由 flexmark 二次生成
+     */
+    private static class PresetHeaderIdGeneratorFactory implements HeaderIdGeneratorFactory {
+        private static final HtmlIdGenerator GENERATOR = new HtmlIdGenerator() {
+            @Override
+            public void generateIds(Document document) {
+            }
+
+            @Override
+            public void generateIds(Document document, AnchorRefTargetBlockPreVisitor preVisitor) {
+            }
+
+            @Override
+            public String getId(Node node) {
+                if (node instanceof Heading heading) {
+                    String id = heading.getAnchorRefId();
+                    return id == null || id.isEmpty() ? null : id;
+                }
+                return null;
+            }
+
+            @Override
+            public String getId(CharSequence text) {
+                return null;
+            }
+        };
+
+        @Override
+        public HtmlIdGenerator create(LinkResolverContext context) {
+            return GENERATOR;
+        }
+
+        @Override
+        public HtmlIdGenerator create() {
+            return GENERATOR;
+        }
     }
 }
@@ -0,0 +1,435 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.config.RetrievalEngineConfig;
+import com.lingdang.blog.config.VectorIndexConfig;
+import com.lingdang.blog.model.ArticleStatus;
+import com.lingdang.blog.model.ChunkDocument;
+import com.lingdang.blog.util.TopKHeap;
+import com.lingdang.blog.util.VectorUtils;
+import lombok.Data;
+import com.sun.management.HotSpotDiagnosticMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内向量库：堆外连续存储 + 精确暴力扫描
+ *
+ * - 每个 chunk 一行，归一化向量按页连续存放在 direct buffer 中（不占 Java 堆，GC 不扫描）；
+ *   每页固定 64MB，单个 buffer 远低于 2GB 上限，扩容只追加新页、不拷贝已有数据
+ * - 检索时逐行点积，Top-K 小顶堆选出结果，分数换算与 ES 相同（dot_product: (1 + dot) / 2）
+ * - 启动时 / 全量重建切换后从检索引擎加载；增量由 IndexPipelineService 同步
+ * - 未加载完成（或超过上限）时 isReady() 为 false，调用方回退到检索引擎；
+ *   生效上限按维度折算：不超过 max-vectors，也不超过堆外内存上限（MaxDirectMemorySize）的 3/4
+ */
+@Slf4j
+@Service
+public class OffHeapVectorStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final long PAGE_BYTES = 64L << 20;
+
+    private static final long DIRECT_MEMORY_LIMIT = directMemoryLimit();
+
+    @Autowired
+    private RetrievalEngineConfig retrievalEngineConfig;
+
+    @Autowired
+    private VectorIndexConfig vectorIndexConfig;
+
+    @Autowired
+    private RetrievalEngine retrievalEngine;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Rows rows = new Rows(0);
+
+    private volatile boolean ready = false;
+
+    private volatile boolean loading = false;
+
+    /**
+     * 加载期间到达的增量变更，加载完成后按顺序重放
+     */
+    private final List<Runnable> pending = new ArrayList<>();
+
+    /**
+     * 行存储：第 row 行向量在 pages[row / rowsPerPage] 的 (row % rowsPerPage) * dims 处，docs[row] 为其元数据（不含 embedding）
+     */
+    private static class Rows {
+        final int dims;
+        final int rowsPerPage;
+        final List<FloatBuffer> pages = new ArrayList<>();
+        ChunkDocument[] docs;
+        int size;
+        final Map<String, Integer> rowByChunkId = new HashMap<>();
+
+        Rows(int dims) {
+            this.dims = dims;
+            this.rowsPerPage = dims > 0 ? (int) Math.max(1, PAGE_BYTES / bytesPerRow(dims)) : 1;
+            this.docs = new ChunkDocument[0];
+        }
+
+        void add(ChunkDocument doc) {
+            Integer existing = rowByChunkId.get(doc.getChunkId());
+            int row = existing != null ? existing : size;
+            if (existing == null) {
+                ensureCapacity(size + 1);
+                size++;
+                rowByChunkId.put(doc.getChunkId(), row);
+            }
+            page(row).put(offset(row), doc.getEmbedding());
+            docs[row] = withoutEmbedding(doc);
+        }
+
+        /**
+         * 删除一行：用最后一行填补空位，保持存储连续
+         */
+        void remove(String chunkId) {
+            Integer row = rowByChunkId.remove(chunkId);
+            if (row == null) return;
+            int last = size - 1;
+            if (row != last) {
+                page(row).put(offset(row), page(last), offset(last), dims);
+                docs[row] = docs[last];
+                rowByChunkId.put(docs[row].getChunkId(), row);
+            }
+            docs[last] = null;
+            size--;
+        }
+
+        void removeArticle(Long articleId) {
+            List<String> chunkIds = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (articleId.equals(docs[i].getArticleId())) {
+                    chunkIds.add(docs[i].getChunkId());
+                }
+            }
+            for (String chunkId : chunkIds) {
+                remove(chunkId);
+            }
+        }
+
+        void vector(int row, float[] dst) {
+            page(row).get(offset(row), dst);
+        }
+
+        long bytes() {
+            return (long) pages.size() * rowsPerPage * bytesPerRow(dims);
+        }
+
+        private FloatBuffer page(int row) {
+            return pages.get(row / rowsPerPage);
+        }
+
+        private int offset(int row) {
+            return (row % rowsPerPage) * dims;
+        }
+
+        private void ensureCapacity(int required) {
+            while ((long) pages.size() * rowsPerPage < required) {
+                pages.add(ByteBuffer.allocateDirect(Math.toIntExact(rowsPerPage * bytesPerRow(dims)))
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer());
+            }
+            if (required <= docs.length) return;
+            long capacity = Math.max(INITIAL_CAPACITY, docs.length * 2L);
+            while (capacity < required) capacity *= 2;
+            ChunkDocument[] newDocs = new ChunkDocument[(int) Math.min(capacity, Integer.MAX_VALUE - 8)];
+            System.arraycopy(docs, 0, newDocs, 0, size);
+            docs = newDocs;
+        }
+    }
+
+    @Data
+    public static class VectorStoreStats {
+        private boolean enabled;
+        private boolean ready;
+        private boolean loading;
+        private int vectors;
+        private int dims;
+        private int maxVectors;
+        private long offHeapBytes;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return rows.size;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!retrievalEngineConfig.getVectorStore().isEnabled()) {
+            return;
+        }
+        Thread loader = new Thread(this::reload, "vector-store-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 从检索引擎的在线索引重建（加载期间查询回退到检索引擎）
+     */
+    public void reload() {
+        if (!retrievalEngineConfig.getVectorStore().isEnabled()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (loading) return;
+            loading = true;
+            ready = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long start = System.currentTimeMillis();
+        Rows loaded = null;
+        String error = null;
+        try {
+            Rows[] holder = new Rows[1];
+            retrievalEngine.forEachDocument(doc -> {
+                if (doc.getEmbedding() == null || doc.getChunkId() == null) return;
+                if (holder[0] == null) {
+                    holder[0] = new Rows(doc.getEmbedding().length);
+                }
+                Rows r = holder[0];
+                if (doc.getEmbedding().length != r.dims) {
+                    throw new IllegalStateException("embedding 维度不一致: " + doc.getEmbedding().length + " != " + r.dims);
+                }
+                if (r.size >= maxVectors(r.dims)) {
+                    throw new IllegalStateException("向量条数超过上限 " + maxVectors(r.dims) + "（dims=" + r.dims + "）");
+                }
+                r.add(doc);
+            });
+            loaded = holder[0] != null ? holder[0] : new Rows(0);
+        } catch (Exception e) {
+            error = e.getMessage();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (loaded != null) {
+                rows = loaded;
+                ready = true;
+                for (Runnable op : pending) {
+                    op.run();
+                }
+            } else {
+                rows = new Rows(0);
+            }
+            pending.clear();
+            loading = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (error == null) {
+            log.info("✅ 进程内向量库加载完成: vectors={}, dims={}, offHeap={}MB, 耗时={}ms",
+                rows.size, rows.dims, offHeapBytes() / (1024 * 1024), System.currentTimeMillis() - start);
+        } else {
+            log.warn("进程内向量库加载失败，向量检索回退到检索引擎: {}", error);
+        }
+    }
+
+    /**
+     * 同步一篇文章的全部 chunk（先删后写）
+     */
+    public void replaceArticle(Long articleId, List<ChunkDocument> documents) {
+        apply(() -> {
+            rows.removeArticle(articleId);
+            for (ChunkDocument doc : documents) {
+                if (doc.getEmbedding() == null) continue;
+                if (rows.size == 0 && rows.dims != doc.getEmbedding().length) {
+                    rows = new Rows(doc.getEmbedding().length);
+                }
+                if (doc.getEmbedding().length != rows.dims) {
+                    // 模型维度变化：等全量重建切换后整体重新加载
+                    log.warn("embedding 维度变化({} -> {})，进程内向量库暂停使用", rows.dims, doc.getEmbedding().length);
+                    ready = false;
+                    return;
+                }
+                if (rows.size >= maxVectors(rows.dims)) {
+                    // 超过上限：与加载时一致，整体回退到检索引擎，等下次重新加载
+                    log.warn("进程内向量库超过上限({}，dims={})，暂停使用", maxVectors(rows.dims), rows.dims);
+                    ready = false;
+                    return;
+                }
+                rows.add(doc);
+            }
+        });
+    }
+
+    public void deleteArticle(Long articleId) {
+        apply(() -> rows.removeArticle(articleId));
+    }
+
+    private void apply(Runnable op) {
+        if (!retrievalEngineConfig.getVectorStore().isEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loading) {
+                pending.add(op);
+            } else if (ready) {
+                op.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 精确 kNN
+     */
+    public List<RetrievalEngine.ScoredChunk> search(float[] query, int k, RetrievalEngine.SearchFilter filter) {
+        lock.readLock().lock();
+        try {
+            Rows r = rows;
+            if (r.size == 0 || k <= 0) {
+                return List.of();
+            }
+            if (query.length != r.dims) {
+                throw new IllegalArgumentException("查询向量维度不匹配: " + query.length + " != " + r.dims);
+            }
+
+            TopKHeap heap = new TopKHeap(Math.min(k, r.size));
+            int dims = r.dims;
+            // 逐行批量拷贝到栈上的小数组再计算：比逐元素 FloatBuffer.get 快得多
+            float[] scratch = new float[dims];
+            for (int row = 0; row < r.size; row++) {
+                if (!matches(r.docs[row], filter)) continue;
+                r.vector(row, scratch);
+                heap.offer(row, VectorUtils.dot(scratch, query));
+            }
+
+            int[] ids = new int[heap.size()];
+            float[] dots = new float[heap.size()];
+            int n = heap.drainDescending(ids, dots);
+
+            List<RetrievalEngine.ScoredChunk> results = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                // 返回副本并带上向量（供后续 MMR 去冗余使用），只拷贝命中的 k 行
+                ChunkDocument doc = withoutEmbedding(r.docs[ids[i]]);
+                float[] vector = new float[dims];
+                r.vector(ids[i], vector);
+                doc.setEmbedding(vector);
+                results.add(new RetrievalEngine.ScoredChunk(doc, toScore(dots[i])));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public VectorStoreStats snapshot() {
+        VectorStoreStats stats = new VectorStoreStats();
+        stats.setEnabled(retrievalEngineConfig.getVectorStore().isEnabled());
+        stats.setReady(ready);
+        stats.setLoading(loading);
+        lock.readLock().lock();
+        try {
+            stats.setVectors(rows.size);
+            stats.setDims(rows.dims);
+            stats.setMaxVectors(maxVectors(rows.dims));
+            stats.setOffHeapBytes(offHeapBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stats;
+    }
+
+    private long offHeapBytes() {
+        return rows.bytes();
+    }
+
+    /**
+     * 生效的向量条数上限：配置值与堆外内存可容纳条数（按维度折算，预留 1/4 给其它 direct buffer）取小
+     */
+    private int maxVectors(int dims) {
+        int configured = retrievalEngineConfig.getVectorStore().getMaxVectors();
+        if (dims <= 0) {
+            return configured;
+        }
+        long fits = DIRECT_MEMORY_LIMIT / 4 * 3 / bytesPerRow(dims);
+        return (int) Math.min(configured, Math.min(fits, Integer.MAX_VALUE - 8));
+    }
+
+    private static long bytesPerRow(int dims) {
+        return (long) dims * Float.BYTES;
+    }
+
+    /**
+     * 堆外内存上限：-XX:MaxDirectMemorySize，未设置时 JVM 默认与最大堆相同
+     */
+    private static long directMemoryLimit() {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            long configured = Long.parseLong(bean.getVMOption("MaxDirectMemorySize").getValue());
+            if (configured > 0) {
+                return configured;
+            }
+        } catch (Exception ignored) {
+            // 非 HotSpot JVM：按最大堆估算
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * 与 ES 的打分保持一致，便于沿用 minScore 阈值（向量均为单位向量，cosine 与 dot 相同）
+     */
+    private double toScore(float dot) {
+        return VectorUtils.toScore(dot, vectorIndexConfig.getSimilarity());
+    }
+
+    /**
+     * 过滤在打分之前：不满足条件的行不计算点积
+     */
+    private static boolean matches(ChunkDocument doc, RetrievalEngine.SearchFilter filter) {
+        if (filter == null) {
+            return true;
+        }
+        if (filter.isPublishedOnly() && !ArticleStatus.PUBLISHED.name().equals(doc.getStatus())) {
+            return false;
+        }
+        if (filter.getArticleIds() != null && !filter.getArticleIds().contains(doc.getArticleId())) {
+            return false;
+        }
+        return filter.matchesTags(doc.getTags());
+    }
+
+    private static ChunkDocument withoutEmbedding(ChunkDocument doc) {
+        ChunkDocument copy = new ChunkDocument();
+        copy.setChunkId(doc.getChunkId());
+        copy.setArticleId(doc.getArticleId());
+        copy.setSlug(doc.getSlug());
+        copy.setTitle(doc.getTitle());
+        copy.setTags(doc.getTags());
+        copy.setStatus(doc.getStatus());
+        copy.setIndexVersion(doc.getIndexVersion());
+        copy.setHeadingLevel(doc.getHeadingLevel());
+        copy.setHeadingText(doc.getHeadingText());
+        copy.setAnchor(doc.getAnchor());
+        copy.setChunkText(doc.getChunkText());
+        copy.setTokenCount(doc.getTokenCount());
+        copy.setSequenceNumber(doc.getSequenceNumber());
+        return copy;
+    }
+}
@@ -31,6 +31,10 @@ public class RagConfigService {
     private static final int DEFAULT_VECTOR_WEIGHT = 70;
     private static final int DEFAULT_BM25_WEIGHT = 30;
     private static final double DEFAULT_BM25_MAX = 15.0;
+    private static final String DEFAULT_FUSION_STRATEGY = FusionStrategy.WEIGHTED.value();
+    private static final double DEFAULT_MMR_LAMBDA = 0.7;
+    private static final int DEFAULT_MAX_CHUNKS_PER_ARTICLE = 2;
+    private static final int DEFAULT_COMPRESSION_BUDGET = 300;
 
     @Autowired
     private RagConfigRepository ragConfigRepository;
@@ -92,6 +96,18 @@ public class RagConfigService {
             if (update.getBm25Max() != null) {
                 entity.setBm25Max(update.getBm25Max());
             }
+            if (update.getFusionStrategy() != null) {
+                entity.setFusionStrategy(FusionStrategy.of(update.getFusionStrategy()).value());
+            }
+            if (update.getMmrLambda() != null) {
+                entity.setMmrLambda(update.getMmrLambda());
+            }
+            if (update.getMaxChunksPerArticle() != null) {
+                entity.setMaxChunksPerArticle(update.getMaxChunksPerArticle());
+            }
+            if (update.getCompressionBudget() != null) {
+                entity.setCompressionBudget(update.getCompressionBudget());
+            }
 
             if (update.getChunkSize() != null) {
                 entity.setChunkSize(update.getChunkSize());
@@ -138,6 +154,10 @@ public class RagConfigService {
             if (update.getVectorWeight() != null) next.setVectorWeight(update.getVectorWeight());
             if (update.getBm25Weight() != null) next.setBm25Weight(update.getBm25Weight());
             if (update.getBm25Max() != null) next.setBm25Max(update.getBm25Max());
+            if (update.getFusionStrategy() != null) next.setFusionStrategy(FusionStrategy.of(update.getFusionStrategy()).value());
+            if (update.getMmrLambda() != null) next.setMmrLambda(update.getMmrLambda());
+            if (update.getMaxChunksPerArticle() != null) next.setMaxChunksPerArticle(update.getMaxChunksPerArticle());
+            if (update.getCompressionBudget() != null) next.setCompressionBudget(update.getCompressionBudget());
 
             // 2) chunkSize 是否变化由 Controller 决定是否提交异步重建任务。
             //    这里不再依赖 RagReindexJobService，避免循环依赖。
@@ -150,6 +170,10 @@ public class RagConfigService {
             entity.setVectorWeight(next.getVectorWeight());
             entity.setBm25Weight(next.getBm25Weight());
             entity.setBm25Max(next.getBm25Max());
+            entity.setFusionStrategy(next.getFusionStrategy());
+            entity.setMmrLambda(next.getMmrLambda());
+            entity.setMaxChunksPerArticle(next.getMaxChunksPerArticle());
+            entity.setCompressionBudget(next.getCompressionBudget());
 
             RagConfig saved = ragConfigRepository.save(entity);
             current = toDTO(saved);
@@ -197,6 +221,31 @@ public class RagConfigService {
                 throw new IllegalArgumentException("bm25Max 需在 (0, 1000] 之间");
             }
         }
+
+        if (update.getFusionStrategy() != null && !FusionStrategy.isValid(update.getFusionStrategy())) {
+            throw new IllegalArgumentException("fusionStrategy 需为 weighted / rrf / zscore");
+        }
+
+        if (update.getMmrLambda() != null) {
+            double lambda = update.getMmrLambda();
+            if (lambda < 0 || lambda > 1) {
+                throw new IllegalArgumentException("mmrLambda 需在 0 ~ 1 之间");
+            }
+        }
+
+        if (update.getMaxChunksPerArticle() != null) {
+            int cap = update.getMaxChunksPerArticle();
+            if (cap < 0 || cap > 50) {
+                throw new IllegalArgumentException("maxChunksPerArticle 需在 0 ~ 50 之间（0 表示不限）");
+            }
+        }
+
+        if (update.getCompressionBudget() != null) {
+            int budget = update.getCompressionBudget();
+            if (budget != 0 && (budget < 50 || budget > 2000)) {
+                throw new IllegalArgumentException("compressionBudget 需为 0（不压缩）或 50 ~ 2000");
+            }
+        }
     }
 
     private RagConfig ensureEntity() {
@@ -215,6 +264,10 @@ public class RagConfigService {
         created.setVectorWeight(DEFAULT_VECTOR_WEIGHT);
         created.setBm25Weight(DEFAULT_BM25_WEIGHT);
         created.setBm25Max(DEFAULT_BM25_MAX);
+        created.setFusionStrategy(DEFAULT_FUSION_STRATEGY);
+        created.setMmrLambda(DEFAULT_MMR_LAMBDA);
+        created.setMaxChunksPerArticle(DEFAULT_MAX_CHUNKS_PER_ARTICLE);
+        created.setCompressionBudget(DEFAULT_COMPRESSION_BUDGET);
 
         return ragConfigRepository.save(created);
     }
@@ -241,13 +294,23 @@ public class RagConfigService {
         dto.setVectorWeight(vectorW);
         dto.setBm25Weight(bm25W);
         dto.setBm25Max(bm25Max != null ? bm25Max : DEFAULT_BM25_MAX);
+        dto.setFusionStrategy(entity.getFusionStrategy() != null
+            ? FusionStrategy.of(entity.getFusionStrategy()).value()
+            : DEFAULT_FUSION_STRATEGY);
+        dto.setMmrLambda(entity.getMmrLambda() != null ? entity.getMmrLambda() : DEFAULT_MMR_LAMBDA);
+        dto.setMaxChunksPerArticle(entity.getMaxChunksPerArticle() != null
+            ? entity.getMaxChunksPerArticle()
+            : DEFAULT_MAX_CHUNKS_PER_ARTICLE);
+        dto.setCompressionBudget(entity.getCompressionBudget() != null
+            ? entity.getCompressionBudget()
+            : DEFAULT_COMPRESSION_BUDGET);
 
         return dto;
     }
 
     /**
      * 将 rag-config 的 chunkSize 转换为实际切分参数。
-     * chunkSize 的口径与 ChunkService 内部 estimateTokenCount 保持一致（字符数/4）。
+     * chunkSize 的口径与 ChunkService 一致：按 TokenCounter 计的 BPE token 数。
      */
     public ChunkingOptions getChunkingOptions() {
         RagConfigDTO cfg = getConfig();
@@ -277,6 +340,10 @@ public class RagConfigService {
         copy.setVectorWeight(source.getVectorWeight());
         copy.setBm25Weight(source.getBm25Weight());
         copy.setBm25Max(source.getBm25Max());
+        copy.setFusionStrategy(source.getFusionStrategy());
+        copy.setMmrLambda(source.getMmrLambda());
+        copy.setMaxChunksPerArticle(source.getMaxChunksPerArticle());
+        copy.setCompressionBudget(source.getCompressionBudget());
         return copy;
     }
 }
@@ -0,0 +1,302 @@
+package com.lingdang.blog.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.lingdang.blog.dto.studio.RagMetricsDTO;
+import com.lingdang.blog.model.RagMetricRollup;
+import com.lingdang.blog.model.RagQueryLog;
+import com.lingdang.blog.repository.RagMetricRollupRepository;
+import com.lingdang.blog.util.LatencySketch;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RAG 查询指标汇总
+ *
+ * - 查询日志写入最终结果时（带 latencyMs）累加到内存中的分钟桶，每分钟合并写入分钟 / 小时两级汇总表
+ * - 汇总字段全部可加（计数、求和、LatencySketch、文章命中计数），重复合并不会失真；
+ *   文章命中计数按桶全量保存，只在查询时取前 20，小时桶每分钟合并一次也不会丢掉排名靠后的文章
+ * - Studio 指标接口只读汇总表；分钟汇总保留 7 天，小时汇总保留 90 天，原始日志可以保留更短
+ */
+@Slf4j
+@Service
+public class RagMetricsService {
+
+    private static final int MINUTE_RETENTION_DAYS = 7;
+    private static final int HOUR_RETENTION_DAYS = 90;
+    private static final int TOP_ARTICLES = 20;
+
+    @Autowired
+    private RagMetricRollupRepository rollupRepository;
+
+    /**
+     * 尚未写库的分钟桶（按分钟起点）；record / drain 都在 this 上同步
+     */
+    private final Map<LocalDateTime, Accumulator> pending = new HashMap<>();
+
+    /**
+     * 流式请求的日志会多次 upsert，同一个 requestId 只计一次
+     */
+    private final Cache<String, Boolean> recorded = CacheBuilder.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(30, TimeUnit.MINUTES)
+        .build();
+
+    /**
+     * 记录一次查询（只处理已完成、带 latencyMs 的日志）
+     */
+    public void record(RagQueryLog logEntity) {
+        if (logEntity.getLatencyMs() == null || logEntity.getRequestId() == null) {
+            return;
+        }
+        if (recorded.asMap().putIfAbsent(logEntity.getRequestId(), Boolean.TRUE) != null) {
+            return;
+        }
+        LocalDateTime created = logEntity.getCreatedAt() != null ? logEntity.getCreatedAt() : LocalDateTime.now();
+        LocalDateTime minute = created.truncatedTo(ChronoUnit.MINUTES);
+        synchronized (this) {
+            pending.computeIfAbsent(minute, m -> new Accumulator()).add(logEntity);
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * 把内存中的分钟桶合并进分钟 / 小时汇总；写库失败时放回内存
+     */
+    public void flush() {
+        Map<LocalDateTime, Accumulator> drained;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            drained = new HashMap<>(pending);
+            pending.clear();
+        }
+
+        for (Map.Entry<LocalDateTime, Accumulator> e : drained.entrySet()) {
+            LocalDateTime minute = e.getKey();
+            Accumulator acc = e.getValue();
+            try {
+                mergeInto(RagMetricRollup.MINUTE, minute, acc);
+                mergeInto(RagMetricRollup.HOUR, minute.truncatedTo(ChronoUnit.HOURS), acc);
+            } catch (Exception ex) {
+                // 分钟桶写入成功、小时桶失败时会重复计入分钟桶；概率很低，只记日志
+                log.warn("RAG 指标汇总写入失败，下次重试: minute={}, error={}", minute, ex.getMessage());
+                synchronized (this) {
+                    pending.computeIfAbsent(minute, m -> new Accumulator()).merge(acc);
+                }
+            }
+        }
+    }
+
+    private void mergeInto(String granularity, LocalDateTime bucketStart, Accumulator acc) {
+        RagMetricRollup row = rollupRepository.findByGranularityAndBucketStart(granularity, bucketStart)
+            .orElseGet(() -> {
+                RagMetricRollup r = new RagMetricRollup();
+                r.setGranularity(granularity);
+                r.setBucketStart(bucketStart);
+                return r;
+            });
+        Accumulator merged = Accumulator.fromRow(row);
+        merged.merge(acc);
+        merged.writeTo(row);
+        rollupRepository.save(row);
+    }
+
+    /**
+     * 查询最近 hours 小时的指标
+     */
+    public RagMetricsDTO query(String granularity, int hours) {
+        String g = RagMetricRollup.MINUTE.equalsIgnoreCase(granularity) ? RagMetricRollup.MINUTE : RagMetricRollup.HOUR;
+        // 分钟粒度最多看 24 小时（1440 个点），更长的窗口用小时粒度
+        int maxHours = RagMetricRollup.MINUTE.equals(g) ? 24 : HOUR_RETENTION_DAYS * 24;
+        int h = Math.min(Math.max(hours, 1), maxHours);
+        ChronoUnit unit = RagMetricRollup.MINUTE.equals(g) ? ChronoUnit.MINUTES : ChronoUnit.HOURS;
+        LocalDateTime from = LocalDateTime.now().minusHours(h).truncatedTo(unit);
+
+        RagMetricsDTO dto = new RagMetricsDTO();
+        dto.setGranularity(g);
+        dto.setFrom(from);
+
+        Accumulator total = new Accumulator();
+        for (RagMetricRollup row : rollupRepository.findByGranularityAndBucketStartGreaterThanEqualOrderByBucketStartAsc(g, from)) {
+            Accumulator acc = Accumulator.fromRow(row);
+            RagMetricsDTO.Point point = new RagMetricsDTO.Point();
+            point.setBucketStart(row.getBucketStart());
+            point.setStats(acc.toStats());
+            dto.getPoints().add(point);
+            total.merge(acc);
+        }
+        dto.setSummary(total.toStats());
+        total.topArticles(TOP_ARTICLES).forEach((id, hits) -> dto.getTopArticles().add(new RagMetricsDTO.ArticleHits(id, hits)));
+        return dto;
+    }
+
+    @Scheduled(cron = "0 35 3 * * *")
+    public void cleanupOldRollups() {
+        LocalDateTime now = LocalDateTime.now();
+        long minutes = rollupRepository.deleteByGranularityAndBucketStartBefore(
+            RagMetricRollup.MINUTE, now.minusDays(MINUTE_RETENTION_DAYS));
+        long hours = rollupRepository.deleteByGranularityAndBucketStartBefore(
+            RagMetricRollup.HOUR, now.minusDays(HOUR_RETENTION_DAYS));
+        if (minutes > 0 || hours > 0) {
+            log.info("RAG 指标汇总清理完成: deleted_minute_rows={}, deleted_hour_rows={}", minutes, hours);
+        }
+    }
+
+    /**
+     * 可加的指标累加器（内存分钟桶与汇总行共用）
+     */
+    static final class Accumulator {
+        long requests;
+        long successes;
+        long withArticles;
+        long latencySumMs;
+        LatencySketch latency = new LatencySketch();
+        LatencySketch retrieval = new LatencySketch();
+        long vectorCandidates;
+        long bm25Candidates;
+        long filteredCandidates;
+        long citations;
+        final Map<Long, Long> articleHits = new HashMap<>();
+
+        void add(RagQueryLog l) {
+            requests++;
+            if (!Boolean.FALSE.equals(l.getSuccess())) successes++;
+            if (Boolean.TRUE.equals(l.getHasArticles())) withArticles++;
+            latencySumMs += l.getLatencyMs();
+            latency.add(l.getLatencyMs());
+            if (l.getRetrievalMs() != null) retrieval.add(l.getRetrievalMs());
+            vectorCandidates += nz(l.getVectorCandidates());
+            bm25Candidates += nz(l.getBm25Candidates());
+            filteredCandidates += nz(l.getFilteredCandidates());
+            citations += nz(l.getCitationsCount());
+            if (l.getHitArticleIds() != null && !l.getHitArticleIds().isEmpty()) {
+                for (String id : l.getHitArticleIds().split(",")) {
+                    try {
+                        articleHits.merge(Long.parseLong(id.trim()), 1L, Long::sum);
+                    } catch (NumberFormatException ignored) {
+                        // 非法 id 忽略
+                    }
+                }
+            }
+        }
+
+        void merge(Accumulator o) {
+            requests += o.requests;
+            successes += o.successes;
+            withArticles += o.withArticles;
+            latencySumMs += o.latencySumMs;
+            latency.merge(o.latency);
+            retrieval.merge(o.retrieval);
+            vectorCandidates += o.vectorCandidates;
+            bm25Candidates += o.bm25Candidates;
+            filteredCandidates += o.filteredCandidates;
+            citations += o.citations;
+            o.articleHits.forEach((id, c) -> articleHits.merge(id, c, Long::sum));
+        }
+
+        static Accumulator fromRow(RagMetricRollup row) {
+            Accumulator a = new Accumulator();
+            a.requests = nz(row.getRequests());
+            a.successes = nz(row.getSuccesses());
+            a.withArticles = nz(row.getWithArticles());
+            a.latencySumMs = nz(row.getLatencySumMs());
+            a.latency = LatencySketch.deserialize(row.getLatencySketch());
+            a.retrieval = LatencySketch.deserialize(row.getRetrievalSketch());
+            a.vectorCandidates = nz(row.getVectorCandidatesSum());
+            a.bm25Candidates = nz(row.getBm25CandidatesSum());
+            a.filteredCandidates = nz(row.getFilteredCandidatesSum());
+            a.citations = nz(row.getCitationsSum());
+            if (row.getArticleHits() != null && !row.getArticleHits().isEmpty()) {
+                for (String pair : row.getArticleHits().split(",")) {
+                    int sep = pair.indexOf(':');
+                    if (sep <= 0) continue;
+                    a.articleHits.merge(Long.parseLong(pair.substring(0, sep)), Long.parseLong(pair.substring(sep + 1)), Long::sum);
+                }
+            }
+            return a;
+        }
+
+        void writeTo(RagMetricRollup row) {
+            row.setRequests(requests);
+            row.setSuccesses(successes);
+            row.setWithArticles(withArticles);
+            row.setLatencySumMs(latencySumMs);
+            row.setLatencySketch(latency.serialize());
+            row.setRetrievalSketch(retrieval.serialize());
+            row.setVectorCandidatesSum(vectorCandidates);
+            row.setBm25CandidatesSum(bm25Candidates);
+            row.setFilteredCandidatesSum(filteredCandidates);
+            row.setCitationsSum(citations);
+            StringBuilder sb = new StringBuilder();
+            topArticles(articleHits.size()).forEach((id, c) -> {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(id).append(':').append(c);
+            });
+            row.setArticleHits(sb.toString());
+        }
+
+        /**
+         * 命中次数最多的 n 篇文章（按次数降序，次数相同按 id 升序）
+         */
+        Map<Long, Long> topArticles(int n) {
+            List<Map.Entry<Long, Long>> entries = new ArrayList<>(articleHits.entrySet());
+            entries.sort((x, y) -> {
+                int c = Long.compare(y.getValue(), x.getValue());
+                return c != 0 ? c : Long.compare(x.getKey(), y.getKey());
+            });
+            Map<Long, Long> top = new LinkedHashMap<>();
+            for (int i = 0; i < Math.min(n, entries.size()); i++) {
+                top.put(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+            return top;
+        }
+
+        RagMetricsDTO.Stats toStats() {
+            RagMetricsDTO.Stats s = new RagMetricsDTO.Stats();
+            s.setRequests(requests);
+            if (requests > 0) {
+                s.setSuccessRate((double) successes / requests);
+                s.setHasArticlesRate((double) withArticles / requests);
+                s.setAvgLatencyMs((double) latencySumMs / requests);
+                s.setAvgVectorCandidates((double) vectorCandidates / requests);
+                s.setAvgBm25Candidates((double) bm25Candidates / requests);
+                s.setAvgFilteredCandidates((double) filteredCandidates / requests);
+                s.setAvgCitations((double) citations / requests);
+            }
+            s.setLatencyP50(latency.quantile(0.5));
+            s.setLatencyP95(latency.quantile(0.95));
+            s.setLatencyP99(latency.quantile(0.99));
+            s.setRetrievalP50(retrieval.quantile(0.5));
+            s.setRetrievalP95(retrieval.quantile(0.95));
+            s.setRetrievalP99(retrieval.quantile(0.99));
+            return s;
+        }
+
+        private static long nz(Number n) {
+            return n != null ? n.longValue() : 0L;
+        }
+    }
+}
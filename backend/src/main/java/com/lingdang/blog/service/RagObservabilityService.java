@@ -1,12 +1,15 @@
 package com.lingdang.blog.service;
 
+import com.lingdang.blog.dto.CursorPage;
 import com.lingdang.blog.dto.assistant.RagConfigDTO;
 import com.lingdang.blog.model.RagQueryHit;
 import com.lingdang.blog.model.RagQueryLog;
 import com.lingdang.blog.repository.RagQueryHitRepository;
 import com.lingdang.blog.repository.RagQueryLogRepository;
+import com.lingdang.blog.util.PageCursor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,13 +18,16 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 /**
- * RAG 可观测性：记录查询日志/命中，并做定期清理（保留 7 天）
+ * RAG 可观测性：记录查询日志/命中，并做定期清理（原始日志保留 3 天；长期趋势看 RagMetricsService 的汇总）
  */
 @Slf4j
 @Service
 public class RagObservabilityService {
 
-    private static final int RETENTION_DAYS = 7;
+    private static final int RETENTION_DAYS = 3;
+    private static final int DEFAULT_LOG_PAGE_SIZE = 50;
+    private static final int MAX_LOG_PAGE_SIZE = 200;
+    private static final String LOG_CURSOR_SORT = "createdAt:desc";
 
     @Autowired
     private RagQueryLogRepository ragQueryLogRepository;
@@ -29,11 +35,15 @@ public class RagObservabilityService {
     @Autowired
     private RagQueryHitRepository ragQueryHitRepository;
 
+    @Autowired
+    private RagMetricsService ragMetricsService;
+
     @Transactional
     public void upsertQueryLog(RagQueryLog logEntity) {
         // request_id 唯一，save 会在第一次 insert；如果重复可以先查再更新
         ragQueryLogRepository.findByRequestId(logEntity.getRequestId()).ifPresent(existing -> logEntity.setId(existing.getId()));
         ragQueryLogRepository.save(logEntity);
+        ragMetricsService.record(logEntity);
     }
 
     @Transactional
@@ -56,12 +66,49 @@ public class RagObservabilityService {
             l.setVectorWeight(cfg.getVectorWeight());
             l.setBm25Weight(cfg.getBm25Weight());
             l.setBm25Max(cfg.getBm25Max());
+            l.setFusionStrategy(cfg.getFusionStrategy());
+            l.setMmrLambda(cfg.getMmrLambda());
+            l.setMaxChunksPerArticle(cfg.getMaxChunksPerArticle());
+            l.setCompressionBudget(cfg.getCompressionBudget());
         }
         return l;
     }
 
     /**
-     * 每天凌晨清理 7 天前数据
+     * 保留期内的查询日志，按 (createdAt, id) 键集分页
+     */
+    public CursorPage<RagQueryLog> listRecentLogs(String cursor, Integer pageSize) {
+        int size = (pageSize == null || pageSize < 1) ? DEFAULT_LOG_PAGE_SIZE : Math.min(pageSize, MAX_LOG_PAGE_SIZE);
+        LocalDateTime since = LocalDateTime.now().minusDays(RETENTION_DAYS);
+        PageRequest limit = PageRequest.of(0, size + 1);
+
+        List<RagQueryLog> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = ragQueryLogRepository.findRecent(since, limit);
+        } else {
+            PageCursor after = PageCursor.decode(cursor, LOG_CURSOR_SORT);
+            rows = ragQueryLogRepository.findRecentBefore(since, parseCursorTime(after), after.getId(), limit);
+        }
+
+        String nextCursor = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            RagQueryLog last = rows.get(size - 1);
+            nextCursor = PageCursor.encode(LOG_CURSOR_SORT, last.getCreatedAt().toString(), last.getId());
+        }
+        return new CursorPage<>(rows, nextCursor);
+    }
+
+    private static LocalDateTime parseCursorTime(PageCursor cursor) {
+        try {
+            return LocalDateTime.parse(cursor.getValue());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+    }
+
+    /**
+     * 每天凌晨清理保留期之前的数据
      */
     @Scheduled(cron = "0 30 3 * * *")
     @Transactional
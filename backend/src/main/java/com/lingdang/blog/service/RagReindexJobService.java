@@ -1,29 +1,44 @@
 package com.lingdang.blog.service;
 
-import com.lingdang.blog.config.ElasticsearchInitializer;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.lingdang.blog.dto.assistant.RagConfigDTO;
+import com.lingdang.blog.model.ArticleChunk;
 import com.lingdang.blog.model.RagConfig;
+import com.lingdang.blog.model.RagReindexCheckpoint;
 import com.lingdang.blog.model.RagReindexJob;
 import com.lingdang.blog.repository.RagConfigRepository;
+import com.lingdang.blog.repository.RagReindexCheckpointRepository;
 import com.lingdang.blog.repository.RagReindexJobRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
- * 异步全量重建索引任务服务
+ * 异步全量重建索引任务服务（支持按文章检查点断点续跑）
  */
 @Slf4j
 @Service
 public class RagReindexJobService {
 
     private static final int RETENTION_DAYS = 7;
+    private static final TypeReference<List<ArticleChunk>> CHUNK_LIST = new TypeReference<>() {
+    };
 
     @Autowired
     private RagReindexJobRepository ragReindexJobRepository;
@@ -34,10 +49,23 @@ public class RagReindexJobService {
     @Autowired
     private RagConfigRepository ragConfigRepository;
 
+    @Autowired
+    private RagReindexCheckpointRepository checkpointRepository;
+
     // (removed) RagConfigService dependency to avoid circular reference
 
     @Autowired
-    private ElasticsearchInitializer esInitializer;
+    private RetrievalEngine retrievalEngine;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("indexTaskExecutor")
+    private Executor indexTaskExecutor;
+
+    // 当前进程内正在执行的任务，防止同一任务被重复投递（如启动续跑与手动触发并发）
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
 
     @Transactional
     public RagReindexJob submitChunkSizeReindex(RagConfigDTO requestedConfig) {
@@ -47,31 +75,108 @@ public class RagReindexJobService {
         job.setMinScore(requestedConfig.getMinScore());
         job.setTopK(requestedConfig.getTopK());
         job.setReturnCitations(requestedConfig.getReturnCitations());
-        job.setAliasName(ElasticsearchInitializer.INDEX_ALIAS);
-        job.setOldIndex(esInitializer.resolveCurrentIndex());
+        job.setAliasName(retrievalEngine.name());
+        job.setOldIndex(retrievalEngine.currentIndex());
         RagReindexJob saved = ragReindexJobRepository.save(job);
 
-        runJobAsync(saved.getId());
+        dispatch(saved.getId(), false);
         return saved;
     }
 
-    @Async("indexTaskExecutor")
-    public void runJobAsync(Long jobId) {
-        executeJob(jobId);
+    /**
+     * 启动时检测被进程重启打断的任务：
+     * - 最新一个 RUNNING 任务续跑到原 newIndex，跳过检查点中已完成的文章
+     * - 更早的 RUNNING 任务已被取代，标记失败并清理其孤儿索引
+     * - PENDING 任务（提交后尚未开始）照常执行
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        try {
+            List<RagReindexJob> running = ragReindexJobRepository.findByStatusOrderByCreatedAtDesc(RagReindexJob.Status.RUNNING);
+            for (int i = 0; i < running.size(); i++) {
+                RagReindexJob job = running.get(i);
+                if (i == 0) {
+                    log.warn("检测到被中断的全量重建任务，将续跑: job_id={}, new_index={}, progress={}/{}",
+                        job.getId(), job.getNewIndex(), job.getDoneArticles(), job.getTotalArticles());
+                    dispatch(job.getId(), true);
+                } else {
+                    job.setStatus(RagReindexJob.Status.FAILED);
+                    job.setCompletedAt(LocalDateTime.now());
+                    job.setErrorMessage("interrupted and superseded by job " + running.get(0).getId());
+                    ragReindexJobRepository.save(job);
+                    fullReindexService.discardIndex(job.getNewIndex());
+                    log.warn("中断的旧重建任务已被取代，标记失败: job_id={}, new_index={}", job.getId(), job.getNewIndex());
+                }
+            }
+
+            for (RagReindexJob job : ragReindexJobRepository.findByStatusOrderByCreatedAtDesc(RagReindexJob.Status.PENDING)) {
+                dispatch(job.getId(), false);
+            }
+        } catch (Exception e) {
+            log.error("检查中断的重建任务失败", e);
+        }
+    }
+
+    /**
+     * 投递到 indexTaskExecutor 执行。
+     * 注意：不能用 this 调用 @Async 方法（绕过代理会在当前线程/事务里同步执行），
+     * 且需要在提交事务后再投递，保证 worker 能读到任务行。
+     */
+    private void dispatch(Long jobId, boolean resume) {
+        Runnable task = () -> executeJob(jobId, resume);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    indexTaskExecutor.execute(task);
+                }
+            });
+        } else {
+            indexTaskExecutor.execute(task);
+        }
     }
 
-    @Transactional
     public void executeJob(Long jobId) {
-        RagReindexJob job = ragReindexJobRepository.findById(jobId)
-            .orElseThrow(() -> new RuntimeException("任务不存在: " + jobId));
-
-        if (job.getStatus() == RagReindexJob.Status.RUNNING) return;
+        executeJob(jobId, false);
+    }
 
-        job.setStatus(RagReindexJob.Status.RUNNING);
-        job.setStartedAt(LocalDateTime.now());
-        ragReindexJobRepository.save(job);
+    /**
+     * 执行重建任务。
+     *
+     * 不包在单个事务里：进度与检查点需要逐篇提交，进程中断后才能据此续跑。
+     */
+    private void executeJob(Long jobId, boolean resume) {
+        if (!runningJobs.add(jobId)) {
+            log.warn("重建任务已在执行中，忽略重复投递: job_id={}", jobId);
+            return;
+        }
 
         try {
+            RagReindexJob job = ragReindexJobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("任务不存在: " + jobId));
+
+            if (!resume && job.getStatus() == RagReindexJob.Status.RUNNING) return;
+            if (job.getStatus() == RagReindexJob.Status.SUCCESS || job.getStatus() == RagReindexJob.Status.FAILED) return;
+
+            String resumeIndex = null;
+            Map<Long, List<ArticleChunk>> completed = new HashMap<>();
+            if (resume) {
+                resumeIndex = job.getNewIndex();
+                for (RagReindexCheckpoint cp : checkpointRepository.findByJobId(jobId)) {
+                    List<ArticleChunk> chunks = readChunks(cp);
+                    if (chunks != null) {
+                        completed.put(cp.getArticleId(), chunks);
+                    }
+                }
+                job.setResumeCount((job.getResumeCount() != null ? job.getResumeCount() : 0) + 1);
+            }
+
+            job.setStatus(RagReindexJob.Status.RUNNING);
+            if (job.getStartedAt() == null) {
+                job.setStartedAt(LocalDateTime.now());
+            }
+            ragReindexJobRepository.save(job);
+
             int chunkSize = job.getRequestedChunkSize() != null ? job.getRequestedChunkSize() : 900;
             ChunkingOptions options = ChunkingOptions.of(
                 Math.max(200, (int) Math.round(chunkSize * 0.67)),
@@ -79,8 +184,10 @@ public class RagReindexJobService {
                 Math.min(200, Math.max(0, (int) Math.round(chunkSize * 0.10)))
             );
 
-            // 执行蓝绿重建（在 FullReindexService 内部创建新索引并切换 alias）
-            fullReindexService.rebuildAllPublishedToNewIndex(options,
+            // 执行蓝绿重建（在 FullReindexService 内部创建/复用新索引并切换 alias）
+            FullReindexService.RebuildResult result = fullReindexService.rebuildAllPublishedToNewIndex(options,
+                resumeIndex,
+                completed,
                 (total, done) -> {
                     try {
                         updateProgress(jobId, total, done);
@@ -88,11 +195,11 @@ public class RagReindexJobService {
                     }
                 },
                 (newIndex) -> {
-                    try {
-                        updateNewIndex(jobId, newIndex);
-                    } catch (Exception ignored) {
-                    }
-                }
+                    // 新建了索引：旧检查点（若有）对应的是已不存在的索引，必须作废
+                    checkpointRepository.deleteByJobId(jobId);
+                    updateNewIndex(jobId, newIndex);
+                },
+                (articleId, chunks) -> saveCheckpoint(jobId, articleId, chunks)
             );
 
             // 重建成功后才落库配置（只更新 chunkSize；其他字段本身不需要重建，可按需扩展）
@@ -101,17 +208,59 @@ public class RagReindexJobService {
             RagReindexJob finished = ragReindexJobRepository.findById(jobId).orElseThrow();
             finished.setStatus(RagReindexJob.Status.SUCCESS);
             finished.setCompletedAt(LocalDateTime.now());
+            finished.setIndexedChunks(result.getIndexedChunks());
+            finished.setSkippedArticles(result.getSkippedArticles());
             ragReindexJobRepository.save(finished);
 
-            log.info("全量重建索引任务成功: job_id={}, new_index={}", jobId, finished.getNewIndex());
+            log.info("全量重建索引任务成功: job_id={}, new_index={}, chunks={}, duplicate_chunks={}, resumed={}, skipped_articles={}",
+                jobId, finished.getNewIndex(), result.getIndexedChunks(), result.getDuplicateChunks(),
+                finished.getResumeCount(), result.getSkippedArticles());
 
+        } catch (FullReindexService.RebuildInterruptedException e) {
+            // 保持 RUNNING，下次启动由 resumeInterruptedJobs 续跑
+            log.warn("全量重建索引任务被中断，将在下次启动时续跑: job_id={}, reason={}", jobId, e.getMessage());
         } catch (Exception e) {
-            RagReindexJob failed = ragReindexJobRepository.findById(jobId).orElseThrow();
-            failed.setStatus(RagReindexJob.Status.FAILED);
-            failed.setCompletedAt(LocalDateTime.now());
-            failed.setErrorMessage(e.getMessage());
-            ragReindexJobRepository.save(failed);
+            ragReindexJobRepository.findById(jobId).ifPresent(failed -> {
+                failed.setStatus(RagReindexJob.Status.FAILED);
+                failed.setCompletedAt(LocalDateTime.now());
+                failed.setErrorMessage(e.getMessage());
+                ragReindexJobRepository.save(failed);
+            });
             log.error("全量重建索引任务失败: job_id={}", jobId, e);
+        } finally {
+            runningJobs.remove(jobId);
+        }
+    }
+
+    protected void saveCheckpoint(Long jobId, Long articleId, List<ArticleChunk> chunks) {
+        if (checkpointRepository.existsByJobIdAndArticleId(jobId, articleId)) {
+            return;
+        }
+        RagReindexCheckpoint cp = new RagReindexCheckpoint();
+        cp.setJobId(jobId);
+        cp.setArticleId(articleId);
+        cp.setChunkCount(chunks.size());
+        try {
+            cp.setChunksJson(objectMapper.writeValueAsString(chunks));
+        } catch (Exception e) {
+            throw new IllegalStateException("序列化检查点 chunks 失败: article_id=" + articleId, e);
+        }
+        checkpointRepository.save(cp);
+    }
+
+    /**
+     * 读取检查点中的 chunks；缺失或无法解析时返回 null（该文章续跑时重新写入新索引）
+     */
+    private List<ArticleChunk> readChunks(RagReindexCheckpoint cp) {
+        if (cp.getChunksJson() == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(cp.getChunksJson(), CHUNK_LIST);
+        } catch (Exception e) {
+            log.warn("检查点 chunks 解析失败，续跑时重新索引该文章: job_id={}, article_id={}, error={}",
+                cp.getJobId(), cp.getArticleId(), e.getMessage());
+            return null;
         }
     }
 
@@ -156,8 +305,9 @@ public class RagReindexJobService {
     public void cleanupOldJobs() {
         LocalDateTime before = LocalDateTime.now().minusDays(RETENTION_DAYS);
         long deleted = ragReindexJobRepository.deleteByCreatedAtBefore(before);
-        if (deleted > 0) {
-            log.info("重建索引任务清理完成: deleted_jobs={}, before={}", deleted, before);
+        long checkpoints = checkpointRepository.deleteByCreatedAtBefore(before);
+        if (deleted > 0 || checkpoints > 0) {
+            log.info("重建索引任务清理完成: deleted_jobs={}, deleted_checkpoints={}, before={}", deleted, checkpoints, before);
         }
     }
 
@@ -1,10 +1,7 @@
 package com.lingdang.blog.service;
 
-import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch.core.SearchResponse;
-import co.elastic.clients.elasticsearch.core.search.Hit;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.lingdang.blog.config.ElasticsearchInitializer;
+import com.lingdang.blog.config.RetrievalEngineConfig;
 import com.lingdang.blog.dto.assistant.AssistantRequest;
 import com.lingdang.blog.dto.assistant.AssistantResponse;
 import com.lingdang.blog.dto.assistant.RagConfigDTO;
@@ -15,6 +12,8 @@ import com.lingdang.blog.model.ChunkDocument;
 import com.lingdang.blog.model.RagQueryHit;
 import com.lingdang.blog.model.RagQueryLog;
 import com.lingdang.blog.repository.AssistantLogRepository;
+import com.lingdang.blog.util.MmrSelector;
+import com.lingdang.blog.util.TopKHeap;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +22,7 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 /**
@@ -33,7 +33,28 @@ import java.util.stream.Collectors;
 public class RagService {
     
     @Autowired
-    private ElasticsearchClient esClient;
+    private RetrievalEngine retrievalEngine;
+    
+    @Autowired
+    private OffHeapVectorStore offHeapVectorStore;
+    
+    @Autowired
+    private ArticleEmbeddingCache articleEmbeddingCache;
+    
+    @Autowired
+    private ArticleVectorIndex articleVectorIndex;
+    
+    @Autowired
+    private ContextCompressor contextCompressor;
+
+    @Autowired
+    private TokenCounter tokenCounter;
+
+    @Autowired
+    private ChunkDedupService chunkDedupService;
+    
+    @Autowired
+    private RetrievalEngineConfig retrievalEngineConfig;
     
     @Autowired
     private LlmService llmService;
@@ -61,6 +82,14 @@ public class RagService {
             return r;
         }
 
+        // 就某篇文章提问：问题默认都与该文相关，不再做意图判断
+        if (isArticleScope(request)) {
+            IntentResult r = new IntentResult();
+            r.setIntent(IntentType.BLOG_OR_AI);
+            r.setReason("article_scope");
+            return r;
+        }
+
         // 先对“你是谁/你能做什么”做硬匹配：直接走介绍（减少一次 LLM 调用）
         String lower = q.toLowerCase(Locale.ROOT);
         if (q.contains("你是谁") || q.contains("你是誰") || q.contains("你能做什么") || q.contains("你能做啥")
@@ -337,13 +366,21 @@ public class RagService {
             float[] queryEmbedding = llmService.generateEmbedding(request.getQuestion());
             
             // 2. 混合检索（向量 + BM25）
-            HybridSearchResult hybrid = hybridSearch(request.getQuestion(), queryEmbedding, topK);
+            HybridSearchResult hybrid = hybridSearch(request, queryEmbedding, topK);
             List<RetrievalResult> results = hybrid.merged;
             
             // 3. 过滤高相关度文章
-            List<RetrievalResult> highRelevanceResults = filterHighRelevanceResults(results, minScore, topK);
+            List<RetrievalResult> candidates = filterHighRelevanceResults(results, minScore, results != null ? results.size() : 0);
             log.info("相关度过滤: 检索到 {} 条结果, 阈值>={}, 过滤后 {} 条", 
-                results != null ? results.size() : 0, minScore, highRelevanceResults.size());
+                results != null ? results.size() : 0, minScore, candidates.size());
+            
+            // 3.1 折叠近重复 chunk（多篇文章里的同一段样板内容只保留相关度最高的一份）
+            List<RetrievalResult> distinct = chunkDedupService.collapse(candidates, RetrievalResult::getChunkText, this::estimateTokens);
+            int collapsedChunks = candidates.size() - distinct.size();
+
+            // 3.2 MMR 去冗余（重叠 / 同文章的相似 chunk），截到 topK
+            MmrResult mmr = diversify(distinct, topK, ragConfig, RETRIEVAL_ARTICLE.equals(hybrid.retrievalMode));
+            List<RetrievalResult> highRelevanceResults = mmr.selected;
             
             // 4. 判断模式和是否有高相关度检索结果
             boolean hasArticles = !highRelevanceResults.isEmpty();
@@ -367,7 +404,10 @@ public class RagService {
                 }
             }
             
-            // 添加当前问题
+            // 添加当前问题（参考内容先按问题做抽取式压缩）
+            ContextCompressor.CompressionResult compression = hasArticles
+                ? compressForPrompt(request.getQuestion(), queryEmbedding, highRelevanceResults, ragConfig)
+                : null;
             String userPrompt = hasArticles ? 
                 buildPrompt(request.getQuestion(), highRelevanceResults, returnCitations) : request.getQuestion();
             messages.add(new ChatCompletionRequest.ChatMessage("user", userPrompt));
@@ -405,6 +445,16 @@ public class RagService {
                 ragLog.setHasArticles(!highRelevanceResults.isEmpty());
                 ragLog.setVectorCandidates(hybrid.vectorCount);
                 ragLog.setBm25Candidates(hybrid.bm25Count);
+                ragLog.setFusionStrategy(hybrid.fusionStrategy.value());
+                ragLog.setFusionMicros(hybrid.fusionMicros);
+                ragLog.setRetrievalMode(hybrid.retrievalMode);
+                ragLog.setStage1Articles(hybrid.stage1Articles);
+                ragLog.setFlatRecall(hybrid.flatRecall);
+                ragLog.setFlatRetrievalMs(hybrid.flatRetrievalMs);
+                ragLog.setMmrDroppedChunks(mmr.droppedChunks);
+                ragLog.setMmrRemovedTokens(mmr.removedTokens);
+                ragLog.setDedupCollapsedChunks(collapsedChunks);
+                applyCompressionMetrics(ragLog, compression);
                 ragLog.setFilteredCandidates(highRelevanceResults.size());
                 ragLog.setCitationsCount(response.getCitations() != null ? response.getCitations().size() : 0);
                 ragLog.setLatencyMs(response.getLatencyMs());
@@ -433,31 +483,65 @@ public class RagService {
         }
     }
     
+    /**
+     * 检索方式（记入 RAG 查询日志）
+     */
+    private static final String RETRIEVAL_FLAT = "flat";
+    private static final String RETRIEVAL_HIERARCHICAL = "hierarchical";
+    private static final String RETRIEVAL_ARTICLE = "article";
+
+    /**
+     * MMR 候选池为 topK 的倍数；与已选 chunk 相似度超过阈值视为重复内容（重叠切分）
+     */
+    private static final int MMR_POOL_FACTOR = 3;
+    private static final float MMR_DUPLICATE_SIMILARITY = 0.95f;
+
     private static class HybridSearchResult {
         private final List<RetrievalResult> merged;
         private final int vectorCount;
         private final int bm25Count;
-
-        private HybridSearchResult(List<RetrievalResult> merged, int vectorCount, int bm25Count) {
+        private final FusionStrategy fusionStrategy;
+        private final int fusionMicros;
+        private String retrievalMode = RETRIEVAL_FLAT;
+        private Integer stage1Articles;
+        private Double flatRecall;
+        private Integer flatRetrievalMs;
+
+        private HybridSearchResult(List<RetrievalResult> merged, int vectorCount, int bm25Count,
+                                   FusionStrategy fusionStrategy, int fusionMicros) {
             this.merged = merged;
             this.vectorCount = vectorCount;
             this.bm25Count = bm25Count;
+            this.fusionStrategy = fusionStrategy;
+            this.fusionMicros = fusionMicros;
         }
     }
 
     /**
      * 混合检索（向量 + BM25）
+     *
+     * 过滤条件（仅已发布、可选标签 / 文章范围）在检索引擎内先于打分生效，
+     * 不会出现先取 Top-K 再过滤导致结果不足的情况。
      */
-    private HybridSearchResult hybridSearch(String question, float[] queryEmbedding, int topK) throws IOException {
+    private HybridSearchResult hybridSearch(AssistantRequest request, float[] queryEmbedding, int topK) throws IOException {
         int safeTopK = Math.max(topK, 1);
         int vectorTopK = Math.min(Math.max(safeTopK * 10, 50), 100);
         int bm25TopK = Math.min(Math.max(safeTopK * 4, 20), 100);
+        // 融合后保留 topK 的若干倍作为候选池，交给 MMR 去冗余后再截到 topK
+        int poolK = safeTopK * MMR_POOL_FACTOR;
 
-        // 向量检索
-        List<RetrievalResult> vectorResults = vectorSearch(queryEmbedding, vectorTopK);
+        if (isArticleScope(request)) {
+            return articleScopedSearch(request.getArticleId(), queryEmbedding, poolK);
+        }
 
-        // BM25 检索
-        List<RetrievalResult> bm25Results = bm25Search(question, bm25TopK);
+        RetrievalEngine.SearchFilter filter = RetrievalEngine.SearchFilter.published();
+        if (request.getTags() != null) {
+            List<String> tags = new ArrayList<>();
+            for (String tag : request.getTags()) {
+                if (tag != null && !tag.isBlank()) tags.add(tag.trim());
+            }
+            filter.setTags(tags);
+        }
 
         RagConfigDTO cfg = ragConfigService.getConfig();
         int vectorWeight = cfg.getVectorWeight() != null ? cfg.getVectorWeight() : 70;
@@ -469,66 +553,176 @@ public class RagService {
             bm25Weight = 30;
         }
 
+        FusionStrategy strategy = FusionStrategy.of(cfg.getFusionStrategy());
+        FusionStrategy.Params params = new FusionStrategy.Params(
+            vectorWeight / 100.0, bm25Weight / 100.0, bm25Max, FusionStrategy.DEFAULT_RRF_K);
+
+        RetrievalEngineConfig.Hierarchical hierarchical = retrievalEngineConfig.getHierarchical();
+        if (!hierarchical.isEnabled() || !articleVectorIndex.isReady()) {
+            return searchAndFuse(request.getQuestion(), queryEmbedding, filter,
+                vectorTopK, bm25TopK, poolK, strategy, params);
+        }
+        return hierarchicalSearch(request.getQuestion(), queryEmbedding, filter,
+            vectorTopK, bm25TopK, poolK, safeTopK, strategy, params, hierarchical);
+    }
+
+    /**
+     * 分层检索：第一阶段按文章级向量选出 Top-N 文章，第二阶段只在这些文章内做向量 + BM25；
+     * 按抽样比例额外跑一次全量检索，把召回率与耗时对比记入查询日志
+     */
+    private HybridSearchResult hierarchicalSearch(String question, float[] queryEmbedding,
+                                                  RetrievalEngine.SearchFilter filter,
+                                                  int vectorTopK, int bm25TopK, int poolK, int topK,
+                                                  FusionStrategy strategy, FusionStrategy.Params params,
+                                                  RetrievalEngineConfig.Hierarchical hierarchical) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Long> articleIds = articleVectorIndex.topArticles(queryEmbedding, hierarchical.getTopArticles(), filter);
+        if (articleIds.isEmpty()) {
+            return searchAndFuse(question, queryEmbedding, filter, vectorTopK, bm25TopK, poolK, strategy, params);
+        }
+        log.info("分层检索第一阶段: articles={}/{}, 耗时={}ms",
+            articleIds.size(), articleVectorIndex.size(), System.currentTimeMillis() - start);
+
+        HybridSearchResult result = searchAndFuse(question, queryEmbedding,
+            filter.withArticleIds(new HashSet<>(articleIds)), vectorTopK, bm25TopK, poolK, strategy, params);
+        result.retrievalMode = RETRIEVAL_HIERARCHICAL;
+        result.stage1Articles = articleIds.size();
+        int hierarchicalMs = (int) (System.currentTimeMillis() - start);
+
+        double sampleRate = hierarchical.getCompareSampleRate();
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            long flatStart = System.currentTimeMillis();
+            HybridSearchResult flat = searchAndFuse(question, queryEmbedding, filter,
+                vectorTopK, bm25TopK, poolK, strategy, params);
+            result.flatRetrievalMs = (int) (System.currentTimeMillis() - flatStart);
+            result.flatRecall = recallAgainst(head(result.merged, topK), head(flat.merged, topK));
+            log.info("分层检索对比: recall@{}={}, hierarchical={}ms, flat={}ms",
+                topK, String.format("%.2f", result.flatRecall), hierarchicalMs, result.flatRetrievalMs);
+        }
+        return result;
+    }
+
+    private static <T> List<T> head(List<T> list, int n) {
+        return list.size() <= n ? list : list.subList(0, n);
+    }
+
+    /**
+     * 以全量检索的 Top-K 为基准，分层结果命中的比例；基准为空时记为 1
+     */
+    private static double recallAgainst(List<RetrievalResult> results, List<RetrievalResult> baseline) {
+        if (baseline.isEmpty()) {
+            return 1.0;
+        }
+        Set<String> ids = new HashSet<>();
+        for (RetrievalResult r : results) {
+            ids.add(r.getChunkId());
+        }
+        int hit = 0;
+        for (RetrievalResult r : baseline) {
+            if (ids.contains(r.getChunkId())) hit++;
+        }
+        return (double) hit / baseline.size();
+    }
+
+    /**
+     * 向量 + BM25 两路检索后融合
+     */
+    private HybridSearchResult searchAndFuse(String question, float[] queryEmbedding,
+                                             RetrievalEngine.SearchFilter filter,
+                                             int vectorTopK, int bm25TopK, int topK,
+                                             FusionStrategy strategy, FusionStrategy.Params params) throws IOException {
+        // 向量检索
+        List<RetrievalResult> vectorResults = vectorSearch(queryEmbedding, vectorTopK, filter);
+
+        // BM25 检索
+        List<RetrievalResult> bm25Results = bm25Search(question, bm25TopK, filter);
+
         // 合并去重并重排序
-        List<RetrievalResult> merged = mergeAndRerank(vectorResults, bm25Results, safeTopK, vectorWeight, bm25Weight, bm25Max);
+        long fusionStart = System.nanoTime();
+        List<RetrievalResult> merged = mergeAndRerank(vectorResults, bm25Results, topK, strategy, params);
+        int fusionMicros = (int) ((System.nanoTime() - fusionStart) / 1000);
+        log.info("融合排序: strategy={}, vector={}, bm25={}, merged={}, 耗时={}us",
+            strategy.value(), vectorResults.size(), bm25Results.size(), merged.size(), fusionMicros);
+
         return new HybridSearchResult(merged,
-            vectorResults != null ? vectorResults.size() : 0,
-            bm25Results != null ? bm25Results.size() : 0);
+            vectorResults.size(),
+            bm25Results.size(),
+            strategy,
+            fusionMicros);
+    }
+    
+    private static boolean isArticleScope(AssistantRequest request) {
+        return "ARTICLE".equalsIgnoreCase(request.getScope()) && request.getArticleId() != null;
+    }
 
+    /**
+     * 单篇文章内检索：候选只有该文的几十个 chunk，直接对缓存的向量精确打分，不走 BM25
+     */
+    private HybridSearchResult articleScopedSearch(Long articleId, float[] queryEmbedding, int topK) {
+        List<RetrievalResult> vectorResults = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (RetrievalEngine.ScoredChunk hit : articleEmbeddingCache.search(articleId, queryEmbedding, topK)) {
+                RetrievalResult result = toRetrievalResult(hit.getDocument());
+                result.setVectorScore(hit.getScore());
+                vectorResults.add(result);
+            }
+        } catch (Exception e) {
+            log.error("❌ 文章内检索失败，将返回空结果: articleId={}", articleId, e);
+        }
+        log.info("文章内检索: articleId={}, topK={}, hits={}, 耗时={}us",
+            articleId, topK, vectorResults.size(), (System.nanoTime() - start) / 1000);
+
+        // 只有向量一路：权重全部给向量，分数即向量分数
+        FusionStrategy strategy = FusionStrategy.WEIGHTED;
+        FusionStrategy.Params params = new FusionStrategy.Params(1.0, 0.0, 1.0, FusionStrategy.DEFAULT_RRF_K);
+        long fusionStart = System.nanoTime();
+        List<RetrievalResult> merged = mergeAndRerank(vectorResults, List.of(), topK, strategy, params);
+        int fusionMicros = (int) ((System.nanoTime() - fusionStart) / 1000);
+        HybridSearchResult result = new HybridSearchResult(merged, vectorResults.size(), 0, strategy, fusionMicros);
+        result.retrievalMode = RETRIEVAL_ARTICLE;
+        return result;
     }
     
     /**
      * 向量检索
      */
-    private List<RetrievalResult> vectorSearch(float[] embedding, int topK) throws IOException {
+    private List<RetrievalResult> vectorSearch(float[] embedding, int topK, RetrievalEngine.SearchFilter filter) throws IOException {
         List<RetrievalResult> results = new ArrayList<>();
         
         try {
-            // 先检查索引是否存在
-            boolean indexExists = esClient.indices().exists(e -> e.index(ElasticsearchInitializer.INDEX_ALIAS)).value();
-
-            if (!indexExists) {
-                log.warn("索引 {} 不存在，跳过向量检索", ElasticsearchInitializer.INDEX_ALIAS);
+            List<RetrievalEngine.ScoredChunk> exact = exactVectorSearch(embedding, topK, filter);
+            if (exact != null) {
+                for (RetrievalEngine.ScoredChunk hit : exact) {
+                    RetrievalResult result = toRetrievalResult(hit.getDocument());
+                    result.setVectorScore(hit.getScore());
+                    results.add(result);
+                }
                 return results;
             }
 
-            // 检查索引是否有数据
-            long count = esClient.count(c -> c.index(ElasticsearchInitializer.INDEX_ALIAS)).count();
+            // 先检查索引是否存在、是否有数据
+            long count = retrievalEngine.countDocuments();
+            if (count < 0) {
+                log.warn("索引 {} 不存在，跳过向量检索", retrievalEngine.name());
+                return results;
+            }
             if (count == 0) {
-                log.warn("索引 {} 为空，跳过向量检索", ElasticsearchInitializer.INDEX_ALIAS);
+                log.warn("索引 {} 为空，跳过向量检索", retrievalEngine.name());
                 return results;
             }
 
             log.info("开始向量检索: index={}, topK={}, embedding_dim={}, doc_count={}",
-                ElasticsearchInitializer.INDEX_ALIAS, topK, embedding.length, count);
-
-            SearchResponse<ChunkDocument> response = esClient.search(s -> s
-                .index(ElasticsearchInitializer.INDEX_ALIAS)
-                .knn(k -> k
-                    .field("embedding")
-                    .queryVector(floatArrayToList(embedding))
-                    .k(topK)
-                    .numCandidates(100)
-                )
-                .size(topK),
-                ChunkDocument.class
-            );
+                retrievalEngine.name(), topK, embedding.length, count);
+
+            List<RetrievalEngine.ScoredChunk> hits = retrievalEngine.vectorSearch(embedding, topK, filter);
             
-            log.info("向量检索成功: total_hits={}", response.hits().total().value());
+            log.info("向量检索成功: hits={}", hits.size());
             
-            for (Hit<ChunkDocument> hit : response.hits().hits()) {
-                ChunkDocument doc = hit.source();
-                if (doc != null) {
-                    RetrievalResult result = new RetrievalResult();
-                    result.setChunkId(doc.getChunkId());
-                    result.setArticleId(doc.getArticleId());
-                    result.setSlug(doc.getSlug());
-                    result.setTitle(doc.getTitle());
-                    result.setAnchor(doc.getAnchor());
-                    result.setChunkText(doc.getChunkText());
-                    result.setVectorScore(hit.score() != null ? hit.score().doubleValue() : 0.0);
-                    results.add(result);
-                }
+            for (RetrievalEngine.ScoredChunk hit : hits) {
+                RetrievalResult result = toRetrievalResult(hit.getDocument());
+                result.setVectorScore(hit.getScore());
+                results.add(result);
             }
             
             log.info("向量检索结果处理完成: result_count={}", results.size());
@@ -545,58 +739,55 @@ public class RagService {
         return results;
     }
     
+    /**
+     * 进程内精确扫描；未启用 / 未就绪 / 失败时返回 null，由调用方回退到检索引擎
+     */
+    private List<RetrievalEngine.ScoredChunk> exactVectorSearch(float[] embedding, int topK,
+                                                               RetrievalEngine.SearchFilter filter) {
+        if (!offHeapVectorStore.isReady()) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            List<RetrievalEngine.ScoredChunk> hits = offHeapVectorStore.search(embedding, topK, filter);
+            log.info("向量检索(进程内精确扫描): topK={}, vectors={}, hits={}, 耗时={}us",
+                topK, offHeapVectorStore.size(), hits.size(), (System.nanoTime() - start) / 1000);
+            return hits;
+        } catch (Exception e) {
+            log.warn("进程内向量扫描失败，回退到检索引擎: {}", e.getMessage());
+            return null;
+        }
+    }
+    
     /**
      * BM25 检索
      */
-    private List<RetrievalResult> bm25Search(String query, int topK) throws IOException {
+    private List<RetrievalResult> bm25Search(String query, int topK, RetrievalEngine.SearchFilter filter) throws IOException {
         List<RetrievalResult> results = new ArrayList<>();
         
         try {
-            // 先检查索引是否存在
-            boolean indexExists = esClient.indices().exists(e -> e.index(ElasticsearchInitializer.INDEX_ALIAS)).value();
-
-            if (!indexExists) {
-                log.warn("索引 {} 不存在，跳过 BM25 检索", ElasticsearchInitializer.INDEX_ALIAS);
+            // 先检查索引是否存在、是否有数据
+            long count = retrievalEngine.countDocuments();
+            if (count < 0) {
+                log.warn("索引 {} 不存在，跳过 BM25 检索", retrievalEngine.name());
                 return results;
             }
-
-            // 检查索引是否有数据
-            long count = esClient.count(c -> c.index(ElasticsearchInitializer.INDEX_ALIAS)).count();
             if (count == 0) {
-                log.warn("索引 {} 为空，跳过 BM25 检索", ElasticsearchInitializer.INDEX_ALIAS);
+                log.warn("索引 {} 为空，跳过 BM25 检索", retrievalEngine.name());
                 return results;
             }
 
             log.info("开始 BM25 检索: index={}, query='{}', topK={}, doc_count={}",
-                ElasticsearchInitializer.INDEX_ALIAS, query, topK, count);
-
-            SearchResponse<ChunkDocument> response = esClient.search(s -> s
-                .index(ElasticsearchInitializer.INDEX_ALIAS)
-                .query(q -> q
-                    .multiMatch(m -> m
-                        .query(query)
-                        .fields("title^2", "chunkText", "tags^1.5")
-                    )
-                )
-                .size(topK),
-                ChunkDocument.class
-            );
+                retrievalEngine.name(), query, topK, count);
+
+            List<RetrievalEngine.ScoredChunk> hits = retrievalEngine.bm25Search(query, topK, filter);
             
-            log.info("BM25 检索成功: total_hits={}", response.hits().total().value());
+            log.info("BM25 检索成功: hits={}", hits.size());
             
-            for (Hit<ChunkDocument> hit : response.hits().hits()) {
-                ChunkDocument doc = hit.source();
-                if (doc != null) {
-                    RetrievalResult result = new RetrievalResult();
-                    result.setChunkId(doc.getChunkId());
-                    result.setArticleId(doc.getArticleId());
-                    result.setSlug(doc.getSlug());
-                    result.setTitle(doc.getTitle());
-                    result.setAnchor(doc.getAnchor());
-                    result.setChunkText(doc.getChunkText());
-                    result.setBm25Score(hit.score() != null ? hit.score().doubleValue() : 0.0);
-                    results.add(result);
-                }
+            for (RetrievalEngine.ScoredChunk hit : hits) {
+                RetrievalResult result = toRetrievalResult(hit.getDocument());
+                result.setBm25Score(hit.getScore());
+                results.add(result);
             }
             
             log.info("BM25 检索结果处理完成: result_count={}", results.size());
@@ -613,57 +804,85 @@ public class RagService {
         return results;
     }
     
+    private RetrievalResult toRetrievalResult(ChunkDocument doc) {
+        RetrievalResult result = new RetrievalResult();
+        result.setChunkId(doc.getChunkId());
+        result.setArticleId(doc.getArticleId());
+        result.setSlug(doc.getSlug());
+        result.setTitle(doc.getTitle());
+        result.setAnchor(doc.getAnchor());
+        result.setChunkText(doc.getChunkText());
+        result.setTokenCount(doc.getTokenCount());
+        result.setEmbedding(doc.getEmbedding());
+        return result;
+    }
+    
     /**
      * 合并并重排序
+     *
+     * 候选按 chunkId 去重后放入平行数组，由融合策略打分，再用 Top-K 堆取前 topK（不做全量排序）。
      */
-    private List<RetrievalResult> mergeAndRerank(List<RetrievalResult> vectorResults, 
-                                                   List<RetrievalResult> bm25Results, 
+    private List<RetrievalResult> mergeAndRerank(List<RetrievalResult> vectorResults,
+                                                   List<RetrievalResult> bm25Results,
                                                    int topK,
-                                                   int vectorWeight,
-                                                   int bm25Weight,
-                                                   double bm25Max) {
-        Map<String, RetrievalResult> merged = new HashMap<>();
-        
-        // 合并向量结果
-        for (RetrievalResult result : vectorResults) {
-            merged.put(result.getChunkId(), result);
+                                                   FusionStrategy strategy,
+                                                   FusionStrategy.Params params) {
+        int capacity = vectorResults.size() + bm25Results.size();
+        if (capacity == 0) {
+            return new ArrayList<>();
         }
-        
+
+        FusionStrategy.Candidates candidates = new FusionStrategy.Candidates(capacity);
+        RetrievalResult[] results = new RetrievalResult[capacity];
+        Map<String, Integer> indexByChunkId = new HashMap<>(capacity * 2);
+
+        // 合并向量结果（名次从 1 开始）
+        for (int rank = 0; rank < vectorResults.size(); rank++) {
+            RetrievalResult result = vectorResults.get(rank);
+            if (indexByChunkId.containsKey(result.getChunkId())) continue;
+            int i = candidates.add();
+            results[i] = result;
+            candidates.vectorScores[i] = result.getVectorScore();
+            candidates.vectorRanks[i] = rank + 1;
+            indexByChunkId.put(result.getChunkId(), i);
+        }
+
         // 合并 BM25 结果
-        for (RetrievalResult result : bm25Results) {
-            if (merged.containsKey(result.getChunkId())) {
-                merged.get(result.getChunkId()).setBm25Score(result.getBm25Score());
+        for (int rank = 0; rank < bm25Results.size(); rank++) {
+            RetrievalResult result = bm25Results.get(rank);
+            Integer existing = indexByChunkId.get(result.getChunkId());
+            int i;
+            if (existing != null) {
+                i = existing;
+                if (candidates.bm25Ranks[i] > 0) continue;
+                results[i].setBm25Score(result.getBm25Score());
             } else {
-                merged.put(result.getChunkId(), result);
+                i = candidates.add();
+                results[i] = result;
+                indexByChunkId.put(result.getChunkId(), i);
             }
+            candidates.bm25Scores[i] = result.getBm25Score();
+            candidates.bm25Ranks[i] = rank + 1;
         }
-        
-        // 归一化并重排序：vectorWeight + bm25Weight = 100
-        // - vec: 认为本身就在 0~1
-        // - bm25: 使用 log(1+bm25) / log(1+bm25Max) 做固定标尺归一化到 0~1
-        // 最终分数范围：0.0 ~ 1.0
-        final double vw = Math.max(0, Math.min(100, vectorWeight)) / 100.0;
-        final double bw = Math.max(0, Math.min(100, bm25Weight)) / 100.0;
-        final double denom = Math.log1p(Math.max(1e-9, bm25Max));
-
-        return merged.values().stream()
-            .peek(r -> {
-                double vec = r.getVectorScore();
-                if (Double.isNaN(vec) || vec < 0) vec = 0.0;
-                if (vec > 1) vec = 1.0;
-
-                double bm25 = r.getBm25Score();
-                if (Double.isNaN(bm25) || bm25 < 0) bm25 = 0.0;
-                double bm25Norm = denom > 0 ? (Math.log1p(bm25) / denom) : 0.0;
-                if (bm25Norm < 0) bm25Norm = 0.0;
-                if (bm25Norm > 1) bm25Norm = 1.0;
-
-                double finalScore = vw * vec + bw * bm25Norm;
-                r.setFinalScore(finalScore);
-            })
-            .sorted((a, b) -> Double.compare(b.getFinalScore(), a.getFinalScore()))
-            .limit(topK)
-            .collect(Collectors.toList());
+
+        double[] scores = new double[candidates.size];
+        strategy.fuse(candidates, params, scores);
+
+        TopKHeap heap = new TopKHeap(Math.min(Math.max(topK, 0), candidates.size));
+        for (int i = 0; i < candidates.size; i++) {
+            heap.offer(i, (float) scores[i]);
+        }
+        int[] ids = new int[heap.size()];
+        float[] ignored = new float[heap.size()];
+        int n = heap.drainDescending(ids, ignored);
+
+        List<RetrievalResult> ranked = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) {
+            RetrievalResult result = results[ids[k]];
+            result.setFinalScore(scores[ids[k]]);
+            ranked.add(result);
+        }
+        return ranked;
     }
     
     /**
@@ -695,7 +914,8 @@ public class RagService {
             
             // 合并同一篇文章的所有 chunks
             for (RetrievalResult chunk : chunks) {
-                prompt.append(chunk.getChunkText()).append("\n\n");
+                String text = chunk.getPromptText() != null ? chunk.getPromptText() : chunk.getChunkText();
+                prompt.append(text).append("\n\n");
             }
             
             articleIndex++;
@@ -710,6 +930,37 @@ public class RagService {
         return prompt.toString();
     }
     
+    /**
+     * 抽取式压缩参考内容，结果写入 promptText
+     */
+    private ContextCompressor.CompressionResult compressForPrompt(String question, float[] queryEmbedding,
+                                                                  List<RetrievalResult> results, RagConfigDTO cfg) {
+        int budget = cfg.getCompressionBudget() != null ? cfg.getCompressionBudget() : 0;
+        List<String> texts = new ArrayList<>(results.size());
+        for (RetrievalResult r : results) {
+            texts.add(r.getChunkText());
+        }
+        ContextCompressor.CompressionResult compression = contextCompressor.compress(question, queryEmbedding, texts, budget);
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).setPromptText(compression.getTexts().get(i));
+        }
+        if (compression.getCompressedChunks() > 0) {
+            log.info("上下文压缩: chunks={}, compressed={}, tokens={} -> {}, ratio={}, 耗时={}ms",
+                results.size(), compression.getCompressedChunks(), compression.getTokensBefore(),
+                compression.getTokensAfter(), String.format("%.2f", compression.ratio()), compression.getElapsedMs());
+        }
+        return compression;
+    }
+
+    private static void applyCompressionMetrics(RagQueryLog ragLog, ContextCompressor.CompressionResult compression) {
+        if (compression == null) {
+            return;
+        }
+        ragLog.setContextTokens(compression.getTokensBefore());
+        ragLog.setCompressedTokens(compression.getTokensAfter());
+        ragLog.setCompressMs((int) compression.getElapsedMs());
+    }
+
     /**
      * 过滤高相关度文章
      */
@@ -727,6 +978,99 @@ public class RagService {
             .collect(Collectors.toList());
     }
     
+    private static class MmrResult {
+        private final List<RetrievalResult> selected;
+        private final int droppedChunks;
+        private final int removedTokens;
+
+        private MmrResult(List<RetrievalResult> selected, int droppedChunks, int removedTokens) {
+            this.selected = selected;
+            this.droppedChunks = droppedChunks;
+            this.removedTokens = removedTokens;
+        }
+    }
+
+    /**
+     * MMR 去冗余：在候选池中按 λ 权衡相关度与和已选 chunk 的相似度，并限制每篇文章的 chunk 数。
+     *
+     * 向量优先用检索结果自带的（进程内向量库 / 单篇文章缓存），缺失的按 chunkId 批量补取。
+     * 统计以「按分数直接取 Top-K」为基准：被换掉的 chunk 数及其 token 数即为去掉的冗余内容。
+     */
+    private MmrResult diversify(List<RetrievalResult> candidates, int topK, RagConfigDTO cfg, boolean singleArticle) {
+        int limit = Math.max(topK, 1);
+        double lambda = cfg.getMmrLambda() != null ? cfg.getMmrLambda() : 1.0;
+        // 单篇文章内提问时不限制每篇 chunk 数
+        int perArticleCap = singleArticle || cfg.getMaxChunksPerArticle() == null ? 0 : cfg.getMaxChunksPerArticle();
+        List<RetrievalResult> baseline = head(candidates, limit);
+        if (candidates.size() <= 1 || (lambda >= 1.0 && perArticleCap <= 0)) {
+            return new MmrResult(new ArrayList<>(baseline), 0, 0);
+        }
+
+        long start = System.nanoTime();
+        int n = candidates.size();
+        if (lambda < 1.0) {
+            fillMissingEmbeddings(candidates);
+        }
+        float[][] vectors = new float[n][];
+        double[] relevance = new double[n];
+        long[] groups = new long[n];
+        for (int i = 0; i < n; i++) {
+            RetrievalResult r = candidates.get(i);
+            vectors[i] = r.getEmbedding();
+            relevance[i] = r.getFinalScore() != null ? r.getFinalScore() : 0.0;
+            groups[i] = r.getArticleId() != null ? r.getArticleId() : -1L;
+        }
+
+        int[] picked = new int[limit];
+        int count = MmrSelector.select(vectors, relevance, groups, limit, lambda, perArticleCap,
+            MMR_DUPLICATE_SIMILARITY, picked);
+        List<RetrievalResult> selected = new ArrayList<>(count);
+        Set<String> selectedIds = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            RetrievalResult r = candidates.get(picked[i]);
+            selected.add(r);
+            selectedIds.add(r.getChunkId());
+        }
+
+        int dropped = 0;
+        int removedTokens = 0;
+        for (RetrievalResult r : baseline) {
+            if (!selectedIds.contains(r.getChunkId())) {
+                dropped++;
+                removedTokens += estimateTokens(r);
+            }
+        }
+        log.info("MMR 去冗余: lambda={}, perArticleCap={}, candidates={}, selected={}, dropped={}, removedTokens={}, 耗时={}us",
+            lambda, perArticleCap, n, count, dropped, removedTokens, (System.nanoTime() - start) / 1000);
+        return new MmrResult(selected, dropped, removedTokens);
+    }
+
+    private void fillMissingEmbeddings(List<RetrievalResult> candidates) {
+        List<String> missing = new ArrayList<>();
+        for (RetrievalResult r : candidates) {
+            if (r.getEmbedding() == null) missing.add(r.getChunkId());
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, float[]> vectors = retrievalEngine.findEmbeddings(missing);
+            for (RetrievalResult r : candidates) {
+                if (r.getEmbedding() == null) r.setEmbedding(vectors.get(r.getChunkId()));
+            }
+        } catch (Exception e) {
+            // 取不到向量时只按相关度 + 每篇上限选择
+            log.warn("MMR 补取候选向量失败: missing={}, error={}", missing.size(), e.getMessage());
+        }
+    }
+
+    private int estimateTokens(RetrievalResult r) {
+        if (r.getTokenCount() != null) {
+            return r.getTokenCount();
+        }
+        return tokenCounter.count(r.getChunkText());
+    }
+
     /**
      * 提取引用（只提取已经过滤的高相关度文章）
      * 
@@ -801,7 +1145,7 @@ public class RagService {
             assistantLogRepository.save(log);
         } catch (Exception e) {
             // 日志记录失败不影响主流程
-            this.log.error("记录查询日志失败", e);
+            RagService.log.error("记录查询日志失败", e);
         }
     }
     
@@ -814,17 +1158,6 @@ public class RagService {
         return text.substring(0, maxLength) + "...";
     }
     
-    /**
-     * float[] 转 List<Float>
-     */
-    private List<Float> floatArrayToList(float[] array) {
-        List<Float> list = new ArrayList<>(array.length);
-        for (float f : array) {
-            list.add(f);
-        }
-        return list;
-    }
-    
     /**
      * 流式查询（SSE）
      */
@@ -909,15 +1242,23 @@ public class RagService {
             log.debug("Embedding 生成完成: request_id={}, dim={}", requestId, queryEmbedding.length);
             
             // 2. 混合检索
-            HybridSearchResult hybrid = hybridSearch(request.getQuestion(), queryEmbedding, topK);
+            HybridSearchResult hybrid = hybridSearch(request, queryEmbedding, topK);
             List<RetrievalResult> results = hybrid.merged;
             log.info("检索完成: request_id={}, merged={}, vector={}, bm25={}", requestId,
                 results != null ? results.size() : 0, hybrid.vectorCount, hybrid.bm25Count);
 
             // 3. 过滤高相关度文章
-            List<RetrievalResult> highRelevanceResults = filterHighRelevanceResults(results, minScore, topK);
+            List<RetrievalResult> candidates = filterHighRelevanceResults(results, minScore, results != null ? results.size() : 0);
             log.info("相关度过滤: request_id={}, merged={}, 阈值>={}, 过滤后 {} 条",
-                requestId, results != null ? results.size() : 0, minScore, highRelevanceResults.size());
+                requestId, results != null ? results.size() : 0, minScore, candidates.size());
+
+            // 3.1 折叠近重复 chunk（多篇文章里的同一段样板内容只保留相关度最高的一份）
+            List<RetrievalResult> distinct = chunkDedupService.collapse(candidates, RetrievalResult::getChunkText, this::estimateTokens);
+            int collapsedChunks = candidates.size() - distinct.size();
+
+            // 3.2 MMR 去冗余（重叠 / 同文章的相似 chunk），截到 topK
+            MmrResult mmr = diversify(distinct, topK, ragConfig, RETRIEVAL_ARTICLE.equals(hybrid.retrievalMode));
+            List<RetrievalResult> highRelevanceResults = mmr.selected;
 
 
             // 记录检索阶段指标 + top hits（用于 7 天留存的调参数据）
@@ -927,6 +1268,15 @@ public class RagService {
                 ragLog.setRetrievalMs((int) (System.currentTimeMillis() - retrievalStart));
                 ragLog.setVectorCandidates(hybrid.vectorCount);
                 ragLog.setBm25Candidates(hybrid.bm25Count);
+                ragLog.setFusionStrategy(hybrid.fusionStrategy.value());
+                ragLog.setFusionMicros(hybrid.fusionMicros);
+                ragLog.setRetrievalMode(hybrid.retrievalMode);
+                ragLog.setStage1Articles(hybrid.stage1Articles);
+                ragLog.setFlatRecall(hybrid.flatRecall);
+                ragLog.setFlatRetrievalMs(hybrid.flatRetrievalMs);
+                ragLog.setMmrDroppedChunks(mmr.droppedChunks);
+                ragLog.setMmrRemovedTokens(mmr.removedTokens);
+                ragLog.setDedupCollapsedChunks(collapsedChunks);
                 // 记录命中的 articleId 列表
                 String hitIds = highRelevanceResults.stream()
                     .map(RetrievalResult::getArticleId)
@@ -978,6 +1328,9 @@ public class RagService {
                 }
             }
             
+            ContextCompressor.CompressionResult compression = hasArticles
+                ? compressForPrompt(request.getQuestion(), queryEmbedding, highRelevanceResults, ragConfig)
+                : null;
             String userPrompt = hasArticles ? 
                 buildPrompt(request.getQuestion(), highRelevanceResults, returnCitations) : request.getQuestion();
             messages.add(new ChatCompletionRequest.ChatMessage("user", userPrompt));
@@ -987,9 +1340,13 @@ public class RagService {
                 log.info("开始流式生成: request_id={}, 基于 {} 篇高相关度文章", 
                     requestId, hasArticles ? highRelevanceResults.size() : 0);
                 final int[] chunkCount = {0};
+                final long[] firstTokenAt = {0L};
                 
-                llmService.chatCompletionStream(messages, 2048, (chunk) -> {
+                LlmService.StreamResult streamResult = llmService.chatCompletionStream(messages, 2048, (chunk) -> {
                     try {
+                        if (chunkCount[0] == 0) {
+                            firstTokenAt[0] = System.currentTimeMillis();
+                        }
                         chunkCount[0]++;
                         emitter.send(SseEmitter.event()
                             .name("message")
@@ -1000,7 +1357,21 @@ public class RagService {
                     }
                 });
                 
-                log.info("流式生成完成: request_id={}, 共发送 {} 个 chunks", requestId, chunkCount[0]);
+                log.info("流式生成完成: request_id={}, 共发送 {} 个 chunks, finish_reason={}", requestId, chunkCount[0],
+                    streamResult.getFinishReason());
+                if (firstTokenAt[0] > 0) {
+                    int ttftMs = (int) (firstTokenAt[0] - startTime);
+                    log.info("首 token 延迟: request_id={}, ttft={}ms, compressed={}, contextTokens={} -> {}",
+                        requestId, ttftMs, compression != null && compression.getCompressedChunks() > 0,
+                        compression != null ? compression.getTokensBefore() : 0,
+                        compression != null ? compression.getTokensAfter() : 0);
+                    if (ragLog != null) {
+                        ragLog.setTtftMs(ttftMs);
+                    }
+                }
+                if ("length".equals(streamResult.getFinishReason())) {
+                    log.warn("流式回答因 max_tokens 被截断: request_id={}", requestId);
+                }
             } else {
                 log.info("ARTICLE_ONLY 模式且无高相关度文章，返回提示信息: request_id={}", requestId);
                 emitter.send(SseEmitter.event()
@@ -1029,6 +1400,7 @@ public class RagService {
             log.info("查询完成: request_id={}, latency={}ms", requestId, latency);
 
             if (ragLog != null) {
+                applyCompressionMetrics(ragLog, compression);
                 ragLog.setCitationsCount(citationsCount);
                 ragLog.setLatencyMs((int) latency);
                 ragLog.setSuccess(true);
@@ -1074,6 +1446,12 @@ public class RagService {
         private String title;
         private String anchor;
         private String chunkText;
+        /**
+         * 压缩后放进 prompt 的内容（为空时使用 chunkText）
+         */
+        private String promptText;
+        private Integer tokenCount;
+        private float[] embedding;
         private Double vectorScore = 0.0;
         private Double bm25Score = 0.0;
         private Double finalScore = 0.0;
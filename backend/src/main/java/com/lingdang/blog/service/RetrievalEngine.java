@@ -0,0 +1,235 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.model.ChunkDocument;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * chunk 检索引擎 SPI
+ *
+ * 实现：ElasticsearchRetrievalEngine（默认）、LuceneRetrievalEngine（嵌入式）。
+ * 由 rag.retrieval.engine 选择，同一进程内只有一个实现生效。
+ *
+ * “在线索引”指当前对外提供查询的索引（ES 为 alias 指向的索引，Lucene 为 CURRENT 指向的目录）；
+ * 蓝绿重建时先写入一个新索引，完成后 {@link #switchTo(String)} 原子切换。
+ */
+public interface RetrievalEngine {
+
+    /**
+     * 引擎名称（日志 / 健康检查展示）
+     */
+    String name();
+
+    /**
+     * 确保在线索引存在（不存在时创建一个空索引并上线）
+     */
+    void ensureIndex();
+
+    IndexHealth health();
+
+    // ==================== 查询（在线索引） ====================
+
+    /**
+     * 在线索引的文档数；索引不存在返回 -1
+     */
+    long countDocuments();
+
+    /**
+     * kNN 检索；filter 在打分前生效（ES: knn.filter，Lucene: 预过滤），不会因过滤而少返回结果
+     */
+    List<ScoredChunk> vectorSearch(float[] vector, int k, SearchFilter filter) throws IOException;
+
+    /**
+     * BM25 检索（title^2、chunkText、tags^1.5），filter 作为 bool.filter
+     */
+    List<ScoredChunk> bm25Search(String query, int k, SearchFilter filter) throws IOException;
+
+    /**
+     * 一篇文章的全部 chunk（含 embedding）
+     */
+    List<ChunkDocument> findArticleChunks(Long articleId) throws IOException;
+
+    /**
+     * 按 chunkId 批量取向量（检索结果不带向量时补齐，只取少量候选）
+     */
+    Map<String, float[]> findEmbeddings(Collection<String> chunkIds) throws IOException;
+
+    /**
+     * 同上，查指定索引（全量重建时查尚未上线的新索引）
+     */
+    Map<String, float[]> findEmbeddings(String index, Collection<String> chunkIds) throws IOException;
+
+    /**
+     * 文章搜索：只搜已发布，按 articleId 折叠，返回文章维度的一页结果（含高亮片段）
+     */
+    ArticleSearchPage searchArticles(String query, int from, int size) throws IOException;
+
+    /**
+     * 遍历在线索引的全部文档（含 embedding），用于重建进程内向量库
+     */
+    void forEachDocument(Consumer<ChunkDocument> consumer) throws IOException;
+
+    // ==================== 增量写入（在线索引） ====================
+
+    /**
+     * 替换一篇文章的全部 chunk（先删后写）
+     */
+    void replaceArticle(Long articleId, List<ChunkDocument> documents) throws IOException;
+
+    void deleteArticle(Long articleId) throws IOException;
+
+    // ==================== 蓝绿重建 ====================
+
+    /**
+     * 当前在线索引名；不存在返回 null
+     */
+    String currentIndex();
+
+    /**
+     * 新建一个索引（不上线）
+     */
+    String createIndex() throws Exception;
+
+    boolean indexExists(String index);
+
+    /**
+     * 批量写入指定索引（按 chunkId 覆盖），返回时已可搜索（findEmbeddings 能读到）
+     */
+    void bulkIndex(String index, List<ChunkDocument> documents) throws Exception;
+
+    void deleteArticle(String index, Long articleId) throws Exception;
+
+    /**
+     * 原子切换在线索引
+     */
+    void switchTo(String index) throws Exception;
+
+    /**
+     * 删除一个未上线的索引（在线索引不会被删除）
+     */
+    void discardIndex(String index);
+
+    /**
+     * 检索过滤条件
+     */
+    @Data
+    class SearchFilter {
+        private static final Pattern TAG_DELIMITER = Pattern.compile("[,，]");
+
+        /**
+         * 只检索已发布文章的 chunk
+         */
+        private boolean publishedOnly = true;
+        /**
+         * 限定文章范围；null 表示不限
+         */
+        private Set<Long> articleIds;
+        /**
+         * 标签过滤（需全部命中）；null / 空表示不限
+         */
+        private List<String> tags;
+
+        public static SearchFilter published() {
+            return new SearchFilter();
+        }
+
+        public boolean hasTags() {
+            return tags != null && !tags.isEmpty();
+        }
+
+        /**
+         * 标签是否全部命中（供不走引擎查询的内存检索使用）：存储的 tags 按逗号拆成整个标签，忽略大小写比较，
+         * 与引擎对 tags 字段的短语过滤一致，不做子串匹配（"java" 不命中 "javascript"）
+         */
+        public boolean matchesTags(Set<String> storedTags) {
+            if (!hasTags()) {
+                return true;
+            }
+            for (String tag : tags) {
+                if (tag == null || !storedTags.contains(tag.trim().toLowerCase(Locale.ROOT))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean matchesTags(String storedTags) {
+            return !hasTags() || matchesTags(tagSet(storedTags));
+        }
+
+        /**
+         * 文章 / chunk 上存储的 tags 文本拆成小写标签集合
+         */
+        public static Set<String> tagSet(String storedTags) {
+            if (storedTags == null || storedTags.isBlank()) {
+                return Set.of();
+            }
+            Set<String> set = new HashSet<>();
+            for (String tag : TAG_DELIMITER.split(storedTags)) {
+                String normalized = tag.trim().toLowerCase(Locale.ROOT);
+                if (!normalized.isEmpty()) {
+                    set.add(normalized);
+                }
+            }
+            return set;
+        }
+
+        /**
+         * 复制当前条件并限定到给定文章
+         */
+        public SearchFilter withArticleIds(Set<Long> ids) {
+            SearchFilter copy = new SearchFilter();
+            copy.setPublishedOnly(publishedOnly);
+            copy.setTags(tags);
+            copy.setArticleIds(ids);
+            return copy;
+        }
+    }
+
+    /**
+     * 索引健康状态
+     */
+    @Data
+    class IndexHealth {
+        private String indexName;
+        private boolean healthy;
+        private boolean esConnected;
+        private boolean indexExists;
+        private long documentCount;  // chunks 总数
+        private long articleCount;   // 去重后的文章数量
+        private String message;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    class ScoredChunk {
+        private ChunkDocument document;
+        private double score;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    class ArticleHit {
+        private Long articleId;
+        private String snippet;
+    }
+
+    @Data
+    class ArticleSearchPage {
+        private long total;
+        private List<ArticleHit> hits = List.of();
+    }
+}
@@ -0,0 +1,93 @@
+package com.lingdang.blog.service;
+
+import com.lingdang.blog.util.BpeTokenizer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+
+/**
+ * token 计数（chunk 切分、embedding 截断、prompt 预算共用同一口径）
+ *
+ * 词表默认使用打包在 resources/tokenizer 下的 BPE 词表，可通过 blog.tokenizer.vocab 换成任意 tiktoken 格式词表
+ * （如 cl100k_base.tiktoken）；词表加载失败时退回字符数 / 4 的估算，不影响启动。
+ */
+@Slf4j
+@Service
+public class TokenCounter {
+
+    @Value("${blog.tokenizer.vocab:classpath:tokenizer/blog-bpe.tiktoken}")
+    private String vocabLocation;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    private volatile BpeTokenizer tokenizer;
+
+    @PostConstruct
+    public void init() {
+        long start = System.currentTimeMillis();
+        Resource resource = resourceLoader.getResource(vocabLocation);
+        try (InputStream in = resource.getInputStream()) {
+            tokenizer = BpeTokenizer.load(in);
+            log.info("BPE 词表加载完成: vocab={}, size={}, 耗时={}ms",
+                vocabLocation, tokenizer.vocabSize(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("BPE 词表加载失败，token 数退回字符数 / 4 估算: vocab={}, error={}", vocabLocation, e.getMessage());
+        }
+    }
+
+    /**
+     * token 数（只计数，不产出 token 数组）
+     */
+    public int count(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        BpeTokenizer t = tokenizer;
+        return t != null ? t.count(text) : text.length() / 4;
+    }
+
+    /**
+     * 保留开头不超过 maxTokens 个 token 的部分
+     */
+    public String truncate(String text, int maxTokens) {
+        if (text == null) {
+            return null;
+        }
+        BpeTokenizer t = tokenizer;
+        int end = t != null ? t.prefixEnd(text, maxTokens) : Math.min(text.length(), Math.max(0, maxTokens) * 4);
+        return end >= text.length() ? text : text.substring(0, end);
+    }
+
+    /**
+     * 保留末尾不超过 maxTokens 个 token 的部分
+     */
+    public String tail(String text, int maxTokens) {
+        if (text == null || text.isEmpty() || maxTokens <= 0) {
+            return "";
+        }
+        return text.substring(tailStart(text, maxTokens));
+    }
+
+    /**
+     * 前缀截断位置：text[0, 返回值) 不超过 maxTokens 个 token
+     */
+    public int prefixEnd(CharSequence text, int maxTokens) {
+        BpeTokenizer t = tokenizer;
+        return t != null ? t.prefixEnd(text, maxTokens) : Math.min(text.length(), Math.max(0, maxTokens) * 4);
+    }
+
+    /**
+     * 后缀起始位置：text[返回值, length) 不超过 maxTokens 个 token
+     */
+    public int tailStart(CharSequence text, int maxTokens) {
+        BpeTokenizer t = tokenizer;
+        return t != null ? t.suffixStart(text, maxTokens) : Math.max(0, text.length() - Math.max(0, maxTokens) * 4);
+    }
+}
@@ -0,0 +1,108 @@
+package com.lingdang.blog.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonpDeserializer;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.lingdang.blog.model.ChunkDocument;
+import jakarta.json.stream.JsonParser;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+/**
+ * kNN 检索客户端
+ *
+ * ES Java Client 的 KnnQuery 只接受 List&lt;Float&gt;，每次查询都要把向量装箱一遍；
+ * 这里直接把 float[] 写进请求体，经底层 RestClient 发送，响应仍用 Java Client 的反序列化器解析。
+ * 同时排除 _source 中的 embedding，避免每个命中再反序列化一遍向量。
+ */
+@Service
+public class VectorSearchClient {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final JsonpDeserializer<SearchResponse<ChunkDocument>> CHUNK_RESPONSE_DESERIALIZER =
+        SearchResponse.createSearchResponseDeserializer(JsonpDeserializer.of(ChunkDocument.class));
+
+    @Autowired
+    private ElasticsearchClient esClient;
+
+    /**
+     * 在 index（或别名）上做 kNN 检索
+     *
+     * @param filter 可为 null；写入 knn.filter，在 HNSW 遍历时即排除不满足条件的文档
+     */
+    public SearchResponse<ChunkDocument> knnSearch(String index, float[] vector, int k, int numCandidates, Query filter) throws IOException {
+        JsonpMapper mapper = esClient._transport().jsonpMapper();
+        String filterJson = filter != null ? toJson(filter, mapper) : null;
+
+        Request request = new Request("POST", "/" + index + "/_search");
+        request.setEntity(new ByteArrayEntity(writeKnnBody(vector, k, numCandidates, filterJson), ContentType.APPLICATION_JSON));
+
+        Response response = restClient().performRequest(request);
+        try (InputStream in = response.getEntity().getContent();
+             JsonParser parser = mapper.jsonProvider().createParser(in)) {
+            return CHUNK_RESPONSE_DESERIALIZER.deserialize(parser, mapper);
+        }
+    }
+
+    private static String toJson(Query query, JsonpMapper mapper) {
+        StringWriter writer = new StringWriter();
+        try (jakarta.json.stream.JsonGenerator generator = mapper.jsonProvider().createGenerator(writer)) {
+            query.serialize(generator, mapper);
+        }
+        return writer.toString();
+    }
+
+    private byte[] writeKnnBody(float[] vector, int k, int numCandidates, String filterJson) throws IOException {
+        // 每维最多约 15 字节文本
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 + vector.length * 16);
+        try (JsonGenerator g = JSON_FACTORY.createGenerator(out)) {
+            g.writeStartObject();
+
+            g.writeObjectFieldStart("knn");
+            g.writeStringField("field", "embedding");
+            g.writeArrayFieldStart("query_vector");
+            for (float v : vector) {
+                g.writeNumber(v);
+            }
+            g.writeEndArray();
+            g.writeNumberField("k", k);
+            g.writeNumberField("num_candidates", numCandidates);
+            if (filterJson != null) {
+                g.writeFieldName("filter");
+                g.writeRawValue(filterJson);
+            }
+            g.writeEndObject();
+
+            g.writeNumberField("size", k);
+
+            g.writeObjectFieldStart("_source");
+            g.writeArrayFieldStart("excludes");
+            g.writeString("embedding");
+            g.writeEndArray();
+            g.writeEndObject();
+
+            g.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private RestClient restClient() {
+        return ((RestClientTransport) esClient._transport()).restClient();
+    }
+}
@@ -0,0 +1,783 @@
+package com.lingdang.blog.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 本地字节级 BPE 分词器（词表为 tiktoken 格式：每行 "base64(token) rank"）
+ *
+ * - 预切分规则与 cl100k_base 的正则一致（手写扫描，不走 java.util.regex），换成 cl100k_base 词表即可得到相同的切分
+ * - 合并按 rank 从小到大，与 tiktoken 的 byte_pair_merge 相同
+ * - count 只计数：不产出 token 数组，工作区按线程复用，短片段的计数走线程内直接映射缓存
+ * - 线程安全：词表只读，可变状态都在 ThreadLocal 里
+ */
+public final class BpeTokenizer {
+
+    private static final int NO_RANK = Integer.MAX_VALUE;
+    private static final int RANK_BITS = 21;
+    private static final long RANK_MASK = (1L << RANK_BITS) - 1;
+
+    /** 片段计数缓存：槽位数（2 的幂）与可缓存的最长片段（字符数，token 数必然小于 256） */
+    private static final int PIECE_CACHE_SIZE = 1 << 13;
+    private static final int PIECE_CACHE_MAX_CHARS = 24;
+    /** 超过该字节数的片段改用堆合并 */
+    private static final int LINEAR_MERGE_MAX_BYTES = 32;
+
+    // 词表：开放寻址哈希，token 字节集中存放在 pool 中
+    private final byte[] pool;
+    private final int[] slotOffset;
+    private final int[] slotLength;
+    private final int[] slotRank;
+    private final int mask;
+    private final int size;
+    /** 单字节 token 的 rank */
+    private final int[] byteRank = new int[256];
+    /** 两个单字节拼成的 token 的 rank，按 (b0 << 8 | b1) 直接索引，合并初始化时不走哈希 */
+    private final int[] bytePairRank = new int[1 << 16];
+    /**
+     * 合并表：(左 token rank, 右 token rank) -> 拼接后的 token rank，三者各 21 位打包进一个 long，一次访存完成查询；
+     * 合并时不再对字节串做哈希和比较。对每个 token 的每个切分点，左右两半都在词表中就登记，因此与按拼接字节查 rank 完全等价
+     */
+    private final long[] pairTable;
+    private final int pairMask;
+    private final int pairShift;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private BpeTokenizer(byte[] pool, int[] offsets, int[] lengths, int[] ranks, int count) {
+        int capacity = Integer.highestOneBit(Math.max(16, count * 2 - 1)) << 1;
+        this.pool = pool;
+        this.slotOffset = new int[capacity];
+        this.slotLength = new int[capacity];
+        this.slotRank = new int[capacity];
+        this.mask = capacity - 1;
+        this.size = count;
+        Arrays.fill(slotRank, -1);
+        for (int i = 0; i < count; i++) {
+            int slot = hash(pool, offsets[i], lengths[i]) & mask;
+            while (slotRank[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            slotOffset[slot] = offsets[i];
+            slotLength[slot] = lengths[i];
+            slotRank[slot] = ranks[i];
+        }
+
+        Arrays.fill(bytePairRank, NO_RANK);
+        int pairCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (lengths[i] == 1) {
+                byteRank[pool[offsets[i]] & 0xFF] = ranks[i];
+            } else if (lengths[i] == 2) {
+                bytePairRank[(pool[offsets[i]] & 0xFF) << 8 | (pool[offsets[i] + 1] & 0xFF)] = ranks[i];
+            }
+            for (int k = 1; k < lengths[i]; k++) {
+                if (rank(pool, offsets[i], k) != NO_RANK && rank(pool, offsets[i] + k, lengths[i] - k) != NO_RANK) {
+                    pairCount++;
+                }
+            }
+        }
+        int pairCapacity = Integer.highestOneBit(Math.max(16, pairCount * 2 - 1)) << 1;
+        this.pairTable = new long[pairCapacity];
+        this.pairMask = pairCapacity - 1;
+        this.pairShift = 64 - Integer.numberOfTrailingZeros(pairCapacity);
+        Arrays.fill(pairTable, -1L);
+        for (int i = 0; i < count; i++) {
+            for (int k = 1; k < lengths[i]; k++) {
+                int left = rank(pool, offsets[i], k);
+                int right = rank(pool, offsets[i] + k, lengths[i] - k);
+                if (left != NO_RANK && right != NO_RANK) {
+                    putPair(left, right, ranks[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取 tiktoken 格式词表；空行和 # 开头的注释行忽略。256 个单字节必须都在词表中
+     */
+    public static BpeTokenizer load(InputStream in) throws IOException {
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] pool = new byte[1 << 16];
+        int poolSize = 0;
+        int[] offsets = new int[1024];
+        int[] lengths = new int[1024];
+        int[] ranks = new int[1024];
+        int count = 0;
+        boolean[] singleBytes = new boolean[256];
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            int sp = line.indexOf(' ');
+            if (sp <= 0) {
+                throw new IOException("词表格式错误: " + line);
+            }
+            byte[] token = decoder.decode(line.substring(0, sp));
+            int rank = Integer.parseInt(line.substring(sp + 1).trim());
+            if (rank < 0 || rank > RANK_MASK) {
+                throw new IOException("词表 rank 超出范围: " + rank);
+            }
+            if (token.length == 1) {
+                singleBytes[token[0] & 0xFF] = true;
+            }
+            if (poolSize + token.length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + token.length));
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                ranks = Arrays.copyOf(ranks, count * 2);
+            }
+            System.arraycopy(token, 0, pool, poolSize, token.length);
+            offsets[count] = poolSize;
+            lengths[count] = token.length;
+            ranks[count] = rank;
+            poolSize += token.length;
+            count++;
+        }
+        for (int b = 0; b < 256; b++) {
+            if (!singleBytes[b]) {
+                throw new IOException("词表缺少单字节 token: " + b);
+            }
+        }
+        return new BpeTokenizer(Arrays.copyOf(pool, poolSize), offsets, lengths, ranks, count);
+    }
+
+    public int vocabSize() {
+        return size;
+    }
+
+    /**
+     * 只计数，不生成 token 数组
+     */
+    public int count(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        Scratch s = scratch.get();
+        int n = text.length();
+        int total = 0;
+        int i = 0;
+        while (i < n) {
+            int end = nextPiece(text, i, n);
+            total += countPiece(text, i, end, s);
+            i = end;
+        }
+        return total;
+    }
+
+    /**
+     * 编码为 token rank 序列
+     */
+    public int[] encode(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return new int[0];
+        }
+        Scratch s = scratch.get();
+        int[] out = new int[Math.max(16, text.length() / 3)];
+        int size = 0;
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            int end = nextPiece(text, i, n);
+            int bytes = utf8(text, i, end, s);
+            int parts = merge(s, bytes);
+            if (size + parts > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, size + parts));
+            }
+            System.arraycopy(s.tokens, 0, out, size, parts);
+            size += parts;
+            i = end;
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /**
+     * 前缀截断位置：text[0, 返回值) 的 token 数不超过 maxTokens（按预切分片段边界截断，单个片段超出时在片段内按字符截断）
+     */
+    public int prefixEnd(CharSequence text, int maxTokens) {
+        if (text == null || maxTokens <= 0) {
+            return 0;
+        }
+        Scratch s = scratch.get();
+        int n = text.length();
+        int used = 0;
+        int i = 0;
+        while (i < n) {
+            int end = nextPiece(text, i, n);
+            int tokens = countPiece(text, i, end, s);
+            if (used + tokens > maxTokens) {
+                return cutInside(text, i, end, maxTokens - used, true, s);
+            }
+            used += tokens;
+            i = end;
+        }
+        return n;
+    }
+
+    /**
+     * 后缀起始位置：text[返回值, length) 的 token 数不超过 maxTokens
+     */
+    public int suffixStart(CharSequence text, int maxTokens) {
+        if (text == null) {
+            return 0;
+        }
+        int n = text.length();
+        if (maxTokens <= 0) {
+            return n;
+        }
+        Scratch s = scratch.get();
+        // 先正向切出全部片段边界和计数，再从尾部累加
+        int[] bounds = new int[32];
+        int[] counts = new int[32];
+        int pieces = 0;
+        int i = 0;
+        while (i < n) {
+            int end = nextPiece(text, i, n);
+            if (pieces == bounds.length) {
+                bounds = Arrays.copyOf(bounds, pieces * 2);
+                counts = Arrays.copyOf(counts, pieces * 2);
+            }
+            bounds[pieces] = i;
+            counts[pieces] = countPiece(text, i, end, s);
+            pieces++;
+            i = end;
+        }
+        int used = 0;
+        int start = n;
+        for (int p = pieces - 1; p >= 0; p--) {
+            if (used + counts[p] > maxTokens) {
+                return cutInside(text, bounds[p], start, maxTokens - used, false, s);
+            }
+            used += counts[p];
+            start = bounds[p];
+        }
+        return 0;
+    }
+
+    /**
+     * 在单个片段 [from, to) 内二分查找：保留前缀（或后缀）且 token 数不超过 budget 的最远切点
+     */
+    private int cutInside(CharSequence text, int from, int to, int budget, boolean prefix, Scratch s) {
+        if (budget <= 0) {
+            return prefix ? from : to;
+        }
+        int lo = 0;
+        int hi = to - from;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            int tokens = prefix
+                ? merge(s, utf8(text, from, from + mid, s))
+                : merge(s, utf8(text, to - mid, to, s));
+            if (tokens <= budget) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int cut = prefix ? from + lo : to - lo;
+        // 不把代理对切开
+        if (cut > 0 && cut < text.length() && Character.isHighSurrogate(text.charAt(cut - 1))
+            && Character.isLowSurrogate(text.charAt(cut))) {
+            cut = prefix ? cut - 1 : cut + 1;
+        }
+        return cut;
+    }
+
+    private int countPiece(CharSequence text, int start, int end, Scratch s) {
+        int len = end - start;
+        if (len == 1 && text.charAt(start) < 0x80) {
+            return 1;
+        }
+        if (len > PIECE_CACHE_MAX_CHARS) {
+            return merge(s, utf8(text, start, end, s));
+        }
+        // 64 位指纹（高 56 位）+ token 数（低 8 位）打包存放；指纹碰撞概率可忽略，不再逐字符比较
+        long h = 0xcbf29ce484222325L ^ len;
+        for (int k = start; k < end; k++) {
+            h = (h ^ text.charAt(k)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        long fingerprint = h & ~0xFFL;
+        int slot = (int) h & (PIECE_CACHE_SIZE - 1);
+        long cached = s.pieceCache[slot];
+        if (cached != 0 && (cached & ~0xFFL) == fingerprint) {
+            return (int) (cached & 0xFF);
+        }
+        int tokens = merge(s, utf8(text, start, end, s));
+        s.pieceCache[slot] = fingerprint | tokens;
+        return tokens;
+    }
+
+    /**
+     * 对 s.bytes[0, n) 做 BPE 合并，各段的 token rank 留在 s.tokens[0..返回值)，返回 token 数
+     */
+    private int merge(Scratch s, int n) {
+        s.ensure(n);
+        int[] tokens = s.tokens;
+        byte[] bytes = s.bytes;
+        if (n <= 1) {
+            if (n == 1) {
+                tokens[0] = byteRank[bytes[0] & 0xFF];
+            }
+            return n;
+        }
+        int whole = rank(bytes, 0, n);
+        if (whole != NO_RANK) {
+            tokens[0] = whole;
+            return 1;
+        }
+        if (n > LINEAR_MERGE_MAX_BYTES) {
+            return mergeWithHeap(s, n);
+        }
+        int[] pairRanks = s.pairRanks;
+        for (int i = 0; i < n; i++) {
+            tokens[i] = byteRank[bytes[i] & 0xFF];
+        }
+        for (int i = 0; i < n - 1; i++) {
+            pairRanks[i] = bytePairRank[(bytes[i] & 0xFF) << 8 | (bytes[i + 1] & 0xFF)];
+        }
+        int parts = n;
+        while (parts > 1) {
+            int best = NO_RANK;
+            int at = -1;
+            for (int i = 0; i < parts - 1; i++) {
+                if (pairRanks[i] < best) {
+                    best = pairRanks[i];
+                    at = i;
+                }
+            }
+            if (at < 0) {
+                break;
+            }
+            // 合并第 at 与 at+1 段
+            tokens[at] = best;
+            System.arraycopy(tokens, at + 2, tokens, at + 1, parts - at - 2);
+            int tail = parts - at - 3;
+            if (tail > 0) {
+                System.arraycopy(pairRanks, at + 2, pairRanks, at + 1, tail);
+            }
+            parts--;
+            pairRanks[at] = at + 1 < parts ? pair(tokens[at], tokens[at + 1]) : NO_RANK;
+            if (at > 0) {
+                pairRanks[at - 1] = pair(tokens[at - 1], tokens[at]);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * 长片段（如整句中文）的合并：小顶堆按 (rank, 位置) 取最小相邻对，O(n log n)；
+     * 同 rank 取最左，与线性扫描结果一致。过期的堆元素在弹出时按当前相邻对的 rank 校验丢弃
+     */
+    private int mergeWithHeap(Scratch s, int n) {
+        byte[] bytes = s.bytes;
+        int[] tok = s.tokens;
+        int[] pr = s.pairRanks;
+        int[] next = s.next;
+        int[] prev = s.prev;
+        long[] heap = s.heap;
+        int heapSize = 0;
+        for (int i = 0; i < n; i++) {
+            tok[i] = byteRank[bytes[i] & 0xFF];
+            next[i] = i + 1;
+            prev[i] = i - 1;
+        }
+        for (int i = 0; i < n - 1; i++) {
+            pr[i] = bytePairRank[(bytes[i] & 0xFF) << 8 | (bytes[i + 1] & 0xFF)];
+            if (pr[i] != NO_RANK) {
+                heapSize = heapPush(heap, heapSize, (long) pr[i] << 32 | i);
+            }
+        }
+        pr[n - 1] = NO_RANK;
+
+        int parts = n;
+        while (heapSize > 0) {
+            long top = heap[0];
+            heapSize = heapPop(heap, heapSize);
+            int rank = (int) (top >>> 32);
+            int left = (int) top;
+            if (pr[left] != rank) {
+                continue;
+            }
+            int right = next[left];
+            tok[left] = rank;
+            int after = next[right];
+            next[left] = after;
+            if (after < n) {
+                prev[after] = left;
+            }
+            pr[right] = -1;
+            parts--;
+
+            pr[left] = after < n ? pair(tok[left], tok[after]) : NO_RANK;
+            if (pr[left] != NO_RANK) {
+                heapSize = heapPush(heap, heapSize, (long) pr[left] << 32 | left);
+            }
+            int before = prev[left];
+            if (before >= 0) {
+                pr[before] = pair(tok[before], tok[left]);
+                if (pr[before] != NO_RANK) {
+                    heapSize = heapPush(heap, heapSize, (long) pr[before] << 32 | before);
+                }
+            }
+        }
+        // 按链表顺序把各段 token 压到 tokens 前部
+        int out = 0;
+        for (int i = 0; i < n; i = next[i]) {
+            tok[out++] = tok[i];
+        }
+        return parts;
+    }
+
+    private static int heapPush(long[] heap, int size, long value) {
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+        return size + 1;
+    }
+
+    private static int heapPop(long[] heap, int size) {
+        long last = heap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return size;
+    }
+
+    private int pair(int left, int right) {
+        long key = (long) left << RANK_BITS | right;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> pairShift);
+        while (true) {
+            long entry = pairTable[slot];
+            if (entry == -1L) {
+                return NO_RANK;
+            }
+            if (entry >>> RANK_BITS == key) {
+                return (int) (entry & RANK_MASK);
+            }
+            slot = (slot + 1) & pairMask;
+        }
+    }
+
+    private void putPair(int left, int right, int merged) {
+        long key = (long) left << RANK_BITS | right;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> pairShift);
+        while (pairTable[slot] != -1L && pairTable[slot] >>> RANK_BITS != key) {
+            slot = (slot + 1) & pairMask;
+        }
+        pairTable[slot] = key << RANK_BITS | merged;
+    }
+
+    private int rank(byte[] bytes, int off, int len) {
+        int slot = hash(bytes, off, len) & mask;
+        while (true) {
+            int r = slotRank[slot];
+            if (r < 0) {
+                return NO_RANK;
+            }
+            if (slotLength[slot] == len && Arrays.equals(pool, slotOffset[slot], slotOffset[slot] + len, bytes, off, off + len)) {
+                return r;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(byte[] bytes, int off, int len) {
+        int h = 0x811c9dc5;
+        for (int i = off; i < off + len; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 把 text[start, end) 按 UTF-8 写入 s.bytes，返回字节数（孤立代理写为 '?'，与 String.getBytes 一致）
+     */
+    private static int utf8(CharSequence text, int start, int end, Scratch s) {
+        s.ensureBytes((end - start) * 3);
+        byte[] out = s.bytes;
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | (c >> 6));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                out[n++] = (byte) (0xF0 | (cp >> 18));
+                out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[n++] = '?';
+            } else {
+                out[n++] = (byte) (0xE0 | (c >> 12));
+                out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return n;
+    }
+
+    // ===== 预切分（对应 cl100k_base 的正则）=====
+
+    private static final byte LETTER = 1;
+    private static final byte DIGIT = 2;
+    private static final byte SPACE = 3;
+    private static final byte NEWLINE = 4;
+    private static final byte PUNCT = 5;
+    private static final byte[] ASCII_CLASS = new byte[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                ASCII_CLASS[c] = LETTER;
+            } else if (c >= '0' && c <= '9') {
+                ASCII_CLASS[c] = DIGIT;
+            } else if (c == '\r' || c == '\n') {
+                ASCII_CLASS[c] = NEWLINE;
+            } else if (Character.isWhitespace(c)) {
+                ASCII_CLASS[c] = SPACE;
+            } else {
+                ASCII_CLASS[c] = PUNCT;
+            }
+        }
+    }
+    // '(?i:[sdmt]|ll|ve|re) | [^\r\n\p{L}\p{N}]?\p{L}+ | \p{N}{1,3} | ' '?[^\s\p{L}\p{N}]+[\r\n]* | \s*[\r\n]+ | \s+(?!\S) | \s+
+
+    private static int nextPiece(CharSequence s, int i, int n) {
+        char c0 = s.charAt(i);
+        if (c0 < 0x80 && c0 != '\'') {
+            int next = nextPieceAscii(s, c0, i, n);
+            if (next > 0) {
+                return next;
+            }
+        }
+        int c = codePointAt(s, i, n);
+        int ci = i + Character.charCount(c);
+
+        if (c == '\'' && ci < n) {
+            char a = Character.toLowerCase(s.charAt(ci));
+            if (a == 's' || a == 't' || a == 'm' || a == 'd') {
+                return ci + 1;
+            }
+            if (ci + 1 < n) {
+                char b = Character.toLowerCase(s.charAt(ci + 1));
+                if ((a == 'r' && b == 'e') || (a == 'v' && b == 'e') || (a == 'l' && b == 'l')) {
+                    return ci + 2;
+                }
+            }
+        }
+        if (isLetter(c)) {
+            return skipLetters(s, ci, n);
+        }
+        if (c != '\r' && c != '\n' && !isNumber(c) && ci < n && isLetter(codePointAt(s, ci, n))) {
+            return skipLetters(s, ci, n);
+        }
+        if (isNumber(c)) {
+            int j = ci;
+            for (int k = 1; k < 3 && j < n; k++) {
+                int d = codePointAt(s, j, n);
+                if (!isNumber(d)) {
+                    break;
+                }
+                j += Character.charCount(d);
+            }
+            return j;
+        }
+        int k = i;
+        if (c == ' ' && ci < n && isPunct(codePointAt(s, ci, n))) {
+            k = ci;
+        }
+        if (k < n && isPunct(codePointAt(s, k, n))) {
+            int j = k;
+            while (j < n) {
+                int d = codePointAt(s, j, n);
+                if (!isPunct(d)) {
+                    break;
+                }
+                j += Character.charCount(d);
+            }
+            while (j < n && (s.charAt(j) == '\r' || s.charAt(j) == '\n')) {
+                j++;
+            }
+            return j;
+        }
+        // 空白：含换行时到最后一个换行为止；否则留下最后一个空白给后面的单词
+        int e = i;
+        int lastNewline = -1;
+        while (e < n && isWhitespace(s.charAt(e))) {
+            char w = s.charAt(e);
+            if (w == '\r' || w == '\n') {
+                lastNewline = e;
+            }
+            e++;
+        }
+        if (e == i) {
+            return ci;
+        }
+        if (lastNewline >= 0) {
+            return lastNewline + 1;
+        }
+        if (e == n || e - i == 1) {
+            return e;
+        }
+        return e - 1;
+    }
+
+    /**
+     * 常见 ASCII 情形的快速路径（字母串、空格 + 字母串、ASCII 标点串、单个空格 / 换行）；返回 0 表示交给通用逻辑
+     */
+    private static int nextPieceAscii(CharSequence s, char c0, int i, int n) {
+        byte cls = ASCII_CLASS[c0];
+        if (cls == LETTER) {
+            return skipLetters(s, i + 1, n);
+        }
+        if (i + 1 >= n) {
+            return 0;
+        }
+        char c1 = s.charAt(i + 1);
+        if (c1 >= 0x80) {
+            return 0;
+        }
+        byte next = ASCII_CLASS[c1];
+        if (cls != NEWLINE && cls != DIGIT && next == LETTER) {
+            return skipLetters(s, i + 2, n);
+        }
+        if (cls == PUNCT || (c0 == ' ' && next == PUNCT)) {
+            int j = cls == PUNCT ? i + 1 : i + 2;
+            while (j < n) {
+                char d = s.charAt(j);
+                if (d >= 0x80 || ASCII_CLASS[d] != PUNCT) {
+                    break;
+                }
+                j++;
+            }
+            if (j < n && s.charAt(j) >= 0x80) {
+                return 0;
+            }
+            while (j < n && (s.charAt(j) == '\r' || s.charAt(j) == '\n')) {
+                j++;
+            }
+            return j;
+        }
+        if (cls == NEWLINE && next != SPACE && next != NEWLINE) {
+            return i + 1;
+        }
+        return 0;
+    }
+
+    private static int skipLetters(CharSequence s, int j, int n) {
+        while (j < n) {
+            char ch = s.charAt(j);
+            if (ch < 0x80) {
+                if (!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z'))) {
+                    break;
+                }
+                j++;
+                continue;
+            }
+            int cp = codePointAt(s, j, n);
+            if (!isLetter(cp)) {
+                break;
+            }
+            j += Character.charCount(cp);
+        }
+        return j;
+    }
+
+    private static int codePointAt(CharSequence s, int i, int n) {
+        char c = s.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+            return Character.toCodePoint(c, s.charAt(i + 1));
+        }
+        return c;
+    }
+
+    private static boolean isLetter(int cp) {
+        if (cp < 0x80) {
+            return (cp >= 'a' && cp <= 'z') || (cp >= 'A' && cp <= 'Z');
+        }
+        return Character.isLetter(cp);
+    }
+
+    private static boolean isNumber(int cp) {
+        if (cp < 0x80) {
+            return cp >= '0' && cp <= '9';
+        }
+        int type = Character.getType(cp);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER || type == Character.OTHER_NUMBER;
+    }
+
+    private static boolean isWhitespace(int cp) {
+        return Character.isWhitespace(cp) || cp == '\u00A0' || cp == '\u2007' || cp == '\u202F' || cp == '\u0085';
+    }
+
+    private static boolean isPunct(int cp) {
+        return !isWhitespace(cp) && !isLetter(cp) && !isNumber(cp);
+    }
+
+    /**
+     * 线程内工作区：UTF-8 字节、合并边界、相邻对 rank、片段计数缓存
+     */
+    private static final class Scratch {
+        byte[] bytes = new byte[256];
+        int[] tokens = new int[256];
+        int[] pairRanks = new int[256];
+        int[] next = new int[256];
+        int[] prev = new int[256];
+        long[] heap = new long[768];
+        final long[] pieceCache = new long[PIECE_CACHE_SIZE];
+
+        void ensureBytes(int n) {
+            if (bytes.length < n) {
+                bytes = Arrays.copyOf(bytes, Math.max(n, bytes.length * 2));
+            }
+        }
+
+        void ensure(int n) {
+            if (tokens.length < n) {
+                int size = Math.max(n, tokens.length * 2);
+                tokens = new int[size];
+                pairRanks = new int[size];
+                next = new int[size];
+                prev = new int[size];
+                heap = new long[size * 3];
+            }
+        }
+    }
+}
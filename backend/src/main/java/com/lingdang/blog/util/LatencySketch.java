@@ -0,0 +1,108 @@
+package com.lingdang.blog.util;
+
+/**
+ * 可合并的延迟分位数草图（对数分桶直方图）
+ *
+ * 桶 i 覆盖 (γ^(i-1), γ^i] 毫秒，γ = 1.1，分位数的相对误差约 ±5%；0ms 单独一个桶（i = 0）。
+ * 两个草图直接按桶相加即可合并，因此分钟 / 小时汇总可以逐级累加，不需要保留原始样本。
+ * 序列化为稀疏的 "桶:计数" 列表，通常只有几十个非空桶。
+ */
+public final class LatencySketch {
+
+    private static final double GAMMA = 1.1;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    /**
+     * γ^200 ≈ 1.9e8 ms，超出的值计入最后一个桶
+     */
+    private static final int BUCKETS = 201;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+
+    public void add(long valueMs) {
+        counts[index(valueMs)]++;
+        total++;
+    }
+
+    public void merge(LatencySketch other) {
+        if (other == null) {
+            return;
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    /**
+     * 分位数估计（q 取 0~1），无样本时返回 null
+     */
+    public Integer quantile(double q) {
+        if (total == 0) {
+            return null;
+        }
+        long rank = (long) Math.ceil(q * total);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return value(i);
+            }
+        }
+        return value(BUCKETS - 1);
+    }
+
+    /**
+     * 稀疏序列化："3:12,15:4"
+     */
+    public String serialize() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] == 0) continue;
+            if (sb.length() > 0) sb.append(',');
+            sb.append(i).append(':').append(counts[i]);
+        }
+        return sb.toString();
+    }
+
+    public static LatencySketch deserialize(String text) {
+        LatencySketch sketch = new LatencySketch();
+        if (text == null || text.isEmpty()) {
+            return sketch;
+        }
+        for (String pair : text.split(",")) {
+            int sep = pair.indexOf(':');
+            if (sep <= 0) continue;
+            int i = Integer.parseInt(pair.substring(0, sep));
+            long c = Long.parseLong(pair.substring(sep + 1));
+            if (i < 0 || i >= BUCKETS || c <= 0) continue;
+            sketch.counts[i] += c;
+            sketch.total += c;
+        }
+        return sketch;
+    }
+
+    private static int index(long valueMs) {
+        if (valueMs <= 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(Math.log(valueMs) / LOG_GAMMA);
+        // 1ms 落在 i = 0 之后的第一个桶
+        return Math.min(Math.max(i, 1), BUCKETS - 1);
+    }
+
+    /**
+     * 桶的代表值：区间 (γ^(i-1), γ^i] 的相对误差中点
+     */
+    private static int value(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        return (int) Math.round(2 * Math.pow(GAMMA, i) / (GAMMA + 1));
+    }
+}
@@ -0,0 +1,69 @@
+package com.lingdang.blog.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 最大边际相关（MMR）选择
+ *
+ * 每轮选 λ * relevance - (1 - λ) * maxSim 最大的候选，maxSim 为与已选集合的最大余弦相似度
+ * （向量均为单位向量，即点积）。maxSim 随每次选择增量更新，总代价 O(k * n * dims)。
+ *
+ * - 与已选结果相似度超过 duplicateThreshold 的候选视为重复，直接淘汰
+ * - groupCap > 0 时，同一分组（文章）最多选 groupCap 个
+ * - 向量为 null 的候选不参与相似度计算（只受分组上限约束）
+ */
+public final class MmrSelector {
+
+    private MmrSelector() {
+    }
+
+    /**
+     * @param vectors    候选向量（可为 null）
+     * @param relevance  候选相关度（0~1）
+     * @param groups     候选分组
+     * @param out        选中候选的下标，按选择顺序写入
+     * @return 选中数量
+     */
+    public static int select(float[][] vectors, double[] relevance, long[] groups,
+                             int k, double lambda, int groupCap, float duplicateThreshold, int[] out) {
+        int n = relevance.length;
+        int limit = Math.min(Math.min(k, n), out.length);
+        boolean[] done = new boolean[n];
+        float[] maxSim = new float[n];
+        Map<Long, Integer> groupCounts = new HashMap<>();
+
+        int count = 0;
+        while (count < limit) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (done[i]) continue;
+                if (count > 0 && maxSim[i] >= duplicateThreshold) {
+                    done[i] = true;
+                    continue;
+                }
+                if (groupCap > 0 && groupCounts.getOrDefault(groups[i], 0) >= groupCap) continue;
+                double score = lambda * relevance[i] - (1 - lambda) * maxSim[i];
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            if (best < 0) break;
+
+            done[best] = true;
+            out[count++] = best;
+            groupCounts.merge(groups[best], 1, Integer::sum);
+
+            float[] chosen = vectors[best];
+            if (chosen == null) continue;
+            for (int i = 0; i < n; i++) {
+                if (done[i] || vectors[i] == null || vectors[i].length != chosen.length) continue;
+                float sim = VectorUtils.dot(vectors[i], chosen);
+                if (sim > maxSim[i]) maxSim[i] = sim;
+            }
+        }
+        return count;
+    }
+}
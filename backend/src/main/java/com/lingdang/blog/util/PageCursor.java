@@ -0,0 +1,63 @@
+package com.lingdang.blog.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 键集分页游标：(排序列的值, id)，对外是不透明的 base64url 字符串
+ *
+ * 游标里带上排序方式（如 updatedAt:desc），换了排序再拿旧游标翻页会被拒绝。
+ */
+public final class PageCursor {
+
+    private final String sort;
+    private final String value;
+    private final long id;
+
+    private PageCursor(String sort, String value, long id) {
+        this.sort = sort;
+        this.value = value;
+        this.id = id;
+    }
+
+    /**
+     * @param value 排序列的值（按 id 排序时为 null）
+     */
+    public static String encode(String sort, String value, long id) {
+        String raw = sort + "\n" + id + (value != null ? "\n" + value : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标；格式错误或排序方式不一致时抛 IllegalArgumentException
+     */
+    public static PageCursor decode(String token, String expectedSort) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        String[] parts = raw.split("\n", 3);
+        if (parts.length < 2 || !parts[0].equals(expectedSort)) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        try {
+            return new PageCursor(parts[0], parts.length == 3 ? parts[2] : null, Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
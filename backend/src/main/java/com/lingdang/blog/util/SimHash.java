@@ -0,0 +1,109 @@
+package com.lingdang.blog.util;
+
+/**
+ * 64 位 SimHash（近重复文本检测）
+ *
+ * 特征：先切词（英文 / 数字按连续字母数字、小写，中文每个字一个词，标点与空白只作分隔），
+ * 再取相邻两词组成的 shingle，每次出现权重为 1。
+ * 两段文本的指纹汉明距离越小越相似，改几个词、换行或标点通常只差 0~3 位。
+ * 单次扫描，不分配中间字符串。
+ */
+public final class SimHash {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    public static long of(CharSequence text) {
+        if (text == null) {
+            return 0L;
+        }
+        int[] weights = new int[64];
+        int n = text.length();
+        long prev = 0L;
+        long word = FNV_OFFSET;
+        boolean inWord = false;
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (!isHan(c) && Character.isLetterOrDigit(c)) {
+                word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+                inWord = true;
+                continue;
+            }
+            if (inWord) {
+                prev = shingle(weights, prev, word);
+                word = FNV_OFFSET;
+                inWord = false;
+            }
+            if (isHan(c)) {
+                prev = shingle(weights, prev, (FNV_OFFSET ^ c) * FNV_PRIME);
+            }
+        }
+        if (inWord) {
+            prev = shingle(weights, prev, word);
+        }
+        if (prev != 0L && allZero(weights)) {
+            // 只有一个词：用它本身作特征
+            add(weights, prev);
+        }
+
+        long fingerprint = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 汉明距离
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * 以「上一个词 + 当前词」为特征（词序参与指纹，打乱顺序的同一批词不会被当成重复），返回当前词
+     */
+    private static long shingle(int[] weights, long prev, long token) {
+        if (prev != 0L) {
+            add(weights, prev * 31 + token);
+        }
+        return token;
+    }
+
+    private static boolean allZero(int[] weights) {
+        for (int w : weights) {
+            if (w != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(int[] weights, long feature) {
+        long h = mix(feature);
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += ((h >>> bit) & 1L) != 0 ? 1 : -1;
+        }
+    }
+
+    /**
+     * murmur3 fmix64：FNV 的低位扩散不足，打散后每一位才近似独立
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53a87cdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static boolean isHan(char c) {
+        return c >= '\u4e00' && c <= '\u9fff';
+    }
+}
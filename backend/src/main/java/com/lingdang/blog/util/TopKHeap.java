@@ -0,0 +1,96 @@
+package com.lingdang.blog.util;
+
+/**
+ * 定长 Top-K 小顶堆（原始类型数组，无装箱）
+ *
+ * offer 为 O(log k)，堆满且分数不超过堆顶时直接丢弃。
+ */
+public final class TopKHeap {
+
+    private final int[] ids;
+    private final float[] scores;
+    private int size;
+
+    public TopKHeap(int k) {
+        this.ids = new int[Math.max(k, 0)];
+        this.scores = new float[Math.max(k, 0)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 当前第 k 名的分数（堆未满时为负无穷）
+     */
+    public float threshold() {
+        return size < ids.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public void offer(int id, float score) {
+        if (size < ids.length) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (size > 0 && score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * 按分数从高到低取出全部元素（堆随之清空）
+     *
+     * @param outIds    长度 >= size()
+     * @param outScores 长度 >= size()
+     * @return 元素个数
+     */
+    public int drainDescending(int[] outIds, float[] outScores) {
+        int n = size;
+        for (int i = n - 1; i >= 0; i--) {
+            outIds[i] = ids[0];
+            outScores[i] = scores[0];
+            size--;
+            if (size > 0) {
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return n;
+    }
+
+    private void siftUp(int i) {
+        int id = ids[i];
+        float score = scores[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= score) break;
+            ids[i] = ids[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    private void siftDown(int i) {
+        int id = ids[i];
+        float score = scores[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && scores[right] < scores[child]) {
+                child = right;
+            }
+            if (score <= scores[child]) break;
+            ids[i] = ids[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+}
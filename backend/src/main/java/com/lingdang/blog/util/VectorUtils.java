@@ -0,0 +1,100 @@
+package com.lingdang.blog.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 向量工具
+ */
+public final class VectorUtils {
+
+    private VectorUtils() {
+    }
+
+    /**
+     * 原地 L2 归一化为单位向量（零向量保持不变），返回同一个数组
+     */
+    public static float[] normalize(float[] vector) {
+        if (vector == null) {
+            return null;
+        }
+        double sum = 0.0;
+        for (float v : vector) {
+            sum += (double) v * v;
+        }
+        if (sum == 0.0) {
+            return vector;
+        }
+        float inv = (float) (1.0 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inv;
+        }
+        return vector;
+    }
+
+    /**
+     * 点积（4 路累加展开，减少循环依赖，便于 JIT 生成 SIMD 指令）
+     */
+    public static float dot(float[] a, float[] b) {
+        int n = a.length;
+        int i = 0;
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        for (int upper = n & ~3; i < upper; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * 单位向量的点积换算为与 ES 一致的相关度分数（dot_product / cosine: (1 + dot) / 2；l2_norm: 1 / (1 + d²)）
+     */
+    public static double toScore(float dot, String similarity) {
+        if ("l2_norm".equalsIgnoreCase(similarity)) {
+            double squared = Math.max(0.0, 2.0 - 2.0 * dot);
+            return 1.0 / (1.0 + squared);
+        }
+        return (1.0 + dot) / 2.0;
+    }
+
+    /**
+     * 一组单位向量的质心（均值后再归一化）；为空时返回 null
+     */
+    public static float[] centroid(List<float[]> vectors) {
+        float[] sum = null;
+        for (float[] v : vectors) {
+            if (v == null) continue;
+            if (sum == null) {
+                sum = new float[v.length];
+            }
+            if (v.length != sum.length) continue;
+            for (int i = 0; i < v.length; i++) {
+                sum[i] += v[i];
+            }
+        }
+        return normalize(sum);
+    }
+
+    /**
+     * float32 小端序 base64（与 embedding 接口的 base64 格式一致）
+     */
+    public static String toBase64(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    public static float[] fromBase64(String encoded) {
+        byte[] bytes = Base64.getDecoder().decode(encoded);
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
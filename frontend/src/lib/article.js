@@ -24,7 +24,8 @@ export const getArticleSummary = (article) => {
   const summary = (article?.summary || '').trim();
   if (summary) return summary;
 
-  const fallback = stripMarkdown(article?.contentMarkdown || '');
+  // 列表接口不返回正文，只在摘要为空时带 excerpt（正文开头）
+  const fallback = stripMarkdown(article?.excerpt || article?.contentMarkdown || '');
   if (!fallback) return '暂无摘要';
   return fallback.slice(0, SUMMARY_LENGTH);
 };
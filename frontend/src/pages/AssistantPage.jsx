@@ -1,4 +1,5 @@
 import { useEffect, useRef, useState } from 'react';
+import { useSearchParams } from 'react-router-dom';
 import ReactMarkdown from 'react-markdown';
 import remarkGfm from 'remark-gfm';
 import { Prism as SyntaxHighlighter } from 'react-syntax-highlighter';
@@ -44,6 +45,10 @@ function CitationItem({ cite, index, highlighted }) {
 }
 
 function AssistantPage() {
+  const [searchParams] = useSearchParams();
+  // 从文章页进入时（?articleId=&title=）只在该文章内检索
+  const scopedArticleId = Number(searchParams.get('articleId')) || null;
+  const scopedArticleTitle = searchParams.get('title') || '';
   const [messages, setMessages] = useState([]);
   const [input, setInput] = useState('');
   const [loading, setLoading] = useState(false);
@@ -259,7 +264,8 @@ function AssistantPage() {
         body: JSON.stringify({
           question: userMessage,
           mode: 'FLEXIBLE',
-          history: history
+          history: history,
+          ...(scopedArticleId ? { scope: 'ARTICLE', articleId: scopedArticleId } : {})
         }),
         signal: controller.signal
       });
@@ -401,7 +407,11 @@ function AssistantPage() {
     <div className="assistant-page">
       <div className="chat-header">
         <h1>🤖 AI 学习助手</h1>
-        <p>基于您的文章知识库，智能回答问题</p>
+        <p>
+          {scopedArticleId
+            ? `就《${scopedArticleTitle || '这篇文章'}》提问，只基于该文章内容回答`
+            : '基于您的文章知识库，智能回答问题'}
+        </p>
       </div>
 
       <div className="chat-messages" ref={messagesContainerRef}>
@@ -170,6 +170,12 @@ function BlogDetailPage() {
         <footer className="article-footer">
           <div className="article-actions">
             <Link to="/blog" className="article-action-link">← 返回文章列表</Link>
+            <Link
+              to={`/assistant?articleId=${article.id}&title=${encodeURIComponent(article.title)}`}
+              className="article-action-link"
+            >
+              就这篇文章提问 →
+            </Link>
           </div>
 
           {(prevArticle || nextArticle) && (
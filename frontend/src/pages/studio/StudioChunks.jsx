@@ -7,14 +7,37 @@ function StudioChunks() {
   const [chunks, setChunks] = useState([]);
   const [loading, setLoading] = useState(true);
   const [articleId, setArticleId] = useState('');
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
+  const [dedup, setDedup] = useState(null);
   const navigate = useNavigate();
 
-  const fetchChunks = async () => {
-    setLoading(true);
+  // 近重复统计（SimHash）：重复占比与省下的 embedding 量
+  const fetchDedupStats = async () => {
+    const token = localStorage.getItem('token');
+    try {
+      const response = await fetch(`${API_URL}/studio/chunks/dedup-stats`, {
+        headers: { 'Authorization': `Bearer ${token}` }
+      });
+      const result = await response.json();
+      if (isApiSuccess(result)) {
+        setDedup(result.data);
+      }
+    } catch (e) {
+      console.warn('获取去重统计失败:', e);
+    }
+  };
+
+  const formatRate = (v) => (v == null ? '-' : `${(v * 100).toFixed(1)}%`);
+
+  // cursor 为空时加载第一页，否则追加下一页
+  const fetchChunks = async (cursor = null) => {
+    const append = !!cursor;
+    if (append) setLoadingMore(true); else setLoading(true);
     const token = localStorage.getItem('token');
     const params = new URLSearchParams();
     if (articleId) params.set('articleId', articleId);
-    params.set('page', '1');
+    if (cursor) params.set('cursor', cursor);
     params.set('pageSize', '50');
 
     try {
@@ -24,7 +47,9 @@ function StudioChunks() {
       const result = await handleStudioWriteResponse(response, navigate);
       if (!result) return;
       if (isApiSuccess(result)) {
-        setChunks(Array.isArray(result.data) ? result.data : []);
+        const items = Array.isArray(result.data?.items) ? result.data.items : [];
+        setChunks(prev => (append ? [...prev, ...items] : items));
+        setNextCursor(result.data?.nextCursor || null);
       } else {
         alert(result.message || '获取 chunks 失败');
       }
@@ -32,12 +57,13 @@ function StudioChunks() {
       console.error(e);
       alert('获取 chunks 失败');
     } finally {
-      setLoading(false);
+      if (append) setLoadingMore(false); else setLoading(false);
     }
   };
 
   useEffect(() => {
     fetchChunks();
+    fetchDedupStats();
   }, []);
 
   return (
@@ -46,10 +72,27 @@ function StudioChunks() {
         <h1>文章 Chunks 切片</h1>
         <div className="header-actions">
           <button onClick={() => navigate('/studio/articles')}>返回文章管理</button>
-          <button onClick={fetchChunks} disabled={loading}>刷新</button>
+          <button onClick={() => { fetchChunks(); fetchDedupStats(); }} disabled={loading}>刷新</button>
         </div>
       </div>
 
+      {dedup && (
+        <div className="settings-card">
+          <h3>近重复检测{dedup.enabled ? '' : '（未启用）'}</h3>
+          <ul>
+            <li>重复 chunk: {dedup.duplicateChunks} / {dedup.totalChunks}（{formatRate(dedup.dedupRatio)}）</li>
+            <li>省下的 embedding token: {dedup.savedTokens} / {dedup.totalTokens}</li>
+            <li>省下的 embedding 字符: {dedup.savedChars} / {dedup.totalChars}</li>
+            <li>
+              被重复最多: {dedup.topDuplicated?.length
+                ? dedup.topDuplicated.slice(0, 5).map(t => `${t.chunkId}(${t.copies})`).join('、')
+                : '-'}
+            </li>
+          </ul>
+          <div className="form-hint">SimHash 汉明距离 ≤ {dedup.maxDistance} 且不少于 {dedup.minTokens} token 的 chunk 参与去重。</div>
+        </div>
+      )}
+
       <div className="settings-card">
         <div className="form-group">
           <label>按 articleId 过滤（可选）</label>
@@ -60,8 +103,8 @@ function StudioChunks() {
             placeholder="例如 1"
             disabled={loading}
           />
-          <div className="form-hint">默认展示最近写入的 50 条（按 createdAt 倒序）。</div>
-          <button onClick={fetchChunks} disabled={loading} style={{ marginTop: '0.75rem' }}>
+          <div className="form-hint">按 createdAt 倒序，每次加载 50 条。</div>
+          <button onClick={() => fetchChunks()} disabled={loading} style={{ marginTop: '0.75rem' }}>
             {loading ? '加载中…' : '查询'}
           </button>
         </div>
@@ -81,6 +124,7 @@ function StudioChunks() {
                   <th>indexVersion</th>
                   <th>heading</th>
                   <th>token</th>
+                  <th>重复于</th>
                   <th>text</th>
                 </tr>
               </thead>
@@ -93,6 +137,7 @@ function StudioChunks() {
                     <td>{c.indexVersion}</td>
                     <td title={c.headingText}>{c.headingText || '-'}</td>
                     <td>{c.tokenCount ?? '-'}</td>
+                    <td title={c.duplicateOf || ''}>{c.duplicateOf || '-'}</td>
                     <td style={{ maxWidth: 520, whiteSpace: 'pre-wrap' }}>
                       {String(c.chunkText || '').slice(0, 300)}{String(c.chunkText || '').length > 300 ? '…' : ''}
                     </td>
@@ -100,6 +145,11 @@ function StudioChunks() {
                 ))}
               </tbody>
             </table>
+            {nextCursor && (
+              <button onClick={() => fetchChunks(nextCursor)} disabled={loadingMore} style={{ marginTop: '0.75rem' }}>
+                {loadingMore ? '加载中…' : '加载更多'}
+              </button>
+            )}
           </div>
         )}
       </div>
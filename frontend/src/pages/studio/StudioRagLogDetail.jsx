@@ -67,6 +67,10 @@ function StudioRagLogDetail() {
               <li>vectorWeight: {log.vectorWeight ?? '-'}</li>
               <li>bm25Weight: {log.bm25Weight ?? '-'}</li>
               <li>bm25Max: {log.bm25Max ?? '-'}</li>
+              <li>fusionStrategy: {log.fusionStrategy || '-'}</li>
+              <li>mmrLambda: {log.mmrLambda ?? '-'}</li>
+              <li>maxChunksPerArticle: {log.maxChunksPerArticle ?? '-'}</li>
+              <li>compressionBudget: {log.compressionBudget ?? '-'}</li>
               <li>returnCitations: {String(!!log.returnCitations)}</li>
             </ul>
 
@@ -79,6 +83,22 @@ function StudioRagLogDetail() {
               <li>hitArticleIds: {log.hitArticleIds || '-'}</li>
               <li>citationsCount: {log.citationsCount ?? 0}</li>
               <li>retrievalMs: {log.retrievalMs ?? '-'}</li>
+              <li>fusionUs: {log.fusionMicros ?? '-'}</li>
+              <li>dedupCollapsedChunks: {log.dedupCollapsedChunks ?? '-'}</li>
+              <li>mmrDroppedChunks: {log.mmrDroppedChunks ?? '-'}</li>
+              <li>mmrRemovedTokens: {log.mmrRemovedTokens ?? '-'}</li>
+              <li>contextTokens: {log.contextTokens ?? '-'}</li>
+              <li>compressedTokens: {log.compressedTokens ?? '-'}</li>
+              <li>compressMs: {log.compressMs ?? '-'}</li>
+              <li>ttftMs: {log.ttftMs ?? '-'}</li>
+              <li>retrievalMode: {log.retrievalMode || '-'}</li>
+              {log.retrievalMode === 'hierarchical' && (
+                <>
+                  <li>stage1Articles: {log.stage1Articles ?? '-'}</li>
+                  <li>flatRecall: {log.flatRecall != null ? log.flatRecall.toFixed(2) : '-'}</li>
+                  <li>flatRetrievalMs: {log.flatRetrievalMs ?? '-'}</li>
+                </>
+              )}
               <li>latencyMs: {log.latencyMs ?? '-'}</li>
               <li>success: {String(!!log.success)}</li>
               {!log.success && <li style={{ color: 'var(--danger-color)' }}>error: {log.errorMessage}</li>}
@@ -6,19 +6,46 @@ import { handleStudioWriteResponse } from '../../lib/studioApi';
 function StudioRagLogs() {
   const [logs, setLogs] = useState([]);
   const [loading, setLoading] = useState(true);
+  const [nextCursor, setNextCursor] = useState(null);
+  const [loadingMore, setLoadingMore] = useState(false);
+  const [metrics, setMetrics] = useState(null);
   const navigate = useNavigate();
 
-  const fetchLogs = async () => {
-    setLoading(true);
+  // 近 24 小时汇总指标（服务端按小时预聚合）
+  const fetchMetrics = async () => {
     const token = localStorage.getItem('token');
     try {
-      const response = await fetch(`${API_URL}/studio/rag-logs`, {
+      const response = await fetch(`${API_URL}/studio/rag-metrics?granularity=HOUR&hours=24`, {
+        headers: { 'Authorization': `Bearer ${token}` }
+      });
+      const result = await response.json();
+      if (isApiSuccess(result)) {
+        setMetrics(result.data);
+      }
+    } catch (e) {
+      console.warn('获取 RAG 指标失败:', e);
+    }
+  };
+
+  const formatRate = (v) => (v == null ? '-' : `${(v * 100).toFixed(1)}%`);
+
+  // cursor 为空时加载第一页，否则追加下一页
+  const fetchLogs = async (cursor = null) => {
+    const append = !!cursor;
+    if (append) setLoadingMore(true); else setLoading(true);
+    const token = localStorage.getItem('token');
+    const params = new URLSearchParams({ pageSize: '50' });
+    if (cursor) params.set('cursor', cursor);
+    try {
+      const response = await fetch(`${API_URL}/studio/rag-logs?${params.toString()}`, {
         headers: { 'Authorization': `Bearer ${token}` }
       });
       const result = await handleStudioWriteResponse(response, navigate);
       if (!result) return;
       if (isApiSuccess(result)) {
-        setLogs(Array.isArray(result.data) ? result.data : []);
+        const items = Array.isArray(result.data?.items) ? result.data.items : [];
+        setLogs(prev => (append ? [...prev, ...items] : items));
+        setNextCursor(result.data?.nextCursor || null);
       } else {
         alert(result.message || '获取日志失败');
       }
@@ -26,24 +53,44 @@ function StudioRagLogs() {
       console.error(e);
       alert('获取日志失败');
     } finally {
-      setLoading(false);
+      if (append) setLoadingMore(false); else setLoading(false);
     }
   };
 
   useEffect(() => {
     fetchLogs();
+    fetchMetrics();
   }, []);
 
   return (
     <div className="studio-settings">
       <div className="studio-header">
-        <h1>RAG 查询日志（近 7 天）</h1>
+        <h1>RAG 查询日志（近 3 天）</h1>
         <div className="header-actions">
           <button onClick={() => navigate('/studio/settings')}>返回配置</button>
-          <button onClick={fetchLogs} disabled={loading}>刷新</button>
+          <button onClick={() => { fetchLogs(); fetchMetrics(); }} disabled={loading}>刷新</button>
         </div>
       </div>
 
+      {metrics?.summary && (
+        <div className="settings-card">
+          <h3>近 24 小时</h3>
+          <ul>
+            <li>请求数: {metrics.summary.requests}</li>
+            <li>成功率: {formatRate(metrics.summary.successRate)}</li>
+            <li>命中文章比例: {formatRate(metrics.summary.hasArticlesRate)}</li>
+            <li>总耗时 p50 / p95 / p99 (ms): {metrics.summary.latencyP50 ?? '-'} / {metrics.summary.latencyP95 ?? '-'} / {metrics.summary.latencyP99 ?? '-'}</li>
+            <li>检索耗时 p50 / p95 (ms): {metrics.summary.retrievalP50 ?? '-'} / {metrics.summary.retrievalP95 ?? '-'}</li>
+            <li>平均候选数 vec / bm25 / 过滤后: {metrics.summary.avgVectorCandidates?.toFixed(1) ?? '-'} / {metrics.summary.avgBm25Candidates?.toFixed(1) ?? '-'} / {metrics.summary.avgFilteredCandidates?.toFixed(1) ?? '-'}</li>
+            <li>
+              命中最多的文章: {metrics.topArticles?.length
+                ? metrics.topArticles.slice(0, 5).map(a => `#${a.articleId}(${a.hits})`).join('、')
+                : '-'}
+            </li>
+          </ul>
+        </div>
+      )}
+
       <div className="settings-card">
         {loading ? (
           <div className="loading">加载中…</div>
@@ -62,6 +109,7 @@ function StudioRagLogs() {
                   <th>chunkSize</th>
                   <th>vec</th>
                   <th>bm25</th>
+                  <th>融合</th>
                   <th>引用</th>
                   <th>耗时(ms)</th>
                   <th>状态</th>
@@ -82,6 +130,7 @@ function StudioRagLogs() {
                     <td>{row.chunkSize ?? '-'}</td>
                     <td>{row.vectorCandidates ?? '-'}</td>
                     <td>{row.bm25Candidates ?? '-'}</td>
+                    <td>{row.fusionStrategy || '-'}</td>
                     <td>{row.citationsCount ?? 0}</td>
                     <td>{row.latencyMs ?? '-'}</td>
                     <td style={{ color: row.success ? 'var(--success-color)' : 'var(--danger-color)' }}>
@@ -91,6 +140,11 @@ function StudioRagLogs() {
                 ))}
               </tbody>
             </table>
+            {nextCursor && (
+              <button onClick={() => fetchLogs(nextCursor)} disabled={loadingMore} style={{ marginTop: '0.75rem' }}>
+                {loadingMore ? '加载中…' : '加载更多'}
+              </button>
+            )}
           </div>
         )}
       </div>
@@ -12,20 +12,32 @@ function StudioRagSettings() {
     returnCitations: true,
     flexibleModeEnabled: true,
     vectorWeight: '70',
-    bm25Max: '15'
+    bm25Max: '15',
+    fusionStrategy: 'weighted',
+    mmrLambda: '0.7',
+    maxChunksPerArticle: '2',
+    compressionBudget: '300'
   });
   const [loading, setLoading] = useState(true);
   const [saving, setSaving] = useState(false);
   const [latestJob, setLatestJob] = useState(null);
+  const [indexQueue, setIndexQueue] = useState(null);
+  const [llmGovernor, setLlmGovernor] = useState(null);
+  const [llmTransport, setLlmTransport] = useState(null);
+  const [embeddingStats, setEmbeddingStats] = useState(null);
   const navigate = useNavigate();
 
   const fetchConfig = async () => {
     setLoading(true);
     const token = localStorage.getItem('token');
     try {
-      const [cfgResp, jobResp] = await Promise.all([
+      const [cfgResp, jobResp, queueResp, governorResp, transportResp, embeddingResp] = await Promise.all([
         fetch(`${API_URL}/studio/rag-config`, { headers: { 'Authorization': `Bearer ${token}` } }),
-        fetch(`${API_URL}/studio/reindex-jobs/latest`, { headers: { 'Authorization': `Bearer ${token}` } })
+        fetch(`${API_URL}/studio/reindex-jobs/latest`, { headers: { 'Authorization': `Bearer ${token}` } }),
+        fetch(`${API_URL}/studio/index-queue`, { headers: { 'Authorization': `Bearer ${token}` } }),
+        fetch(`${API_URL}/studio/llm-governor`, { headers: { 'Authorization': `Bearer ${token}` } }),
+        fetch(`${API_URL}/studio/llm-transport`, { headers: { 'Authorization': `Bearer ${token}` } }),
+        fetch(`${API_URL}/studio/llm-embedding-stats`, { headers: { 'Authorization': `Bearer ${token}` } })
       ]);
 
       const cfgResult = await handleStudioWriteResponse(cfgResp, navigate);
@@ -39,7 +51,11 @@ function StudioRagSettings() {
           returnCitations: data.returnCitations !== false,
           flexibleModeEnabled: data.flexibleModeEnabled !== false,
           vectorWeight: String(data.vectorWeight ?? 70),
-          bm25Max: String(data.bm25Max ?? 15)
+          bm25Max: String(data.bm25Max ?? 15),
+          fusionStrategy: data.fusionStrategy || 'weighted',
+          mmrLambda: String(data.mmrLambda ?? 0.7),
+          maxChunksPerArticle: String(data.maxChunksPerArticle ?? 2),
+          compressionBudget: String(data.compressionBudget ?? 300)
         });
       } else {
         alert(cfgResult.message || '获取配置失败');
@@ -50,6 +66,26 @@ function StudioRagSettings() {
         setLatestJob(jobResult.data || null);
       }
 
+      const queueResult = await handleStudioWriteResponse(queueResp, navigate);
+      if (queueResult && isApiSuccess(queueResult)) {
+        setIndexQueue(queueResult.data || null);
+      }
+
+      const governorResult = await handleStudioWriteResponse(governorResp, navigate);
+      if (governorResult && isApiSuccess(governorResult)) {
+        setLlmGovernor(governorResult.data || null);
+      }
+
+      const transportResult = await handleStudioWriteResponse(transportResp, navigate);
+      if (transportResult && isApiSuccess(transportResult)) {
+        setLlmTransport(transportResult.data || null);
+      }
+
+      const embeddingResult = await handleStudioWriteResponse(embeddingResp, navigate);
+      if (embeddingResult && isApiSuccess(embeddingResult)) {
+        setEmbeddingStats(embeddingResult.data || null);
+      }
+
     } catch (error) {
       console.error('获取配置失败:', error);
       alert('获取配置失败，请稍后重试');
@@ -75,6 +111,9 @@ function StudioRagSettings() {
     const vectorWeight = parseNumber(form.vectorWeight, 70);
     const bm25Weight = 100 - vectorWeight;
     const bm25Max = parseNumber(form.bm25Max, 15);
+    const mmrLambda = parseNumber(form.mmrLambda, 0.7);
+    const maxChunksPerArticle = parseNumber(form.maxChunksPerArticle, 2);
+    const compressionBudget = parseNumber(form.compressionBudget, 300);
 
     if (topK < 1 || topK > 50) {
       alert('topK 需在 1 ~ 50 之间');
@@ -96,6 +135,18 @@ function StudioRagSettings() {
       alert('bm25Max 需在 (0, 1000] 之间');
       return;
     }
+    if (mmrLambda < 0 || mmrLambda > 1) {
+      alert('mmrLambda 需在 0 ~ 1 之间');
+      return;
+    }
+    if (maxChunksPerArticle < 0 || maxChunksPerArticle > 50) {
+      alert('每篇文章 chunk 上限需在 0 ~ 50 之间（0 表示不限）');
+      return;
+    }
+    if (compressionBudget !== 0 && (compressionBudget < 50 || compressionBudget > 2000)) {
+      alert('压缩预算需为 0（关闭）或 50 ~ 2000 之间');
+      return;
+    }
 
     setSaving(true);
     const token = localStorage.getItem('token');
@@ -113,6 +164,10 @@ function StudioRagSettings() {
           vectorWeight,
           bm25Weight,
           bm25Max,
+          fusionStrategy: form.fusionStrategy,
+          mmrLambda,
+          maxChunksPerArticle,
+          compressionBudget,
           returnCitations: !!form.returnCitations,
           flexibleModeEnabled: !!form.flexibleModeEnabled
         })
@@ -128,7 +183,11 @@ function StudioRagSettings() {
           returnCitations: data.returnCitations !== false,
           chunkSize: String(data.chunkSize ?? prev.chunkSize),
           vectorWeight: String(data.vectorWeight ?? vectorWeight),
-          bm25Max: String(data.bm25Max ?? bm25Max)
+          bm25Max: String(data.bm25Max ?? bm25Max),
+          fusionStrategy: data.fusionStrategy || prev.fusionStrategy,
+          mmrLambda: String(data.mmrLambda ?? mmrLambda),
+          maxChunksPerArticle: String(data.maxChunksPerArticle ?? maxChunksPerArticle),
+          compressionBudget: String(data.compressionBudget ?? compressionBudget)
         }));
 
         // 刷新一次任务状态（如果 chunkSize 触发了异步重建）
@@ -165,10 +224,61 @@ function StudioRagSettings() {
             <div className="form-hint">
               状态：{latestJob.status || '-'}，进度：{latestJob.doneArticles ?? 0}/{latestJob.totalArticles ?? 0}
               {latestJob.requestedChunkSize ? `，requestedChunkSize=${latestJob.requestedChunkSize}` : ''}
+              {latestJob.resumeCount ? `，续跑 ${latestJob.resumeCount} 次（跳过 ${latestJob.skippedArticles ?? 0} 篇）` : ''}
               {latestJob.errorMessage ? `，error=${latestJob.errorMessage}` : ''}
             </div>
           </div>
         )}
+        {indexQueue && (
+          <div className="form-group">
+            <label>文章索引队列</label>
+            <div className="form-hint">
+              排队：{indexQueue.pending ?? 0}，执行中：{indexQueue.running ?? 0}，近 1 小时失败：{indexQueue.failedLastHour ?? 0}
+              {indexQueue.oldestPendingAgeSeconds != null ? `，最早排队 ${indexQueue.oldestPendingAgeSeconds}s` : ''}
+              {indexQueue.oldestRunningAgeSeconds != null ? `，最久执行 ${indexQueue.oldestRunningAgeSeconds}s` : ''}
+            </div>
+          </div>
+        )}
+        {llmGovernor && (
+          <div className="form-group">
+            <label>LLM 调用调度</label>
+            {Object.entries(llmGovernor.endpoints || {}).map(([name, ep]) => (
+              <div className="form-hint" key={name}>
+                {name}：在途 {ep.inFlight ?? 0}/{ep.maxConcurrency ?? 0}，排队 {ep.waiting ?? 0}，限流 {ep.throttledResponses ?? 0} 次
+                {ep.cooldownRemainingMs ? `，冷却中 ${ep.cooldownRemainingMs}ms` : ''}
+              </div>
+            ))}
+            {Object.entries(llmGovernor.priorities || {}).map(([name, p]) => (
+              <div className="form-hint" key={name}>
+                {name}：{p.requests ?? 0} 次，平均排队 {Math.round(p.avgWaitMs ?? 0)}ms，最长 {p.maxWaitMs ?? 0}ms
+              </div>
+            ))}
+          </div>
+        )}
+        {llmTransport && (
+          <div className="form-group">
+            <label>LLM 连接</label>
+            {Object.entries(llmTransport).map(([name, t]) => (
+              <div className="form-hint" key={name}>
+                {name}：请求 {t.calls ?? 0}，连接复用率 {((t.reuseRate ?? 0) * 100).toFixed(1)}%，新建连接 {t.newConnections ?? 0}
+                （TLS 握手 {t.tlsHandshakes ?? 0}，HTTP/2 {t.http2Connections ?? 0}），池中 {t.pooledConnections ?? 0}（空闲 {t.idleConnections ?? 0}）
+              </div>
+            ))}
+          </div>
+        )}
+        {embeddingStats && (
+          <div className="form-group">
+            <label>Embedding 传输（配置：{embeddingStats.configuredEncoding || '-'}）</label>
+            {Object.entries(embeddingStats.modes || {}).map(([mode, m]) => (
+              <div className="form-hint" key={mode}>
+                {mode}：{m.vectors ?? 0} 个向量，平均 {Math.round(m.avgBytesPerVector ?? 0)} B/向量，解码 {(m.avgDecodeMicrosPerVector ?? 0).toFixed(1)} µs/向量
+              </div>
+            ))}
+            {(embeddingStats.base64UnsupportedEndpoints || []).length > 0 && (
+              <div className="form-hint">已回退 float：{embeddingStats.base64UnsupportedEndpoints.join(', ')}</div>
+            )}
+          </div>
+        )}
         <div className="form-group">
           <label>topK</label>
           <input
@@ -208,6 +318,20 @@ function StudioRagSettings() {
           </div>
         </div>
 
+        <div className="form-group">
+          <label>融合策略</label>
+          <select
+            value={form.fusionStrategy}
+            onChange={(e) => setForm(prev => ({ ...prev, fusionStrategy: e.target.value }))}
+            disabled={saving}
+          >
+            <option value="weighted">加权线性（weighted）</option>
+            <option value="rrf">倒数排名融合（rrf）</option>
+            <option value="zscore">z-score 标准化（zscore）</option>
+          </select>
+          <div className="form-hint">weighted 使用上面的权重与 bm25Max；rrf 只看两路名次；zscore 按本次召回的分布标准化。三种都会用到权重。</div>
+        </div>
+
         <div className="form-group">
           <label>bm25Max（log 归一化上限）</label>
           <input
@@ -221,6 +345,47 @@ function StudioRagSettings() {
           />
           <div className="form-hint">BM25 归一化：log(1+bm25) / log(1+bm25Max)，结果会被 clamp 到 0~1。</div>
         </div>
+
+        <div className="form-group">
+          <label>MMR λ（0 ~ 1，去冗余）</label>
+          <input
+            type="number"
+            min="0"
+            max="1"
+            step="0.05"
+            value={form.mmrLambda}
+            onChange={(e) => setForm(prev => ({ ...prev, mmrLambda: e.target.value }))}
+            disabled={saving}
+          />
+          <div className="form-hint">越大越看重相关度，越小越倾向选择内容不同的 chunk；1 表示不去冗余。</div>
+        </div>
+
+        <div className="form-group">
+          <label>每篇文章最多 chunk 数（0 表示不限）</label>
+          <input
+            type="number"
+            min="0"
+            max="50"
+            step="1"
+            value={form.maxChunksPerArticle}
+            onChange={(e) => setForm(prev => ({ ...prev, maxChunksPerArticle: e.target.value }))}
+            disabled={saving}
+          />
+        </div>
+
+        <div className="form-group">
+          <label>每个 chunk 压缩预算（token，0 表示不压缩）</label>
+          <input
+            type="number"
+            min="0"
+            max="2000"
+            step="50"
+            value={form.compressionBudget}
+            onChange={(e) => setForm(prev => ({ ...prev, compressionBudget: e.target.value }))}
+            disabled={saving}
+          />
+          <div className="form-hint">超出预算的 chunk 只保留与问题最相关的句子，代码块和标题保持完整。</div>
+        </div>
         <div className="form-group">
           <label>
             chunkSize